@@ -22,7 +22,12 @@ android {
     }
 
     buildTypes {
+        debug {
+            // Compile-time constant behind NumoLog.DEBUG; see NumoLog
+            buildConfigField("boolean", "LOG_DEBUG", "true")
+        }
         release {
+            buildConfigField("boolean", "LOG_DEBUG", "false")
             isMinifyEnabled = false
             proguardFiles(
                 getDefaultProguardFile("proguard-android-optimize.txt"),
@@ -53,6 +58,11 @@ android {
         }
     }
 
+    testOptions {
+        // Let JVM unit tests call android.util.Log without mocking it
+        unitTests.isReturnDefaultValues = true
+    }
+
     lint {
         lintConfig = file("src/main/res/xml/lint.xml")
         baseline = file("lint-baseline.xml")
@@ -80,6 +90,8 @@ dependencies {
     
     // Testing
     testImplementation("junit:junit:4.13.2")
+    // Real org.json for JVM tests; android.jar only has stubs
+    testImplementation("org.json:json:20231013")
     androidTestImplementation("androidx.test.ext:junit:1.1.5")
     androidTestImplementation("androidx.test.espresso:espresso-core:3.5.1")
     
@@ -18,13 +18,18 @@ import androidx.core.view.ViewCompat
 import androidx.core.view.WindowCompat
 import androidx.core.view.WindowInsetsCompat
 import androidx.core.view.WindowInsetsControllerCompat
+import androidx.lifecycle.lifecycleScope
 import com.electricdreams.numo.core.cashu.CashuWalletManager
+import com.electricdreams.numo.core.data.KeyValueStore
+import com.electricdreams.numo.core.startup.AppStartup
 import com.electricdreams.numo.core.worker.BitcoinPriceWorker
 import com.electricdreams.numo.feature.autowithdraw.AutoWithdrawManager
 import com.electricdreams.numo.feature.autowithdraw.AutoWithdrawProgressListener
 import com.electricdreams.numo.feature.history.PaymentsHistoryActivity
+import com.electricdreams.numo.feature.onboarding.OnboardingActivity
 import com.electricdreams.numo.payment.PaymentMethodHandler
 import com.electricdreams.numo.ui.components.PosUiCoordinator
+import kotlinx.coroutines.launch
 
 class ModernPOSActivity : AppCompatActivity(), SatocashWallet.OperationFeedback, AutoWithdrawProgressListener {
 
@@ -52,8 +57,7 @@ class ModernPOSActivity : AppCompatActivity(), SatocashWallet.OperationFeedback,
         // Load and apply theme settings
         setupThemeSettings()
         
-        // Initialize basic setup
-        CashuWalletManager.init(this)
+        // Wallet, catalog and price cache are warmed up by AppStartup off the main thread
         setContentView(R.layout.activity_modern_pos)
 
         val paymentAmount = intent.getLongExtra("EXTRA_PAYMENT_AMOUNT", 0L)
@@ -80,7 +84,7 @@ class ModernPOSActivity : AppCompatActivity(), SatocashWallet.OperationFeedback,
     }
 
     private fun setupThemeSettings() {
-        val prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+        val prefs = KeyValueStore.open(this, PREFS_NAME)
         val isDarkMode = prefs.getBoolean(KEY_DARK_MODE, false)
         AppCompatDelegate.setDefaultNightMode(
             if (isDarkMode) AppCompatDelegate.MODE_NIGHT_YES else AppCompatDelegate.MODE_NIGHT_NO,
@@ -135,6 +139,19 @@ class ModernPOSActivity : AppCompatActivity(), SatocashWallet.OperationFeedback,
     private fun setupAutoWithdrawProgress() {
         autoWithdrawManager = AutoWithdrawManager.getInstance(this)
         autoWithdrawManager.setProgressListener(this)
+        // Pick up withdrawals interrupted by the app being killed, once the wallet is open
+        lifecycleScope.launch {
+            AppStartup.await(AppStartup.WALLET)
+            // The step may have failed; open the wallet here then, as before AppStartup
+            if (CashuWalletManager.getWallet() == null &&
+                OnboardingActivity.isOnboardingComplete(this@ModernPOSActivity)
+            ) {
+                CashuWalletManager.init(this@ModernPOSActivity)
+            }
+            // Opened by onboarding instead when this process started before it finished
+            CashuWalletManager.awaitInitialized()
+            autoWithdrawManager.resumePendingJobs()
+        }
 
         // Initialize progress views (Dynamic Island style). We scope lookups through the
         // included view root to avoid any surprises with the view hierarchy.
@@ -0,0 +1,12 @@
+package com.electricdreams.numo
+
+import android.app.Application
+import com.electricdreams.numo.core.startup.AppStartup
+
+class NumoApplication : Application() {
+
+    override fun onCreate() {
+        super.onCreate()
+        AppStartup.start(this)
+    }
+}
@@ -13,6 +13,8 @@ import android.widget.ImageView
 import android.widget.TextView
 import android.widget.Toast
 import androidx.appcompat.app.AppCompatActivity
+import androidx.lifecycle.lifecycleScope
+import com.electricdreams.numo.core.cashu.ReceivedToken
 import com.electricdreams.numo.core.data.model.PaymentHistoryEntry
 import com.electricdreams.numo.core.model.Amount
 import com.electricdreams.numo.core.model.Amount.Currency
@@ -22,15 +24,18 @@ import com.electricdreams.numo.core.worker.BitcoinPriceWorker
 import com.electricdreams.numo.core.util.CurrencyManager
 import com.electricdreams.numo.feature.history.PaymentsHistoryActivity
 import com.electricdreams.numo.feature.tips.TipSelectionActivity
-import com.electricdreams.numo.ndef.CashuPaymentHelper
 import com.electricdreams.numo.ndef.NdefHostCardEmulationService
-import com.electricdreams.numo.payment.LightningMintHandler
+import com.electricdreams.numo.payment.HcePaymentChannel
+import com.electricdreams.numo.payment.LightningPaymentChannel
+import com.electricdreams.numo.payment.NostrPaymentChannel
 import com.electricdreams.numo.payment.NostrPaymentHandler
+import com.electricdreams.numo.payment.PaymentChannel
+import com.electricdreams.numo.payment.PaymentOutcome
+import com.electricdreams.numo.payment.PaymentSession
 import com.electricdreams.numo.payment.PaymentTabManager
 import com.electricdreams.numo.ui.util.QrCodeGenerator
 import com.electricdreams.numo.feature.autowithdraw.AutoWithdrawManager
-import kotlinx.coroutines.CoroutineScope
-import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.launch
 
 class PaymentRequestActivity : AppCompatActivity() {
 
@@ -52,12 +57,8 @@ class PaymentRequestActivity : AppCompatActivity() {
     // Tip-related views
     private lateinit var tipInfoText: TextView
 
-    // HCE mode for deciding which payload to emulate (Cashu vs Lightning)
-    private enum class HceMode { CASHU, LIGHTNING }
-
     private var paymentAmount: Long = 0
     private var bitcoinPriceWorker: BitcoinPriceWorker? = null
-    private var hcePaymentRequest: String? = null
     private var formattedAmountString: String = ""
     
     // Tip state (received from TipSelectionActivity)
@@ -66,16 +67,18 @@ class PaymentRequestActivity : AppCompatActivity() {
     private var baseAmountSats: Long = 0
     private var baseFormattedAmount: String = ""
 
-    // Current HCE mode (defaults to Cashu)
-    private var currentHceMode: HceMode = HceMode.CASHU
-
     // Tab manager for Cashu/Lightning tab switching
     private lateinit var tabManager: PaymentTabManager
 
-    // Payment handlers
-    private var nostrHandler: NostrPaymentHandler? = null
-    private var lightningHandler: LightningMintHandler? = null
-    private var lightningStarted = false
+    // Payment session running all channels (NFC, Nostr, Lightning)
+    private var session: PaymentSession? = null
+    private var hceChannel: HcePaymentChannel? = null
+    private var nostrChannel: NostrPaymentChannel? = null
+    private var lightningChannel: LightningPaymentChannel? = null
+
+    // Channel states already rendered, so each transition is handled once
+    private val renderedChannels = HashMap<String, PaymentSession.ChannelState>()
+    private var outcomeHandled = false
 
     // Lightning quote info for history
     private var lightningInvoice: String? = null
@@ -101,8 +104,6 @@ class PaymentRequestActivity : AppCompatActivity() {
     // Saved basket ID (for basket-payment association)
     private var savedBasketId: String? = null
 
-    private val uiScope = CoroutineScope(Dispatchers.Main)
-
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
         setContentView(R.layout.activity_payment_request)
@@ -138,21 +139,15 @@ class PaymentRequestActivity : AppCompatActivity() {
         // Set up tabs with listener
         tabManager.setup(object : PaymentTabManager.TabSelectionListener {
             override fun onLightningTabSelected() {
-                Log.d(TAG, "onLightningTabSelected() called. lightningStarted=$lightningStarted, lightningInvoice=$lightningInvoice")
-
-                // Start lightning quote flow once when tab first selected
-                if (!lightningStarted) {
-                    startLightningMintFlow()
-                } else if (lightningInvoice != null) {
-                    // If invoice is already known, try to switch HCE now
-                    setHceToLightning()
-                }
+                Log.d(TAG, "onLightningTabSelected() called. lightningInvoice=$lightningInvoice")
+                // If invoice is already known, switch HCE now; otherwise when it arrives
+                lightningInvoice?.let { hceChannel?.showLightning(it) }
             }
 
             override fun onCashuTabSelected() {
-                Log.d(TAG, "onCashuTabSelected() called. currentHceMode=$currentHceMode")
+                Log.d(TAG, "onCashuTabSelected() called")
                 // When user returns to Cashu tab, restore Cashu HCE payload
-                setHceToCashu()
+                hceChannel?.showCashu()
             }
         })
 
@@ -210,7 +205,7 @@ class PaymentRequestActivity : AppCompatActivity() {
 
         shareButton.setOnClickListener {
             // By default, share the Cashu (Nostr) payment request; fall back to Lightning invoice
-            val toShare = nostrHandler?.paymentRequest ?: lightningHandler?.currentInvoice ?: lightningInvoice
+            val toShare = nostrChannel?.paymentRequest ?: lightningChannel?.currentInvoice ?: lightningInvoice
             if (toShare != null) {
                 sharePaymentRequest(toShare)
             } else {
@@ -227,7 +222,7 @@ class PaymentRequestActivity : AppCompatActivity() {
         // Set up tip display UI (after pending payment is created)
         setupTipDisplay()
 
-        // Initialize all payment modes (NDEF, Nostr, Lightning)
+        // Start all payment channels (NDEF, Nostr, Lightning) in one session
         initializePaymentRequest()
 
         // If resuming and we have Lightning data, auto-switch to Lightning tab
@@ -366,91 +361,105 @@ class PaymentRequestActivity : AppCompatActivity() {
         val allowedMints = mintManager.getAllowedMints()
         Log.d(TAG, "Using ${allowedMints.size} allowed mints for payment request")
 
-        // Initialize Lightning handler with preferred mint (will be started when tab is selected)
-        val preferredLightningMint = mintManager.getPreferredLightningMint()
-        lightningHandler = LightningMintHandler(preferredLightningMint, allowedMints, uiScope)
-
-        // Check if NDEF is available
-        val ndefAvailable = NdefHostCardEmulationService.isHceAvailable(this)
+        val channels = ArrayList<PaymentChannel>(3)
 
-        // HCE (NDEF) PaymentRequest
-        if (ndefAvailable) {
-            hcePaymentRequest = CashuPaymentHelper.createPaymentRequest(
-                paymentAmount,
-                "Payment of $paymentAmount sats",
-                allowedMints
-            )
-
-            if (hcePaymentRequest == null) {
-                Log.e(TAG, "Failed to create payment request for HCE")
-                Toast.makeText(this, R.string.payment_request_error_ndef_prepare, Toast.LENGTH_SHORT).show()
-            } else {
-                Log.d(TAG, "Created HCE payment request: $hcePaymentRequest")
-
-                // Start HCE service in the background
-                val serviceIntent = Intent(this, NdefHostCardEmulationService::class.java)
-                startService(serviceIntent)
-                setupNdefPayment()
-            }
+        // HCE (NDEF) PaymentRequest, if the device can emulate a tag
+        if (NdefHostCardEmulationService.isHceAvailable(this)) {
+            hceChannel = HcePaymentChannel(this, paymentAmount, allowedMints).also { channels.add(it) }
         }
 
-        // Initialize Nostr handler and start payment flow
-        nostrHandler = NostrPaymentHandler(this, allowedMints)
-        startNostrPaymentFlow()
-
-        // Lightning flow is started only when user switches to Lightning tab
-        // (see TabSelectionListener.onLightningTabSelected())
+        // Cashu over Nostr, resuming the stored keys if this is a pending payment
+        nostrChannel = NostrPaymentChannel(
+            handler = NostrPaymentHandler(this, allowedMints),
+            paymentAmount = paymentAmount,
+            pendingPaymentId = pendingPaymentId,
+            resumeSecretHex = if (isResumingPayment) resumeNostrSecretHex else null,
+            resumeNprofile = if (isResumingPayment) resumeNostrNprofile else null,
+        ).also { channels.add(it) }
+
+        // Lightning with the preferred mint; the quote is requested right away so the
+        // invoice is ready by the time the Lightning tab is opened
+        lightningChannel = LightningPaymentChannel(
+            preferredMint = mintManager.getPreferredLightningMint(),
+            allowedMints = allowedMints,
+            paymentAmount = paymentAmount,
+            resumeQuoteId = resumeLightningQuoteId,
+            resumeMintUrl = resumeLightningMintUrl,
+            resumeInvoice = resumeLightningInvoice,
+            onInvoiceReady = { bolt11, quoteId, mintUrl -> onLightningInvoiceReady(bolt11, quoteId, mintUrl) },
+        ).also { channels.add(it) }
+
+        val paymentSession = PaymentSession(channels) { _, outcome -> recordLatePayment(outcome) }
+        session = paymentSession
+        lifecycleScope.launch {
+            paymentSession.state.collect { render(it) }
+        }
+        paymentSession.start()
     }
 
-    private fun setHceToCashu() {
-        val request = hcePaymentRequest ?: run {
-            Log.w(TAG, "setHceToCashu() called but hcePaymentRequest is null")
-            return
+    /**
+     * Apply a session state to the UI. Each channel transition is handled once,
+     * and the outcome at most once.
+     */
+    private fun render(state: PaymentSession.State) {
+        for ((name, channelState) in state.channels) {
+            val previous = renderedChannels.put(name, channelState)
+            if (previous == channelState) continue
+            when (name) {
+                HcePaymentChannel.NAME -> renderNfc(channelState, previous)
+                NostrPaymentChannel.NAME -> renderNostr(channelState, previous)
+                LightningPaymentChannel.NAME -> renderLightning(channelState, previous)
+            }
         }
 
-        try {
-            val hceService = NdefHostCardEmulationService.getInstance()
-            if (hceService != null) {
-                Log.d(TAG, "setHceToCashu(): Switching HCE payload to Cashu request")
-                hceService.setPaymentRequest(request, paymentAmount)
-                currentHceMode = HceMode.CASHU
-            } else {
-                Log.w(TAG, "setHceToCashu(): HCE service not available")
+        val outcome = state.outcome
+        if (outcome != null && !outcomeHandled) {
+            outcomeHandled = true
+            when (outcome) {
+                is PaymentOutcome.Cashu -> handlePaymentSuccess(outcome.token)
+                is PaymentOutcome.Lightning -> {
+                    lightningInvoice = outcome.invoice
+                    lightningQuoteId = outcome.quoteId
+                    lightningMintUrl = outcome.mintUrl
+                    handleLightningPaymentSuccess()
+                }
             }
-        } catch (e: Exception) {
-            Log.e(TAG, "setHceToCashu(): Error while setting HCE Cashu payload: ${e.message}", e)
         }
     }
 
-    private fun setHceToLightning() {
-        val invoice = lightningInvoice ?: run {
-            Log.w(TAG, "setHceToLightning() called but lightningInvoice is null")
-            return
-        }
-        val payload = "lightning:$invoice"
-
-        try {
-            val hceService = NdefHostCardEmulationService.getInstance()
-            if (hceService != null) {
-                Log.d(TAG, "setHceToLightning(): Switching HCE payload to Lightning invoice. payload=$payload")
-                // Lightning mode is just a text payload; amount check is not used here
-                hceService.setPaymentRequest(payload, 0L)
-                currentHceMode = HceMode.LIGHTNING
-            } else {
-                Log.w(TAG, "setHceToLightning(): HCE service not available")
+    private fun renderNfc(state: PaymentSession.ChannelState, previous: PaymentSession.ChannelState?) {
+        when (state) {
+            is PaymentSession.ChannelState.Ready -> {
+                if (previous !is PaymentSession.ChannelState.Ready) {
+                    Log.d(TAG, "NDEF payment service ready")
+                    // Respect the tab the user is on when the service comes up
+                    val invoice = lightningInvoice
+                    if (tabManager.isLightningTabSelected() && invoice != null) {
+                        hceChannel?.showLightning(invoice)
+                    }
+                }
+                nfcReadingOverlay.visibility = if (state.busy) View.VISIBLE else View.GONE
             }
-        } catch (e: Exception) {
-            Log.e(TAG, "setHceToLightning(): Error while setting HCE Lightning payload: ${e.message}", e)
+            is PaymentSession.ChannelState.Failed -> {
+                nfcReadingOverlay.visibility = View.GONE
+                if (previous is PaymentSession.ChannelState.Ready) {
+                    // A token was tapped but could not be accepted
+                    handlePaymentError("NDEF Payment failed: ${state.message}")
+                } else {
+                    Log.e(TAG, "Failed to set up HCE: ${state.message}")
+                    Toast.makeText(this, R.string.payment_request_error_ndef_prepare, Toast.LENGTH_SHORT).show()
+                }
+            }
+            else -> nfcReadingOverlay.visibility = View.GONE
         }
     }
 
-    private fun startNostrPaymentFlow() {
-        val handler = nostrHandler ?: return
-
-        val callback = object : NostrPaymentHandler.Callback {
-            override fun onPaymentRequestReady(paymentRequest: String) {
+    private fun renderNostr(state: PaymentSession.ChannelState, previous: PaymentSession.ChannelState?) {
+        when (state) {
+            is PaymentSession.ChannelState.Ready -> {
+                if (previous is PaymentSession.ChannelState.Ready && previous.payload == state.payload) return
                 try {
-                    val qrBitmap = QrCodeGenerator.generate(paymentRequest, 512)
+                    val qrBitmap = QrCodeGenerator.generate(state.payload, 512)
                     cashuQrImageView.setImageBitmap(qrBitmap)
                     statusText.text = getString(R.string.payment_request_status_waiting_for_payment)
                 } catch (e: Exception) {
@@ -458,68 +467,20 @@ class PaymentRequestActivity : AppCompatActivity() {
                     statusText.text = getString(R.string.payment_request_status_error_qr)
                 }
             }
-
-            override fun onTokenReceived(token: String) {
-                runOnUiThread {
-                    handlePaymentSuccess(token)
-                }
+            is PaymentSession.ChannelState.Failed -> {
+                Log.e(TAG, "Nostr payment error: ${state.message}")
+                statusText.text = getString(R.string.payment_request_status_error_generic, state.message)
             }
-
-            override fun onError(message: String) {
-                Log.e(TAG, "Nostr payment error: $message")
-                statusText.text = getString(R.string.payment_request_status_error_generic, message)
-            }
-        }
-
-        if (isResumingPayment && resumeNostrSecretHex != null && resumeNostrNprofile != null) {
-            // Resume with stored keys
-            handler.resume(paymentAmount, resumeNostrSecretHex!!, resumeNostrNprofile!!, callback)
-        } else {
-            // Start fresh
-            handler.start(paymentAmount, pendingPaymentId, callback)
-        }
-    }
-
-    private fun startLightningMintFlow() {
-        lightningStarted = true
-
-        // Check if we're resuming with existing Lightning quote
-        if (resumeLightningQuoteId != null && resumeLightningMintUrl != null && resumeLightningInvoice != null) {
-            Log.d(TAG, "Resuming Lightning quote: id=$resumeLightningQuoteId")
-            
-            lightningHandler?.resume(
-                quoteId = resumeLightningQuoteId!!,
-                mintUrlStr = resumeLightningMintUrl!!,
-                invoice = resumeLightningInvoice!!,
-                callback = createLightningCallback()
-            )
-        } else {
-            // Start fresh Lightning flow
-            lightningHandler?.start(paymentAmount, createLightningCallback())
+            else -> Unit
         }
     }
 
-    private fun createLightningCallback(): LightningMintHandler.Callback {
-        return object : LightningMintHandler.Callback {
-            override fun onInvoiceReady(bolt11: String, quoteId: String, mintUrl: String) {
-                // Store for history
-                lightningInvoice = bolt11
-                lightningQuoteId = quoteId
-                lightningMintUrl = mintUrl
-
-                // Update pending payment with Lightning info
-                pendingPaymentId?.let { paymentId ->
-                    PaymentsHistoryActivity.updatePendingWithLightningInfo(
-                        context = this@PaymentRequestActivity,
-                        paymentId = paymentId,
-                        lightningInvoice = bolt11,
-                        lightningQuoteId = quoteId,
-                        lightningMintUrl = mintUrl,
-                    )
-                }
-
+    private fun renderLightning(state: PaymentSession.ChannelState, previous: PaymentSession.ChannelState?) {
+        when (state) {
+            is PaymentSession.ChannelState.Ready -> {
+                if (previous is PaymentSession.ChannelState.Ready && previous.payload == state.payload) return
                 try {
-                    val qrBitmap = QrCodeGenerator.generate(bolt11, 512)
+                    val qrBitmap = QrCodeGenerator.generate(state.payload, 512)
                     lightningQrImageView.setImageBitmap(qrBitmap)
                     // Hide loading spinner and show the bolt icon
                     lightningLoadingSpinner.visibility = View.GONE
@@ -532,107 +493,95 @@ class PaymentRequestActivity : AppCompatActivity() {
 
                 // If Lightning tab is currently visible, switch HCE payload to Lightning
                 if (tabManager.isLightningTabSelected()) {
-                    Log.d(TAG, "onInvoiceReady(): Lightning tab is selected, calling setHceToLightning()")
-                    setHceToLightning()
+                    Log.d(TAG, "Lightning invoice ready while Lightning tab is selected, switching HCE")
+                    hceChannel?.showLightning(state.payload)
                 }
             }
-
-            override fun onPaymentSuccess() {
-                handleLightningPaymentSuccess()
-            }
-
-            override fun onError(message: String) {
-                // Do not immediately fail the whole payment; NFC or Nostr may still succeed.
+            is PaymentSession.ChannelState.Failed -> {
+                // Do not fail the whole payment; NFC or Nostr may still succeed.
                 // Only surface a toast if Lightning tab is currently active.
                 if (tabManager.isLightningTabSelected()) {
                     Toast.makeText(
-                        this@PaymentRequestActivity,
-                        getString(R.string.payment_request_lightning_error_failed, message),
+                        this,
+                        getString(R.string.payment_request_lightning_error_failed, state.message),
                         Toast.LENGTH_LONG
                     ).show()
                 }
             }
+            else -> Unit
         }
     }
 
-    private fun setupNdefPayment() {
-        val request = hcePaymentRequest ?: return
-
-        // Match original behavior: slight delay before configuring service
-        Handler(Looper.getMainLooper()).postDelayed({
-            val hceService = NdefHostCardEmulationService.getInstance()
-            if (hceService != null) {
-                Log.d(TAG, "Setting up NDEF payment with HCE service")
-
-                // Set the payment request to the HCE service with expected amount (Cashu by default)
-                setHceToCashu()
-
-                // Set up callback for when a token is received or an error occurs
-                hceService.setPaymentCallback(object : NdefHostCardEmulationService.CashuPaymentCallback {
-                    override fun onCashuTokenReceived(token: String) {
-                        runOnUiThread {
-                            try {
-                                handlePaymentSuccess(token)
-                            } catch (e: Exception) {
-                                Log.e(TAG, "Error in NDEF payment callback: ${e.message}", e)
-                                handlePaymentError("NDEF Payment failed: ${e.message}")
-                            }
-                        }
-                    }
-
-                    override fun onCashuPaymentError(errorMessage: String) {
-                        runOnUiThread {
-                            Log.e(TAG, "NDEF Payment error callback: $errorMessage")
-                            handlePaymentError("NDEF Payment failed: $errorMessage")
-                        }
-                    }
-
-                    override fun onNfcReadingStarted() {
-                        runOnUiThread {
-                            Log.d(TAG, "NFC reading started - showing overlay")
-                            nfcReadingOverlay.visibility = View.VISIBLE
-                        }
-                    }
+    /**
+     * A second channel was paid just as the session resolved. The customer has
+     * paid twice, so keep the extra payment in history where it can be refunded.
+     * Runs on a background thread.
+     */
+    private fun recordLatePayment(outcome: PaymentOutcome) {
+        when (outcome) {
+            is PaymentOutcome.Cashu -> PaymentsHistoryActivity.addLatePayment(
+                context = applicationContext,
+                paymentId = pendingPaymentId,
+                amount = paymentAmount,
+                token = outcome.token.encoded,
+                paymentType = PaymentHistoryEntry.TYPE_CASHU,
+                mintUrl = outcome.token.mintUrl,
+            )
+            is PaymentOutcome.Lightning -> PaymentsHistoryActivity.addLatePayment(
+                context = applicationContext,
+                paymentId = pendingPaymentId,
+                amount = paymentAmount,
+                token = "",
+                paymentType = PaymentHistoryEntry.TYPE_LIGHTNING,
+                mintUrl = outcome.mintUrl,
+                lightningInvoice = outcome.invoice,
+                lightningQuoteId = outcome.quoteId,
+                lightningMintUrl = outcome.mintUrl,
+            )
+        }
+        runOnUiThread {
+            Toast.makeText(applicationContext, R.string.payment_request_late_payment, Toast.LENGTH_LONG).show()
+        }
+    }
 
-                    override fun onNfcReadingStopped() {
-                        runOnUiThread {
-                            Log.d(TAG, "NFC reading stopped - hiding overlay")
-                            nfcReadingOverlay.visibility = View.GONE
-                        }
-                    }
-                })
+    /** Store the Lightning quote and make the pending payment resumable with it. */
+    private fun onLightningInvoiceReady(bolt11: String, quoteId: String, mintUrl: String) {
+        // Store for history
+        lightningInvoice = bolt11
+        lightningQuoteId = quoteId
+        lightningMintUrl = mintUrl
 
-                Log.d(TAG, "NDEF payment service ready")
-            }
-        }, 1000)
+        // Update pending payment with Lightning info
+        pendingPaymentId?.let { paymentId ->
+            PaymentsHistoryActivity.updatePendingWithLightningInfo(
+                context = this,
+                paymentId = paymentId,
+                lightningInvoice = bolt11,
+                lightningQuoteId = quoteId,
+                lightningMintUrl = mintUrl,
+            )
+        }
     }
 
-    private fun handlePaymentSuccess(token: String) {
+    private fun handlePaymentSuccess(token: ReceivedToken) {
         Log.d(TAG, "Payment successful! Token: $token")
 
         statusText.visibility = View.VISIBLE
         statusText.text = getString(R.string.payment_request_status_success)
 
-        // Extract mint URL from token
-        val mintUrl = try {
-            com.cashujdk.nut00.Token.decode(token).mint
-        } catch (e: Exception) {
-            null
-        }
-
         // Update pending payment to completed
         pendingPaymentId?.let { paymentId ->
             PaymentsHistoryActivity.completePendingPayment(
                 context = this,
                 paymentId = paymentId,
-                token = token,
+                token = token.encoded,
                 paymentType = PaymentHistoryEntry.TYPE_CASHU,
-                mintUrl = mintUrl,
+                mintUrl = token.mintUrl,
             )
         }
 
         val resultIntent = Intent().apply {
-            putExtra(RESULT_EXTRA_TOKEN, token)
+            putExtra(RESULT_EXTRA_TOKEN, token.encoded)
             putExtra(RESULT_EXTRA_AMOUNT, paymentAmount)
         }
         setResult(Activity.RESULT_OK, resultIntent)
@@ -674,7 +623,7 @@ class PaymentRequestActivity : AppCompatActivity() {
         setResult(Activity.RESULT_OK, resultIntent)
 
         // Use unified success handler
-        showPaymentSuccess("", paymentAmount)
+        showPaymentSuccess(null, paymentAmount)
     }
 
     private fun showPaymentReceivedActivity(token: String) {
@@ -711,25 +660,10 @@ class PaymentRequestActivity : AppCompatActivity() {
     }
 
     private fun cleanupAndFinish() {
-        // Stop Nostr handler
-        nostrHandler?.stop()
-        nostrHandler = null
-
-        // Stop Lightning handler
-        lightningHandler?.cancel()
-        lightningHandler = null
-
-        // Clean up HCE service
-        try {
-            val hceService = NdefHostCardEmulationService.getInstance()
-            if (hceService != null) {
-                Log.d(TAG, "Cleaning up HCE service")
-                hceService.clearPaymentRequest()
-                hceService.setPaymentCallback(null)
-            }
-        } catch (e: Exception) {
-            Log.e(TAG, "Error cleaning up HCE service: ${e.message}", e)
-        }
+        // Stops every channel still running; each releases its own resources
+        // (Nostr listener, mint WebSocket, HCE payload)
+        session?.cancel()
+        session = null
 
         finish()
     }
@@ -796,7 +730,7 @@ class PaymentRequestActivity : AppCompatActivity() {
      * Unified success handler - plays feedback, triggers auto-withdrawal check, and shows success screen.
      * This is the single source of truth for payment success handling.
      */
-    private fun showPaymentSuccess(token: String, amount: Long) {
+    private fun showPaymentSuccess(token: ReceivedToken?, amount: Long) {
         // Archive the basket now that payment is complete
         markBasketAsPaid()
         
@@ -821,7 +755,7 @@ class PaymentRequestActivity : AppCompatActivity() {
         }
 
         // Show success screen
-        showPaymentReceivedActivity(token)
+        showPaymentReceivedActivity(token?.encoded ?: "")
     }
 
     companion object {
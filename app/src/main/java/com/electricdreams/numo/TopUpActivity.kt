@@ -21,7 +21,9 @@ import androidx.appcompat.app.AlertDialog
 import androidx.appcompat.app.AppCompatActivity
 import androidx.appcompat.widget.Toolbar
 import androidx.core.app.NavUtils
+import com.cashujdk.nut00.CashuProtocolError
 import com.google.android.material.snackbar.Snackbar
+import java.util.concurrent.CompletableFuture
 
 class TopUpActivity : AppCompatActivity() {
 
@@ -34,6 +36,12 @@ class TopUpActivity : AppCompatActivity() {
     private var satocashClient: SatocashNfcClient? = null
     private var satocashWallet: SatocashWallet? = null
     private var pendingProofToken: String? = null
+    /** The top-up being imported; swapped at the mint while the cashier waits for the card. */
+    @Volatile
+    private var topUp: CompletableFuture<SatocashTopUp>? = null
+    /** The session whose token is in the top-up preferences. */
+    @Volatile
+    private var savedTopUp: SatocashTopUp? = null
     private var savedPin: String? = null
     private var waitingForRescan: Boolean = false
     private val mainHandler = Handler(Looper.getMainLooper())
@@ -63,14 +71,16 @@ class TopUpActivity : AppCompatActivity() {
         proofTokenEditText = findViewById(R.id.top_up_amount_edit_text)
         topUpSubmitButton = findViewById(R.id.top_up_submit_button)
 
+        restoreTopUp()
+
         // Handle incoming share intent
         intent?.let { incomingIntent ->
             val action = incomingIntent.action
             val type = incomingIntent.type
             if (Intent.ACTION_SEND == action && type == "text/plain") {
                 val sharedText = incomingIntent.getStringExtra(Intent.EXTRA_TEXT)
-                if (!sharedText.isNullOrEmpty()) {
-                    pendingProofToken = sharedText
+                if (!sharedText.isNullOrEmpty() && topUp == null) {
+                    startTopUp(sharedText)
                     proofTokenEditText.setText(sharedText)
                     showStatusMessage(
                         getString(R.string.top_up_status_token_ready),
@@ -92,8 +102,18 @@ class TopUpActivity : AppCompatActivity() {
 
         topUpSubmitButton.setOnClickListener {
             val proofToken = proofTokenEditText.text.toString()
-            if (proofToken.isNotEmpty()) {
-                pendingProofToken = proofToken
+            val refusal = topUpRefusal()
+            if (refusal != null) {
+                showDiscardTopUpDialog(refusal)
+            } else if (topUp != null && proofToken != pendingProofToken) {
+                // The pending top-up may already be swapped or partly on a card
+                showStatusMessage(
+                    getString(R.string.top_up_status_finish_pending),
+                    success = false
+                )
+                showNfcDialog()
+            } else if (proofToken.isNotEmpty()) {
+                if (topUp == null) startTopUp(proofToken)
                 showStatusMessage(
                     getString(R.string.top_up_status_tap_card),
                     success = true
@@ -361,7 +381,7 @@ class TopUpActivity : AppCompatActivity() {
                 Log.d(TAG, "Secure Channel Initialized!")
 
                 try {
-                    val importedCount = satocashWallet!!.importProofsFromToken(token).join()
+                    val importedCount = importTopUp()
                     showStatusMessage(
                         getString(R.string.top_up_status_success_imported, importedCount),
                         success = true
@@ -375,6 +395,8 @@ class TopUpActivity : AppCompatActivity() {
                     return@Thread
                 } catch (e: RuntimeException) {
                     val cause = e.cause
+                    val needsPin = cause is SatocashNfcClient.SatocashException && cause.sw == 0x9C06
+                    if (!needsPin && showResumeMessage()) return@Thread
                     if (cause is SatocashNfcClient.SatocashException) {
                         val statusWord = cause.sw
                         Log.d(TAG, String.format("Status Word received: 0x%04X", statusWord))
@@ -492,8 +514,7 @@ class TopUpActivity : AppCompatActivity() {
                 if (authenticated) {
                     Log.d(TAG, "PIN Verified! Card Ready.")
 
-                    val token = pendingProofToken ?: ""
-                    val importedCount = satocashWallet!!.importProofsFromToken(token).join()
+                    val importedCount = importTopUp()
 
                     waitingForRescan = false
                     savedPin = null
@@ -515,6 +536,11 @@ class TopUpActivity : AppCompatActivity() {
                     showStatusMessage(message, success = false)
                 }
             } catch (re: RuntimeException) {
+                if (showResumeMessage()) {
+                    waitingForRescan = false
+                    savedPin = null
+                    return@Thread
+                }
                 val reCause = re.cause
                 val message = if (reCause is SatocashNfcClient.SatocashException) {
                     // Keep SW formatting in the logged message, user-facing string is separate
@@ -556,7 +582,177 @@ class TopUpActivity : AppCompatActivity() {
         }.start()
     }
 
+    // ----- Top-up session -----
+
+    private fun startTopUp(token: String) {
+        pendingProofToken = token
+        // A swap's outputs are saved before the mint sees them, and its proofs
+        // before any card does: after a swap they are the only copy of the funds
+        topUp = SatocashWallet.prepareTopUp(token) { saveTopUp(it) }.thenApply { session ->
+            saveTopUp(session)
+            session
+        }
+    }
+
+    /** Finish the swap of a saved session that was interrupted, then save the swapped proofs. */
+    private fun resumeTopUp(session: SatocashTopUp) {
+        topUp = SatocashWallet.resumeTopUp(session).thenApply { swapped ->
+            saveTopUp(swapped)
+            swapped
+        }
+    }
+
+    /**
+     * Import the pending top-up into the connected card, resuming where a
+     * previous tap stopped. Call from a worker thread.
+     * @return number of proofs the top-up put on the card
+     */
+    private fun importTopUp(): Int {
+        val pending = topUp ?: throw IllegalStateException("No top-up pending")
+        val session = try {
+            pending.join()
+        } catch (e: RuntimeException) {
+            abortTopUp(e)
+            throw e
+        }
+        satocashWallet!!.importTopUp(session) { saveTopUp(it) }.join()
+        clearSavedTopUp()
+        topUp = null
+        return session.proofCount
+    }
+
+    /**
+     * Preparing the top-up failed with [error]. A swap that may have reached
+     * the mint is retried from its saved outputs on the next tap, unless the
+     * mint refused it for good: then the cashier is offered to discard it.
+     * Anything else is dropped so the next submit starts over.
+     */
+    private fun abortTopUp(error: Throwable) {
+        val swapping = savedTopUp?.takeIf { it.isSwapPending }
+        if (swapping == null) {
+            clearSavedTopUp()
+            topUp = null
+            return
+        }
+        val refusal = SatocashWallet.swapRefusal(error)
+        if (refusal != null) {
+            // Keep the failed swap saved until the cashier decides
+            Log.w(TAG, "Mint refused the top-up swap: ${refusal.code} ${refusal.detail}")
+            showDiscardTopUpDialog(refusal)
+        } else {
+            resumeTopUp(swapping)
+        }
+    }
+
+    /** The mint's refusal of the pending top-up's swap, if the swap failed for good. */
+    private fun topUpRefusal(): CashuProtocolError? {
+        val pending = topUp?.takeIf { it.isCompletedExceptionally } ?: return null
+        return try {
+            pending.join()
+            null
+        } catch (e: RuntimeException) {
+            SatocashWallet.swapRefusal(e)
+        }
+    }
+
+    private fun showDiscardTopUpDialog(refusal: CashuProtocolError) {
+        mainHandler.post {
+            AlertDialog.Builder(this)
+                .setTitle(R.string.top_up_dialog_refused_title)
+                .setMessage(getString(R.string.top_up_dialog_refused_message, refusal.detail ?: refusal.code.toString()))
+                .setNegativeButton(R.string.common_cancel, null)
+                .setPositiveButton(R.string.top_up_dialog_refused_discard) { _, _ -> discardTopUp() }
+                .show()
+        }
+    }
+
+    /** Drop a top-up whose swap the mint refused; its token stays in the field. */
+    private fun discardTopUp() {
+        topUp = null
+        pendingProofToken = null
+        Thread { clearSavedTopUp() }.start()
+        showStatusMessage(getString(R.string.top_up_status_discarded), success = false)
+    }
+
+    /**
+     * After a failed import that already moved proofs onto the card, tell the
+     * cashier to tap again; the next tap resumes the same session.
+     * @return true if the message was shown
+     */
+    private fun showResumeMessage(): Boolean {
+        val session = topUp?.takeIf { it.isDone && !it.isCompletedExceptionally }?.join() ?: return false
+        if (session.importedCount == 0 && !session.isInFlight) return false
+        showStatusMessage(
+            getString(R.string.top_up_status_resume_tap, session.importedCount, session.proofCount),
+            success = false
+        )
+        return true
+    }
+
+    private fun topUpPreferences() = getSharedPreferences(PREFS_TOP_UP, MODE_PRIVATE)
+
+    /**
+     * Save [session]'s progress. A session other than the one last saved, such
+     * as the swapped proofs replacing the token they came from, replaces all
+     * saved keys. Committed synchronously (we're on a worker thread) so
+     * progress survives a crash; throws if the commit fails, which stops a
+     * swap or import that could not be resumed.
+     */
+    @Synchronized
+    private fun saveTopUp(session: SatocashTopUp) {
+        val editor = topUpPreferences().edit()
+        if (session !== savedTopUp) {
+            editor.clear()
+                .putString(KEY_TOKEN, session.encode())
+                .putString(KEY_SWAP_OUTPUTS, session.encodeSwapOutputs())
+        }
+        editor.putInt(KEY_IMPORTED, session.importedCount)
+            .putString(KEY_IN_FLIGHT_SLOTS, session.inFlightSlots)
+        check(editor.commit()) { "Could not save the top-up" }
+        savedTopUp = session
+    }
+
+    @Synchronized
+    private fun clearSavedTopUp() {
+        topUpPreferences().edit().clear().commit()
+        savedTopUp = null
+    }
+
+    /** Pick up a top-up that was prepared or partly imported before the app was closed. */
+    private fun restoreTopUp() {
+        val prefs = topUpPreferences()
+        val token = prefs.getString(KEY_TOKEN, null) ?: return
+        try {
+            val session = SatocashTopUp.restore(
+                token,
+                prefs.getInt(KEY_IMPORTED, 0),
+                prefs.getString(KEY_IN_FLIGHT_SLOTS, null),
+                prefs.getString(KEY_SWAP_OUTPUTS, null)
+            )
+            savedTopUp = session
+            pendingProofToken = token
+            if (session.isSwapPending) {
+                resumeTopUp(session)
+            } else {
+                topUp = CompletableFuture.completedFuture(session)
+            }
+            proofTokenEditText.setText(token)
+            showStatusMessage(
+                getString(R.string.top_up_status_resume_tap, session.importedCount, session.proofCount),
+                success = true
+            )
+        } catch (e: Exception) {
+            Log.e(TAG, "Failed to restore pending top-up: ${e.message}", e)
+        }
+    }
+
     companion object {
         private const val TAG = "TopUpActivity"
+
+        private const val PREFS_TOP_UP = "SatocashTopUp"
+        private const val KEY_TOKEN = "token"
+        private const val KEY_IMPORTED = "imported"
+        private const val KEY_IN_FLIGHT_SLOTS = "in_flight_slots"
+        private const val KEY_SWAP_OUTPUTS = "swap_outputs"
     }
 }
@@ -5,6 +5,7 @@ import android.util.Log
 import com.electricdreams.numo.core.util.MintManager
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
 import kotlinx.coroutines.SupervisorJob
 import kotlinx.coroutines.launch
 import org.cashudevkit.CurrencyUnit
@@ -16,7 +17,7 @@ import org.cashudevkit.generateMnemonic
 /**
  * Global owner of the CDK MultiMintWallet and its backing SQLite database.
  *
- * - Initialized from ModernPOSActivity.onCreate().
+ * - Initialized by AppStartup, or by onboarding on a fresh install.
  * - Re-initialized whenever the allowed mint list changes.
  *
  * The wallet's mnemonic (seed phrase) and SQLite database are both
@@ -38,23 +39,44 @@ object CashuWalletManager : MintManager.MintChangeListener {
     @Volatile
     private var wallet: MultiMintWallet? = null
 
-    /** Initialize from ModernPOSActivity. Safe to call multiple times. */
+    /** Builds the wallet for the mints configured at [init]. */
+    @Volatile
+    private var initJob: Job? = null
+
+    /**
+     * Initialize from AppStartup. Safe to call multiple times; a later call
+     * builds the wallet again if the earlier build left none.
+     */
+    @Synchronized
     fun init(context: Context) {
-        if (this::appContext.isInitialized) return
+        if (this::appContext.isInitialized) {
+            if (wallet == null && initJob?.isActive != true) {
+                Log.w(TAG, "No wallet after earlier init, building it again")
+                val mints = MintManager.getInstance(appContext).getAllowedMints()
+                initJob = scope.launch { rebuildWallet(mints) }
+            }
+            return
+        }
 
-        appContext = context.applicationContext
-        val mintManager = MintManager.getInstance(appContext)
+        val app = context.applicationContext
+        val mintManager = MintManager.getInstance(app)
 
         // Listen for changes
         mintManager.setMintChangeListener(this)
+        appContext = app
 
         // Build initial wallet
         val initialMints = mintManager.getAllowedMints()
-        scope.launch {
+        initJob = scope.launch {
             rebuildWallet(initialMints)
         }
     }
 
+    /** Suspend until the wallet requested by [init] has been built (or failed to build). */
+    suspend fun awaitInitialized() {
+        initJob?.join()
+    }
+
     /**
      * Get the current wallet's mnemonic (seed phrase).
      * Returns null if wallet hasn't been initialized.
@@ -171,6 +193,23 @@ object CashuWalletManager : MintManager.MintChangeListener {
         return balanceChanges
     }
 
+    /**
+     * Ask [mintUrl] for signatures on outputs derived from our seed (NUT-09)
+     * and add the proofs the wallet does not hold yet, such as those of a
+     * swap whose answer was lost.
+     * @return sats recovered, or null if the wallet is not open or the mint
+     *         could not be asked
+     */
+    suspend fun restoreFromMint(mintUrl: String): Long? {
+        val w = wallet ?: return null
+        return try {
+            w.restore(MintUrl(mintUrl)).value.toLong()
+        } catch (e: Exception) {
+            Log.e(TAG, "Restore from $mintUrl failed: ${e.message}", e)
+            null
+        }
+    }
+
     override fun onMintsChanged(newMints: List<String>) {
         Log.d(TAG, "Mint list changed, rebuilding wallet with ${'$'}{newMints.size} mints")
         scope.launch {
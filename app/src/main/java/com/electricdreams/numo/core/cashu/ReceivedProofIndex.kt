@@ -0,0 +1,233 @@
+package com.electricdreams.numo.core.cashu
+
+import android.content.Context
+import android.util.Log
+import com.electricdreams.numo.core.cashu.offline.TokenProofs
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.security.MessageDigest
+
+/**
+ * Every proof this terminal has received, so a token tapped twice or delivered
+ * over both NFC and Nostr is refused locally instead of after a failed swap at
+ * the mint.
+ *
+ * Proofs are keyed by the first 128 bits of SHA-256 over their secret and held
+ * in an open-addressing hash set (two longs per slot). The set is backed by an
+ * append-only file of 16-byte records; a torn final record is ignored on load.
+ * Only the newest [MAX_ENTRIES] proofs are kept, older ones are left to the
+ * mint's own double-spend check.
+ *
+ * [claim] reserves a token's proofs for the duration of a redemption so two
+ * concurrent deliveries of the same token cannot both reach the mint; the
+ * caller then either [commit]s or [release]s them.
+ */
+class ReceivedProofIndex(private val file: File) {
+
+    /** 128-bit proof key. */
+    private data class Key(val hi: Long, val lo: Long)
+
+    private var table = LongArray(INITIAL_CAPACITY * 2)
+    private var size = 0
+    private val inFlight = HashSet<Key>()
+
+    init {
+        load()
+    }
+
+    /** Number of proofs recorded. */
+    @Synchronized
+    fun size(): Int = size
+
+    /** True if any proof with one of [secrets] has been received or is being redeemed. */
+    @Synchronized
+    fun containsAny(secrets: Collection<String>): Boolean =
+        secrets.any { secret -> key(secret).let { contains(it) || it in inFlight } }
+
+    /**
+     * Reserve [secrets] for a redemption.
+     * @return false, reserving nothing, if any of them was already received or claimed
+     */
+    @Synchronized
+    fun claim(secrets: Collection<String>): Boolean {
+        val keys = secrets.map { key(it) }
+        if (keys.any { contains(it) || it in inFlight }) return false
+        inFlight.addAll(keys)
+        return true
+    }
+
+    /** Record claimed [secrets] as received. */
+    @Synchronized
+    fun commit(secrets: Collection<String>) {
+        val keys = secrets.map { key(it) }
+        inFlight.removeAll(keys.toSet())
+        val added = keys.filter { insert(it) }
+        if (added.isNotEmpty()) append(added)
+    }
+
+    /** Drop the claim on [secrets] after a failed redemption so the token can be retried. */
+    @Synchronized
+    fun release(secrets: Collection<String>) {
+        inFlight.removeAll(secrets.map { key(it) }.toSet())
+    }
+
+    // ----- Hash set -----
+
+    private fun contains(key: Key): Boolean {
+        val mask = table.size / 2 - 1
+        var slot = (key.lo xor key.hi).toInt() and mask
+        while (true) {
+            val hi = table[slot * 2]
+            val lo = table[slot * 2 + 1]
+            if (hi == 0L && lo == 0L) return false
+            if (hi == key.hi && lo == key.lo) return true
+            slot = (slot + 1) and mask
+        }
+    }
+
+    /** @return true if [key] was not present yet */
+    private fun insert(key: Key): Boolean {
+        if ((size + 1) * 2 > table.size / 2) grow()
+        val mask = table.size / 2 - 1
+        var slot = (key.lo xor key.hi).toInt() and mask
+        while (true) {
+            val hi = table[slot * 2]
+            val lo = table[slot * 2 + 1]
+            if (hi == 0L && lo == 0L) {
+                table[slot * 2] = key.hi
+                table[slot * 2 + 1] = key.lo
+                size++
+                return true
+            }
+            if (hi == key.hi && lo == key.lo) return false
+            slot = (slot + 1) and mask
+        }
+    }
+
+    private fun grow() {
+        val old = table
+        table = LongArray(old.size * 2)
+        size = 0
+        for (slot in 0 until old.size / 2) {
+            val hi = old[slot * 2]
+            val lo = old[slot * 2 + 1]
+            if (hi != 0L || lo != 0L) insert(Key(hi, lo))
+        }
+    }
+
+    // ----- Persistence -----
+
+    private fun load() {
+        if (!file.exists()) return
+        val records = (file.length() / RECORD_SIZE).toInt()
+        val skip = maxOf(0, records - MAX_ENTRIES)
+        // Kept in file order so a later trim still drops the oldest proofs
+        val kept = LongArray((records - skip) * 2)
+        var read = 0
+        try {
+            DataInputStream(file.inputStream().buffered()).use { input ->
+                input.skipBytes(skip * RECORD_SIZE)
+                while (read < records - skip) {
+                    kept[read * 2] = input.readLong()
+                    kept[read * 2 + 1] = input.readLong()
+                    insert(Key(kept[read * 2], kept[read * 2 + 1]))
+                    read++
+                }
+            }
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to read received proofs: ${e.message}", e)
+        }
+        if (skip > 0 || file.length() % RECORD_SIZE != 0L) compact(kept, read)
+        Log.d(TAG, "Loaded $size received proofs")
+    }
+
+    private fun append(keys: List<Key>) {
+        if (size > MAX_ENTRIES + MAX_ENTRIES / 4) {
+            // Drop the oldest quarter by reloading only the newest records
+            appendRecords(keys)
+            table = LongArray(INITIAL_CAPACITY * 2)
+            size = 0
+            load()
+            return
+        }
+        appendRecords(keys)
+    }
+
+    private fun appendRecords(keys: List<Key>) {
+        try {
+            DataOutputStream(FileOutputStream(file, true).buffered()).use { out ->
+                for (key in keys) {
+                    out.writeLong(key.hi)
+                    out.writeLong(key.lo)
+                }
+            }
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to record received proofs: ${e.message}", e)
+        }
+    }
+
+    /** Rewrite the file with the first [count] records of [records]. */
+    private fun compact(records: LongArray, count: Int) {
+        val tmp = File(file.path + ".tmp")
+        try {
+            DataOutputStream(FileOutputStream(tmp).buffered()).use { out ->
+                for (i in 0 until count) {
+                    out.writeLong(records[i * 2])
+                    out.writeLong(records[i * 2 + 1])
+                }
+            }
+            if (!tmp.renameTo(file)) throw IOException("rename failed")
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to compact received proofs: ${e.message}", e)
+            tmp.delete()
+        }
+    }
+
+    private fun key(secret: String): Key {
+        val digest = MessageDigest.getInstance("SHA-256").digest(secret.toByteArray(Charsets.UTF_8))
+        val buffer = ByteBuffer.wrap(digest)
+        val hi = buffer.long
+        val lo = buffer.long
+        // All-zero marks an empty slot; a real digest prefix of zero is not a concern
+        return if (hi == 0L && lo == 0L) Key(0L, 1L) else Key(hi, lo)
+    }
+
+    companion object {
+        private const val TAG = "ReceivedProofIndex"
+        private const val FILE_NAME = "received_proofs.bin"
+        private const val RECORD_SIZE = 16
+        private const val INITIAL_CAPACITY = 1024
+
+        /** Proofs kept after compaction; 2 MB on disk. */
+        const val MAX_ENTRIES = 131_072
+
+        @Volatile
+        private var instance: ReceivedProofIndex? = null
+
+        /** Open the index in the app's files dir. Safe to call multiple times. */
+        @JvmStatic
+        fun init(context: Context): ReceivedProofIndex =
+            instance ?: synchronized(this) {
+                instance ?: ReceivedProofIndex(File(context.applicationContext.filesDir, FILE_NAME))
+                    .also { instance = it }
+            }
+
+        /** The index, or null before [init]; callers then rely on the mint alone. */
+        @JvmStatic
+        fun get(): ReceivedProofIndex? = instance
+
+        /** Proof secrets of [token], or null if it cannot be decoded locally. */
+        @JvmStatic
+        fun secretsOf(token: ReceivedToken): List<String>? =
+            try {
+                TokenProofs.decode(token.encoded).proofs.map { it.secret }
+            } catch (e: Exception) {
+                Log.w(TAG, "Cannot read proof secrets: ${e.message}")
+                null
+            }
+    }
+}
@@ -0,0 +1,49 @@
+package com.electricdreams.numo.core.cashu
+
+import org.cashudevkit.CurrencyUnit
+import org.cashudevkit.Token
+
+/**
+ * A Cashu token decoded once where it enters the app (HCE, Nostr, Satocash card)
+ * and then carried through validation, redemption, history and auto-withdraw.
+ *
+ * Holding the decoded CDK [Token] next to its [encoded] form means none of the
+ * later steps has to base64/CBOR-decode the same string again.
+ */
+class ReceivedToken private constructor(
+    /** The token string as received, stored in payment history. */
+    val encoded: String,
+    /** The decoded CDK token, passed straight to `wallet.receive`. */
+    val cdkToken: Token,
+) {
+    val mintUrl: String = cdkToken.mintUrl().url
+
+    val unit: CurrencyUnit = cdkToken.unit()
+
+    /** Total value of all proofs, in [unit]. */
+    val amount: Long = cdkToken.value().value.toLong()
+
+    val isSat: Boolean get() = unit == CurrencyUnit.Sat
+
+    override fun toString(): String = "ReceivedToken(mint=$mintUrl, amount=$amount, unit=$unit)"
+
+    companion object {
+        /**
+         * Decode a token string.
+         * @throws Exception if [encoded] is not a valid Cashu token
+         */
+        @JvmStatic
+        fun decode(encoded: String): ReceivedToken = ReceivedToken(encoded, Token.decode(encoded))
+
+        /** Decode a token string, or return null if it is empty or invalid. */
+        @JvmStatic
+        fun decodeOrNull(encoded: String?): ReceivedToken? {
+            if (encoded.isNullOrEmpty()) return null
+            return try {
+                decode(encoded)
+            } catch (e: Exception) {
+                null
+            }
+        }
+    }
+}
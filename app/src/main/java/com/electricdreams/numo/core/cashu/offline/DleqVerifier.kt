@@ -0,0 +1,107 @@
+package com.electricdreams.numo.core.cashu.offline
+
+import org.bouncycastle.asn1.sec.SECNamedCurves
+import org.bouncycastle.asn1.x9.X9ECParameters
+import org.bouncycastle.math.ec.ECPoint
+import java.math.BigInteger
+import java.security.MessageDigest
+
+/**
+ * Local verification of the mint's blind signature on a proof (NUT-12).
+ *
+ * A proof carrying a DLEQ proof with its blinding factor `r` lets the receiver
+ * check, without contacting the mint, that `C` was produced by the private key
+ * behind the mint's public key `A` for this proof's amount. It cannot tell
+ * whether the proof was already spent; that is settled later by the redeemer.
+ */
+object DleqVerifier {
+
+    private val SECP256K1: X9ECParameters = SECNamedCurves.getByName("secp256k1")
+    private val DOMAIN_SEPARATOR = "Secp256k1_HashToCurve_Cashu_".toByteArray(Charsets.UTF_8)
+
+    /**
+     * @param proof the proof to check; must carry a DLEQ proof
+     * @param mintPublicKeyHex the mint's compressed public key for the proof's amount
+     */
+    @JvmStatic
+    fun verify(proof: TokenProofs.Proof, mintPublicKeyHex: String): Boolean {
+        val dleq = proof.dleq ?: return false
+        return try {
+            val g = SECP256K1.g
+            val n = SECP256K1.n
+            val a = decodePoint(mintPublicKeyHex)
+            val c = decodePoint(proof.c)
+            val e = BigInteger(dleq.e, 16)
+            val s = BigInteger(dleq.s, 16)
+            val r = BigInteger(dleq.r, 16)
+            if (e.signum() <= 0 || s.signum() <= 0 || r.signum() <= 0) return false
+            if (e >= n || s >= n || r >= n) return false
+
+            // Re-blind: C' = C + r*A, B' = Y + r*G
+            val y = hashToCurve(proof.secret.toByteArray(Charsets.UTF_8))
+            val cBlind = c.add(a.multiply(r)).normalize()
+            val bBlind = y.add(g.multiply(r)).normalize()
+
+            // R1 = s*G - e*A, R2 = s*B' - e*C'
+            val r1 = g.multiply(s).subtract(a.multiply(e)).normalize()
+            val r2 = bBlind.multiply(s).subtract(cBlind.multiply(e)).normalize()
+
+            val expected = hashE(r1, r2, a, cBlind)
+            BigInteger(1, expected) == e
+        } catch (e: IllegalArgumentException) {
+            // Invalid point encodings
+            false
+        } catch (e: NumberFormatException) {
+            false
+        }
+    }
+
+    /** NUT-00 hash_to_curve. */
+    @JvmStatic
+    fun hashToCurve(message: ByteArray): ECPoint {
+        val sha = MessageDigest.getInstance("SHA-256")
+        sha.update(DOMAIN_SEPARATOR)
+        val msgHash = sha.digest(message)
+        val candidate = ByteArray(33)
+        candidate[0] = 0x02
+        for (counter in 0 until 65536) {
+            sha.update(msgHash)
+            sha.update(
+                byteArrayOf(
+                    counter.toByte(),
+                    (counter ushr 8).toByte(),
+                    (counter ushr 16).toByte(),
+                    (counter ushr 24).toByte(),
+                ),
+            )
+            System.arraycopy(sha.digest(), 0, candidate, 1, 32)
+            try {
+                return SECP256K1.curve.decodePoint(candidate).normalize()
+            } catch (e: IllegalArgumentException) {
+                // Not on the curve, try the next counter
+            }
+        }
+        throw IllegalStateException("No valid point found")
+    }
+
+    private fun hashE(vararg points: ECPoint): ByteArray {
+        val sb = StringBuilder(points.size * 130)
+        for (p in points) {
+            for (b in p.getEncoded(false)) {
+                val v = b.toInt() and 0xFF
+                sb.append(HEX[v ushr 4]).append(HEX[v and 0x0F])
+            }
+        }
+        return MessageDigest.getInstance("SHA-256").digest(sb.toString().toByteArray(Charsets.UTF_8))
+    }
+
+    private fun decodePoint(hex: String): ECPoint {
+        require(hex.length == 66) { "Expected a compressed point" }
+        val bytes = ByteArray(33) { i ->
+            ((Character.digit(hex[i * 2], 16) shl 4) or Character.digit(hex[i * 2 + 1], 16)).toByte()
+        }
+        return SECP256K1.curve.decodePoint(bytes).normalize()
+    }
+
+    private const val HEX = "0123456789abcdef"
+}
@@ -0,0 +1,171 @@
+package com.electricdreams.numo.core.cashu.offline
+
+import android.util.Log
+import com.electricdreams.numo.core.data.JsonFile
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import org.json.JSONException
+import org.json.JSONObject
+import java.io.File
+import java.io.IOException
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+
+/**
+ * Persistent cache of the public keys of each allowed mint's active keysets,
+ * used to verify proofs offline.
+ *
+ * Keys are fetched from `GET {mint}/v1/keys` whenever the mint is reachable and
+ * persisted so that verification keeps working when it is not. Version `00`
+ * keyset ids are checked against the keys they claim to identify (NUT-02).
+ */
+class MintKeysetCache(dir: File) {
+
+    companion object {
+        private const val TAG = "MintKeysetCache"
+        private const val FILE_NAME = "mint_keysets.json"
+    }
+
+    /** One keyset: id, unit and compressed public key hex by amount. */
+    data class Keyset(val id: String, val unit: String, val keys: Map<Long, String>)
+
+    private val file = JsonFile(File(dir, FILE_NAME))
+    private val client = OkHttpClient.Builder()
+        .connectTimeout(5, TimeUnit.SECONDS)
+        .readTimeout(5, TimeUnit.SECONDS)
+        .build()
+
+    // mint url -> keyset id -> keyset
+    private val keysets = ConcurrentHashMap<String, Map<String, Keyset>>()
+
+    init {
+        load()
+    }
+
+    /** Look up a cached keyset of [mintUrl], or null if it is unknown. */
+    fun get(mintUrl: String, keysetId: String): Keyset? = keysets[normalize(mintUrl)]?.get(keysetId)
+
+    fun hasKeysets(mintUrl: String): Boolean = !keysets[normalize(mintUrl)].isNullOrEmpty()
+
+    /**
+     * Fetch the active keysets of [mintUrl] and persist them. Blocking; call from
+     * a background thread.
+     * @return true if the mint answered with at least one valid keyset and it
+     *         was written to disk; keysets that could not be written are still
+     *         used until the process ends
+     */
+    fun refresh(mintUrl: String): Boolean {
+        val mint = normalize(mintUrl)
+        val request = Request.Builder().url("$mint/v1/keys").get().build()
+        return try {
+            client.newCall(request).execute().use { response ->
+                if (!response.isSuccessful) {
+                    Log.w(TAG, "Failed to fetch keysets for $mint: HTTP ${response.code}")
+                    return false
+                }
+                val body = response.body?.string() ?: return false
+                val fetched = parseKeysets(JSONObject(body))
+                if (fetched.isEmpty()) return false
+
+                // Keep previously seen keysets: tokens minted under a keyset that
+                // has just been rotated out are still redeemable.
+                keysets[mint] = (keysets[mint].orEmpty()) + fetched.associateBy { it.id }
+                if (!persist()) return false
+                Log.d(TAG, "Cached ${fetched.size} keysets for $mint")
+                true
+            }
+        } catch (e: IOException) {
+            Log.w(TAG, "Error fetching keysets for $mint: ${e.message}")
+            false
+        } catch (e: JSONException) {
+            Log.e(TAG, "Invalid keysets response from $mint: ${e.message}")
+            false
+        }
+    }
+
+    private fun parseKeysets(root: JSONObject): List<Keyset> {
+        val array = root.optJSONArray("keysets") ?: return emptyList()
+        val result = ArrayList<Keyset>(array.length())
+        for (i in 0 until array.length()) {
+            val obj = array.getJSONObject(i)
+            val keysObj = obj.optJSONObject("keys") ?: continue
+            val keys = HashMap<Long, String>()
+            for (amount in keysObj.keys()) {
+                val parsed = amount.toLongOrNull() ?: continue
+                keys[parsed] = keysObj.getString(amount)
+            }
+            val keyset = Keyset(obj.getString("id"), obj.optString("unit", "sat"), keys)
+            if (keyset.id.startsWith("00") && keyset.id != deriveKeysetIdV0(keys)) {
+                Log.w(TAG, "Ignoring keyset ${keyset.id}: id does not match its keys")
+                continue
+            }
+            result.add(keyset)
+        }
+        return result
+    }
+
+    /** NUT-02 version 00 id: first 7 bytes of SHA-256 over the keys sorted by amount. */
+    private fun deriveKeysetIdV0(keys: Map<Long, String>): String {
+        val sha = MessageDigest.getInstance("SHA-256")
+        for ((_, pubkey) in keys.toSortedMap()) {
+            sha.update(hexToBytes(pubkey))
+        }
+        val digest = sha.digest()
+        val sb = StringBuilder("00")
+        for (i in 0 until 7) {
+            sb.append(String.format("%02x", digest[i].toInt() and 0xFF))
+        }
+        return sb.toString()
+    }
+
+    /** @return false if the cache could not be written */
+    @Synchronized
+    private fun persist(): Boolean {
+        val root = JSONObject()
+        for ((mint, byId) in keysets) {
+            val mintObj = JSONObject()
+            for ((id, keyset) in byId) {
+                val keysObj = JSONObject()
+                keyset.keys.forEach { (amount, key) -> keysObj.put(amount.toString(), key) }
+                mintObj.put(id, JSONObject().put("unit", keyset.unit).put("keys", keysObj))
+            }
+            root.put(mint, mintObj)
+        }
+        return try {
+            file.write(root)
+            true
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to persist keysets: ${e.message}", e)
+            false
+        }
+    }
+
+    private fun load() {
+        try {
+            val root = file.readObject() ?: return
+            for (mint in root.keys()) {
+                val mintObj = root.getJSONObject(mint)
+                val byId = HashMap<String, Keyset>()
+                for (id in mintObj.keys()) {
+                    val obj = mintObj.getJSONObject(id)
+                    val keysObj = obj.getJSONObject("keys")
+                    val keys = HashMap<Long, String>()
+                    for (amount in keysObj.keys()) {
+                        keys[amount.toLong()] = keysObj.getString(amount)
+                    }
+                    byId[id] = Keyset(id, obj.optString("unit", "sat"), keys)
+                }
+                keysets[mint] = byId
+            }
+        } catch (e: Exception) {
+            Log.e(TAG, "Ignoring corrupt keyset cache: ${e.message}")
+        }
+    }
+
+    private fun normalize(mintUrl: String): String = mintUrl.trimEnd('/')
+
+    private fun hexToBytes(hex: String): ByteArray = ByteArray(hex.length / 2) { i ->
+        ((Character.digit(hex[i * 2], 16) shl 4) or Character.digit(hex[i * 2 + 1], 16)).toByte()
+    }
+}
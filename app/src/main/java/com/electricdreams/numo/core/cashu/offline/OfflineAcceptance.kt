@@ -0,0 +1,158 @@
+package com.electricdreams.numo.core.cashu.offline
+
+import android.content.Context
+import android.content.SharedPreferences
+import android.util.Log
+import com.electricdreams.numo.core.cashu.ReceivedToken
+import com.electricdreams.numo.core.util.MintManager
+import com.electricdreams.numo.ndef.CashuPaymentHelper
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.launch
+import java.io.File
+import java.io.IOException
+
+/**
+ * Offline acceptance of Cashu payments.
+ *
+ * When enabled, a token whose proofs verify locally against cached mint keys
+ * (see [OfflineTokenVerifier]) is accepted immediately and queued in the
+ * [TokenOutbox]; the [OutboxRedeemer] swaps it at the mint in the background.
+ * Checkout then no longer waits on mint latency. The trade-off is that a
+ * double-spend is only detected after the sale, when the redeemer marks the
+ * payment as rejected in history.
+ *
+ * Initialized by AppStartup alongside CashuWalletManager, or by onboarding on
+ * a fresh install.
+ */
+object OfflineAcceptance {
+
+    private const val TAG = "OfflineAcceptance"
+    private const val PREFS_NAME = "offline_acceptance_prefs"
+    private const val KEY_ENABLED = "enabled"
+    private const val DIR_NAME = "offline"
+
+    /** Assigned last in [init]; once set, everything else is ready. */
+    @Volatile
+    private lateinit var appContext: Context
+    private lateinit var keysets: MintKeysetCache
+    private lateinit var verifier: OfflineTokenVerifier
+    private lateinit var outbox: TokenOutbox
+    private lateinit var redeemer: OutboxRedeemer
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+
+    /** Initialize from AppStartup or onboarding. Safe to call multiple times. */
+    @JvmStatic
+    @Synchronized
+    fun init(context: Context) {
+        if (this::appContext.isInitialized) return
+
+        val app = context.applicationContext
+        val dir = File(app.filesDir, DIR_NAME).apply { mkdirs() }
+        keysets = MintKeysetCache(dir)
+        verifier = OfflineTokenVerifier(keysets)
+        outbox = TokenOutbox(dir)
+        redeemer = OutboxRedeemer(app, outbox)
+        // tryAccept runs unsynchronized on payment threads and checks this alone
+        appContext = app
+
+        // Tokens accepted before the last shutdown are still owed a swap
+        redeemer.start()
+        redeemer.wake()
+        refreshKeysets(MintManager.getInstance(app).getAllowedMints())
+    }
+
+    private fun getPrefs(context: Context): SharedPreferences {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+    }
+
+    @JvmStatic
+    fun isEnabled(context: Context): Boolean {
+        return getPrefs(context).getBoolean(KEY_ENABLED, false)
+    }
+
+    @JvmStatic
+    fun setEnabled(context: Context, enabled: Boolean) {
+        getPrefs(context).edit().putBoolean(KEY_ENABLED, enabled).apply()
+        if (enabled && this::appContext.isInitialized) {
+            refreshKeysets(MintManager.getInstance(appContext).getAllowedMints())
+        }
+    }
+
+    /** Fetch keysets of [mints] in the background so they can be verified offline. */
+    @JvmStatic
+    fun refreshKeysets(mints: List<String>) {
+        if (!this::keysets.isInitialized) return
+        scope.launch {
+            for (mint in mints) {
+                if (!keysets.refresh(mint)) Log.w(TAG, "Keysets of $mint not cached; its tokens are redeemed online")
+            }
+        }
+    }
+
+    /**
+     * Accept [token] without contacting its mint if offline acceptance is enabled
+     * and every proof verifies locally.
+     *
+     * @return true if the token was queued for background redemption; false if
+     *         the caller should redeem it online, including when the outbox
+     *         could not be written
+     * @throws CashuPaymentHelper.RedemptionException if its proofs are already queued
+     */
+    @JvmStatic
+    @Throws(CashuPaymentHelper.RedemptionException::class)
+    fun tryAccept(token: ReceivedToken, expectedAmount: Long, allowedMints: List<String>?): Boolean {
+        if (!this::appContext.isInitialized || !isEnabled(appContext)) return false
+
+        return when (val result = verifier.verify(token.encoded, expectedAmount, allowedMints)) {
+            is OfflineTokenVerifier.Result.Accepted -> {
+                val entry = try {
+                    outbox.add(token.encoded, result.proofs)
+                } catch (e: IOException) {
+                    // Never accept a token that would be lost on restart
+                    Log.e(TAG, "Cannot queue token offline, redeeming online: ${e.message}")
+                    return false
+                }
+                entry ?: throw CashuPaymentHelper.RedemptionException("Token was already received")
+                Log.d(TAG, "Accepted $token offline (${outbox.size()} queued)")
+                redeemer.wake()
+                true
+            }
+            is OfflineTokenVerifier.Result.NotVerifiable -> {
+                Log.d(TAG, "Cannot accept offline: ${result.reason}")
+                if (!keysets.hasKeysets(token.mintUrl)) {
+                    // Be ready for the next payment from this mint
+                    refreshKeysets(listOf(token.mintUrl))
+                }
+                false
+            }
+        }
+    }
+
+    /**
+     * True while a damaged outbox file awaits recovery; tokens are then
+     * redeemed online. See [TokenOutbox.isDamaged].
+     */
+    @JvmStatic
+    fun isOutboxDamaged(): Boolean = this::appContext.isInitialized && outbox.isDamaged()
+
+    /** Contents of the damaged outbox copies, to hand over for recovery. */
+    @JvmStatic
+    fun damagedOutboxContents(): List<String> =
+        if (this::appContext.isInitialized) outbox.corruptCopies().map { it.readText() } else emptyList()
+
+    /** The damaged copies were dealt with; accept offline again. */
+    @JvmStatic
+    fun resolveOutboxDamage() {
+        if (this::appContext.isInitialized) outbox.resolveDamage()
+    }
+
+    /** Number of tokens still waiting to be swapped. */
+    @JvmStatic
+    fun pendingCount(): Int = if (this::appContext.isInitialized) outbox.size() else 0
+
+    /** Total sats still waiting to be swapped. */
+    @JvmStatic
+    fun pendingAmount(): Long = if (this::appContext.isInitialized) outbox.pendingAmount() else 0L
+}
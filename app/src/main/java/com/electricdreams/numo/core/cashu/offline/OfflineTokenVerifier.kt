@@ -0,0 +1,63 @@
+package com.electricdreams.numo.core.cashu.offline
+
+/**
+ * Decides whether a token can be accepted without contacting its mint.
+ *
+ * Every proof must be signed by a cached keyset of an allowed mint, in sats,
+ * with a valid NUT-12 DLEQ proof, and must carry a plain secret: a proof
+ * locked to a NUT-10 spending condition (P2PK, HTLC) cannot be claimed by the
+ * merchant's wallet, so only the mint can settle it. Tokens that fail any
+ * check are not rejected outright; the caller falls back to online redemption.
+ */
+class OfflineTokenVerifier(private val keysets: MintKeysetCache) {
+
+    sealed class Result {
+        data class Accepted(val proofs: TokenProofs) : Result()
+        data class NotVerifiable(val reason: String) : Result()
+    }
+
+    fun verify(token: String, expectedAmount: Long, allowedMints: List<String>?): Result {
+        val proofs = try {
+            TokenProofs.decode(token)
+        } catch (e: Exception) {
+            return Result.NotVerifiable("Undecodable token: ${e.message}")
+        }
+
+        val mint = proofs.mintUrl.trimEnd('/')
+        if (!allowedMints.isNullOrEmpty() && allowedMints.none { it.trimEnd('/') == mint }) {
+            return Result.NotVerifiable("Mint not in allowed list: $mint")
+        }
+        if (proofs.unit != "sat") {
+            return Result.NotVerifiable("Unsupported unit: ${proofs.unit}")
+        }
+        if (proofs.proofs.isEmpty()) {
+            return Result.NotVerifiable("Token contains no proofs")
+        }
+        if (proofs.totalAmount < expectedAmount) {
+            return Result.NotVerifiable("Insufficient amount: ${proofs.totalAmount} < $expectedAmount")
+        }
+        if (proofs.proofs.map { it.secret }.toSet().size != proofs.proofs.size) {
+            return Result.NotVerifiable("Token repeats a proof secret")
+        }
+        proofs.proofs.firstNotNullOfOrNull { TokenProofs.spendingConditionKind(it.secret) }?.let { kind ->
+            return Result.NotVerifiable("Proof is locked by a $kind spending condition")
+        }
+
+        for (proof in proofs.proofs) {
+            val keyset = keysets.get(mint, proof.keysetId)
+                ?: return Result.NotVerifiable("Unknown keyset ${proof.keysetId}")
+            if (keyset.unit != "sat") {
+                return Result.NotVerifiable("Keyset ${keyset.id} is not a sat keyset")
+            }
+            val publicKey = keyset.keys[proof.amount]
+                ?: return Result.NotVerifiable("Keyset ${keyset.id} has no key for amount ${proof.amount}")
+            if (proof.dleq == null) {
+                return Result.NotVerifiable("Proof without DLEQ")
+            }
+            if (!DleqVerifier.verify(proof, publicKey)) {
+                return Result.NotVerifiable("Invalid DLEQ proof")
+            }
+        }
+        return Result.Accepted(proofs)
+    }
+}
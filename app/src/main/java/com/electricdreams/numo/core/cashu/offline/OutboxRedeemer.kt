@@ -0,0 +1,296 @@
+package com.electricdreams.numo.core.cashu.offline
+
+import android.content.Context
+import android.util.Log
+import com.cashujdk.nut00.Proof
+import com.cashujdk.nut00.StringSecret
+import com.cashujdk.nut12.DLEQProof
+import com.electricdreams.numo.core.cashu.CashuWalletManager
+import com.electricdreams.numo.core.cashu.ReceivedToken
+import com.electricdreams.numo.core.util.BalanceRefreshBroadcast
+import com.electricdreams.numo.feature.history.PaymentsHistoryActivity
+import com.electricdreams.numo.ndef.CashuPaymentHelper
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withTimeoutOrNull
+import okhttp3.MediaType.Companion.toMediaType
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.RequestBody.Companion.toRequestBody
+import org.json.JSONArray
+import org.json.JSONException
+import org.json.JSONObject
+import java.io.IOException
+import java.math.BigInteger
+import java.util.Optional
+import java.util.concurrent.TimeUnit
+
+/**
+ * Background worker that swaps outbox tokens into the wallet.
+ *
+ * Due tokens of the same mint are merged into a single token and received in
+ * one swap. Failed attempts back off exponentially per entry, and each mint is
+ * contacted at most once per [MIN_MINT_INTERVAL_MS]. An unreachable mint is
+ * retried indefinitely, but once a reachable mint has refused an entry
+ * [MAX_REFUSALS] times it is marked failed in the outbox and no longer retried.
+ *
+ * When a swap fails, the mint is asked for the state of the batch's proofs
+ * (NUT-07), the same information its error code 11001 (proof already spent)
+ * carries; the wallet's error messages are not relied on. The rest of the
+ * batch is tried again without the spent tokens on the next pass, one by one
+ * if no proof was spent, still at most one request per mint per interval.
+ *
+ * A spent token is not necessarily a double spend: our own swap may have
+ * gone through while its answer was lost, or the app may have stopped
+ * before the outbox recorded a redemption. Every attempt is therefore
+ * recorded in the outbox before it is sent. Before rejecting, the wallet
+ * restores from the mint (NUT-09); if that recovers proofs, the spent
+ * tokens count as redeemed. A token whose earlier attempt never recorded
+ * its outcome may already be in the wallet, so it is marked failed for
+ * review rather than rejected. Only the remaining spent tokens are marked
+ * rejected in history.
+ */
+class OutboxRedeemer(
+    context: Context,
+    private val outbox: TokenOutbox,
+) {
+
+    companion object {
+        private const val TAG = "OutboxRedeemer"
+        private const val MAX_BATCH = 20
+        private const val MAX_REFUSALS = 8
+        private val MIN_MINT_INTERVAL_MS = TimeUnit.SECONDS.toMillis(10)
+        private val BASE_BACKOFF_MS = TimeUnit.SECONDS.toMillis(15)
+        private val MAX_BACKOFF_MS = TimeUnit.MINUTES.toMillis(30)
+        private val JSON_MEDIA_TYPE = "application/json".toMediaType()
+
+        /** Ys (hex) the mint reports as SPENT in a NUT-07 `/v1/checkstate` response. */
+        @JvmStatic
+        internal fun parseSpentYs(body: String): Set<String> {
+            val states = JSONObject(body).getJSONArray("states")
+            val spent = HashSet<String>()
+            for (i in 0 until states.length()) {
+                val state = states.getJSONObject(i)
+                if (state.getString("state") == "SPENT") spent.add(state.getString("Y").lowercase())
+            }
+            return spent
+        }
+    }
+
+    private val appContext = context.applicationContext
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private val wakeups = Channel<Unit>(Channel.CONFLATED)
+    private val lastAttemptByMint = HashMap<String, Long>()
+    /** Entries to send on their own, to find the one a mint objects to. */
+    private val isolated = HashSet<String>()
+    private var job: Job? = null
+    private val client = OkHttpClient.Builder()
+        .connectTimeout(5, TimeUnit.SECONDS)
+        .readTimeout(5, TimeUnit.SECONDS)
+        .build()
+
+    /** Start the redeem loop. Safe to call more than once. */
+    @Synchronized
+    fun start() {
+        if (job != null) return
+        job = scope.launch {
+            while (isActive) {
+                drain()
+                val nextDue = nextWakeAt()
+                if (nextDue == null) {
+                    wakeups.receive()
+                } else {
+                    val delayMs = (nextDue - System.currentTimeMillis()).coerceAtLeast(0L)
+                    withTimeoutOrNull(delayMs) { wakeups.receive() }
+                }
+            }
+        }
+    }
+
+    /** Attempt redemption soon, e.g. after a token was queued or connectivity returned. */
+    fun wake() {
+        wakeups.trySend(Unit)
+    }
+
+    private fun nextWakeAt(): Long? {
+        val due = outbox.nextDueAt() ?: return null
+        // Everything due and not rate limited was just attempted, so the earliest
+        // useful pass is when the current rate-limit windows have closed.
+        return maxOf(due, System.currentTimeMillis() + MIN_MINT_INTERVAL_MS)
+    }
+
+    private suspend fun drain() {
+        val now = System.currentTimeMillis()
+        for ((mint, due) in outbox.dueByMint(now)) {
+            val last = lastAttemptByMint[mint]
+            if (last != null && now - last < MIN_MINT_INTERVAL_MS) continue
+            lastAttemptByMint[mint] = now
+            val single = due.firstOrNull { it.id in isolated }
+            redeemBatch(mint, if (single != null) listOf(single) else due.take(MAX_BATCH))
+        }
+    }
+
+    private suspend fun redeemBatch(mint: String, batch: List<TokenOutbox.Entry>) {
+        val ids = batch.map { it.id }
+        // Attempts whose outcome was never recorded, before this one overwrites the mark
+        val unfinished = batch.filter { it.redeemStartedAt != null }.mapTo(HashSet()) { it.id }
+        try {
+            outbox.markRedeeming(ids)
+        } catch (e: IOException) {
+            Log.e(TAG, "Cannot record redemption attempt at $mint, not sending it: ${e.message}")
+            return
+        }
+        try {
+            val token = if (batch.size == 1) batch[0].token else merge(mint, batch)
+            CashuPaymentHelper.redeemToken(ReceivedToken.decode(token))
+            redeemed(mint, batch)
+        } catch (e: Exception) {
+            val error = e.message ?: "unknown error"
+            val spent = spentEntries(mint, batch)
+            if (spent == null) {
+                // The mint could not be asked; nothing is known about the proofs
+                retryLater(mint, batch, error, refused = false, unfinished = unfinished)
+                return
+            }
+            if (spent.isNotEmpty()) settleSpent(mint, spent, unfinished)
+            val rest = batch - spent.toSet()
+            when {
+                rest.isEmpty() -> Unit
+                // The rest were refused only along with the spent ones
+                spent.isNotEmpty() -> outbox.clearRedeeming(rest.map { it.id })
+                // Find the token the mint objects to; the others are still good
+                rest.size > 1 -> {
+                    isolated.addAll(rest.map { it.id })
+                    outbox.clearRedeeming(rest.map { it.id })
+                }
+                else -> retryLater(mint, rest, error, refused = true)
+            }
+        }
+    }
+
+    private fun redeemed(mint: String, batch: List<TokenOutbox.Entry>) {
+        val ids = batch.map { it.id }
+        outbox.remove(ids)
+        isolated.removeAll(ids.toSet())
+        Log.d(TAG, "Redeemed ${batch.size} offline tokens at $mint")
+        BalanceRefreshBroadcast.send(appContext, BalanceRefreshBroadcast.REASON_PAYMENT_RECEIVED)
+    }
+
+    /**
+     * Decide on [spent] entries, whose proofs the mint reports as spent.
+     * [unfinished] holds the ids whose earlier attempt never recorded its
+     * outcome.
+     */
+    private suspend fun settleSpent(mint: String, spent: List<TokenOutbox.Entry>, unfinished: Set<String>) {
+        val recovered = CashuWalletManager.restoreFromMint(mint)
+        if (recovered == null) {
+            retryLater(mint, spent, "Proofs spent; restore from mint unavailable", refused = false, unfinished = unfinished)
+            return
+        }
+        if (recovered > 0) {
+            // Our own swap went through and its answer was lost
+            Log.i(TAG, "Restored $recovered sats from $mint; counting ${spent.size} spent offline tokens as redeemed")
+            redeemed(mint, spent)
+            return
+        }
+        val (maybeReceived, doubleSpent) = spent.partition { it.id in unfinished }
+        if (maybeReceived.isNotEmpty()) {
+            Log.w(TAG, "${maybeReceived.size} offline tokens at $mint were spent after an unfinished redemption")
+            outbox.markAbandoned(
+                maybeReceived.map { it.id },
+                "Spent after an unfinished redemption; check the wallet before treating it as unpaid",
+            )
+            isolated.removeAll(maybeReceived.map { it.id }.toSet())
+        }
+        doubleSpent.forEach { reject(it) }
+    }
+
+    /**
+     * Back off [batch]. Entries a reachable mint has now [refused] too often
+     * are marked failed instead. [unfinished] entries keep their mark of an
+     * earlier attempt with unknown outcome.
+     */
+    private fun retryLater(
+        mint: String,
+        batch: List<TokenOutbox.Entry>,
+        error: String,
+        refused: Boolean,
+        unfinished: Set<String> = emptySet(),
+    ) {
+        val (exhausted, retry) = if (refused) {
+            batch.partition { it.refusals + 1 >= MAX_REFUSALS }
+        } else {
+            Pair(emptyList(), batch)
+        }
+        if (exhausted.isNotEmpty()) {
+            Log.e(TAG, "Giving up on ${exhausted.size} offline tokens refused by $mint: $error")
+            outbox.markAbandoned(exhausted.map { it.id }, error)
+        }
+        if (retry.isNotEmpty()) {
+            val attempts = retry.maxOf { it.attempts }
+            val backoff = (BASE_BACKOFF_MS shl attempts.coerceAtMost(16)).coerceAtMost(MAX_BACKOFF_MS)
+            Log.w(TAG, "Redemption at $mint failed, retrying in ${backoff}ms: $error")
+            outbox.markFailed(retry.map { it.id }, error, System.currentTimeMillis() + backoff, refused, unfinished)
+        }
+    }
+
+    private fun reject(entry: TokenOutbox.Entry) {
+        Log.e(TAG, "Offline token ${entry.id} for ${entry.amount} sats was already spent")
+        PaymentsHistoryActivity.markPaymentRejected(appContext, entry.token)
+        outbox.remove(listOf(entry.id))
+        isolated.remove(entry.id)
+    }
+
+    /**
+     * Entries of [batch] with at least one proof the mint reports as spent,
+     * or null if the mint could not be asked.
+     */
+    private fun spentEntries(mint: String, batch: List<TokenOutbox.Entry>): List<TokenOutbox.Entry>? {
+        val yByEntry = batch.associateWith { entry ->
+            entry.secrets.map { secret ->
+                DleqVerifier.hashToCurve(secret.toByteArray(Charsets.UTF_8)).getEncoded(true).toHex()
+            }
+        }
+        val body = JSONObject().put("Ys", JSONArray(yByEntry.values.flatten())).toString()
+        val request = Request.Builder()
+            .url("$mint/v1/checkstate")
+            .post(body.toRequestBody(JSON_MEDIA_TYPE))
+            .build()
+        val spentYs = try {
+            client.newCall(request).execute().use { response ->
+                if (!response.isSuccessful) {
+                    Log.w(TAG, "Proof state check at $mint failed: HTTP ${response.code}")
+                    return null
+                }
+                parseSpentYs(response.body?.string() ?: return null)
+            }
+        } catch (e: IOException) {
+            Log.w(TAG, "Proof state check at $mint failed: ${e.message}")
+            return null
+        } catch (e: JSONException) {
+            Log.w(TAG, "Invalid proof state response from $mint: ${e.message}")
+            return null
+        }
+        return batch.filter { entry -> yByEntry.getValue(entry).any { it in spentYs } }
+    }
+
+    private fun merge(mint: String, batch: List<TokenOutbox.Entry>): String {
+        val proofs = ArrayList<Proof>()
+        for (entry in batch) {
+            for (p in TokenProofs.decode(entry.token).proofs) {
+                val dleq = p.dleq?.let {
+                    DLEQProof(BigInteger(it.s, 16), BigInteger(it.e, 16), Optional.of(BigInteger(it.r, 16)))
+                }
+                proofs.add(Proof(p.amount, p.keysetId, StringSecret(p.secret), p.c, Optional.empty(), Optional.ofNullable(dleq)))
+            }
+        }
+        return com.cashujdk.nut00.Token(proofs, "sat", mint).encode()
+    }
+
+    private fun ByteArray.toHex(): String = joinToString("") { "%02x".format(it) }
+}
@@ -0,0 +1,324 @@
+package com.electricdreams.numo.core.cashu.offline
+
+import android.util.Log
+import com.electricdreams.numo.core.data.JsonFile
+import org.json.JSONArray
+import org.json.JSONException
+import org.json.JSONObject
+import java.io.File
+import java.io.IOException
+import java.util.UUID
+
+/**
+ * Durable queue of tokens accepted offline and not yet swapped at their mint.
+ *
+ * Every mutation is written through to a [JsonFile] before it returns, so a
+ * token the customer was told has been accepted survives a crash or reboot;
+ * [add] fails rather than accept a token it could not record. The outbox is
+ * small (one entry per offline sale) and rewritten as a whole.
+ *
+ * Entries the redeemer has given up on stay in the file, marked failed, so
+ * their tokens are never silently dropped; they are no longer scheduled.
+ *
+ * A file that cannot be read whole is copied aside before anything is
+ * written over it, and the entries that did parse are kept. While such a
+ * copy exists the outbox is [isDamaged] and [add] refuses new tokens, since
+ * the copy may hold accepted payments that exist nowhere else; redeeming
+ * the entries that parsed goes on. [resolveDamage] deletes the copies once
+ * they have been dealt with.
+ */
+class TokenOutbox(private val dir: File) {
+
+    companion object {
+        private const val TAG = "TokenOutbox"
+        private const val FILE_NAME = "token_outbox.json"
+        private const val CORRUPT_PREFIX = "$FILE_NAME.corrupt-"
+    }
+
+    data class Entry(
+        val id: String,
+        val token: String,
+        val mintUrl: String,
+        val amount: Long,
+        /** Proof secrets, used to refuse the same proofs twice before redemption. */
+        val secrets: List<String>,
+        val receivedAt: Long,
+        val attempts: Int = 0,
+        /** Failed attempts where the mint answered and still did not take the token. */
+        val refusals: Int = 0,
+        val nextAttemptAt: Long = 0L,
+        val lastError: String? = null,
+        /** Set once redemption was abandoned; the entry is kept but no longer retried. */
+        val failedAt: Long? = null,
+        /**
+         * Set while a redemption is under way, and still set after a restart
+         * if its outcome was never recorded: the token may then already be
+         * in the wallet.
+         */
+        val redeemStartedAt: Long? = null,
+    )
+
+    private val file = JsonFile(File(dir, FILE_NAME))
+    private val entries = LinkedHashMap<String, Entry>()
+    /** False if a damaged file could not be copied aside; it must then never be overwritten. */
+    private var writable = true
+
+    init {
+        load()
+    }
+
+    /**
+     * Add an accepted token.
+     * @return the new entry, or null if any of its proofs is already queued
+     * @throws IOException if the entry could not be written, or the outbox
+     *         [isDamaged]; it is not queued
+     */
+    @Synchronized
+    @Throws(IOException::class)
+    fun add(token: String, proofs: TokenProofs, now: Long = System.currentTimeMillis()): Entry? {
+        if (isDamaged()) throw IOException("Outbox file was damaged and has not been dealt with")
+        val secrets = proofs.proofs.map { it.secret }
+        val queued = entries.values.flatMapTo(HashSet()) { it.secrets }
+        if (secrets.any { it in queued }) {
+            Log.w(TAG, "Refusing token whose proofs are already in the outbox")
+            return null
+        }
+        val entry = Entry(
+            id = UUID.randomUUID().toString(),
+            token = token,
+            mintUrl = proofs.mintUrl.trimEnd('/'),
+            amount = proofs.totalAmount,
+            secrets = secrets,
+            receivedAt = now,
+        )
+        entries[entry.id] = entry
+        try {
+            write()
+        } catch (e: IOException) {
+            entries.remove(entry.id)
+            throw e
+        }
+        return entry
+    }
+
+    /** Entries whose next attempt is due, oldest first, grouped by mint. */
+    @Synchronized
+    fun dueByMint(now: Long = System.currentTimeMillis()): Map<String, List<Entry>> =
+        entries.values.filter { it.failedAt == null && it.nextAttemptAt <= now }.groupBy { it.mintUrl }
+
+    /** Earliest time any entry becomes due, or null if nothing is pending. */
+    @Synchronized
+    fun nextDueAt(): Long? = entries.values.filter { it.failedAt == null }.minOfOrNull { it.nextAttemptAt }
+
+    /** Number of entries still waiting to be redeemed. */
+    @Synchronized
+    fun size(): Int = entries.values.count { it.failedAt == null }
+
+    @Synchronized
+    fun pendingAmount(): Long = entries.values.filter { it.failedAt == null }.sumOf { it.amount }
+
+    /** Entries whose redemption was abandoned, oldest first. */
+    @Synchronized
+    fun failed(): List<Entry> = entries.values.filter { it.failedAt != null }
+
+    /** The outbox file could not be read whole and its copy has not been dealt with. */
+    @Synchronized
+    fun isDamaged(): Boolean = !writable || corruptCopies().isNotEmpty()
+
+    /** Copies of damaged outbox files, oldest first. */
+    @Synchronized
+    fun corruptCopies(): List<File> =
+        dir.listFiles { f -> f.name.startsWith(CORRUPT_PREFIX) }?.sortedBy { it.name } ?: emptyList()
+
+    /** Delete the copies of damaged files, once their tokens were recovered or written off. */
+    @Synchronized
+    fun resolveDamage() {
+        corruptCopies().forEach { it.delete() }
+    }
+
+    /** Remove entries that were redeemed or definitively rejected. */
+    @Synchronized
+    fun remove(ids: Collection<String>) {
+        var changed = false
+        for (id in ids) {
+            if (entries.remove(id) != null) changed = true
+        }
+        if (changed) persist()
+    }
+
+    /**
+     * Record that [ids] are about to be sent to the mint, before they are.
+     * @throws IOException if this could not be written; nothing is changed
+     */
+    @Synchronized
+    @Throws(IOException::class)
+    fun markRedeeming(ids: Collection<String>, now: Long = System.currentTimeMillis()) {
+        val before = ids.mapNotNull { entries[it] }
+        for (entry in before) {
+            entries[entry.id] = entry.copy(redeemStartedAt = now)
+        }
+        try {
+            write()
+        } catch (e: IOException) {
+            before.forEach { entries[it.id] = it }
+            throw e
+        }
+    }
+
+    /** The attempt on [ids] ended without a verdict on them; they are due again as they were. */
+    @Synchronized
+    fun clearRedeeming(ids: Collection<String>) {
+        for (id in ids) {
+            val entry = entries[id] ?: continue
+            entries[id] = entry.copy(redeemStartedAt = null)
+        }
+        persist()
+    }
+
+    /**
+     * Record a failed attempt and schedule the next one.
+     * @param refused true if the mint was reached and did not take the token
+     * @param unfinished entries whose earlier attempt never recorded its
+     *        outcome; they stay marked as possibly redeemed
+     */
+    @Synchronized
+    fun markFailed(
+        ids: Collection<String>,
+        error: String,
+        nextAttemptAt: Long,
+        refused: Boolean = false,
+        unfinished: Set<String> = emptySet(),
+    ) {
+        for (id in ids) {
+            val entry = entries[id] ?: continue
+            entries[id] = entry.copy(
+                attempts = entry.attempts + 1,
+                refusals = if (refused) entry.refusals + 1 else entry.refusals,
+                nextAttemptAt = nextAttemptAt,
+                lastError = error,
+                redeemStartedAt = if (id in unfinished) entry.redeemStartedAt else null,
+            )
+        }
+        persist()
+    }
+
+    /** Stop retrying entries that keep failing; they stay in the outbox as failed. */
+    @Synchronized
+    fun markAbandoned(ids: Collection<String>, error: String, now: Long = System.currentTimeMillis()) {
+        for (id in ids) {
+            val entry = entries[id] ?: continue
+            entries[id] = entry.copy(
+                attempts = entry.attempts + 1,
+                refusals = entry.refusals + 1,
+                lastError = error,
+                failedAt = now,
+                redeemStartedAt = null,
+            )
+        }
+        persist()
+    }
+
+    /**
+     * Write the outbox after a change the redeemer can recover from: the
+     * change stays in memory and the next successful write records it.
+     */
+    private fun persist() {
+        try {
+            write()
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to persist outbox: ${e.message}", e)
+        }
+    }
+
+    @Throws(IOException::class)
+    private fun write() {
+        if (!writable) throw IOException("Damaged outbox file could not be copied aside")
+        val array = JSONArray()
+        for (entry in entries.values) {
+            array.put(
+                JSONObject()
+                    .put("id", entry.id)
+                    .put("token", entry.token)
+                    .put("mintUrl", entry.mintUrl)
+                    .put("amount", entry.amount)
+                    .put("secrets", JSONArray(entry.secrets))
+                    .put("receivedAt", entry.receivedAt)
+                    .put("attempts", entry.attempts)
+                    .put("refusals", entry.refusals)
+                    .put("nextAttemptAt", entry.nextAttemptAt)
+                    .put("lastError", entry.lastError ?: JSONObject.NULL)
+                    .put("failedAt", entry.failedAt ?: JSONObject.NULL)
+                    .put("redeemStartedAt", entry.redeemStartedAt ?: JSONObject.NULL),
+            )
+        }
+        file.write(array)
+    }
+
+    private fun load() {
+        val text = try {
+            file.read() ?: return
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to read outbox: ${e.message}", e)
+            quarantine(null)
+            return
+        }
+        val array = try {
+            JSONArray(text)
+        } catch (e: JSONException) {
+            Log.e(TAG, "Corrupt outbox file: ${e.message}", e)
+            quarantine(text)
+            return
+        }
+        var damaged = false
+        for (i in 0 until array.length()) {
+            try {
+                val entry = parseEntry(array.getJSONObject(i))
+                entries[entry.id] = entry
+            } catch (e: JSONException) {
+                Log.e(TAG, "Corrupt outbox entry $i: ${e.message}", e)
+                damaged = true
+            }
+        }
+        Log.d(TAG, "Loaded ${entries.size} outbox entries")
+        if (damaged) quarantine(text)
+    }
+
+    @Throws(JSONException::class)
+    private fun parseEntry(obj: JSONObject): Entry {
+        val secretsArray = obj.getJSONArray("secrets")
+        return Entry(
+            id = obj.getString("id"),
+            token = obj.getString("token"),
+            mintUrl = obj.getString("mintUrl"),
+            amount = obj.getLong("amount"),
+            secrets = List(secretsArray.length()) { secretsArray.getString(it) },
+            receivedAt = obj.getLong("receivedAt"),
+            attempts = obj.optInt("attempts"),
+            refusals = obj.optInt("refusals"),
+            nextAttemptAt = obj.optLong("nextAttemptAt"),
+            lastError = if (obj.isNull("lastError")) null else obj.getString("lastError"),
+            failedAt = if (obj.isNull("failedAt")) null else obj.getLong("failedAt"),
+            redeemStartedAt = if (obj.isNull("redeemStartedAt")) null else obj.getLong("redeemStartedAt"),
+        )
+    }
+
+    /**
+     * Keep [text], the damaged file's contents, in a copy next to it before
+     * the outbox writes over it. If it was unreadable or cannot be copied,
+     * the outbox never writes at all.
+     */
+    private fun quarantine(text: String?) {
+        if (text == null) {
+            writable = false
+            return
+        }
+        val copy = JsonFile(File(dir, CORRUPT_PREFIX + System.currentTimeMillis()))
+        try {
+            copy.write(text.toByteArray(Charsets.UTF_8))
+            Log.w(TAG, "Damaged outbox copied to ${copy.file.name}; offline acceptance is off until it is resolved")
+        } catch (e: IOException) {
+            Log.e(TAG, "Cannot copy damaged outbox aside, leaving it untouched: ${e.message}", e)
+            writable = false
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.electricdreams.numo.core.cashu.offline
+
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory
+import java.util.Base64
+
+/**
+ * The proofs inside a Cashu token, decoded independently of the wallet so they
+ * can be verified locally against cached mint keys.
+ *
+ * Supports V3 (`cashuA`, JSON) and V4 (`cashuB`, CBOR) serializations as
+ * described in NUT-00.
+ */
+data class TokenProofs(
+    val mintUrl: String,
+    val unit: String,
+    val proofs: List<Proof>,
+) {
+    data class Proof(
+        val amount: Long,
+        val keysetId: String,
+        val secret: String,
+        /** Unblinded signature C, compressed point hex. */
+        val c: String,
+        val dleq: Dleq?,
+    )
+
+    /** NUT-12 DLEQ proof as carried in tokens, all values hex. */
+    data class Dleq(val e: String, val s: String, val r: String)
+
+    val totalAmount: Long get() = proofs.sumOf { it.amount }
+
+    companion object {
+        private val jsonMapper = ObjectMapper()
+        private val cborMapper = ObjectMapper(CBORFactory())
+
+        /**
+         * Decode the proofs of a single-mint token.
+         * @throws IllegalArgumentException if the token is malformed or spans several mints
+         */
+        @JvmStatic
+        fun decode(token: String): TokenProofs = when {
+            token.startsWith("cashuB") -> decodeV4(cborMapper.readTree(base64UrlDecode(token.substring(6))))
+            token.startsWith("cashuA") -> decodeV3(jsonMapper.readTree(base64UrlDecode(token.substring(6))))
+            else -> throw IllegalArgumentException("Not a Cashu token")
+        }
+
+        private fun decodeV4(root: JsonNode): TokenProofs {
+            val mint = root.requiredText("m")
+            val unit = root.path("u").asText("sat")
+            val proofs = ArrayList<Proof>()
+            for (group in root.path("t")) {
+                val keysetId = group.requiredBytes("i").toHex()
+                for (p in group.path("p")) {
+                    val d = p.get("d")
+                    val dleq = if (d != null && d.isObject) {
+                        Dleq(d.requiredBytes("e").toHex(), d.requiredBytes("s").toHex(), d.requiredBytes("r").toHex())
+                    } else {
+                        null
+                    }
+                    proofs.add(Proof(p.path("a").asLong(), keysetId, p.requiredText("s"), p.requiredBytes("c").toHex(), dleq))
+                }
+            }
+            return TokenProofs(mint, unit, proofs)
+        }
+
+        private fun decodeV3(root: JsonNode): TokenProofs {
+            val entries = root.path("token")
+            require(entries.size() == 1) { "Multi-mint tokens are not supported" }
+            val entry = entries[0]
+            val unit = root.path("unit").asText("sat")
+            val proofs = entry.path("proofs").map { p ->
+                val d = p.get("dleq")
+                val dleq = if (d != null && d.isObject) {
+                    Dleq(d.requiredText("e"), d.requiredText("s"), d.requiredText("r"))
+                } else {
+                    null
+                }
+                Proof(p.path("amount").asLong(), p.requiredText("id"), p.requiredText("secret"), p.requiredText("C"), dleq)
+            }
+            return TokenProofs(entry.requiredText("mint"), unit, proofs)
+        }
+
+        /**
+         * The NUT-10 kind of a well-known secret (`["P2PK", {...}]`,
+         * `["HTLC", {...}]`, ...), or null for a plain random secret.
+         */
+        @JvmStatic
+        fun spendingConditionKind(secret: String): String? {
+            if (!secret.trimStart().startsWith("[")) return null
+            val root = try {
+                jsonMapper.readTree(secret)
+            } catch (e: Exception) {
+                return null
+            }
+            if (root == null || !root.isArray || root.size() != 2 || !root[1].isObject) return null
+            return root[0].takeIf { it.isTextual }?.asText()
+        }
+
+        private fun JsonNode.requiredText(field: String): String =
+            get(field)?.takeIf { it.isTextual }?.asText()
+                ?: throw IllegalArgumentException("Token is missing '$field'")
+
+        private fun JsonNode.requiredBytes(field: String): ByteArray {
+            val node = get(field) ?: throw IllegalArgumentException("Token is missing '$field'")
+            return if (node.isBinary) node.binaryValue() else hexToBytes(node.asText())
+        }
+
+        private fun base64UrlDecode(data: String): ByteArray {
+            // Accept both alphabets and missing padding; wallets are inconsistent
+            val normalized = data.trim().replace('+', '-').replace('/', '_').trimEnd('=')
+            return Base64.getUrlDecoder().decode(normalized)
+        }
+
+        private fun hexToBytes(hex: String): ByteArray {
+            require(hex.length % 2 == 0) { "Odd-length hex string" }
+            return ByteArray(hex.length / 2) { i ->
+                ((Character.digit(hex[i * 2], 16) shl 4) or Character.digit(hex[i * 2 + 1], 16)).toByte()
+            }
+        }
+
+        private fun ByteArray.toHex(): String {
+            val sb = StringBuilder(size * 2)
+            for (b in this) {
+                val v = b.toInt() and 0xFF
+                sb.append(HEX[v ushr 4]).append(HEX[v and 0x0F])
+            }
+            return sb.toString()
+        }
+
+        private const val HEX = "0123456789abcdef"
+    }
+}
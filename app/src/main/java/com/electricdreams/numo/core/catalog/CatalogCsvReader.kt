@@ -0,0 +1,190 @@
+package com.electricdreams.numo.core.catalog
+
+import com.electricdreams.numo.core.model.Item
+import com.electricdreams.numo.core.model.PriceType
+import java.io.IOException
+import java.io.Reader
+
+/**
+ * Catalog fields a CSV can carry. [header] is what exports write; [aliases]
+ * are other names accepted on import, including Square's template headers.
+ */
+enum class CatalogColumn(val header: String, vararg val aliases: String) {
+    NAME("Item Name", "Name"),
+    VARIATION("Variation Name", "Variation"),
+    SKU("SKU"),
+    DESCRIPTION("Description"),
+    CATEGORY("Category", "Categories"),
+    GTIN("GTIN", "Barcode", "UPC", "EAN"),
+    PRICE_TYPE("Price Type"),
+    PRICE("Price"),
+    PRICE_SATS("Price Sats"),
+    VAT_RATE("VAT Rate", "Tax Rate"),
+    TRACK_INVENTORY("Track Inventory"),
+    QUANTITY("Current Quantity", "Quantity"),
+    ALERT_ENABLED("Stock Alert Enabled"),
+    ALERT_THRESHOLD("Stock Alert Count", "Stock Alert Threshold"),
+}
+
+/**
+ * Streams catalog rows out of a CSV, one record at a time.
+ *
+ * Columns are found by header: the first of the leading [HEADER_SCAN_ROWS]
+ * records that names an item-name column is the header, and each cell is
+ * matched to a [CatalogColumn] by exact name first, then by longest prefix
+ * (Square suffixes per-location columns with the location name, e.g.
+ * "Current Quantity Main St"). Files with no recognisable header are read
+ * with the fixed layout of the old Square template.
+ *
+ * The reader keeps no rows: after [next], callers look up [value]s (the
+ * SKU/GTIN to match on) and copy the row into an [Item] with [applyTo],
+ * which only touches the fields the file has columns for.
+ */
+class CatalogCsvReader(reader: Reader) {
+
+    private val csv = CsvTokenizer(reader)
+    private val columns = IntArray(COLUMNS.size) { -1 }
+    private var minFields = 1
+
+    /** Data records that had no item name and were passed over. */
+    var skipped = 0
+        private set
+
+    /** Whether the file had a header row (false means the legacy layout). */
+    var hasHeader = false
+        private set
+
+    init {
+        findHeader()
+    }
+
+    /**
+     * Advance to the next row with an item name.
+     * @return false at the end of the file.
+     */
+    @Throws(IOException::class)
+    fun next(): Boolean {
+        while (csv.next()) {
+            if (csv.fieldCount == 1 && csv.isBlank(0)) continue
+            if (csv.fieldCount < minFields || csv.isBlank(columns[CatalogColumn.NAME.ordinal])) {
+                skipped++
+                continue
+            }
+            return true
+        }
+        return false
+    }
+
+    /** Whether the file has a column for [column]. */
+    fun has(column: CatalogColumn): Boolean = columns[column.ordinal] >= 0
+
+    /** The current row's [column], trimmed; null if the file lacks it or the cell is blank. */
+    fun value(column: CatalogColumn): String? {
+        val index = columns[column.ordinal]
+        if (index < 0 || csv.isBlank(index)) return null
+        return csv.string(index)
+    }
+
+    /** Copy the current row's mapped columns onto [item]. */
+    fun applyTo(item: Item) {
+        item.name = csv.string(columns[CatalogColumn.NAME.ordinal])
+        if (has(CatalogColumn.VARIATION)) item.variationName = value(CatalogColumn.VARIATION)
+        if (has(CatalogColumn.SKU)) item.sku = value(CatalogColumn.SKU)
+        if (has(CatalogColumn.DESCRIPTION)) item.description = value(CatalogColumn.DESCRIPTION)
+        if (has(CatalogColumn.CATEGORY)) item.category = value(CatalogColumn.CATEGORY)
+        if (has(CatalogColumn.GTIN)) item.gtin = value(CatalogColumn.GTIN)
+
+        column(CatalogColumn.PRICE) { index ->
+            item.price = csv.decimal(index) ?: 0.0
+        }
+        column(CatalogColumn.PRICE_SATS) { index ->
+            item.priceSats = csv.decimal(index)?.toLong() ?: 0L
+        }
+        val priceType = value(CatalogColumn.PRICE_TYPE)
+        if (priceType != null) {
+            item.priceType = if (priceType.equals(PriceType.SATS.name, ignoreCase = true)) {
+                PriceType.SATS
+            } else {
+                PriceType.FIAT
+            }
+        } else if (value(CatalogColumn.PRICE_SATS) != null && value(CatalogColumn.PRICE) == null) {
+            item.priceType = PriceType.SATS
+        } else if (has(CatalogColumn.PRICE)) {
+            item.priceType = PriceType.FIAT
+        }
+
+        column(CatalogColumn.VAT_RATE) { index ->
+            val rate = csv.int(index)
+            item.vatEnabled = rate != null
+            item.vatRate = rate ?: 0
+        }
+        column(CatalogColumn.TRACK_INVENTORY) { item.trackInventory = csv.isYes(it) }
+        column(CatalogColumn.QUANTITY) { item.quantity = csv.int(it) ?: 0 }
+        column(CatalogColumn.ALERT_ENABLED) { item.alertEnabled = csv.isYes(it) }
+        column(CatalogColumn.ALERT_THRESHOLD) { item.alertThreshold = csv.int(it) ?: 0 }
+    }
+
+    private inline fun column(column: CatalogColumn, block: (Int) -> Unit) {
+        val index = columns[column.ordinal]
+        if (index >= 0) block(index)
+    }
+
+    private fun findHeader() {
+        while (csv.recordCount < HEADER_SCAN_ROWS && csv.next()) {
+            val found = IntArray(COLUMNS.size) { -1 }
+            for (i in 0 until csv.fieldCount) {
+                val column = match(normalize(csv.string(i))) ?: continue
+                if (found[column.ordinal] < 0) found[column.ordinal] = i
+            }
+            if (found[CatalogColumn.NAME.ordinal] >= 0) {
+                found.copyInto(columns)
+                hasHeader = true
+                return
+            }
+        }
+        // Old Square template: five lines of preamble, then items at fixed
+        // columns (column 0 is Square's token)
+        for ((column, index) in LEGACY_LAYOUT) columns[column.ordinal] = index
+        minFields = LEGACY_MIN_FIELDS
+    }
+
+    companion object {
+        /** Records searched for a header before falling back to the legacy layout. */
+        const val HEADER_SCAN_ROWS = 5
+
+        private val COLUMNS = CatalogColumn.values()
+
+        private val LEGACY_LAYOUT = mapOf(
+            CatalogColumn.NAME to 1,
+            CatalogColumn.VARIATION to 2,
+            CatalogColumn.SKU to 3,
+            CatalogColumn.DESCRIPTION to 4,
+            CatalogColumn.CATEGORY to 5,
+            CatalogColumn.GTIN to 7,
+            CatalogColumn.PRICE to 12,
+            CatalogColumn.QUANTITY to 20,
+            CatalogColumn.ALERT_ENABLED to 22,
+            CatalogColumn.ALERT_THRESHOLD to 23,
+        )
+        private const val LEGACY_MIN_FIELDS = 14
+
+        /** Every accepted name, normalised, longest first so prefixes resolve to the most specific column. */
+        private val NAMES: List<Pair<String, CatalogColumn>> = COLUMNS
+            .flatMap { column -> (listOf(column.header) + column.aliases).map { normalize(it) to column } }
+            .sortedByDescending { it.first.length }
+
+        private fun match(cell: String): CatalogColumn? {
+            if (cell.isEmpty()) return null
+            NAMES.firstOrNull { it.first == cell }?.let { return it.second }
+            return NAMES.firstOrNull { cell.startsWith(it.first) }?.second
+        }
+
+        private fun normalize(name: String): String {
+            val out = StringBuilder(name.length)
+            for (c in name) {
+                if (c.isLetterOrDigit()) out.append(c.lowercaseChar())
+            }
+            return out.toString()
+        }
+    }
+}
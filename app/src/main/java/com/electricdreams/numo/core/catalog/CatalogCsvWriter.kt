@@ -0,0 +1,71 @@
+package com.electricdreams.numo.core.catalog
+
+import com.electricdreams.numo.core.model.Item
+import java.io.IOException
+import java.io.Writer
+import java.math.BigDecimal
+
+/**
+ * Writes catalog items as CSV, one row at a time, with a header of
+ * [CatalogColumn.header] names so the file reads back through
+ * [CatalogCsvReader] unchanged.
+ */
+class CatalogCsvWriter(private val out: Writer) {
+
+    @Throws(IOException::class)
+    fun writeHeader() {
+        for (column in COLUMNS) {
+            if (column.ordinal > 0) out.write(','.code)
+            writeField(column.header)
+        }
+        out.write('\n'.code)
+    }
+
+    @Throws(IOException::class)
+    fun write(item: Item) {
+        for (column in COLUMNS) {
+            if (column.ordinal > 0) out.write(','.code)
+            when (column) {
+                CatalogColumn.NAME -> writeField(item.name)
+                CatalogColumn.VARIATION -> writeField(item.variationName)
+                CatalogColumn.SKU -> writeField(item.sku)
+                CatalogColumn.DESCRIPTION -> writeField(item.description)
+                CatalogColumn.CATEGORY -> writeField(item.category)
+                CatalogColumn.GTIN -> writeField(item.gtin)
+                CatalogColumn.PRICE_TYPE -> out.write(item.priceType.name)
+                CatalogColumn.PRICE -> out.write(BigDecimal.valueOf(item.price).toPlainString())
+                CatalogColumn.PRICE_SATS -> out.write(item.priceSats.toString())
+                CatalogColumn.VAT_RATE -> if (item.vatEnabled) out.write(item.vatRate.toString())
+                CatalogColumn.TRACK_INVENTORY -> out.write(if (item.trackInventory) "Y" else "N")
+                CatalogColumn.QUANTITY -> out.write(item.quantity.toString())
+                CatalogColumn.ALERT_ENABLED -> out.write(if (item.alertEnabled) "Y" else "N")
+                CatalogColumn.ALERT_THRESHOLD -> out.write(item.alertThreshold.toString())
+            }
+        }
+        out.write('\n'.code)
+    }
+
+    /** Write [value], quoted only if it holds a delimiter, quote or line break. */
+    private fun writeField(value: String?) {
+        if (value.isNullOrEmpty()) return
+        if (value.none { it == ',' || it == '"' || it == '\n' || it == '\r' }) {
+            out.write(value)
+            return
+        }
+        out.write('"'.code)
+        var from = 0
+        while (true) {
+            val quote = value.indexOf('"', from)
+            if (quote < 0) break
+            out.write(value, from, quote + 1 - from)
+            out.write('"'.code)
+            from = quote + 1
+        }
+        out.write(value, from, value.length - from)
+        out.write('"'.code)
+    }
+
+    companion object {
+        private val COLUMNS = CatalogColumn.values()
+    }
+}
@@ -0,0 +1,252 @@
+package com.electricdreams.numo.core.catalog
+
+import java.io.IOException
+import java.io.Reader
+
+/**
+ * RFC 4180 CSV reader that hands out fields as ranges of one reused buffer.
+ *
+ * [next] scans a record in place: quoted fields are unescaped inside the
+ * buffer (the result is never longer than the source), so no per-field
+ * builders or arrays are created. Callers read fields through [string],
+ * [int] and [decimal], and only pay for a String when they ask for one.
+ * Quoted fields may span lines; CRLF and LF endings are both accepted. The
+ * buffer grows only when a single record does not fit.
+ */
+class CsvTokenizer(private val reader: Reader, bufferSize: Int = DEFAULT_BUFFER) {
+
+    private var buf = CharArray(bufferSize)
+    private var limit = 0
+    private var eof = false
+
+    // Scan state; all offsets into buf and moved together when it is compacted
+    private var pos = 0
+    private var recordStart = 0
+    private var fieldStart = 0
+    private var write = 0
+
+    private var starts = IntArray(32)
+    private var ends = IntArray(32)
+
+    /** Number of fields in the current record. */
+    var fieldCount = 0
+        private set
+
+    /** Records returned by [next] so far. */
+    var recordCount = 0
+        private set
+
+    /**
+     * Advance to the next record.
+     * @return false at the end of input.
+     */
+    @Throws(IOException::class)
+    fun next(): Boolean {
+        fieldCount = 0
+        recordStart = pos
+        if (pos == limit && !fill()) return false
+        while (readField()) {
+            // one more field in this record
+        }
+        recordCount++
+        return true
+    }
+
+    /** Field [i] with surrounding whitespace trimmed, or "" if the record is shorter. */
+    fun string(i: Int): String {
+        if (i >= fieldCount) return ""
+        var start = starts[i]
+        var end = ends[i]
+        while (start < end && buf[start] <= ' ') start++
+        while (end > start && buf[end - 1] <= ' ') end--
+        return if (start == end) "" else String(buf, start, end - start)
+    }
+
+    /** Whether field [i] is missing or only whitespace. */
+    fun isBlank(i: Int): Boolean {
+        if (i >= fieldCount) return true
+        for (p in starts[i] until ends[i]) {
+            if (buf[p] > ' ') return false
+        }
+        return true
+    }
+
+    /** Field [i] as an integer, or null if it is blank or not a whole number. */
+    fun int(i: Int): Int? {
+        val value = decimal(i) ?: return null
+        return if (value == Math.rint(value) && value >= Int.MIN_VALUE && value <= Int.MAX_VALUE) {
+            value.toInt()
+        } else {
+            null
+        }
+    }
+
+    /**
+     * Field [i] as a number, or null if it is blank or not numeric. Plain
+     * decimals of up to 15 digits are parsed straight from the buffer;
+     * anything else (exponents, long fractions) goes through the JDK parser.
+     */
+    fun decimal(i: Int): Double? {
+        if (i >= fieldCount) return null
+        var p = starts[i]
+        var end = ends[i]
+        while (p < end && buf[p] <= ' ') p++
+        while (end > p && buf[end - 1] <= ' ') end--
+        if (p == end) return null
+
+        val negative = buf[p] == '-'
+        if (negative || buf[p] == '+') p++
+        var mantissa = 0L
+        var digits = 0
+        var scale = 0
+        var seenPoint = false
+        while (p < end) {
+            val c = buf[p]
+            if (c in '0'..'9') {
+                mantissa = mantissa * 10 + (c - '0')
+                digits++
+                if (seenPoint) scale++
+            } else if (c == '.' && !seenPoint) {
+                seenPoint = true
+            } else {
+                break
+            }
+            p++
+        }
+        if (p == end && digits in 1..MAX_FAST_DIGITS) {
+            val value = mantissa / POWERS_OF_TEN[scale]
+            return if (negative) -value else value
+        }
+        return string(i).toDoubleOrNull()
+    }
+
+    /** Whether field [i] reads as yes: Y, yes, true or 1, in any case. */
+    fun isYes(i: Int): Boolean {
+        if (i >= fieldCount) return false
+        return when (string(i).lowercase()) {
+            "y", "yes", "true", "1" -> true
+            else -> false
+        }
+    }
+
+    // ----- Scanning -----
+
+    /**
+     * Scan one field of the current record.
+     * @return true if a delimiter followed it, false if it ended the record.
+     */
+    private fun readField(): Boolean {
+        fieldStart = pos
+        if (pos == limit && !fill()) return endField(pos, false)
+        if (buf[pos] != '"') {
+            while (true) {
+                if (pos == limit && !fill()) return endField(pos, false)
+                when (buf[pos]) {
+                    ',' -> {
+                        endField(pos, true)
+                        pos++
+                        return true
+                    }
+                    '\n' -> {
+                        endField(pos, false)
+                        pos++
+                        return false
+                    }
+                    '\r' -> {
+                        endField(pos, false)
+                        pos++
+                        skipLineFeed()
+                        return false
+                    }
+                    else -> pos++
+                }
+            }
+        }
+
+        // Quoted: copy the content down over the quotes as it is unescaped
+        pos++
+        fieldStart = pos
+        write = pos
+        while (true) {
+            if (pos == limit && !fill()) return endField(write, false)
+            val c = buf[pos++]
+            if (c == '"') {
+                if (pos == limit && !fill()) return endField(write, false)
+                if (buf[pos] != '"') break
+                pos++
+            }
+            buf[write++] = c
+        }
+        // Anything between the closing quote and the delimiter is kept as-is
+        while (true) {
+            if (pos == limit && !fill()) return endField(write, false)
+            when (val c = buf[pos++]) {
+                ',' -> return endField(write, true)
+                '\n' -> return endField(write, false)
+                '\r' -> {
+                    endField(write, false)
+                    skipLineFeed()
+                    return false
+                }
+                else -> buf[write++] = c
+            }
+        }
+    }
+
+    private fun endField(end: Int, more: Boolean): Boolean {
+        if (fieldCount == starts.size) {
+            starts = starts.copyOf(fieldCount * 2)
+            ends = ends.copyOf(fieldCount * 2)
+        }
+        starts[fieldCount] = fieldStart
+        ends[fieldCount] = end
+        fieldCount++
+        return more
+    }
+
+    private fun skipLineFeed() {
+        if ((pos < limit || fill()) && buf[pos] == '\n') pos++
+    }
+
+    /**
+     * Read more input behind [limit], first sliding the current record to the
+     * front of the buffer (or growing it if the record already fills it).
+     * Only called with pos == limit.
+     * @return false at the end of input.
+     */
+    private fun fill(): Boolean {
+        if (eof) return false
+        val shift = recordStart
+        if (shift > 0) {
+            System.arraycopy(buf, shift, buf, 0, limit - shift)
+            limit -= shift
+            pos -= shift
+            recordStart = 0
+            fieldStart -= shift
+            write -= shift
+            for (i in 0 until fieldCount) {
+                starts[i] -= shift
+                ends[i] -= shift
+            }
+        }
+        if (limit == buf.size) buf = buf.copyOf(buf.size * 2)
+        val n = reader.read(buf, limit, buf.size - limit)
+        if (n < 0) {
+            eof = true
+            return false
+        }
+        limit += n
+        return true
+    }
+
+    companion object {
+        private const val DEFAULT_BUFFER = 64 * 1024
+
+        /** Up to 15 digits the mantissa and 10^scale are exact doubles, so one division rounds correctly. */
+        private const val MAX_FAST_DIGITS = 15
+        private val POWERS_OF_TEN = DoubleArray(MAX_FAST_DIGITS + 1).also {
+            it[0] = 1.0
+            for (i in 1 until it.size) it[i] = it[i - 1] * 10
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.electricdreams.numo.core.data
+
+import org.json.JSONArray
+import org.json.JSONException
+import org.json.JSONObject
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+
+/**
+ * A JSON document kept in one file and replaced whole on every write.
+ *
+ * A write goes to a temporary file that is fsynced and then renamed over the
+ * old one, so a reader finds either the previous contents or the new ones,
+ * never a torn mix. Unlike android.util.AtomicFile, which these files were
+ * written with before, a failed write is always reported to the caller, and
+ * the class works in plain JVM tests. A backup left by AtomicFile when the
+ * process died mid-write is restored on read.
+ */
+class JsonFile(val file: File) {
+
+    private val backupFile = File(file.path + BACKUP_SUFFIX)
+    private val tmpFile = File(file.path + TMP_SUFFIX)
+
+    fun exists(): Boolean = file.exists() || backupFile.exists()
+
+    @Throws(IOException::class)
+    fun write(json: JSONArray) = write(json.toString().toByteArray(Charsets.UTF_8))
+
+    @Throws(IOException::class)
+    fun write(json: JSONObject) = write(json.toString().toByteArray(Charsets.UTF_8))
+
+    /** Replace the file with [bytes], already encoded as UTF-8 JSON. */
+    @Throws(IOException::class)
+    fun write(bytes: ByteArray) {
+        try {
+            FileOutputStream(tmpFile).use { out ->
+                out.write(bytes)
+                out.fd.sync()
+            }
+            if (!tmpFile.renameTo(file)) {
+                throw IOException("Cannot rename ${tmpFile.name} to ${file.name}")
+            }
+            backupFile.delete()
+        } catch (e: IOException) {
+            tmpFile.delete()
+            throw e
+        }
+    }
+
+    /** The file's contents, or null if it was never written. */
+    @Throws(IOException::class)
+    fun read(): String? {
+        if (backupFile.exists()) {
+            // AtomicFile moved the good copy aside before a write that never finished
+            file.delete()
+            if (!backupFile.renameTo(file)) throw IOException("Cannot restore ${backupFile.name}")
+        }
+        if (!file.exists()) return null
+        return String(file.readBytes(), Charsets.UTF_8)
+    }
+
+    @Throws(IOException::class, JSONException::class)
+    fun readArray(): JSONArray? = read()?.let { JSONArray(it) }
+
+    @Throws(IOException::class, JSONException::class)
+    fun readObject(): JSONObject? = read()?.let { JSONObject(it) }
+
+    fun delete() {
+        file.delete()
+        backupFile.delete()
+        tmpFile.delete()
+    }
+
+    private companion object {
+        const val BACKUP_SUFFIX = ".bak"
+        const val TMP_SUFFIX = ".tmp"
+    }
+}
@@ -0,0 +1,441 @@
+package com.electricdreams.numo.core.data
+
+import android.content.Context
+import android.content.SharedPreferences
+import android.os.Handler
+import android.os.Looper
+import android.util.Log
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.util.WeakHashMap
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.zip.CRC32
+
+/**
+ * [SharedPreferences] kept in a snapshot file plus an append-only journal
+ * instead of an XML file that is rewritten whole on every apply().
+ *
+ * Reads come from memory. An edit updates memory at once and is held for
+ * [FLUSH_DELAY_MS] (about a frame), so bursts of edits collapse to the last
+ * value per key; the single writer thread then appends them to the journal as
+ * one checksummed, fsynced record. apply() never goes through QueuedWork, so
+ * Activity.onPause and friends never wait on disk; commit() waits for its own
+ * batch. Once the journal outgrows both [COMPACT_BYTES] and the snapshot the
+ * state is rewritten as a snapshot (temp file + rename) and the journal is
+ * emptied, so a large store is not rewritten whole after every few edits. A
+ * torn final record from a crash is dropped on load.
+ *
+ * Use [open] in place of Context.getSharedPreferences; the first open of a
+ * name moves the existing preferences file of that name over.
+ */
+class KeyValueStore internal constructor(private val dir: File, private val name: String) : SharedPreferences {
+
+    private val snapshotFile = File(dir, "$name.kv")
+    private val journalFile = File(dir, "$name.journal")
+
+    /** Current values, edits included; guarded by `this`. */
+    private val values = HashMap<String, Any>()
+    /** Edits not yet written, last value per key ([REMOVED] for removals); guarded by `this`. */
+    private var pending = LinkedHashMap<String, Any>()
+    private var pendingClear = false
+    private var flushScheduled = false
+
+    /** What the files hold; only touched on the writer thread (and in load). */
+    private val durable = HashMap<String, Any>()
+    /** Set after a failed append, whose torn bytes must not stay in front of later records. */
+    private var journalBroken = false
+
+    private val listeners = WeakHashMap<SharedPreferences.OnSharedPreferenceChangeListener, Any>()
+
+    init {
+        dir.mkdirs()
+        load()
+    }
+
+    // ----- Reads -----
+
+    @Synchronized
+    override fun getAll(): Map<String, *> = HashMap(values)
+
+    @Synchronized
+    override fun getString(key: String, defValue: String?): String? = values[key] as String? ?: defValue
+
+    @Synchronized
+    @Suppress("UNCHECKED_CAST")
+    override fun getStringSet(key: String, defValues: Set<String>?): Set<String>? =
+        values[key] as Set<String>? ?: defValues
+
+    @Synchronized
+    override fun getInt(key: String, defValue: Int): Int = values[key] as Int? ?: defValue
+
+    @Synchronized
+    override fun getLong(key: String, defValue: Long): Long = values[key] as Long? ?: defValue
+
+    @Synchronized
+    override fun getFloat(key: String, defValue: Float): Float = values[key] as Float? ?: defValue
+
+    @Synchronized
+    override fun getBoolean(key: String, defValue: Boolean): Boolean = values[key] as Boolean? ?: defValue
+
+    @Synchronized
+    override fun contains(key: String): Boolean = values.containsKey(key)
+
+    override fun edit(): SharedPreferences.Editor = Editor()
+
+    override fun registerOnSharedPreferenceChangeListener(listener: SharedPreferences.OnSharedPreferenceChangeListener) {
+        synchronized(listeners) { listeners[listener] = this }
+    }
+
+    override fun unregisterOnSharedPreferenceChangeListener(listener: SharedPreferences.OnSharedPreferenceChangeListener) {
+        synchronized(listeners) { listeners.remove(listener) }
+    }
+
+    /** Write everything edited so far and wait for it. */
+    fun flush() {
+        try {
+            writer.submit<Boolean> { writePending() }.get()
+        } catch (e: ExecutionException) {
+            Log.e(TAG, "Flush of $name failed: ${e.cause?.message}", e.cause)
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+        }
+    }
+
+    private inner class Editor : SharedPreferences.Editor {
+        private val changes = LinkedHashMap<String, Any>()
+        private var clear = false
+
+        override fun putString(key: String, value: String?) = put(key, value)
+        override fun putStringSet(key: String, values: Set<String>?) = put(key, values?.let { HashSet(it) })
+        override fun putInt(key: String, value: Int) = put(key, value)
+        override fun putLong(key: String, value: Long) = put(key, value)
+        override fun putFloat(key: String, value: Float) = put(key, value)
+        override fun putBoolean(key: String, value: Boolean) = put(key, value)
+        override fun remove(key: String) = put(key, null)
+
+        override fun clear(): SharedPreferences.Editor {
+            synchronized(this) { clear = true }
+            return this
+        }
+
+        private fun put(key: String, value: Any?): SharedPreferences.Editor {
+            synchronized(this) { changes[key] = value ?: REMOVED }
+            return this
+        }
+
+        override fun apply() {
+            val (cleared, edits) = synchronized(this) { clear to LinkedHashMap(changes) }
+            publish(cleared, edits)
+        }
+
+        override fun commit(): Boolean {
+            apply()
+            return try {
+                writer.submit<Boolean> { writePending() }.get()
+            } catch (e: ExecutionException) {
+                false
+            } catch (e: InterruptedException) {
+                Thread.currentThread().interrupt()
+                false
+            }
+        }
+    }
+
+    /** Apply an editor's changes to memory and queue them for the writer. */
+    private fun publish(cleared: Boolean, edits: Map<String, Any>) {
+        val changedKeys = ArrayList<String>()
+        synchronized(this) {
+            if (cleared) {
+                changedKeys.addAll(values.keys)
+                values.clear()
+                pending.clear()
+                pendingClear = true
+            }
+            for ((key, value) in edits) {
+                val previous = if (value === REMOVED) values.remove(key) else values.put(key, value)
+                if (previous != (if (value === REMOVED) null else value)) changedKeys.add(key)
+                pending[key] = value
+            }
+            if (!flushScheduled && (pendingClear || pending.isNotEmpty())) {
+                flushScheduled = true
+                writer.schedule(Runnable { writePending() }, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS)
+            }
+        }
+        notifyListeners(changedKeys)
+    }
+
+    private fun notifyListeners(keys: List<String>) {
+        if (keys.isEmpty()) return
+        val targets = synchronized(listeners) { listeners.keys.toList() }
+        if (targets.isEmpty()) return
+        mainHandler.post {
+            for (key in keys) {
+                for (listener in targets) listener.onSharedPreferenceChanged(this, key)
+            }
+        }
+    }
+
+    // ----- Writer thread -----
+
+    /** Append the pending batch to the journal. Runs on [writer] only. */
+    private fun writePending(): Boolean {
+        val cleared: Boolean
+        val batch: Map<String, Any>
+        synchronized(this) {
+            flushScheduled = false
+            cleared = pendingClear
+            batch = pending
+            if (!cleared && batch.isEmpty()) return true
+            pending = LinkedHashMap()
+            pendingClear = false
+        }
+        if (cleared) durable.clear()
+        for ((key, value) in batch) {
+            if (value === REMOVED) durable.remove(key) else durable[key] = value
+        }
+        return try {
+            if (journalBroken) {
+                writeSnapshot()
+            } else {
+                FileOutputStream(journalFile, true).use { out ->
+                    out.write(encodeRecord(cleared, batch))
+                    out.fd.sync()
+                }
+                val journalBytes = journalFile.length()
+                if (cleared || (journalBytes > COMPACT_BYTES && journalBytes > snapshotFile.length())) {
+                    writeSnapshot()
+                }
+            }
+            true
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to write $name: ${e.message}", e)
+            journalBroken = true
+            false
+        }
+    }
+
+    /** Replace snapshot and journal with the current durable state. */
+    private fun writeSnapshot() {
+        val tmp = File(dir, "$name.kv.tmp")
+        FileOutputStream(tmp).use { out ->
+            out.write(encodeRecord(true, durable))
+            out.fd.sync()
+        }
+        if (!tmp.renameTo(snapshotFile)) {
+            tmp.delete()
+            throw IOException("rename failed")
+        }
+        // The snapshot already includes every journaled edit, so replaying the
+        // journal over it after a crash right here changes nothing
+        journalFile.delete()
+        journalBroken = false
+    }
+
+    // ----- Loading -----
+
+    private fun load() {
+        readRecords(snapshotFile, truncateTorn = false)
+        readRecords(journalFile, truncateTorn = true)
+        values.putAll(durable)
+    }
+
+    private fun readRecords(file: File, truncateTorn: Boolean) {
+        if (!file.exists()) return
+        var good = 0L
+        try {
+            DataInputStream(file.inputStream().buffered()).use { input ->
+                while (true) {
+                    val length = try {
+                        input.readInt()
+                    } catch (e: EOFException) {
+                        break
+                    }
+                    val crc = input.readLong()
+                    if (length < 0 || length > file.length()) throw IOException("bad record length")
+                    val payload = ByteArray(length)
+                    input.readFully(payload)
+                    if (checksum(payload) != crc) throw IOException("checksum mismatch")
+                    decodeRecord(payload)
+                    good += RECORD_HEADER + length
+                }
+            }
+        } catch (e: IOException) {
+            Log.w(TAG, "Dropping torn tail of ${file.name} at $good: ${e.message}")
+        }
+        if (truncateTorn && good < file.length()) {
+            // Cut it so the next append does not land behind garbage
+            RandomAccessFile(file, "rw").use { it.setLength(good) }
+        }
+    }
+
+    private fun decodeRecord(payload: ByteArray) {
+        DataInputStream(payload.inputStream()).use { input ->
+            if (input.readBoolean()) durable.clear()
+            repeat(input.readInt()) {
+                val key = input.readUTF()
+                when (input.readByte()) {
+                    TYPE_REMOVED -> durable.remove(key)
+                    TYPE_STRING -> durable[key] = readLongUtf(input)
+                    TYPE_INT -> durable[key] = input.readInt()
+                    TYPE_LONG -> durable[key] = input.readLong()
+                    TYPE_FLOAT -> durable[key] = input.readFloat()
+                    TYPE_BOOLEAN -> durable[key] = input.readBoolean()
+                    TYPE_STRING_SET -> {
+                        val set = HashSet<String>()
+                        repeat(input.readInt()) { set.add(readLongUtf(input)) }
+                        durable[key] = set
+                    }
+                    else -> throw IOException("unknown value type")
+                }
+            }
+        }
+    }
+
+    companion object {
+        private const val TAG = "KeyValueStore"
+        private const val DIR_NAME = "kv"
+
+        /** How long edits are held so that bursts collapse into one write. */
+        const val FLUSH_DELAY_MS = 16L
+        /** Journal size past which the next write compacts into the snapshot (if it is also larger than the snapshot). */
+        const val COMPACT_BYTES = 64 * 1024L
+
+        private const val RECORD_HEADER = 4 + 8
+        private const val TYPE_REMOVED: Byte = 0
+        private const val TYPE_STRING: Byte = 1
+        private const val TYPE_INT: Byte = 2
+        private const val TYPE_LONG: Byte = 3
+        private const val TYPE_FLOAT: Byte = 4
+        private const val TYPE_BOOLEAN: Byte = 5
+        private const val TYPE_STRING_SET: Byte = 6
+
+        /** Marks a removal in an edit batch. */
+        private val REMOVED = Any()
+
+        /** The single writer shared by every store. */
+        private val writer: ScheduledExecutorService = Executors.newSingleThreadScheduledExecutor { r ->
+            Thread(r, "KeyValueStore").apply { isDaemon = true }
+        }
+
+        private val mainHandler by lazy { Handler(Looper.getMainLooper()) }
+
+        private val stores = HashMap<String, KeyValueStore>()
+
+        /**
+         * The store called [name], created on first use. If that creates it and
+         * a SharedPreferences file of the same name exists, its entries are
+         * copied into the new store and the old file is deleted.
+         */
+        @JvmStatic
+        fun open(context: Context, name: String): KeyValueStore = synchronized(stores) {
+            stores.getOrPut(name) {
+                val appContext = context.applicationContext ?: context
+                val dir = File(appContext.filesDir, DIR_NAME)
+                val fresh = !File(dir, "$name.kv").exists() && !File(dir, "$name.journal").exists()
+                val store = KeyValueStore(dir, name)
+                if (fresh) store.migrateFrom(appContext, name)
+                store
+            }
+        }
+
+        private fun encodeRecord(cleared: Boolean, entries: Map<String, Any>): ByteArray {
+            val body = ByteArrayOutputStream()
+            DataOutputStream(body).use { out ->
+                out.writeBoolean(cleared)
+                out.writeInt(entries.size)
+                for ((key, value) in entries) {
+                    out.writeUTF(key)
+                    when (value) {
+                        REMOVED -> out.writeByte(TYPE_REMOVED.toInt())
+                        is String -> {
+                            out.writeByte(TYPE_STRING.toInt())
+                            writeLongUtf(out, value)
+                        }
+                        is Int -> {
+                            out.writeByte(TYPE_INT.toInt())
+                            out.writeInt(value)
+                        }
+                        is Long -> {
+                            out.writeByte(TYPE_LONG.toInt())
+                            out.writeLong(value)
+                        }
+                        is Float -> {
+                            out.writeByte(TYPE_FLOAT.toInt())
+                            out.writeFloat(value)
+                        }
+                        is Boolean -> {
+                            out.writeByte(TYPE_BOOLEAN.toInt())
+                            out.writeBoolean(value)
+                        }
+                        is Set<*> -> {
+                            out.writeByte(TYPE_STRING_SET.toInt())
+                            out.writeInt(value.size)
+                            for (item in value) writeLongUtf(out, item as String)
+                        }
+                        else -> throw IllegalArgumentException("unsupported value for $key")
+                    }
+                }
+            }
+            val payload = body.toByteArray()
+            val record = ByteArrayOutputStream(RECORD_HEADER + payload.size)
+            DataOutputStream(record).use { out ->
+                out.writeInt(payload.size)
+                out.writeLong(checksum(payload))
+                out.write(payload)
+            }
+            return record.toByteArray()
+        }
+
+        /** Strings without writeUTF's 64 KB limit (mint info JSON can be large). */
+        private fun writeLongUtf(out: DataOutputStream, value: String) {
+            val bytes = value.toByteArray(Charsets.UTF_8)
+            out.writeInt(bytes.size)
+            out.write(bytes)
+        }
+
+        private fun readLongUtf(input: DataInputStream): String {
+            val bytes = ByteArray(input.readInt())
+            input.readFully(bytes)
+            return String(bytes, Charsets.UTF_8)
+        }
+
+        private fun checksum(payload: ByteArray): Long = CRC32().apply { update(payload) }.value
+    }
+
+    /** Copy a legacy preferences file into this (empty) store, then delete it. */
+    private fun migrateFrom(context: Context, name: String) {
+        val legacy = context.getSharedPreferences(name, Context.MODE_PRIVATE)
+        val entries = legacy.all
+        if (entries.isEmpty()) return
+        synchronized(this) {
+            for ((key, value) in entries) {
+                if (value != null) values[key] = if (value is Set<*>) HashSet(value) else value
+            }
+        }
+        val written = writer.submit<Boolean> {
+            durable.putAll(synchronized(this) { HashMap(values) })
+            try {
+                writeSnapshot()
+                true
+            } catch (e: IOException) {
+                Log.e(TAG, "Failed to migrate $name: ${e.message}", e)
+                false
+            }
+        }.get()
+        // Only drop the old file once the new one is safely on disk
+        if (written) {
+            legacy.edit().clear().commit()
+            context.deleteSharedPreferences(name)
+            Log.d(TAG, "Migrated ${entries.size} entries of $name")
+        }
+    }
+}
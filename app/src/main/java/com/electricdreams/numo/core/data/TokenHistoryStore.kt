@@ -0,0 +1,366 @@
+package com.electricdreams.numo.core.data
+
+import android.content.Context
+import android.util.Log
+import com.electricdreams.numo.core.data.model.TokenHistoryEntry
+import com.google.gson.Gson
+import com.google.gson.JsonParseException
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonToken
+import com.google.gson.stream.JsonWriter
+import java.io.BufferedInputStream
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.io.StringReader
+import java.io.Writer
+import java.text.SimpleDateFormat
+import java.util.Date
+import java.util.Locale
+import java.util.TimeZone
+
+/**
+ * Append-only store of received tokens behind TokenHistoryActivity.
+ *
+ * Entries are JSON lines in a single file; a deletion appends a tombstone line
+ * and the file is compacted once tombstones outnumber live entries. Memory
+ * holds only a small row per entry (id, amount, date and file position); the
+ * token string, usually the bulk of an entry, is read back from disk when a
+ * page is shown. Exports stream the file entry by entry into a [Writer].
+ */
+class TokenHistoryStore(private val file: File) {
+
+    /** One line of the file: an entry, or a tombstone when [deleted] is set. */
+    private class Record(
+        val id: Long? = null,
+        val token: String? = null,
+        val amount: Long = 0L,
+        val date: Long = 0L,
+        val deleted: Long? = null,
+    )
+
+    private class Row(val id: Long, val amount: Long, val date: Long, var offset: Long, val length: Int)
+
+    private val gson = Gson()
+
+    /** Oldest first, in file order. */
+    private val rows = ArrayList<Row>()
+    private val rowsById = HashMap<Long, Row>()
+    private var tombstones = 0
+    private var nextId = 1L
+
+    init {
+        file.parentFile?.mkdirs()
+        load()
+    }
+
+    @Synchronized
+    fun size(): Int = rows.size
+
+    /** Up to [limit] entries starting at [offset], newest first. */
+    @Synchronized
+    fun page(offset: Int, limit: Int): List<TokenHistoryEntry> {
+        if (offset >= rows.size || limit <= 0) return emptyList()
+        val end = minOf(rows.size, offset + limit)
+        val page = ArrayList<TokenHistoryEntry>(end - offset)
+        try {
+            RandomAccessFile(file, "r").use { raf ->
+                for (position in offset until end) {
+                    val row = rows[rows.size - 1 - position]
+                    val bytes = ByteArray(row.length)
+                    raf.seek(row.offset)
+                    raf.readFully(bytes)
+                    val record = parse(String(bytes, Charsets.UTF_8)) ?: continue
+                    page.add(toEntry(record))
+                }
+            }
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to read token history page: ${e.message}", e)
+        }
+        return page
+    }
+
+    /** Record a received token. */
+    @Synchronized
+    fun add(token: String, amount: Long, date: Date = Date()): TokenHistoryEntry {
+        val id = nextId++
+        val record = Record(id = id, token = token, amount = amount, date = date.time)
+        val line = gson.toJson(record).toByteArray(Charsets.UTF_8)
+        val offset = file.length()
+        appendLine(line)
+        addRow(Row(id, amount, date.time, offset, line.size))
+        return TokenHistoryEntry(token, amount, date, id)
+    }
+
+    /** @return false if no entry has [id] */
+    @Synchronized
+    fun delete(id: Long): Boolean {
+        val row = rowsById.remove(id) ?: return false
+        rows.remove(row)
+        appendLine(gson.toJson(Record(deleted = id)).toByteArray(Charsets.UTF_8))
+        tombstones++
+        if (tombstones > MIN_TOMBSTONES_TO_COMPACT && tombstones > rows.size) compact()
+        return true
+    }
+
+    @Synchronized
+    fun clear() {
+        rows.clear()
+        rowsById.clear()
+        tombstones = 0
+        if (file.exists() && !file.delete()) Log.w(TAG, "Failed to delete ${file.name}")
+    }
+
+    /** Write all entries, oldest first, as CSV with a `date,amount,token` header. */
+    @Synchronized
+    @Throws(IOException::class)
+    fun exportCsv(out: Writer) {
+        val dateFormat = isoDateFormat()
+        out.write("date,amount,token\n")
+        forEachLiveRecord { record ->
+            out.write(dateFormat.format(Date(record.date)))
+            out.write(",")
+            out.write(record.amount.toString())
+            out.write(",")
+            out.write(csvField(record.token.orEmpty()))
+            out.write("\n")
+        }
+        out.flush()
+    }
+
+    /** Write all entries, oldest first, as a JSON array. */
+    @Synchronized
+    @Throws(IOException::class)
+    fun exportJson(out: Writer) {
+        val dateFormat = isoDateFormat()
+        val json = JsonWriter(out)
+        json.setIndent("  ")
+        json.beginArray()
+        forEachLiveRecord { record ->
+            json.beginObject()
+            json.name("date").value(dateFormat.format(Date(record.date)))
+            json.name("amount").value(record.amount)
+            json.name("token").value(record.token)
+            json.endObject()
+        }
+        json.endArray()
+        json.flush()
+    }
+
+    // ----- Internals -----
+
+    private fun addRow(row: Row) {
+        rows.add(row)
+        rowsById[row.id] = row
+    }
+
+    private fun load() {
+        if (!file.exists()) return
+        try {
+            val end = readLines { offset, bytes ->
+                val record = parse(String(bytes, Charsets.UTF_8)) ?: return@readLines
+                if (record.deleted != null) {
+                    rowsById.remove(record.deleted)?.let { rows.remove(it) }
+                    tombstones++
+                } else if (record.id != null) {
+                    addRow(Row(record.id, record.amount, record.date, offset, bytes.size))
+                    if (record.id >= nextId) nextId = record.id + 1
+                }
+            }
+            if (file.length() > end) {
+                // A torn final append; cut it so the next line starts cleanly
+                RandomAccessFile(file, "rw").use { it.setLength(end) }
+            }
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to load token history: ${e.message}", e)
+        }
+        Log.d(TAG, "Loaded ${rows.size} token history entries")
+    }
+
+    /**
+     * Stream every complete line of the file with its byte offset.
+     * @return the offset just past the last complete line
+     */
+    private inline fun readLines(onLine: (Long, ByteArray) -> Unit): Long {
+        return BufferedInputStream(FileInputStream(file)).use { input ->
+            val line = ByteArrayOutputStream()
+            var offset = 0L
+            var lineStart = 0L
+            while (true) {
+                val b = input.read()
+                if (b == -1) break
+                offset++
+                if (b == '\n'.code) {
+                    if (line.size() > 0) onLine(lineStart, line.toByteArray())
+                    line.reset()
+                    lineStart = offset
+                } else {
+                    line.write(b)
+                }
+            }
+            lineStart
+        }
+    }
+
+    private inline fun forEachLiveRecord(onRecord: (Record) -> Unit) {
+        if (!file.exists()) return
+        readLines { _, bytes ->
+            val record = parse(String(bytes, Charsets.UTF_8)) ?: return@readLines
+            if (record.id != null && record.id in rowsById) onRecord(record)
+        }
+    }
+
+    private fun appendLine(line: ByteArray) {
+        try {
+            writeLine(line)
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to write token history: ${e.message}", e)
+        }
+    }
+
+    @Throws(IOException::class)
+    private fun writeLine(line: ByteArray) {
+        FileOutputStream(file, true).use { out ->
+            out.write(line)
+            out.write('\n'.code)
+        }
+    }
+
+    /** Rewrite the file with live entries only, copying their lines unchanged. */
+    private fun compact() {
+        val tmp = File(file.path + ".tmp")
+        try {
+            RandomAccessFile(file, "r").use { raf ->
+                FileOutputStream(tmp).buffered().use { out ->
+                    var offset = 0L
+                    val newOffsets = LongArray(rows.size)
+                    for ((i, row) in rows.withIndex()) {
+                        val bytes = ByteArray(row.length)
+                        raf.seek(row.offset)
+                        raf.readFully(bytes)
+                        out.write(bytes)
+                        out.write('\n'.code)
+                        newOffsets[i] = offset
+                        offset += row.length + 1
+                    }
+                    out.flush()
+                    if (!tmp.renameTo(file)) throw IOException("rename failed")
+                    rows.forEachIndexed { i, row -> row.offset = newOffsets[i] }
+                }
+            }
+            tombstones = 0
+            Log.d(TAG, "Compacted token history to ${rows.size} entries")
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to compact token history: ${e.message}", e)
+            tmp.delete()
+        }
+    }
+
+    private fun parse(line: String): Record? =
+        try {
+            gson.fromJson(line, Record::class.java)
+        } catch (e: JsonParseException) {
+            Log.w(TAG, "Skipping unreadable token history line: ${e.message}")
+            null
+        }
+
+    private fun toEntry(record: Record) =
+        TokenHistoryEntry(record.token.orEmpty(), record.amount, Date(record.date), record.id ?: 0L)
+
+    private fun csvField(value: String): String =
+        if (value.any { it == ',' || it == '"' || it == '\n' || it == '\r' }) {
+            "\"" + value.replace("\"", "\"\"") + "\""
+        } else {
+            value
+        }
+
+    private fun isoDateFormat() = SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US).apply {
+        timeZone = TimeZone.getTimeZone("UTC")
+    }
+
+    /**
+     * Import entries saved by older versions as one Gson array, element by
+     * element, and sync them to disk. All or nothing: if any entry cannot be
+     * parsed or written, the entries imported so far are removed again.
+     */
+    @Synchronized
+    @Throws(IOException::class, JsonParseException::class)
+    internal fun importLegacy(json: String): Int {
+        val startLength = file.length()
+        val startRows = rows.size
+        val startNextId = nextId
+        try {
+            var count = 0
+            JsonReader(StringReader(json)).use { reader ->
+                if (reader.peek() != JsonToken.BEGIN_ARRAY) return 0
+                reader.beginArray()
+                while (reader.hasNext()) {
+                    val entry: TokenHistoryEntry? = gson.fromJson(reader, TokenHistoryEntry::class.java)
+                    if (entry?.token != null) {
+                        val id = nextId++
+                        val date = entry.date ?: Date()
+                        val record = Record(id = id, token = entry.token, amount = entry.amount, date = date.time)
+                        val line = gson.toJson(record).toByteArray(Charsets.UTF_8)
+                        val offset = file.length()
+                        writeLine(line)
+                        addRow(Row(id, entry.amount, date.time, offset, line.size))
+                        count++
+                    }
+                }
+                reader.endArray()
+            }
+            if (count > 0) FileOutputStream(file, true).use { it.fd.sync() }
+            return count
+        } catch (e: Exception) {
+            while (rows.size > startRows) rowsById.remove(rows.removeAt(rows.size - 1).id)
+            nextId = startNextId
+            try {
+                RandomAccessFile(file, "rw").use { it.setLength(startLength) }
+            } catch (rollback: IOException) {
+                Log.e(TAG, "Failed to roll back token history import: ${rollback.message}", rollback)
+            }
+            throw e
+        }
+    }
+
+    /** Import the history older versions kept in SharedPreferences; the key is removed only once imported. */
+    private fun migrateFromPreferences(context: Context) {
+        val prefs = context.getSharedPreferences(LEGACY_PREFS_NAME, Context.MODE_PRIVATE)
+        val json = prefs.getString(LEGACY_KEY_HISTORY, null) ?: return
+        try {
+            val count = importLegacy(json)
+            prefs.edit().remove(LEGACY_KEY_HISTORY).apply()
+            Log.i(TAG, "Imported $count token history entries")
+        } catch (e: Exception) {
+            // Kept in preferences; the import is retried on the next launch
+            Log.e(TAG, "Failed to import token history: ${e.message}", e)
+        }
+    }
+
+    companion object {
+        private const val TAG = "TokenHistoryStore"
+        private const val DIR_NAME = "token_history"
+        private const val FILE_NAME = "history.jsonl"
+        private const val MIN_TOMBSTONES_TO_COMPACT = 64
+
+        // Where older versions kept the whole history as one Gson array
+        private const val LEGACY_PREFS_NAME = "TokenHistory"
+        private const val LEGACY_KEY_HISTORY = "history"
+
+        @Volatile
+        private var instance: TokenHistoryStore? = null
+
+        @JvmStatic
+        fun getInstance(context: Context): TokenHistoryStore {
+            return instance ?: synchronized(this) {
+                instance ?: TokenHistoryStore(File(File(context.filesDir, DIR_NAME), FILE_NAME)).also {
+                    it.migrateFromPreferences(context.applicationContext)
+                    instance = it
+                }
+            }
+        }
+    }
+}
@@ -43,7 +43,7 @@ data class PaymentHistoryEntry(
     @SerializedName("paymentRequest")
     val paymentRequest: String? = null, // The payment request it was received with (optional)
 
-    /** Payment status: "pending", "completed", or "cancelled" */
+    /** Payment status: "pending", "completed", "cancelled", or "rejected" */
     @SerializedName("status")
     private val rawStatus: String? = "completed",
 
@@ -140,6 +140,9 @@ data class PaymentHistoryEntry(
     /** Check if this payment is completed */
     fun isCompleted(): Boolean = getStatus() == STATUS_COMPLETED
 
+    /** Check if this payment was accepted offline and later refused by the mint */
+    fun isRejected(): Boolean = getStatus() == STATUS_REJECTED
+
     /** Check if this payment was via Lightning */
     fun isLightning(): Boolean = paymentType == TYPE_LIGHTNING
 
@@ -178,6 +181,7 @@ data class PaymentHistoryEntry(
         const val STATUS_PENDING = "pending"
         const val STATUS_COMPLETED = "completed"
         const val STATUS_CANCELLED = "cancelled"
+        const val STATUS_REJECTED = "rejected"
 
         const val TYPE_CASHU = "cashu"
         const val TYPE_LIGHTNING = "lightning"
@@ -15,4 +15,8 @@ data class TokenHistoryEntry(
 
     @SerializedName("date")
     val date: Date,
+
+    /** Stable id assigned by TokenHistoryStore. */
+    @SerializedName("id")
+    val id: Long = 0L,
 )
@@ -0,0 +1,92 @@
+package com.electricdreams.numo.core.metrics
+
+import org.json.JSONArray
+import org.json.JSONObject
+
+/**
+ * Latency distribution over fixed millisecond buckets.
+ *
+ * Buckets are coarse on purpose: they are enough to tell a 200 ms tap from a
+ * 3 s mint round trip, and recording is a bounded array increment. Percentiles
+ * are reported as the upper bound of the bucket they fall in, capped at the
+ * largest value seen.
+ */
+class LatencyHistogram {
+
+    data class Snapshot(
+        val count: Long,
+        val sumMs: Long,
+        val minMs: Long,
+        val maxMs: Long,
+        val p50Ms: Long,
+        val p95Ms: Long,
+        val bucketCounts: LongArray,
+    ) {
+        val meanMs: Long get() = if (count == 0L) 0L else sumMs / count
+
+        fun toJson(): JSONObject {
+            val buckets = JSONArray()
+            for (i in bucketCounts.indices) {
+                if (bucketCounts[i] == 0L) continue
+                buckets.put(
+                    JSONObject()
+                        .put("le", if (i < BOUNDS_MS.size) BOUNDS_MS[i] else JSONObject.NULL)
+                        .put("count", bucketCounts[i]),
+                )
+            }
+            return JSONObject()
+                .put("count", count)
+                .put("meanMs", meanMs)
+                .put("minMs", minMs)
+                .put("maxMs", maxMs)
+                .put("p50Ms", p50Ms)
+                .put("p95Ms", p95Ms)
+                .put("buckets", buckets)
+        }
+    }
+
+    private val counts = LongArray(BOUNDS_MS.size + 1)
+    private var count = 0L
+    private var sum = 0L
+    private var min = Long.MAX_VALUE
+    private var max = 0L
+
+    @Synchronized
+    fun record(ms: Long) {
+        val value = ms.coerceAtLeast(0L)
+        var bucket = 0
+        while (bucket < BOUNDS_MS.size && value > BOUNDS_MS[bucket]) bucket++
+        counts[bucket]++
+        count++
+        sum += value
+        if (value < min) min = value
+        if (value > max) max = value
+    }
+
+    @Synchronized
+    fun snapshot(): Snapshot = Snapshot(
+        count = count,
+        sumMs = sum,
+        minMs = if (count == 0L) 0L else min,
+        maxMs = max,
+        p50Ms = percentile(0.50),
+        p95Ms = percentile(0.95),
+        bucketCounts = counts.copyOf(),
+    )
+
+    private fun percentile(fraction: Double): Long {
+        if (count == 0L) return 0L
+        val rank = Math.ceil(count * fraction).toLong().coerceAtLeast(1L)
+        var seen = 0L
+        for (i in counts.indices) {
+            seen += counts[i]
+            if (seen >= rank) return if (i < BOUNDS_MS.size) minOf(BOUNDS_MS[i], max) else max
+        }
+        return max
+    }
+
+    companion object {
+        /** Inclusive upper bounds; the last bucket takes everything slower. */
+        val BOUNDS_MS = longArrayOf(25, 50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 30_000, 60_000)
+    }
+}
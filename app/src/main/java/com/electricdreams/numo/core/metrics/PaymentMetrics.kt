@@ -0,0 +1,131 @@
+package com.electricdreams.numo.core.metrics
+
+import android.content.Context
+import android.net.Uri
+import android.os.SystemClock
+import com.electricdreams.numo.core.data.JsonFile
+import org.json.JSONObject
+import java.io.File
+import java.io.IOException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Latencies and counters along the payment funnel, kept in memory for the
+ * lifetime of the process.
+ *
+ * Names are dotted `<channel>.<stage>` keys (`nfc.tap_to_ndef`,
+ * `lightning.invoice_to_paid`, `session.nostr.paid`); per-mint metrics append
+ * the mint host in brackets (`mint.receive[mint.example.com]`) via [perMint].
+ * Comparing the stages tells whether a slow checkout is the tap, the relay or
+ * the mint. Shown in developer settings and exportable as JSON.
+ */
+object PaymentMetrics {
+
+    private const val EXPORT_DIR = "diagnostics"
+    private const val EXPORT_FILE = "payment_metrics.json"
+
+    private val histograms = ConcurrentHashMap<String, LatencyHistogram>()
+    private val counters = ConcurrentHashMap<String, AtomicLong>()
+
+    @Volatile
+    private var since = System.currentTimeMillis()
+
+    /** A running measurement; finish it with [end] or [fail], at most once. */
+    class Span internal constructor(private val name: String) {
+        private val startedAt = SystemClock.elapsedRealtime()
+        private var finished = false
+
+        val elapsedMs: Long get() = SystemClock.elapsedRealtime() - startedAt
+
+        /** Record the elapsed time under the span's name. */
+        @Synchronized
+        fun end(): Long {
+            val elapsed = elapsedMs
+            if (!finished) {
+                finished = true
+                record(name, elapsed)
+            }
+            return elapsed
+        }
+
+        /** Count a failure as `<name>.failures` instead of recording a latency. */
+        @Synchronized
+        fun fail() {
+            if (!finished) {
+                finished = true
+                increment("$name.failures")
+            }
+        }
+    }
+
+    @JvmStatic
+    fun startSpan(name: String): Span = Span(name)
+
+    @JvmStatic
+    fun record(name: String, elapsedMs: Long) {
+        histograms.getOrPut(name) { LatencyHistogram() }.record(elapsedMs)
+    }
+
+    @JvmStatic
+    fun increment(name: String) {
+        counters.getOrPut(name) { AtomicLong() }.incrementAndGet()
+    }
+
+    /** Time [block] under [name]; an exception is counted as a failure and rethrown. */
+    inline fun <T> time(name: String, block: () -> T): T {
+        val span = startSpan(name)
+        try {
+            return block().also { span.end() }
+        } catch (e: Throwable) {
+            span.fail()
+            throw e
+        }
+    }
+
+    /** `metric[host]` for a mint URL, so per-mint latencies group by mint. */
+    @JvmStatic
+    fun perMint(metric: String, mintUrl: String): String {
+        val host = Uri.parse(mintUrl).host ?: mintUrl
+        return "$metric[$host]"
+    }
+
+    @JvmStatic
+    fun reset() {
+        histograms.clear()
+        counters.clear()
+        since = System.currentTimeMillis()
+    }
+
+    /** Latencies by name, sorted. */
+    fun histograms(): Map<String, LatencyHistogram.Snapshot> =
+        histograms.toSortedMap().mapValues { it.value.snapshot() }
+
+    /** Counters by name, sorted. */
+    fun counters(): Map<String, Long> =
+        counters.toSortedMap().mapValues { it.value.get() }
+
+    fun toJson(): JSONObject {
+        val latencies = JSONObject()
+        for ((name, snapshot) in histograms()) latencies.put(name, snapshot.toJson())
+        val counts = JSONObject()
+        for ((name, value) in counters()) counts.put(name, value)
+        return JSONObject()
+            .put("since", since)
+            .put("exportedAt", System.currentTimeMillis())
+            .put("latenciesMs", latencies)
+            .put("counters", counts)
+    }
+
+    /**
+     * Write [toJson] to `files/diagnostics/payment_metrics.json`.
+     * @return the written file
+     */
+    @Throws(IOException::class)
+    fun exportToFile(context: Context): File {
+        val dir = File(context.filesDir, EXPORT_DIR).apply { mkdirs() }
+        val file = JsonFile(File(dir, EXPORT_FILE))
+        file.write(toJson().toString(2).toByteArray(Charsets.UTF_8))
+        return file.file
+    }
+}
@@ -1,8 +1,5 @@
 package com.electricdreams.numo.core.model
 
-import java.text.DecimalFormat
-import java.text.DecimalFormatSymbols
-import java.text.NumberFormat
 import java.util.Locale
 
 /**
@@ -15,6 +12,9 @@ import java.util.Locale
  * - EUR: comma as decimal separator (e.g., €4,20)
  * - JPY: no decimal places (e.g., ¥420)
  * - BTC: comma as thousand separator, no decimals (e.g., ₿1,000)
+ *
+ * Formatting and parsing go through [MoneyFormat] with the currency's
+ * [CurrencyRegistry.Spec]; use [appendTo] to format into a reused builder.
  */
 data class Amount(
     val value: Long,
@@ -39,6 +39,9 @@ data class Amount(
             BTC -> Locale.US          // Comma thousand separator: ₿1,000
         }
 
+        /** Precomputed formatting data for this currency. */
+        val spec: CurrencyRegistry.Spec get() = CurrencyRegistry.of(this)
+
         companion object {
             @JvmStatic
             fun fromCode(code: String): Currency = when {
@@ -63,51 +66,20 @@ data class Amount(
      * - JPY: ¥420
      * - BTC: ₿1,000
      */
-    override fun toString(): String {
-        return when (currency) {
-            Currency.BTC -> {
-                val formatter = NumberFormat.getNumberInstance(currency.getLocale())
-                "${currency.symbol}${formatter.format(value)}"
-            }
-            Currency.JPY -> {
-                // JPY has no decimal places (stored as cents internally, divide by 100)
-                val major = value / 100.0
-                val formatter = NumberFormat.getIntegerInstance(currency.getLocale())
-                "${currency.symbol}${formatter.format(major.toLong())}"
-            }
-            else -> {
-                // USD, EUR, GBP - 2 decimal places with currency-appropriate separator
-                val major = value / 100.0
-                val symbols = DecimalFormatSymbols(currency.getLocale())
-                val formatter = DecimalFormat("#,##0.00", symbols)
-                "${currency.symbol}${formatter.format(major)}"
-            }
-        }
-    }
+    override fun toString(): String =
+        MoneyFormat.appendTo(StringBuilder(16), value, currency.spec).toString()
 
     /**
      * Format the amount without the currency symbol.
      * Useful for input fields and calculations.
      */
-    fun toStringWithoutSymbol(): String {
-        return when (currency) {
-            Currency.BTC -> {
-                val formatter = NumberFormat.getNumberInstance(currency.getLocale())
-                formatter.format(value)
-            }
-            Currency.JPY -> {
-                val major = value / 100.0
-                val formatter = NumberFormat.getIntegerInstance(currency.getLocale())
-                formatter.format(major.toLong())
-            }
-            else -> {
-                val major = value / 100.0
-                val symbols = DecimalFormatSymbols(currency.getLocale())
-                val formatter = DecimalFormat("#,##0.00", symbols)
-                formatter.format(major)
-            }
-        }
-    }
+    fun toStringWithoutSymbol(): String =
+        MoneyFormat.appendTo(StringBuilder(16), value, currency.spec, withSymbol = false).toString()
+
+    /** Append the formatted amount to [out] without allocating. */
+    @JvmOverloads
+    fun appendTo(out: StringBuilder, withSymbol: Boolean = true): StringBuilder =
+        MoneyFormat.appendTo(out, value, currency.spec, withSymbol)
 
     companion object {
         /**
@@ -124,37 +96,21 @@ data class Amount(
             val symbol = formatted.take(1)
             val currency = Currency.fromSymbol(symbol) ?: return null
             
-            // Extract the numeric part (remove symbol)
-            var numericPart = formatted.drop(1).trim()
-            
-            // Normalize the input: handle both comma and period as decimal separators
-            // First, determine if comma is used as thousand separator or decimal separator
-            numericPart = normalizeNumericInput(numericPart)
-            
-            return try {
-                when (currency) {
-                    Currency.BTC -> {
-                        // For BTC, value is in satoshis (no decimal conversion needed)
-                        val sats = numericPart.replace(",", "").toLong()
-                        Amount(sats, currency)
-                    }
-                    Currency.JPY -> {
-                        // JPY has no decimal places, but stored as cents internally
-                        val yen = numericPart.replace(",", "").toDouble()
-                        Amount((yen * 100).toLong(), currency)
-                    }
-                    else -> {
-                        // For other fiat, convert decimal to minor units (cents)
-                        val majorUnits = numericPart.toDouble()
-                        val minorUnits = Math.round(majorUnits * 100)
-                        Amount(minorUnits, currency)
-                    }
-                }
-            } catch (e: NumberFormatException) {
-                null
-            }
+            // Extract the numeric part (remove symbol); separators are normalized by MoneyFormat
+            val numericPart = formatted.drop(1).trim()
+            val value = MoneyFormat.parse(numericPart, currency.spec) ?: return null
+            return Amount(value, currency)
         }
 
+        /**
+         * Append [value] in [currency]'s stored units to [out], without creating
+         * an Amount. For list binds and other per-frame formatting.
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun appendTo(out: StringBuilder, value: Long, currency: Currency, withSymbol: Boolean = true): StringBuilder =
+            MoneyFormat.appendTo(out, value, currency.spec, withSymbol)
+
         /**
          * Create an Amount from a raw value (fiat in cents/minor units, BTC in sats).
          */
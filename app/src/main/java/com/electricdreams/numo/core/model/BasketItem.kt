@@ -38,6 +38,16 @@ data class BasketItem(
      * @return Total fiat price including VAT.
      */
     fun getTotalPrice(): Double = item.getGrossPrice() * quantity
+
+    /**
+     * Total fiat price for this basket item including VAT, in cents, rounded
+     * per unit exactly as the basket and checkout totals are.
+     * Only valid for items with FIAT price type.
+     */
+    fun getTotalCents(): Long {
+        val net = BasketTotals.netCents(item)
+        return (net + BasketTotals.vatCentsPerUnit(net, item.vatEnabled, item.vatRate)) * quantity
+    }
     
     /**
      * Calculate the total sats price for this basket item (priceSats * quantity).
@@ -0,0 +1,114 @@
+package com.electricdreams.numo.core.model
+
+import java.util.TreeMap
+
+/**
+ * Running totals of a basket in integer minor units, updated per line change
+ * instead of re-summing every line.
+ *
+ * Fiat amounts are cents (hundredths, as everywhere in the app) and sats are
+ * sats. The per-unit rules in the companion ([netCents], [vatCentsPerUnit])
+ * are the only place prices are converted, and [CheckoutBasketItem] uses the
+ * same ones, so the basket header, checkout and receipt always agree.
+ */
+class BasketTotals private constructor(
+    private var fiatNetCents: Long,
+    private var fiatVatCents: Long,
+    private var satsTotal: Long,
+    private var itemCount: Int,
+    private var fiatLines: Int,
+    private var satsLines: Int,
+    private val vatCentsByRate: TreeMap<Int, Long>,
+) {
+
+    constructor() : this(0L, 0L, 0L, 0, 0, 0, TreeMap())
+
+    /** Total fiat net of VAT, in cents. */
+    val fiatNetTotalCents: Long get() = fiatNetCents
+
+    /** Total VAT on fiat items, in cents. */
+    val fiatVatTotalCents: Long get() = fiatVatCents
+
+    /** Total fiat including VAT, in cents. */
+    val fiatGrossTotalCents: Long get() = fiatNetCents + fiatVatCents
+
+    /** Total of items priced directly in sats. */
+    val satsDirectTotal: Long get() = satsTotal
+
+    val totalItemCount: Int get() = itemCount
+
+    val hasMixedPriceTypes: Boolean get() = fiatLines > 0 && satsLines > 0
+
+    /** VAT in cents per rate (e.g. 20 → 340), rates ascending; rates with no VAT are left out. */
+    val vatBreakdown: Map<Int, Long> get() = TreeMap(vatCentsByRate)
+
+    /**
+     * Account for [quantityDelta] more (or, if negative, fewer) units of [item].
+     * Call with +quantity when a line is added and -quantity when it is removed.
+     */
+    fun apply(item: Item, quantityDelta: Int, lineAdded: Boolean = false, lineRemoved: Boolean = false) {
+        itemCount += quantityDelta
+        if (item.priceType == PriceType.SATS) {
+            satsTotal += item.priceSats * quantityDelta
+            if (lineAdded) satsLines++
+            if (lineRemoved) satsLines--
+            return
+        }
+
+        val net = netCents(item)
+        val vat = vatCentsPerUnit(net, item.vatEnabled, item.vatRate)
+        fiatNetCents += net * quantityDelta
+        fiatVatCents += vat * quantityDelta
+        if (vat != 0L) {
+            val rateTotal = (vatCentsByRate[item.vatRate] ?: 0L) + vat * quantityDelta
+            if (rateTotal == 0L) vatCentsByRate.remove(item.vatRate) else vatCentsByRate[item.vatRate] = rateTotal
+        }
+        if (lineAdded) fiatLines++
+        if (lineRemoved) fiatLines--
+    }
+
+    /**
+     * Total in sats, converting the fiat gross total at [btcPrice] (fiat per
+     * BTC) and rounding down to whole sats. Fiat is ignored without a price.
+     */
+    fun totalSatoshis(btcPrice: Double): Long {
+        val fiatCents = fiatGrossTotalCents
+        if (fiatCents <= 0L || btcPrice <= 0.0) return satsTotal
+        // cents / 100 / price * 1e8
+        return satsTotal + Math.floor(fiatCents * 1_000_000.0 / btcPrice).toLong()
+    }
+
+    fun reset() {
+        fiatNetCents = 0L
+        fiatVatCents = 0L
+        satsTotal = 0L
+        itemCount = 0
+        fiatLines = 0
+        satsLines = 0
+        vatCentsByRate.clear()
+    }
+
+    fun copy(): BasketTotals =
+        BasketTotals(fiatNetCents, fiatVatCents, satsTotal, itemCount, fiatLines, satsLines, TreeMap(vatCentsByRate))
+
+    companion object {
+        /** Net unit price of a fiat [item] in cents, rounded half up from its stored major units. */
+        @JvmStatic
+        fun netCents(item: Item): Long = Math.round(item.price * 100)
+
+        /** VAT on one unit with net price [netCents], in cents, rounded half up. */
+        @JvmStatic
+        fun vatCentsPerUnit(netCents: Long, vatEnabled: Boolean, vatRate: Int): Long {
+            if (!vatEnabled || vatRate <= 0) return 0L
+            return Math.floorDiv(netCents * vatRate + 50, 100L)
+        }
+
+        /** Totals of [items] computed from scratch. */
+        @JvmStatic
+        fun of(items: Collection<BasketItem>): BasketTotals {
+            val totals = BasketTotals()
+            for (line in items) totals.apply(line.item, line.quantity, lineAdded = true)
+            return totals
+        }
+    }
+}
@@ -85,11 +85,11 @@ data class CheckoutBasketItem(
     fun getNetTotalSats(): Long = priceSats * quantity
 
     /**
-     * Calculate VAT amount per unit in minor units.
+     * Calculate VAT amount per unit in minor units, rounded as in [BasketTotals].
      */
     fun getVatPerUnitCents(): Long {
-        if (!vatEnabled || vatRate <= 0 || priceType != "FIAT") return 0L
-        return (netPriceCents * vatRate) / 100
+        if (priceType != "FIAT") return 0L
+        return BasketTotals.vatCentsPerUnit(netPriceCents, vatEnabled, vatRate)
     }
 
     /**
@@ -135,7 +135,7 @@ data class CheckoutBasketItem(
                 category = item.category,
                 quantity = basketItem.quantity,
                 priceType = item.priceType.name,
-                netPriceCents = (item.price * 100).toLong(),
+                netPriceCents = BasketTotals.netCents(item),
                 priceSats = item.priceSats,
                 priceCurrency = currencyCode,
                 vatEnabled = item.vatEnabled,
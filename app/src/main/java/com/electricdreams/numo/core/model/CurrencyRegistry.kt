@@ -0,0 +1,80 @@
+package com.electricdreams.numo.core.model
+
+import java.text.DecimalFormatSymbols
+import java.util.Locale
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * ISO-4217 currencies with everything needed to format or parse an amount
+ * precomputed, so [MoneyFormat] never has to build a NumberFormat.
+ *
+ * Exponents (digits after the decimal point) come from the platform's ISO-4217
+ * table via [java.util.Currency]; separators come from the locale the app
+ * uses for that currency. Bitcoin is registered as "BTC" with amounts in sats.
+ */
+object CurrencyRegistry {
+
+    /** Formatting data of one currency. Immutable and shared between threads. */
+    class Spec internal constructor(
+        val code: String,
+        val symbol: String,
+        /** ISO-4217 minor-unit exponent: 2 for USD, 0 for JPY, 3 for KWD. */
+        val exponent: Int,
+        val groupingSeparator: Char,
+        val decimalSeparator: Char,
+        /**
+         * Smallest stored units per major unit. Fiat amounts are stored in
+         * hundredths regardless of [exponent] (so yen are stored as 100 per ¥);
+         * sats are stored as is.
+         */
+        val storageScale: Long,
+    ) {
+        override fun toString(): String = "Spec($code, exponent=$exponent)"
+    }
+
+    private val byCode = ConcurrentHashMap<String, Spec>()
+
+    /** Specs of [Amount.Currency], by ordinal, built once. */
+    private val byAmountCurrency: Array<Spec> = Amount.Currency.entries.map { currency ->
+        if (currency == Amount.Currency.BTC) {
+            Spec("BTC", currency.symbol, 0, ',', '.', 1L)
+        } else {
+            build(currency.name, currency.symbol, currency.getLocale())
+        }
+    }.toTypedArray()
+
+    init {
+        byAmountCurrency.forEach { byCode[it.code] = it }
+    }
+
+    /** Spec of one of the app's display currencies. */
+    @JvmStatic
+    fun of(currency: Amount.Currency): Spec = byAmountCurrency[currency.ordinal]
+
+    /**
+     * Spec of any ISO-4217 currency code, or null if the code is unknown.
+     * "SAT"/"SATS" map to bitcoin.
+     */
+    @JvmStatic
+    fun get(code: String): Spec? {
+        val upper = code.uppercase(Locale.US)
+        if (upper == "SAT" || upper == "SATS") return of(Amount.Currency.BTC)
+        byCode[upper]?.let { return it }
+        val iso = try {
+            java.util.Currency.getInstance(upper)
+        } catch (e: IllegalArgumentException) {
+            return null
+        }
+        return byCode.getOrPut(upper) { build(upper, iso.getSymbol(Locale.US), Locale.US) }
+    }
+
+    private fun build(code: String, symbol: String, locale: Locale): Spec {
+        val symbols = DecimalFormatSymbols(locale)
+        val exponent = try {
+            java.util.Currency.getInstance(code).defaultFractionDigits.coerceAtLeast(0)
+        } catch (e: IllegalArgumentException) {
+            2
+        }
+        return Spec(code, symbol, exponent, symbols.groupingSeparator, symbols.decimalSeparator, 100L)
+    }
+}
@@ -0,0 +1,135 @@
+package com.electricdreams.numo.core.model
+
+/**
+ * Formats and parses stored amounts using a [CurrencyRegistry.Spec].
+ *
+ * Formatting writes digits straight into a caller's [StringBuilder] and keeps
+ * no state, so it is thread-safe and allocates nothing beyond the builder's
+ * own growth. Adapters and the keypad can reuse one builder per view.
+ *
+ * Stored values are scaled by [CurrencyRegistry.Spec.storageScale]; the
+ * displayed digits follow the currency's ISO exponent, truncating stored
+ * precision it does not show (yen) and padding precision it lacks (dinar).
+ */
+object MoneyFormat {
+
+    /**
+     * Append [value], in stored units of [spec], to [out].
+     * @param withSymbol prefix the currency symbol; a minus sign follows it (`$-4.20`)
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun appendTo(out: StringBuilder, value: Long, spec: CurrencyRegistry.Spec, withSymbol: Boolean = true): StringBuilder {
+        if (withSymbol) out.append(spec.symbol)
+        if (value < 0) out.append('-')
+
+        // Work on the negative magnitude so Long.MIN_VALUE needs no special case
+        val negative = if (value < 0) value else -value
+        val scale = spec.storageScale
+        val majorNegative = negative / scale
+        appendGrouped(out, majorNegative, spec.groupingSeparator)
+
+        if (spec.exponent > 0) {
+            out.append(spec.decimalSeparator)
+            var remainder = -(negative % scale)
+            var unit = scale / 10
+            repeat(spec.exponent) {
+                if (unit > 0) {
+                    out.append('0' + (remainder / unit).toInt())
+                    remainder %= unit
+                    unit /= 10
+                } else {
+                    out.append('0')
+                }
+            }
+        }
+        return out
+    }
+
+    /**
+     * Parse a number without currency symbol into stored units of [spec].
+     * Accepts either `.` or `,` as decimal separator (see
+     * [Amount.normalizeNumericInput]); extra fraction digits are rounded half up.
+     * @return null if [text] is not a number
+     */
+    @JvmStatic
+    fun parse(text: String, spec: CurrencyRegistry.Spec): Long? =
+        try {
+            parseExact(text, spec)
+        } catch (e: ArithmeticException) {
+            null // Overflows a Long
+        }
+
+    private fun parseExact(text: String, spec: CurrencyRegistry.Spec): Long? {
+        val normalized = Amount.normalizeNumericInput(text)
+        if (normalized.isEmpty()) return null
+
+        var index = 0
+        val negative = normalized[0] == '-'
+        if (negative || normalized[0] == '+') index++
+        if (index == normalized.length) return null
+
+        var major = 0L
+        var sawDigit = false
+        while (index < normalized.length && normalized[index] != '.') {
+            val c = normalized[index]
+            if (c == ',') {
+                index++
+                continue
+            }
+            if (c !in '0'..'9') return null
+            major = Math.addExact(Math.multiplyExact(major, 10L), (c - '0').toLong())
+            sawDigit = true
+            index++
+        }
+
+        var minor = 0L
+        if (index < normalized.length) {
+            index++ // decimal point
+            var unit = spec.storageScale / 10
+            while (index < normalized.length) {
+                val c = normalized[index]
+                if (c !in '0'..'9') return null
+                val digit = (c - '0').toLong()
+                if (unit > 0) {
+                    minor += digit * unit
+                    unit /= 10
+                } else if (unit == 0L) {
+                    // First digit past stored precision decides rounding
+                    if (digit >= 5) minor++
+                    unit = -1
+                }
+                sawDigit = true
+                index++
+            }
+        }
+        if (!sawDigit) return null
+
+        val stored = Math.addExact(Math.multiplyExact(major, spec.storageScale), minor)
+        return if (negative) -stored else stored
+    }
+
+    /** Append the magnitude of non-positive [negative] with grouping every three digits. */
+    private fun appendGrouped(out: StringBuilder, negative: Long, separator: Char) {
+        val start = out.length
+        var rest = negative
+        var digits = 0
+        do {
+            if (digits > 0 && digits % 3 == 0) out.append(separator)
+            out.append('0' - (rest % 10).toInt())
+            rest /= 10
+            digits++
+        } while (rest != 0L)
+
+        // Digits were written least significant first
+        var i = start
+        var j = out.length - 1
+        while (i < j) {
+            val c = out[i]
+            out.setCharAt(i, out[j])
+            out.setCharAt(j, c)
+            i++
+            j--
+        }
+    }
+}
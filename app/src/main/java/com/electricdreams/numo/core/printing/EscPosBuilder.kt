@@ -0,0 +1,195 @@
+package com.electricdreams.numo.core.printing
+
+import java.io.ByteArrayOutputStream
+import java.nio.CharBuffer
+import java.nio.charset.Charset
+import java.nio.charset.CharsetEncoder
+
+/**
+ * Builds a raw ESC/POS command stream for thermal receipt printers.
+ *
+ * Text is encoded in code page 437 (selected with ESC t 0), which covers the
+ * box-drawing characters used by the text receipt. Symbols outside the code page
+ * are substituted with ASCII equivalents and emoji are dropped, so the printer
+ * never receives bytes it would render as garbage.
+ *
+ * This class has no Android dependencies so it can be exercised from plain JVM tests.
+ */
+class EscPosBuilder(initialCapacity: Int = 2048) {
+
+    enum class Align(internal val code: Int) {
+        LEFT(0),
+        CENTER(1),
+        RIGHT(2),
+    }
+
+    enum class Font(internal val code: Int) {
+        /** 12x24 dots: 32 columns on 58mm paper, 48 on 80mm. */
+        A(0),
+        /** 9x17 dots: 42 columns on 58mm paper, 64 on 80mm. */
+        B(1),
+    }
+
+    enum class QrErrorCorrection(internal val code: Int) {
+        L(48),
+        M(49),
+        Q(50),
+        H(51),
+    }
+
+    private val out = ByteArrayOutputStream(initialCapacity)
+    private val encoder: CharsetEncoder? = CP437?.newEncoder()
+
+    /** ESC @ followed by ESC t 0: reset the printer and select code page 437. */
+    fun initialize(): EscPosBuilder = apply {
+        out.write(byteArrayOf(ESC, '@'.code.toByte(), ESC, 't'.code.toByte(), 0))
+    }
+
+    fun align(align: Align): EscPosBuilder = apply {
+        out.write(byteArrayOf(ESC, 'a'.code.toByte(), align.code.toByte()))
+    }
+
+    fun font(font: Font): EscPosBuilder = apply {
+        out.write(byteArrayOf(ESC, 'M'.code.toByte(), font.code.toByte()))
+    }
+
+    fun bold(enabled: Boolean): EscPosBuilder = apply {
+        out.write(byteArrayOf(ESC, 'E'.code.toByte(), (if (enabled) 1 else 0).toByte()))
+    }
+
+    /** GS ! n: character size multiplier, 1..8 in each direction. */
+    fun size(width: Int, height: Int): EscPosBuilder = apply {
+        val w = (width.coerceIn(1, 8) - 1) shl 4
+        val h = height.coerceIn(1, 8) - 1
+        out.write(byteArrayOf(GS, '!'.code.toByte(), (w or h).toByte()))
+    }
+
+    fun text(text: String): EscPosBuilder = apply {
+        encodeText(text)
+    }
+
+    fun line(text: String = ""): EscPosBuilder = apply {
+        encodeText(text)
+        out.write(LF.toInt())
+    }
+
+    /** ESC d n: print the buffer and feed [lines] lines. */
+    fun feed(lines: Int): EscPosBuilder = apply {
+        out.write(byteArrayOf(ESC, 'd'.code.toByte(), lines.coerceIn(0, 255).toByte()))
+    }
+
+    /** GS V 66 n: feed to the cutter and perform a partial cut. */
+    fun cut(): EscPosBuilder = apply {
+        out.write(byteArrayOf(GS, 'V'.code.toByte(), 66, 0))
+    }
+
+    /**
+     * GS v 0: print a monochrome raster image. The image is emitted in horizontal
+     * bands because many printers cap the height of a single raster command.
+     */
+    fun raster(image: MonoRaster): EscPosBuilder = apply {
+        val bytesPerRow = image.bytesPerRow
+        var row = 0
+        while (row < image.height) {
+            val bandHeight = minOf(RASTER_BAND_HEIGHT, image.height - row)
+            out.write(byteArrayOf(
+                GS, 'v'.code.toByte(), '0'.code.toByte(), 0,
+                (bytesPerRow and 0xFF).toByte(), (bytesPerRow shr 8).toByte(),
+                (bandHeight and 0xFF).toByte(), (bandHeight shr 8).toByte(),
+            ))
+            out.write(image.data, row * bytesPerRow, bandHeight * bytesPerRow)
+            row += bandHeight
+        }
+    }
+
+    /**
+     * GS ( k: store and print a model 2 QR code using the printer's own encoder,
+     * which is far smaller on the wire than rasterizing the symbol ourselves.
+     *
+     * @return false (and emits nothing) if [data] exceeds what a QR symbol can hold
+     */
+    fun qrCode(
+        data: String,
+        moduleSize: Int = 4,
+        errorCorrection: QrErrorCorrection = QrErrorCorrection.L,
+    ): Boolean {
+        val payload = data.toByteArray(Charsets.ISO_8859_1)
+        if (payload.isEmpty() || payload.size > QR_MAX_BYTES) return false
+
+        // Select model 2
+        out.write(byteArrayOf(GS, '('.code.toByte(), 'k'.code.toByte(), 4, 0, 49, 65, 50, 0))
+        // Module size
+        out.write(byteArrayOf(GS, '('.code.toByte(), 'k'.code.toByte(), 3, 0, 49, 67, moduleSize.coerceIn(1, 16).toByte()))
+        // Error correction level
+        out.write(byteArrayOf(GS, '('.code.toByte(), 'k'.code.toByte(), 3, 0, 49, 69, errorCorrection.code.toByte()))
+        // Store data in the symbol storage area
+        val storeLength = payload.size + 3
+        out.write(byteArrayOf(
+            GS, '('.code.toByte(), 'k'.code.toByte(),
+            (storeLength and 0xFF).toByte(), (storeLength shr 8).toByte(), 49, 80, 48,
+        ))
+        out.write(payload)
+        // Print the stored symbol
+        out.write(byteArrayOf(GS, '('.code.toByte(), 'k'.code.toByte(), 3, 0, 49, 81, 48))
+        return true
+    }
+
+    /** Append a pre-built command block, e.g. a cached receipt header. */
+    fun raw(bytes: ByteArray): EscPosBuilder = apply {
+        out.write(bytes)
+    }
+
+    fun byteCount(): Int = out.size()
+
+    fun build(): ByteArray = out.toByteArray()
+
+    private fun encodeText(text: String) {
+        var i = 0
+        while (i < text.length) {
+            val codePoint = text.codePointAt(i)
+            i += Character.charCount(codePoint)
+
+            when {
+                codePoint == '\n'.code -> out.write(LF.toInt())
+                codePoint in 0x20..0x7E -> out.write(codePoint)
+                codePoint in SUBSTITUTIONS -> out.write(SUBSTITUTIONS.getValue(codePoint))
+                Character.isSupplementaryCodePoint(codePoint) -> Unit // emoji etc.
+                else -> out.write(encodeCp437(codePoint.toChar()))
+            }
+        }
+    }
+
+    private fun encodeCp437(c: Char): Int {
+        val enc = encoder ?: return '?'.code
+        if (!enc.canEncode(c)) return '?'.code
+        return try {
+            enc.reset()
+            enc.encode(CharBuffer.wrap(charArrayOf(c))).get().toInt() and 0xFF
+        } catch (e: Exception) {
+            '?'.code
+        }
+    }
+
+    companion object {
+        private const val ESC: Byte = 0x1B
+        private const val GS: Byte = 0x1D
+        private const val LF: Byte = 0x0A
+
+        private const val RASTER_BAND_HEIGHT = 256
+
+        /** Byte-mode capacity of a version 40 symbol at level L. */
+        private const val QR_MAX_BYTES = 2953
+
+        private val CP437: Charset? = runCatching { Charset.forName("IBM437") }.getOrNull()
+
+        /** Characters the receipt uses that code page 437 cannot represent. */
+        private val SUBSTITUTIONS: Map<Int, ByteArray> = mapOf(
+            '€'.code to "EUR ".toByteArray(Charsets.US_ASCII),
+            '₿'.code to "BTC ".toByteArray(Charsets.US_ASCII),
+            '≈'.code to "~".toByteArray(Charsets.US_ASCII),
+            '×'.code to "x".toByteArray(Charsets.US_ASCII),
+            '✓'.code to byteArrayOf(0xFB.toByte()), // CP437 square-root tick
+            '⚡'.code to ByteArray(0),
+        )
+    }
+}
@@ -0,0 +1,93 @@
+package com.electricdreams.numo.core.printing
+
+import android.graphics.Bitmap
+import com.electricdreams.numo.core.util.ReceiptPrinter
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Renders [ReceiptPrinter.ReceiptData] straight to ESC/POS commands.
+ *
+ * The header (logo raster plus merchant block) is identical for every receipt of
+ * a shop, so it is rendered once and cached per merchant details and paper width.
+ * The body reuses the plain-text receipt layout, printed in font B which fits its
+ * 42 columns on 58mm paper. Cashu tokens are printed as a QR code with the
+ * printer's native QR encoder.
+ */
+class EscPosReceiptRenderer(
+    private val receiptPrinter: ReceiptPrinter,
+    private val paperWidthDots: Int,
+    private val logoProvider: () -> Bitmap?,
+) {
+
+    companion object {
+        /** Logo is printed at half the paper width. */
+        private const val LOGO_WIDTH_FRACTION = 2
+
+        private data class HeaderKey(
+            val merchantName: String,
+            val merchantAddress: String?,
+            val merchantVatNumber: String?,
+            val paperWidthDots: Int,
+        )
+
+        private val headerCache = ConcurrentHashMap<HeaderKey, ByteArray>()
+
+        @Volatile
+        private var logoCache: Pair<Int, MonoRaster?>? = null
+
+        /** Forget cached headers, e.g. after the merchant details changed. */
+        @JvmStatic
+        fun clearCache() {
+            headerCache.clear()
+            logoCache = null
+        }
+    }
+
+    fun render(data: ReceiptPrinter.ReceiptData): ByteArray {
+        val builder = EscPosBuilder()
+            .initialize()
+            .raw(header(data))
+            .align(EscPosBuilder.Align.LEFT)
+            .font(EscPosBuilder.Font.B)
+            .text(receiptPrinter.generateTextReceiptBody(data))
+
+        data.token?.takeIf { it.isNotEmpty() }?.let { token ->
+            builder.align(EscPosBuilder.Align.CENTER)
+            if (builder.qrCode(token)) {
+                builder.line()
+            }
+            builder.align(EscPosBuilder.Align.LEFT)
+        }
+
+        return builder
+            .feed(4)
+            .cut()
+            .build()
+    }
+
+    private fun header(data: ReceiptPrinter.ReceiptData): ByteArray {
+        val key = HeaderKey(data.merchantName, data.merchantAddress, data.merchantVatNumber, paperWidthDots)
+        return headerCache.getOrPut(key) {
+            val builder = EscPosBuilder(512).align(EscPosBuilder.Align.CENTER)
+            logo()?.let { builder.raster(it).line() }
+            builder
+                .font(EscPosBuilder.Font.A)
+                .bold(true)
+                .size(2, 2)
+                .line(data.merchantName)
+                .size(1, 1)
+                .bold(false)
+            data.merchantAddress?.let { builder.line(it) }
+            data.merchantVatNumber?.let { builder.line("VAT: $it") }
+            builder.line().build()
+        }
+    }
+
+    private fun logo(): MonoRaster? {
+        val maxWidth = paperWidthDots / LOGO_WIDTH_FRACTION
+        logoCache?.let { (width, raster) -> if (width == maxWidth) return raster }
+        val raster = logoProvider()?.let { MonoRaster.fromBitmap(it, maxWidth) }
+        logoCache = maxWidth to raster
+        return raster
+    }
+}
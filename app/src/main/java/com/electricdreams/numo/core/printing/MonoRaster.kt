@@ -0,0 +1,66 @@
+package com.electricdreams.numo.core.printing
+
+import android.graphics.Bitmap
+import android.graphics.Color
+
+/**
+ * A 1-bit raster image packed MSB-first, one row after another, in the layout
+ * expected by the ESC/POS `GS v 0` command (set bit = black dot).
+ */
+class MonoRaster(
+    val width: Int,
+    val height: Int,
+    val data: ByteArray,
+) {
+    val bytesPerRow: Int get() = (width + 7) / 8
+
+    init {
+        require(data.size == bytesPerRow * height) { "Raster data size does not match dimensions" }
+    }
+
+    companion object {
+        /** Luminance below which a pixel prints as a black dot. */
+        private const val THRESHOLD = 128
+
+        /**
+         * Convert a bitmap to a printable raster, scaling it down to at most
+         * [maxWidthDots] wide. Transparent pixels are treated as paper white.
+         */
+        @JvmStatic
+        fun fromBitmap(source: Bitmap, maxWidthDots: Int): MonoRaster {
+            val scaled = if (source.width > maxWidthDots) {
+                val height = (source.height.toLong() * maxWidthDots / source.width).toInt().coerceAtLeast(1)
+                Bitmap.createScaledBitmap(source, maxWidthDots, height, true)
+            } else {
+                source
+            }
+
+            val width = scaled.width
+            val height = scaled.height
+            val bytesPerRow = (width + 7) / 8
+            val data = ByteArray(bytesPerRow * height)
+            val pixels = IntArray(width)
+
+            for (y in 0 until height) {
+                scaled.getPixels(pixels, 0, width, 0, y, width, 1)
+                val rowOffset = y * bytesPerRow
+                for (x in 0 until width) {
+                    val pixel = pixels[x]
+                    val alpha = Color.alpha(pixel)
+                    // Composite over white, then take Rec. 601 luma
+                    val r = 255 - (255 - Color.red(pixel)) * alpha / 255
+                    val g = 255 - (255 - Color.green(pixel)) * alpha / 255
+                    val b = 255 - (255 - Color.blue(pixel)) * alpha / 255
+                    val luma = (r * 299 + g * 587 + b * 114) / 1000
+                    if (luma < THRESHOLD) {
+                        val index = rowOffset + (x shr 3)
+                        data[index] = (data[index].toInt() or (0x80 ushr (x and 7))).toByte()
+                    }
+                }
+            }
+
+            if (scaled !== source) scaled.recycle()
+            return MonoRaster(width, height, data)
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.electricdreams.numo.core.printing
+
+import java.io.Closeable
+import java.io.IOException
+import java.io.OutputStream
+import java.net.InetSocketAddress
+import java.net.Socket
+
+/**
+ * A byte sink for a receipt printer. Implementations keep their underlying
+ * transport open between jobs; [ReceiptPrintQueue] reopens them after failures.
+ */
+interface PrinterConnection : Closeable {
+    val isOpen: Boolean
+
+    @Throws(IOException::class)
+    fun open()
+
+    @Throws(IOException::class)
+    fun write(bytes: ByteArray)
+}
+
+/**
+ * Raw TCP connection to a network printer, typically on the JetDirect port 9100.
+ * Any local server socket can stand in for the printer in tests.
+ */
+class NetworkPrinterConnection(
+    private val host: String,
+    private val port: Int = DEFAULT_PORT,
+    private val connectTimeoutMs: Int = 5_000,
+) : PrinterConnection {
+
+    companion object {
+        const val DEFAULT_PORT = 9100
+    }
+
+    private var socket: Socket? = null
+    private var output: OutputStream? = null
+
+    override val isOpen: Boolean
+        get() = socket?.let { it.isConnected && !it.isClosed } ?: false
+
+    override fun open() {
+        if (isOpen) return
+        close()
+        val s = Socket()
+        try {
+            s.tcpNoDelay = true
+            // Detect printers that were power-cycled while the connection sat idle
+            s.keepAlive = true
+            s.connect(InetSocketAddress(host, port), connectTimeoutMs)
+        } catch (e: IOException) {
+            runCatching { s.close() }
+            throw e
+        }
+        socket = s
+        output = s.getOutputStream().buffered(8192)
+    }
+
+    override fun write(bytes: ByteArray) {
+        val out = output ?: throw IOException("Printer connection to $host:$port is not open")
+        out.write(bytes)
+        out.flush()
+    }
+
+    override fun close() {
+        runCatching { output?.close() }
+        runCatching { socket?.close() }
+        output = null
+        socket = null
+    }
+
+    override fun toString(): String = "$host:$port"
+}
@@ -0,0 +1,121 @@
+package com.electricdreams.numo.core.printing
+
+import android.util.Log
+import java.io.Closeable
+import java.io.IOException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * FIFO queue of print jobs sharing a single persistent printer connection.
+ *
+ * Jobs are rendered and written on one background thread, so receipts come out
+ * in the order they were queued and the connection is only touched from that
+ * thread. When a write fails the connection is reopened and the job retried,
+ * which transparently recovers from printers that dropped an idle socket.
+ */
+class ReceiptPrintQueue(
+    private val connectionFactory: () -> PrinterConnection,
+    private val maxAttempts: Int = 2,
+) : Closeable {
+
+    companion object {
+        private const val TAG = "ReceiptPrintQueue"
+
+        @Volatile
+        private var shared: ReceiptPrintQueue? = null
+        private var sharedTarget: String? = null
+
+        /**
+         * Get the process-wide queue for a network printer, replacing the previous
+         * one if the configured printer changed.
+         */
+        @JvmStatic
+        @Synchronized
+        fun forNetworkPrinter(host: String, port: Int): ReceiptPrintQueue {
+            val target = "$host:$port"
+            val current = shared
+            if (current != null && sharedTarget == target) {
+                return current
+            }
+            current?.close()
+            return ReceiptPrintQueue({ NetworkPrinterConnection(host, port) }).also {
+                shared = it
+                sharedTarget = target
+            }
+        }
+    }
+
+    /** Outcome of a queued job, delivered on the queue thread. */
+    fun interface Callback {
+        fun onComplete(jobName: String, error: Exception?)
+    }
+
+    private val executor: ExecutorService = Executors.newSingleThreadExecutor { runnable ->
+        Thread(runnable, TAG).apply { isDaemon = true }
+    }
+    private val pending = AtomicInteger(0)
+
+    // Confined to the executor thread
+    private var connection: PrinterConnection? = null
+
+    /** Number of jobs queued or currently printing. */
+    val pendingJobs: Int get() = pending.get()
+
+    /**
+     * Queue a job. [render] runs on the queue thread, keeping receipt rendering off
+     * the caller's (usually the main) thread.
+     */
+    fun enqueue(jobName: String, callback: Callback? = null, render: () -> ByteArray): Future<*> {
+        pending.incrementAndGet()
+        return executor.submit {
+            var error: Exception? = null
+            try {
+                val start = System.nanoTime()
+                val bytes = render()
+                send(bytes)
+                val elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                Log.d(TAG, "Printed '$jobName' (${bytes.size} bytes) in ${elapsedMs}ms")
+            } catch (e: Exception) {
+                Log.e(TAG, "Failed to print '$jobName': ${e.message}", e)
+                error = e
+            } finally {
+                pending.decrementAndGet()
+            }
+            callback?.onComplete(jobName, error)
+        }
+    }
+
+    private fun send(bytes: ByteArray) {
+        var lastError: IOException? = null
+        repeat(maxAttempts) { attempt ->
+            try {
+                val conn = connection ?: connectionFactory().also { connection = it }
+                if (!conn.isOpen) conn.open()
+                conn.write(bytes)
+                return
+            } catch (e: IOException) {
+                Log.w(TAG, "Printer write failed (attempt ${attempt + 1}/$maxAttempts): ${e.message}")
+                lastError = e
+                closeConnection()
+            }
+        }
+        throw lastError ?: IOException("Printer unavailable")
+    }
+
+    private fun closeConnection() {
+        runCatching { connection?.close() }
+        connection = null
+    }
+
+    /** Drop the connection after the queued jobs have been sent. */
+    @Synchronized
+    override fun close() {
+        if (executor.isShutdown) return
+        executor.execute { closeConnection() }
+        executor.shutdown()
+    }
+}
@@ -0,0 +1,46 @@
+package com.electricdreams.numo.core.printing
+
+import android.content.Context
+import android.content.SharedPreferences
+
+/**
+ * Manages the direct ESC/POS printer configuration.
+ * When no printer host is set, receipts go through the Android print framework.
+ */
+object ThermalPrinterPrefs {
+    private const val PREFS_NAME = "thermal_printer_prefs"
+    private const val KEY_HOST = "printer_host"
+    private const val KEY_PORT = "printer_port"
+    private const val KEY_PAPER_WIDTH_DOTS = "paper_width_dots"
+
+    /** Printable width of 58mm paper at 203 dpi. */
+    const val PAPER_58MM_DOTS = 384
+    /** Printable width of 80mm paper at 203 dpi. */
+    const val PAPER_80MM_DOTS = 576
+
+    private fun getPrefs(context: Context): SharedPreferences {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+    }
+
+    fun getHost(context: Context): String? {
+        return getPrefs(context).getString(KEY_HOST, null)?.takeIf { it.isNotBlank() }
+    }
+
+    fun getPort(context: Context): Int {
+        return getPrefs(context).getInt(KEY_PORT, NetworkPrinterConnection.DEFAULT_PORT)
+    }
+
+    fun getPaperWidthDots(context: Context): Int {
+        return getPrefs(context).getInt(KEY_PAPER_WIDTH_DOTS, PAPER_58MM_DOTS)
+    }
+
+    fun isConfigured(context: Context): Boolean = getHost(context) != null
+
+    fun setPrinter(context: Context, host: String?, port: Int, paperWidthDots: Int) {
+        getPrefs(context).edit()
+            .putString(KEY_HOST, host?.trim())
+            .putInt(KEY_PORT, port)
+            .putInt(KEY_PAPER_WIDTH_DOTS, paperWidthDots)
+            .apply()
+    }
+}
@@ -0,0 +1,168 @@
+package com.electricdreams.numo.core.startup
+
+import android.content.Context
+import android.os.SystemClock
+import com.electricdreams.numo.core.cashu.CashuWalletManager
+import com.electricdreams.numo.core.cashu.ReceivedProofIndex
+import com.electricdreams.numo.core.cashu.offline.OfflineAcceptance
+import com.electricdreams.numo.core.util.CurrencyManager
+import com.electricdreams.numo.core.util.ItemManager
+import com.electricdreams.numo.core.util.MintIconCache
+import com.electricdreams.numo.core.util.MintManager
+import com.electricdreams.numo.core.util.NumoLog
+import com.electricdreams.numo.core.util.SavedBasketManager
+import com.electricdreams.numo.core.worker.BitcoinPriceWorker
+import com.electricdreams.numo.feature.onboarding.OnboardingActivity
+import com.electricdreams.numo.nostr.SeenEventStore
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import kotlinx.coroutines.joinAll
+import kotlinx.coroutines.launch
+
+/**
+ * Warms up the app's singletons once per process, off the main thread.
+ *
+ * Each [Step] names the steps it depends on; steps without a dependency
+ * between them run in parallel. Activities that need a component before using
+ * it [await] its step instead of building it on the main thread themselves;
+ * the singletons' own `getInstance`/`init` stay safe to call at any time and
+ * simply return the instance built here.
+ *
+ * A failing step is logged and still counts as finished, so it never blocks
+ * its dependents. Callers that find its component missing after [await]
+ * initialize it themselves, as they did before AppStartup; for the wallet,
+ * ModernPOSActivity calls CashuWalletManager.init again, which rebuilds a
+ * wallet that failed to build.
+ *
+ * Steps that open the wallet are skipped until onboarding is complete: on a
+ * fresh install the seed does not exist yet, and opening the wallet here would
+ * generate one that onboarding then overwrites. OnboardingActivity opens them
+ * itself once the seed is stored.
+ */
+object AppStartup {
+
+    private const val TAG = "AppStartup"
+
+    const val MINTS = "mints"
+    const val CURRENCY = "currency"
+    const val MINT_ICONS = "mintIcons"
+    const val ITEM_CATALOG = "itemCatalog"
+    const val WALLET = "wallet"
+    const val OFFLINE_ACCEPTANCE = "offlineAcceptance"
+    const val PRICES = "prices"
+    const val BASKETS = "baskets"
+    const val RECEIVED_PROOFS = "receivedProofs"
+    const val SEEN_NOSTR_EVENTS = "seenNostrEvents"
+
+    /** @param needsSeed skipped until onboarding has stored the wallet seed */
+    private class Step(
+        val name: String,
+        val dependsOn: List<String>,
+        val needsSeed: Boolean = false,
+        val run: suspend (Context) -> Unit,
+    )
+
+    private class Timing(
+        val name: String,
+        val startMs: Long,
+        val durationMs: Long,
+        val failed: Boolean,
+        val skipped: Boolean,
+    )
+
+    private val steps = listOf(
+        Step(MINTS, emptyList()) { MintManager.getInstance(it) },
+        Step(CURRENCY, emptyList()) { CurrencyManager.getInstance(it) },
+        Step(MINT_ICONS, emptyList()) { MintIconCache.initialize(it) },
+        Step(ITEM_CATALOG, emptyList()) { ItemManager.getInstance(it) },
+        Step(WALLET, listOf(MINTS), needsSeed = true) {
+            CashuWalletManager.init(it)
+            CashuWalletManager.awaitInitialized()
+        },
+        Step(OFFLINE_ACCEPTANCE, listOf(MINTS), needsSeed = true) { OfflineAcceptance.init(it) },
+        Step(PRICES, listOf(CURRENCY)) { BitcoinPriceWorker.getInstance(it) },
+        Step(BASKETS, emptyList()) { SavedBasketManager.getInstance(it) },
+        Step(RECEIVED_PROOFS, emptyList()) { ReceivedProofIndex.init(it) },
+        Step(SEEN_NOSTR_EVENTS, emptyList()) { SeenEventStore.init(it) },
+    )
+
+    private val finished: Map<String, CompletableDeferred<Unit>> =
+        steps.associate { it.name to CompletableDeferred() }
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.Default)
+    private val timings = mutableListOf<Timing>()
+    private var started = false
+
+    /** Start all steps; called from the Application. Later calls have no effect. */
+    @Synchronized
+    fun start(context: Context) {
+        if (started) return
+        started = true
+        val appContext = context.applicationContext
+        val startedAt = SystemClock.elapsedRealtime()
+
+        val onboarded = scope.async(Dispatchers.IO) { OnboardingActivity.isOnboardingComplete(appContext) }
+
+        val jobs = steps.map { step ->
+            scope.launch(Dispatchers.IO) {
+                for (dependency in step.dependsOn) finished.getValue(dependency).await()
+                val stepStart = SystemClock.elapsedRealtime()
+                val skipped = step.name in skippedSteps(onboarded.await())
+                val failed = !skipped && try {
+                    step.run(appContext)
+                    false
+                } catch (e: Exception) {
+                    NumoLog.e(TAG, "Startup step ${step.name} failed: ${e.message}", e)
+                    true
+                }
+                val now = SystemClock.elapsedRealtime()
+                synchronized(timings) {
+                    timings += Timing(step.name, stepStart - startedAt, now - stepStart, failed, skipped)
+                }
+                finished.getValue(step.name).complete(Unit)
+            }
+        }
+
+        scope.launch {
+            jobs.joinAll()
+            NumoLog.i(TAG, trace(SystemClock.elapsedRealtime() - startedAt))
+        }
+    }
+
+    /** Suspend until [step] has finished, successfully or not. */
+    suspend fun await(step: String) {
+        finished[step]?.await() ?: throw IllegalArgumentException("Unknown startup step: $step")
+    }
+
+    fun isReady(step: String): Boolean = finished[step]?.isCompleted == true
+
+    /** Steps that do not run in a process started before onboarding completed. */
+    internal fun skippedSteps(onboarded: Boolean): Set<String> =
+        if (onboarded) emptySet() else steps.filter { it.needsSeed }.mapTo(mutableSetOf()) { it.name }
+
+    /** Dependencies of [step], as declared. */
+    internal fun dependenciesOf(step: String): List<String> =
+        steps.firstOrNull { it.name == step }?.dependsOn
+            ?: throw IllegalArgumentException("Unknown startup step: $step")
+
+    /** Names of all steps in declaration order. */
+    internal fun stepNames(): List<String> = steps.map { it.name }
+
+    /** One line per step in start order: offset from start, duration. */
+    private fun trace(totalMs: Long): String {
+        val lines = synchronized(timings) { timings.sortedBy { it.startMs } }
+        return buildString {
+            append("Startup finished in ").append(totalMs).append("ms")
+            for (timing in lines) {
+                append("\n  ").append(timing.name)
+                    .append(" +").append(timing.startMs).append("ms")
+                    .append(' ').append(timing.durationMs).append("ms")
+                if (timing.failed) append(" FAILED")
+                if (timing.skipped) append(" SKIPPED (onboarding)")
+            }
+        }
+    }
+}
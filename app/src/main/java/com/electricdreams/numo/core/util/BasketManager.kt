@@ -1,10 +1,15 @@
 package com.electricdreams.numo.core.util
 
 import com.electricdreams.numo.core.model.BasketItem
+import com.electricdreams.numo.core.model.BasketTotals
 import com.electricdreams.numo.core.model.Item
 
 /**
  * Manager class for handling the customer's basket.
+ *
+ * Totals are kept in a [BasketTotals] that every mutation updates by the
+ * changed line only, so the getters below are constant time. Items are copied
+ * when they enter the basket, fixing their price for as long as they stay.
  */
 class BasketManager private constructor() {
 
@@ -23,30 +28,39 @@ class BasketManager private constructor() {
     }
 
     private val basketItems: MutableList<BasketItem> = mutableListOf()
+    private var totals = BasketTotals()
 
     // ─────────────────────────────────────────────────────────────────────────────
     // Basket history (undo / redo)
     // ─────────────────────────────────────────────────────────────────────────────
-    private val undoStack: ArrayDeque<List<BasketItem>> = ArrayDeque()
-    private val redoStack: ArrayDeque<List<BasketItem>> = ArrayDeque()
+
+    /** A basket state in history, with its totals so restoring needs no re-summing. */
+    private class Snapshot(val items: List<BasketItem>, val totals: BasketTotals)
+
+    private val undoStack: ArrayDeque<Snapshot> = ArrayDeque()
+    private val redoStack: ArrayDeque<Snapshot> = ArrayDeque()
     private val maxHistorySize: Int = 100
 
-    private fun snapshot(): List<BasketItem> = basketItems.map { original ->
-        BasketItem(
-            item = original.item.copy(),
-            quantity = original.quantity,
-        )
-    }
+    private fun snapshot(): Snapshot = Snapshot(
+        items = basketItems.map { original ->
+            BasketItem(
+                item = original.item.copy(),
+                quantity = original.quantity,
+            )
+        },
+        totals = totals.copy(),
+    )
 
-    private fun restoreFromSnapshot(state: List<BasketItem>) {
+    private fun restoreFromSnapshot(state: Snapshot) {
         basketItems.clear()
         // Deep copy again so history snapshots remain immutable
-        basketItems.addAll(state.map { original ->
+        basketItems.addAll(state.items.map { original ->
             BasketItem(
                 item = original.item.copy(),
                 quantity = original.quantity,
             )
         })
+        totals = state.totals.copy()
     }
 
     /**
@@ -110,12 +124,15 @@ class BasketManager private constructor() {
             if (basketItem.item.id == item.id) {
                 // Increase quantity
                 basketItem.quantity += quantity
+                totals.apply(basketItem.item, quantity)
                 return
             }
         }
 
         // If not in basket, add new entry
-        basketItems.add(BasketItem(item, quantity))
+        val basketItem = BasketItem(item.copy(), quantity)
+        basketItems.add(basketItem)
+        totals.apply(basketItem.item, quantity, lineAdded = true)
     }
 
     /**
@@ -133,6 +150,7 @@ class BasketManager private constructor() {
 
         for (basketItem in basketItems) {
             if (basketItem.item.id == itemId) {
+                totals.apply(basketItem.item, quantity - basketItem.quantity)
                 basketItem.quantity = quantity
                 return true
             }
@@ -158,6 +176,7 @@ class BasketManager private constructor() {
             val basketItem = iterator.next()
             if (basketItem.item.id == itemId) {
                 iterator.remove()
+                totals.apply(basketItem.item, -basketItem.quantity, lineRemoved = true)
                 return true
             }
         }
@@ -172,82 +191,46 @@ class BasketManager private constructor() {
             captureStateForUndo()
         }
         basketItems.clear()
+        totals.reset()
     }
 
     /**
      * Get the total number of items in the basket.
      */
-    fun getTotalItemCount(): Int {
-        var count = 0
-        for (item in basketItems) {
-            count += item.quantity
-        }
-        return count
-    }
+    fun getTotalItemCount(): Int = totals.totalItemCount
 
     /**
-     * Calculate the total fiat price of all items in the basket.
+     * Total fiat price of all items in the basket including VAT, in cents.
      * Only includes items priced in fiat.
      */
-    fun getTotalPrice(): Double {
-        var total = 0.0
-        for (item in basketItems) {
-            if (!item.isSatsPrice()) {
-                total += item.getTotalPrice()
-            }
-        }
-        return total
-    }
-    
+    fun getTotalFiatCents(): Long = totals.fiatGrossTotalCents
+
+    /**
+     * Total fiat price of all items in the basket in major units.
+     * Only includes items priced in fiat; see [getTotalFiatCents].
+     */
+    fun getTotalPrice(): Double = totals.fiatGrossTotalCents / 100.0
+
     /**
      * Calculate the total sats price of all items in the basket.
      * Only includes items priced in sats.
      */
-    fun getTotalSatsDirectPrice(): Long {
-        var total = 0L
-        for (item in basketItems) {
-            if (item.isSatsPrice()) {
-                total += item.getTotalSats()
-            }
-        }
-        return total
-    }
+    fun getTotalSatsDirectPrice(): Long = totals.satsDirectTotal
 
     /**
      * Calculate the total price in satoshis (combining fiat and sats priced items).
+     * Fiat is converted from its total in cents and rounded down to whole sats.
      * @param btcPrice Current BTC price in fiat.
      */
-    fun getTotalSatoshis(btcPrice: Double): Long {
-        // Start with items already priced in sats
-        var totalSats = getTotalSatsDirectPrice()
-        
-        // Convert fiat items to sats if we have a valid BTC price
-        val fiatTotal = getTotalPrice()
-        if (fiatTotal > 0 && btcPrice > 0) {
-            val btcAmount = fiatTotal / btcPrice
-            totalSats += (btcAmount * 100_000_000L).toLong()
-        }
-        
-        return totalSats
-    }
-    
+    fun getTotalSatoshis(btcPrice: Double): Long = totals.totalSatoshis(btcPrice)
+
+    /**
+     * VAT on fiat items in cents, by rate.
+     */
+    fun getVatBreakdown(): Map<Int, Long> = totals.vatBreakdown
+
     /**
      * Check if the basket contains items with mixed price types (both fiat and sats).
      */
-    fun hasMixedPriceTypes(): Boolean {
-        var hasFiat = false
-        var hasSats = false
-        
-        for (item in basketItems) {
-            if (item.isSatsPrice()) {
-                hasSats = true
-            } else {
-                hasFiat = true
-            }
-            
-            if (hasFiat && hasSats) return true
-        }
-        
-        return false
-    }
+    fun hasMixedPriceTypes(): Boolean = totals.hasMixedPriceTypes
 }
@@ -0,0 +1,482 @@
+package com.electricdreams.numo.core.util
+
+import android.util.Log
+import com.electricdreams.numo.core.data.JsonFile
+import com.electricdreams.numo.core.model.BasketItem
+import com.electricdreams.numo.core.model.BasketStatus
+import com.electricdreams.numo.core.model.Item
+import com.electricdreams.numo.core.model.PriceType
+import com.electricdreams.numo.core.model.SavedBasket
+import org.json.JSONArray
+import org.json.JSONException
+import org.json.JSONObject
+import java.io.File
+import java.io.IOException
+import java.util.Calendar
+import java.util.Locale
+import java.util.TimeZone
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+/**
+ * On-disk store behind [SavedBasketManager].
+ *
+ * Active baskets are one file each under `active/`, so editing a basket
+ * rewrites only that basket. Paid baskets go to monthly archive segments
+ * (`archive/yyyy-MM.json`, by paid date) described by a small index of
+ * id, payment id and date. Only the index stays in memory; segments are read
+ * when a page or basket needs them, and only the touched segment is rewritten.
+ * Segments older than [ARCHIVE_RETENTION_MONTHS] are dropped when the store
+ * is opened, and a missing or stale index is rebuilt from the segments.
+ *
+ * All file access runs on one background thread: writes are queued like
+ * `SharedPreferences.apply()`, reads wait for earlier writes.
+ */
+internal class BasketStore(dir: File) {
+
+    /** Index entry of one archived basket. */
+    private class Entry(val id: String, val paymentId: String?, val sortAt: Long, val segment: String)
+
+    private val activeDir = File(dir, ACTIVE_DIR)
+    private val archiveDir = File(dir, ARCHIVE_DIR)
+    private val indexFile = JsonFile(File(archiveDir, INDEX_FILE))
+    private val io: ExecutorService = Executors.newSingleThreadExecutor { r ->
+        Thread(r, "BasketStore").apply { isDaemon = true }
+    }
+
+    /** Newest first. */
+    private val entries = ArrayList<Entry>()
+    private val byId = HashMap<String, Entry>()
+    private val byPaymentId = HashMap<String, Entry>()
+
+    /** Writes that failed since the last [flush]; only touched on [io]. */
+    private var failedWrites = 0
+
+    /** Recently read segments; the segment being written is always current here. */
+    private val segments = object : LinkedHashMap<String, MutableList<SavedBasket>>(4, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, MutableList<SavedBasket>>?): Boolean =
+            size > SEGMENT_CACHE_SIZE
+    }
+
+    init {
+        activeDir.mkdirs()
+        archiveDir.mkdirs()
+        onIo { openArchive(System.currentTimeMillis()) }
+    }
+
+    // ----- Active baskets -----
+
+    fun loadActive(): List<SavedBasket> = onIo {
+        val files = activeDir.listFiles { file -> file.name.endsWith(JSON_SUFFIX) } ?: emptyArray()
+        files.mapNotNull { file ->
+            try {
+                JsonFile(file).readObject()?.let { SavedBasketJson.fromJson(it) }
+            } catch (e: Exception) {
+                Log.e(TAG, "Skipping unreadable basket ${file.name}: ${e.message}")
+                null
+            }
+        }.sortedBy { it.createdAt }
+    }
+
+    fun putActive(basket: SavedBasket) {
+        val bytes = SavedBasketJson.toJson(basket).toString().toByteArray(Charsets.UTF_8)
+        io.execute { write(JsonFile(activeFile(basket.id)), bytes) }
+    }
+
+    fun removeActive(id: String) {
+        io.execute { JsonFile(activeFile(id)).delete() }
+    }
+
+    // ----- Legacy import -----
+
+    /**
+     * Import active baskets from a JSON array in the old SharedPreferences
+     * format. Returns true only once every basket is on disk.
+     */
+    fun importActive(json: String): Boolean {
+        try {
+            val array = JSONArray(json)
+            for (i in 0 until array.length()) putActive(SavedBasketJson.fromJson(array.getJSONObject(i)))
+        } catch (e: JSONException) {
+            Log.e(TAG, "Failed to import saved baskets: ${e.message}", e)
+            flush()
+            return false
+        }
+        return flush()
+    }
+
+    /**
+     * Import archived baskets from a JSON array in the old SharedPreferences
+     * format. Returns true only once the segments and the index are on disk.
+     */
+    fun importArchived(json: String): Boolean {
+        try {
+            val array = JSONArray(json)
+            archiveAll((0 until array.length()).map { SavedBasketJson.fromJson(array.getJSONObject(it)) })
+        } catch (e: JSONException) {
+            Log.e(TAG, "Failed to import archived baskets: ${e.message}", e)
+            flush()
+            return false
+        }
+        return flush()
+    }
+
+    /**
+     * Wait for all queued writes. Returns false if any write since the last
+     * flush failed.
+     */
+    fun flush(): Boolean = onIo {
+        val ok = failedWrites == 0
+        failedWrites = 0
+        ok
+    }
+
+    // ----- Archive -----
+
+    @Synchronized
+    fun archivedCount(): Int = entries.size
+
+    /** Position of [id] in the archive, newest first, or -1. */
+    @Synchronized
+    fun archivedPosition(id: String): Int {
+        val entry = byId[id] ?: return -1
+        return entries.indexOf(entry)
+    }
+
+    @Synchronized
+    fun getArchived(id: String): SavedBasket? {
+        val entry = byId[id] ?: return null
+        return segment(entry.segment).find { it.id == id }
+    }
+
+    @Synchronized
+    fun getArchivedByPaymentId(paymentId: String): SavedBasket? {
+        val entry = byPaymentId[paymentId] ?: return null
+        return segment(entry.segment).find { it.id == entry.id }
+    }
+
+    /** Up to [limit] archived baskets starting at [offset], newest first. */
+    @Synchronized
+    fun archivedPage(offset: Int, limit: Int): List<SavedBasket> {
+        if (offset >= entries.size || limit <= 0) return emptyList()
+        val page = entries.subList(offset, minOf(entries.size, offset + limit))
+        return page.mapNotNull { entry -> segment(entry.segment).find { it.id == entry.id } }
+    }
+
+    /** Add a paid basket to the archive segment of its paid date. */
+    fun archive(basket: SavedBasket) = archiveAll(listOf(basket))
+
+    /** Add paid baskets to the archive, writing each touched segment once. */
+    @Synchronized
+    fun archiveAll(baskets: Collection<SavedBasket>) {
+        if (baskets.isEmpty()) return
+        // Held here rather than in the cache, which may evict them mid-import
+        val touched = LinkedHashMap<String, MutableList<SavedBasket>>()
+        for (basket in baskets) {
+            byId[basket.id]?.let { old ->
+                touched.getOrPut(old.segment) { segment(old.segment) }.removeAll { it.id == basket.id }
+                removeEntry(old)
+            }
+            val sortAt = sortTime(basket)
+            val key = segmentKey(sortAt)
+            touched.getOrPut(key) { segment(key) }.add(basket)
+            addEntry(Entry(basket.id, basket.paymentId, sortAt, key))
+        }
+        for ((key, list) in touched) {
+            segments[key] = list
+            writeSegment(key, list)
+        }
+        writeIndex()
+    }
+
+    /** Persist changes to an archived basket, e.g. a new name. */
+    @Synchronized
+    fun updateArchived(basket: SavedBasket) {
+        val entry = byId[basket.id] ?: return
+        val baskets = segment(entry.segment)
+        val index = baskets.indexOfFirst { it.id == basket.id }
+        if (index < 0) return
+        baskets[index] = basket
+        writeSegment(entry.segment, baskets)
+    }
+
+    @Synchronized
+    fun deleteArchived(id: String): Boolean {
+        val entry = byId[id] ?: return false
+        val baskets = segment(entry.segment)
+        baskets.removeAll { it.id == id }
+        removeEntry(entry)
+        writeSegment(entry.segment, baskets)
+        writeIndex()
+        return true
+    }
+
+    // ----- Internals -----
+
+    private fun addEntry(entry: Entry) {
+        // Keep newest first; new baskets almost always land at the front
+        var position = 0
+        while (position < entries.size && entries[position].sortAt > entry.sortAt) position++
+        entries.add(position, entry)
+        byId[entry.id] = entry
+        entry.paymentId?.let { byPaymentId[it] = entry }
+    }
+
+    private fun removeEntry(entry: Entry) {
+        entries.remove(entry)
+        byId.remove(entry.id)
+        entry.paymentId?.let { if (byPaymentId[it] === entry) byPaymentId.remove(it) }
+    }
+
+    private fun segment(key: String): MutableList<SavedBasket> {
+        segments[key]?.let { return it }
+        val loaded = onIo { readSegment(key) }
+        segments[key] = loaded
+        return loaded
+    }
+
+    private fun writeSegment(key: String, baskets: List<SavedBasket>) {
+        val file = JsonFile(segmentFile(key))
+        if (baskets.isEmpty()) {
+            io.execute { file.delete() }
+            return
+        }
+        val array = JSONArray()
+        baskets.forEach { array.put(SavedBasketJson.toJson(it)) }
+        val bytes = array.toString().toByteArray(Charsets.UTF_8)
+        io.execute { write(file, bytes) }
+    }
+
+    private fun writeIndex() {
+        val array = JSONArray()
+        for (entry in entries) {
+            array.put(
+                JSONObject()
+                    .put("id", entry.id)
+                    .put("paymentId", entry.paymentId ?: JSONObject.NULL)
+                    .put("sortAt", entry.sortAt)
+                    .put("segment", entry.segment),
+            )
+        }
+        val bytes = array.toString().toByteArray(Charsets.UTF_8)
+        io.execute { write(indexFile, bytes) }
+    }
+
+    /** Runs on [io] from the constructor. */
+    private fun openArchive(now: Long) {
+        val segmentKeys = archiveDir.list()
+            ?.filter { it.endsWith(JSON_SUFFIX) && it != INDEX_FILE }
+            ?.map { it.removeSuffix(JSON_SUFFIX) }
+            ?.toMutableSet()
+            ?: mutableSetOf()
+
+        // Retention: drop whole segments past the cutoff
+        val cutoff = segmentKey(monthsBefore(now, ARCHIVE_RETENTION_MONTHS))
+        val expired = segmentKeys.filter { it < cutoff }
+        for (key in expired) {
+            JsonFile(segmentFile(key)).delete()
+            segmentKeys.remove(key)
+            Log.i(TAG, "Dropped archive segment $key past retention")
+        }
+
+        val loaded = readIndex()
+        val consistent = loaded != null && loaded.mapTo(HashSet()) { it.segment } == segmentKeys
+        val index = if (consistent) loaded!! else rebuildIndex(segmentKeys)
+
+        synchronized(this) {
+            index.sortedByDescending { it.sortAt }.forEach { entry ->
+                entries.add(entry)
+                byId[entry.id] = entry
+                entry.paymentId?.let { byPaymentId[it] = entry }
+            }
+        }
+        if (!consistent || expired.isNotEmpty()) {
+            synchronized(this) { writeIndex() }
+        }
+        Log.d(TAG, "Opened basket archive: ${index.size} baskets in ${segmentKeys.size} segments")
+    }
+
+    private fun rebuildIndex(segmentKeys: Collection<String>): List<Entry> {
+        Log.i(TAG, "Rebuilding basket archive index from ${segmentKeys.size} segments")
+        return segmentKeys.flatMap { key ->
+            readSegment(key).map { Entry(it.id, it.paymentId, sortTime(it), key) }
+        }
+    }
+
+    private fun readIndex(): List<Entry>? {
+        return try {
+            val array = indexFile.readArray() ?: return null
+            (0 until array.length()).map { i ->
+                val obj = array.getJSONObject(i)
+                Entry(
+                    id = obj.getString("id"),
+                    paymentId = if (obj.isNull("paymentId")) null else obj.getString("paymentId"),
+                    sortAt = obj.getLong("sortAt"),
+                    segment = obj.getString("segment"),
+                )
+            }
+        } catch (e: JSONException) {
+            Log.e(TAG, "Corrupt basket archive index: ${e.message}")
+            null
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to read basket archive index: ${e.message}")
+            null
+        }
+    }
+
+    private fun readSegment(key: String): MutableList<SavedBasket> {
+        return try {
+            val array = JsonFile(segmentFile(key)).readArray() ?: return mutableListOf()
+            (0 until array.length()).mapTo(mutableListOf()) { SavedBasketJson.fromJson(array.getJSONObject(it)) }
+        } catch (e: JSONException) {
+            Log.e(TAG, "Corrupt archive segment $key: ${e.message}")
+            mutableListOf()
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to read archive segment $key: ${e.message}")
+            mutableListOf()
+        }
+    }
+
+    private fun write(file: JsonFile, bytes: ByteArray) {
+        try {
+            file.write(bytes)
+        } catch (e: IOException) {
+            failedWrites++
+            Log.e(TAG, "Failed to write ${file.file.name}: ${e.message}", e)
+        }
+    }
+
+    private fun <T> onIo(block: () -> T): T = io.submit(block).get()
+
+    private fun activeFile(id: String) = File(activeDir, id + JSON_SUFFIX)
+
+    private fun segmentFile(key: String) = File(archiveDir, key + JSON_SUFFIX)
+
+    private fun sortTime(basket: SavedBasket): Long = basket.paidAt ?: basket.updatedAt
+
+    private fun segmentKey(time: Long): String {
+        val calendar = Calendar.getInstance(UTC).apply { timeInMillis = time }
+        return String.format(
+            Locale.US,
+            "%04d-%02d",
+            calendar.get(Calendar.YEAR),
+            calendar.get(Calendar.MONTH) + 1,
+        )
+    }
+
+    private fun monthsBefore(time: Long, months: Int): Long =
+        Calendar.getInstance(UTC).apply {
+            timeInMillis = time
+            add(Calendar.MONTH, -months)
+        }.timeInMillis
+
+    companion object {
+        private const val TAG = "BasketStore"
+        private const val ACTIVE_DIR = "active"
+        private const val ARCHIVE_DIR = "archive"
+        private const val INDEX_FILE = "index.json"
+        private const val JSON_SUFFIX = ".json"
+        private const val SEGMENT_CACHE_SIZE = 3
+
+        /** Paid baskets older than this are removed from the archive. */
+        const val ARCHIVE_RETENTION_MONTHS = 24
+
+        private val UTC: TimeZone = TimeZone.getTimeZone("UTC")
+    }
+}
+
+/** JSON form of [SavedBasket], shared by the store and the legacy preferences import. */
+internal object SavedBasketJson {
+
+    fun toJson(basket: SavedBasket): JSONObject {
+        return JSONObject().apply {
+            put("id", basket.id)
+            put("name", basket.name ?: JSONObject.NULL)
+            put("createdAt", basket.createdAt)
+            put("updatedAt", basket.updatedAt)
+            put("status", basket.status.name)
+            put("paymentId", basket.paymentId ?: JSONObject.NULL)
+            put("paidAt", basket.paidAt ?: JSONObject.NULL)
+            put("items", JSONArray().apply {
+                basket.items.forEach { item ->
+                    put(basketItemToJson(item))
+                }
+            })
+        }
+    }
+
+    fun fromJson(json: JSONObject): SavedBasket {
+        val itemsArray = json.getJSONArray("items")
+        val items = mutableListOf<BasketItem>()
+        for (i in 0 until itemsArray.length()) {
+            items.add(basketItemFromJson(itemsArray.getJSONObject(i)))
+        }
+
+        return SavedBasket(
+            id = json.getString("id"),
+            name = if (json.isNull("name")) null else json.getString("name"),
+            createdAt = json.getLong("createdAt"),
+            updatedAt = json.getLong("updatedAt"),
+            status = try {
+                BasketStatus.valueOf(json.optString("status", "ACTIVE"))
+            } catch (e: Exception) {
+                BasketStatus.ACTIVE
+            },
+            paymentId = if (json.isNull("paymentId")) null else json.optString("paymentId"),
+            paidAt = if (json.isNull("paidAt")) null else json.optLong("paidAt"),
+            items = items
+        )
+    }
+
+    private fun basketItemToJson(basketItem: BasketItem): JSONObject {
+        return JSONObject().apply {
+            put("quantity", basketItem.quantity)
+            put("item", itemToJson(basketItem.item))
+        }
+    }
+
+    private fun basketItemFromJson(json: JSONObject): BasketItem {
+        return BasketItem(
+            quantity = json.getInt("quantity"),
+            item = itemFromJson(json.getJSONObject("item"))
+        )
+    }
+
+    private fun itemToJson(item: Item): JSONObject {
+        return JSONObject().apply {
+            put("id", item.id ?: JSONObject.NULL)
+            put("uuid", item.uuid)
+            put("name", item.name ?: JSONObject.NULL)
+            put("variationName", item.variationName ?: JSONObject.NULL)
+            put("sku", item.sku ?: JSONObject.NULL)
+            put("description", item.description ?: JSONObject.NULL)
+            put("category", item.category ?: JSONObject.NULL)
+            put("gtin", item.gtin ?: JSONObject.NULL)
+            put("price", item.price)
+            put("priceSats", item.priceSats)
+            put("priceType", item.priceType.name)
+            put("vatEnabled", item.vatEnabled)
+            put("vatRate", item.vatRate)
+            put("imagePath", item.imagePath ?: JSONObject.NULL)
+        }
+    }
+
+    private fun itemFromJson(json: JSONObject): Item {
+        return Item(
+            id = if (json.isNull("id")) null else json.getString("id"),
+            uuid = json.optString("uuid", java.util.UUID.randomUUID().toString()),
+            name = if (json.isNull("name")) null else json.getString("name"),
+            variationName = if (json.isNull("variationName")) null else json.optString("variationName"),
+            sku = if (json.isNull("sku")) null else json.optString("sku"),
+            description = if (json.isNull("description")) null else json.optString("description"),
+            category = if (json.isNull("category")) null else json.optString("category"),
+            gtin = if (json.isNull("gtin")) null else json.optString("gtin"),
+            price = json.optDouble("price", 0.0),
+            priceSats = json.optLong("priceSats", 0L),
+            priceType = try { PriceType.valueOf(json.optString("priceType", "FIAT")) } catch (e: Exception) { PriceType.FIAT },
+            vatEnabled = json.optBoolean("vatEnabled", false),
+            vatRate = json.optInt("vatRate", 0),
+            imagePath = if (json.isNull("imagePath")) null else json.optString("imagePath")
+        )
+    }
+}
@@ -98,11 +98,6 @@ class CurrencyManager private constructor(context: Context) {
         }
     }
 
-    /** Get the Coinbase API URL for the current currency. */
-    fun getCoinbaseApiUrl(): String {
-        return "https://api.coinbase.com/v2/prices/BTC-$currentCurrency/spot"
-    }
-
     /**
      * Format a currency amount with the appropriate symbol using Amount class.
      */
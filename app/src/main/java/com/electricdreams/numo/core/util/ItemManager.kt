@@ -1,34 +1,61 @@
 package com.electricdreams.numo.core.util
 
 import android.content.Context
+import android.content.SharedPreferences
 import android.graphics.Bitmap
 import android.graphics.BitmapFactory
 import android.net.Uri
-import android.text.TextUtils
 import android.util.Log
+import com.electricdreams.numo.core.catalog.CatalogColumn
+import com.electricdreams.numo.core.catalog.CatalogCsvReader
+import com.electricdreams.numo.core.catalog.CatalogCsvWriter
+import com.electricdreams.numo.core.data.KeyValueStore
 import com.electricdreams.numo.core.model.Item
 import org.json.JSONArray
 import org.json.JSONException
 import org.json.JSONObject
-import java.io.BufferedReader
 import java.io.File
 import java.io.FileOutputStream
-import java.io.FileReader
 import java.io.IOException
 import java.io.InputStream
+import java.io.Reader
+import java.io.Writer
+import java.util.Collections
+import java.util.IdentityHashMap
+import java.util.Locale
 import java.util.UUID
 
 /**
  * Manager class for handling the merchant's catalog items.
  *
+ * Each item is stored under its own key, with the display order kept
+ * separately, so an edit writes one item rather than the whole catalog.
+ * SKU and GTIN lookups go through an index that is rebuilt after changes.
+ *
  * Kotlin version of the original Java ItemManager.
  */
 class ItemManager private constructor(context: Context) {
 
+    /** Outcome of [importItems]: rows that created or updated an item, rows passed over, items dropped. */
+    data class ImportResult(val added: Int, val updated: Int, val skipped: Int, val removed: Int) {
+        val imported: Int get() = added + updated
+    }
+
+    /** Told the running count of imported rows after each batch, on the importing thread. */
+    fun interface ImportProgress {
+        fun onProgress(rowsImported: Int)
+    }
+
     companion object {
         private const val TAG = "ItemManager"
         private const val PREFS_NAME = "ItemManagerPrefs"
+        /** Where older versions kept the whole catalog as one JSON array. */
         private const val KEY_ITEM_LIST = "items_list"
+        private const val KEY_ITEM_ORDER = "items_order"
+        private const val ITEM_KEY_PREFIX = "item:"
+
+        /** Rows imported per store write (and per progress callback). */
+        const val IMPORT_BATCH_SIZE = 500
 
         @Volatile
         private var instance: ItemManager? = null
@@ -41,140 +68,209 @@ class ItemManager private constructor(context: Context) {
             }
             return instance as ItemManager
         }
+
+        private fun indexKey(value: String): String = value.trim().lowercase(Locale.ROOT)
     }
 
     private val context: Context = context.applicationContext
-    private val prefs = this.context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+    private val prefs = KeyValueStore.open(this.context, PREFS_NAME)
     private val items: MutableList<Item> = mutableListOf()
 
+    // First item (in catalog order) per lowercased SKU / GTIN
+    private val skuIndex = HashMap<String, Item>()
+    private val gtinIndex = HashMap<String, Item>()
+    private var indexStale = true
+
     init {
         loadItems()
     }
 
     /**
-     * Load items from SharedPreferences.
+     * Load items from the store, moving a catalog saved as one JSON array
+     * over to per-item keys.
      */
     private fun loadItems() {
         items.clear()
-        val itemsJson = prefs.getString(KEY_ITEM_LIST, "")
+        val legacyJson = prefs.getString(KEY_ITEM_LIST, null)
+        if (legacyJson != null) {
+            migrateItemList(legacyJson)
+            return
+        }
 
-        if (!itemsJson.isNullOrEmpty()) {
+        val byId = LinkedHashMap<String, Item>()
+        for ((key, value) in prefs.all) {
+            if (!key.startsWith(ITEM_KEY_PREFIX) || value !is String) continue
             try {
-                val array = JSONArray(itemsJson)
-                for (i in 0 until array.length()) {
-                    val obj = array.getJSONObject(i)
-                    val item = Item().apply {
-                        id = obj.getString("id")
-                        name = obj.getString("name")
-                        price = obj.getDouble("price")
-
-                        // UUID - generate if missing (migration for old items)
-                        uuid = if (!obj.isNull("uuid")) {
-                            obj.getString("uuid")
-                        } else {
-                            UUID.randomUUID().toString()
-                        }
-
-                        if (!obj.isNull("variationName")) {
-                            variationName = obj.getString("variationName")
-                        }
-                        if (!obj.isNull("sku")) {
-                            sku = obj.getString("sku")
-                        }
-                        if (!obj.isNull("description")) {
-                            description = obj.getString("description")
-                        }
-                        if (!obj.isNull("category")) {
-                            category = obj.getString("category")
-                        }
-                        if (!obj.isNull("gtin")) {
-                            gtin = obj.getString("gtin")
-                        }
-                        if (!obj.isNull("quantity")) {
-                            quantity = obj.getInt("quantity")
-                        }
-                        if (!obj.isNull("alertEnabled")) {
-                            alertEnabled = obj.getBoolean("alertEnabled")
-                        }
-                        if (!obj.isNull("alertThreshold")) {
-                            alertThreshold = obj.getInt("alertThreshold")
-                        }
-                        if (!obj.isNull("imagePath")) {
-                            imagePath = obj.getString("imagePath")
-                        }
-                        // New fields for sats/fiat pricing
-                        if (!obj.isNull("priceSats")) {
-                            priceSats = obj.getLong("priceSats")
-                        }
-                        if (!obj.isNull("priceType")) {
-                            priceType = try {
-                                com.electricdreams.numo.core.model.PriceType.valueOf(obj.getString("priceType"))
-                            } catch (e: IllegalArgumentException) {
-                                com.electricdreams.numo.core.model.PriceType.FIAT
-                            }
-                        }
-                        if (!obj.isNull("trackInventory")) {
-                            trackInventory = obj.getBoolean("trackInventory")
-                        }
-                        // VAT fields
-                        if (!obj.isNull("vatEnabled")) {
-                            vatEnabled = obj.getBoolean("vatEnabled")
-                        }
-                        if (!obj.isNull("vatRate")) {
-                            vatRate = obj.getInt("vatRate")
-                        }
-                    }
-
-                    items.add(item)
-                }
-
-                Log.d(TAG, "Loaded ${items.size} items from storage")
+                byId[key.substring(ITEM_KEY_PREFIX.length)] = itemFromJson(JSONObject(value))
             } catch (e: JSONException) {
-                Log.e(TAG, "Error loading items: ${e.message}", e)
+                Log.e(TAG, "Error loading item $key: ${e.message}", e)
+            }
+        }
+        val order = prefs.getString(KEY_ITEM_ORDER, null)
+        if (!order.isNullOrEmpty()) {
+            for (id in order.split('\n')) {
+                byId.remove(id)?.let { items.add(it) }
             }
         }
+        // Items written by an import that stopped before storing the order
+        items.addAll(byId.values)
+        Log.d(TAG, "Loaded ${items.size} items from storage")
     }
 
-    /**
-     * Save items to SharedPreferences.
-     */
-    private fun saveItems() {
+    private fun migrateItemList(itemsJson: String) {
         try {
-            val array = JSONArray()
-            for (item in items) {
-                val obj = JSONObject().apply {
-                    put("id", item.id)
-                    put("uuid", item.uuid)
-                    put("name", item.name)
-                    put("price", item.price)
-
-                    item.variationName?.let { put("variationName", it) }
-                    item.sku?.let { put("sku", it) }
-                    item.description?.let { put("description", it) }
-                    item.category?.let { put("category", it) }
-                    item.gtin?.let { put("gtin", it) }
-
-                    put("quantity", item.quantity)
-                    put("alertEnabled", item.alertEnabled)
-                    put("alertThreshold", item.alertThreshold)
-                    item.imagePath?.let { put("imagePath", it) }
-                    
-                    // New fields for sats/fiat pricing
-                    put("priceSats", item.priceSats)
-                    put("priceType", item.priceType.name)
-                    put("trackInventory", item.trackInventory)
-                    
-                    // VAT fields
-                    put("vatEnabled", item.vatEnabled)
-                    put("vatRate", item.vatRate)
-                }
-                array.put(obj)
+            val array = JSONArray(itemsJson)
+            for (i in 0 until array.length()) {
+                items.add(itemFromJson(array.getJSONObject(i)))
+            }
+        } catch (e: JSONException) {
+            // Leave the old list in place rather than lose what did not parse
+            Log.e(TAG, "Error loading items: ${e.message}", e)
+            return
+        }
+        val editor = prefs.edit().remove(KEY_ITEM_LIST)
+        for (item in items) putItem(editor, item)
+        putOrder(editor)
+        editor.apply()
+        Log.d(TAG, "Moved ${items.size} items to per-item storage")
+    }
+
+    private fun itemFromJson(obj: JSONObject): Item = Item().apply {
+        id = obj.getString("id")
+        name = obj.getString("name")
+        price = obj.getDouble("price")
+
+        // UUID - generate if missing (migration for old items)
+        uuid = if (!obj.isNull("uuid")) {
+            obj.getString("uuid")
+        } else {
+            UUID.randomUUID().toString()
+        }
+
+        if (!obj.isNull("variationName")) {
+            variationName = obj.getString("variationName")
+        }
+        if (!obj.isNull("sku")) {
+            sku = obj.getString("sku")
+        }
+        if (!obj.isNull("description")) {
+            description = obj.getString("description")
+        }
+        if (!obj.isNull("category")) {
+            category = obj.getString("category")
+        }
+        if (!obj.isNull("gtin")) {
+            gtin = obj.getString("gtin")
+        }
+        if (!obj.isNull("quantity")) {
+            quantity = obj.getInt("quantity")
+        }
+        if (!obj.isNull("alertEnabled")) {
+            alertEnabled = obj.getBoolean("alertEnabled")
+        }
+        if (!obj.isNull("alertThreshold")) {
+            alertThreshold = obj.getInt("alertThreshold")
+        }
+        if (!obj.isNull("imagePath")) {
+            imagePath = obj.getString("imagePath")
+        }
+        // New fields for sats/fiat pricing
+        if (!obj.isNull("priceSats")) {
+            priceSats = obj.getLong("priceSats")
+        }
+        if (!obj.isNull("priceType")) {
+            priceType = try {
+                com.electricdreams.numo.core.model.PriceType.valueOf(obj.getString("priceType"))
+            } catch (e: IllegalArgumentException) {
+                com.electricdreams.numo.core.model.PriceType.FIAT
             }
+        }
+        if (!obj.isNull("trackInventory")) {
+            trackInventory = obj.getBoolean("trackInventory")
+        }
+        // VAT fields
+        if (!obj.isNull("vatEnabled")) {
+            vatEnabled = obj.getBoolean("vatEnabled")
+        }
+        if (!obj.isNull("vatRate")) {
+            vatRate = obj.getInt("vatRate")
+        }
+    }
 
-            prefs.edit().putString(KEY_ITEM_LIST, array.toString()).apply()
-            Log.d(TAG, "Saved ${items.size} items to storage")
+    private fun itemToJson(item: Item): JSONObject = JSONObject().apply {
+        put("id", item.id)
+        put("uuid", item.uuid)
+        put("name", item.name)
+        put("price", item.price)
+
+        item.variationName?.let { put("variationName", it) }
+        item.sku?.let { put("sku", it) }
+        item.description?.let { put("description", it) }
+        item.category?.let { put("category", it) }
+        item.gtin?.let { put("gtin", it) }
+
+        put("quantity", item.quantity)
+        put("alertEnabled", item.alertEnabled)
+        put("alertThreshold", item.alertThreshold)
+        item.imagePath?.let { put("imagePath", it) }
+
+        // New fields for sats/fiat pricing
+        put("priceSats", item.priceSats)
+        put("priceType", item.priceType.name)
+        put("trackInventory", item.trackInventory)
+
+        // VAT fields
+        put("vatEnabled", item.vatEnabled)
+        put("vatRate", item.vatRate)
+    }
+
+    private fun putItem(editor: SharedPreferences.Editor, item: Item) {
+        try {
+            editor.putString(ITEM_KEY_PREFIX + item.id, itemToJson(item).toString())
         } catch (e: JSONException) {
-            Log.e(TAG, "Error saving items: ${e.message}", e)
+            Log.e(TAG, "Error saving item ${item.id}: ${e.message}", e)
+        }
+    }
+
+    private fun putOrder(editor: SharedPreferences.Editor) {
+        editor.putString(KEY_ITEM_ORDER, items.joinToString("\n") { it.id.orEmpty() })
+    }
+
+    // ----- SKU / GTIN index -----
+
+    private fun ensureIndex() {
+        if (!indexStale) return
+        skuIndex.clear()
+        gtinIndex.clear()
+        for (item in items) index(item)
+        indexStale = false
+    }
+
+    private fun index(item: Item) {
+        item.sku?.takeIf { it.isNotBlank() }?.let { skuIndex.putIfAbsent(indexKey(it), item) }
+        item.gtin?.takeIf { it.isNotBlank() }?.let { gtinIndex.putIfAbsent(indexKey(it), item) }
+    }
+
+    private fun unindex(item: Item) {
+        item.sku?.takeIf { it.isNotBlank() }?.let { skuIndex.remove(indexKey(it), item) }
+        item.gtin?.takeIf { it.isNotBlank() }?.let { gtinIndex.remove(indexKey(it), item) }
+    }
+
+    /** Whether another item than [excludeItemId] has [value] as its key in [index]. */
+    private fun isDuplicate(
+        index: Map<String, Item>,
+        value: String,
+        excludeItemId: String?,
+        field: (Item) -> String?,
+    ): Boolean {
+        if (value.isBlank()) return false
+        ensureIndex()
+        val key = indexKey(value)
+        val first = index[key] ?: return false
+        if (first.id != excludeItemId) return true
+        // The first holder is the excluded item; look for a second one
+        return items.any { item ->
+            item !== first && item.id != excludeItemId && field(item)?.let { indexKey(it) } == key
         }
     }
 
@@ -182,6 +278,7 @@ class ItemManager private constructor(context: Context) {
      * Get all items in the catalog.
      * @return List of items.
      */
+    @Synchronized
     fun getAllItems(): List<Item> = ArrayList(items)
 
     /**
@@ -189,8 +286,11 @@ class ItemManager private constructor(context: Context) {
      * @param gtin Gtin to search for.
      * @return Item if found, null otherwise.
      */
+    @Synchronized
     fun findItemByGtin(gtin: String): Item? {
-        return items.find { it.gtin?.equals(gtin, ignoreCase = true) == true }
+        if (gtin.isBlank()) return null
+        ensureIndex()
+        return gtinIndex[indexKey(gtin)]
     }
 
     /**
@@ -199,12 +299,9 @@ class ItemManager private constructor(context: Context) {
      * @param excludeItemId Optional item ID to exclude from the check (for editing existing items).
      * @return true if Gtin exists (and belongs to a different item), false otherwise.
      */
-    fun isGtinDuplicate(gtin: String, excludeItemId: String? = null): Boolean {
-        if (gtin.isBlank()) return false
-        return items.any { item ->
-            item.gtin?.equals(gtin, ignoreCase = true) == true && item.id != excludeItemId
-        }
-    }
+    @Synchronized
+    fun isGtinDuplicate(gtin: String, excludeItemId: String? = null): Boolean =
+        isDuplicate(gtinIndex, gtin, excludeItemId) { it.gtin }
 
     /**
      * Check if a SKU already exists in the catalog.
@@ -212,17 +309,15 @@ class ItemManager private constructor(context: Context) {
      * @param excludeItemId Optional item ID to exclude from the check (for editing existing items).
      * @return true if SKU exists (and belongs to a different item), false otherwise.
      */
-    fun isSkuDuplicate(sku: String, excludeItemId: String? = null): Boolean {
-        if (sku.isBlank()) return false
-        return items.any { item ->
-            item.sku?.equals(sku, ignoreCase = true) == true && item.id != excludeItemId
-        }
-    }
+    @Synchronized
+    fun isSkuDuplicate(sku: String, excludeItemId: String? = null): Boolean =
+        isDuplicate(skuIndex, sku, excludeItemId) { it.sku }
 
     /**
      * Get all unique categories from existing items.
      * @return Sorted list of unique category names (non-null, non-empty).
      */
+    @Synchronized
     fun getAllCategories(): List<String> {
         return items
             .mapNotNull { it.category }
@@ -237,6 +332,7 @@ class ItemManager private constructor(context: Context) {
      * @param query Search query.
      * @return List of matching items.
      */
+    @Synchronized
     fun searchItems(query: String): List<Item> {
         if (query.isBlank()) return ArrayList(items)
         
@@ -254,6 +350,7 @@ class ItemManager private constructor(context: Context) {
      * @param item Item to add.
      * @return true if added successfully, false if already exists.
      */
+    @Synchronized
     fun addItem(item: Item): Boolean {
         if (item.id.isNullOrEmpty()) {
             item.id = UUID.randomUUID().toString()
@@ -265,7 +362,11 @@ class ItemManager private constructor(context: Context) {
         }
 
         items.add(item)
-        saveItems()
+        indexStale = true
+        val editor = prefs.edit()
+        putItem(editor, item)
+        putOrder(editor)
+        editor.apply()
         return true
     }
 
@@ -274,11 +375,15 @@ class ItemManager private constructor(context: Context) {
      * @param item Item to update.
      * @return true if updated successfully, false if not found.
      */
+    @Synchronized
     fun updateItem(item: Item): Boolean {
         for (i in items.indices) {
             if (items[i].id == item.id) {
                 items[i] = item
-                saveItems()
+                indexStale = true
+                val editor = prefs.edit()
+                putItem(editor, item)
+                editor.apply()
                 return true
             }
         }
@@ -290,11 +395,15 @@ class ItemManager private constructor(context: Context) {
      * @param itemId ID of the item to remove.
      * @return true if removed successfully, false if not found.
      */
+    @Synchronized
     fun removeItem(itemId: String): Boolean {
         val index = items.indexOfFirst { it.id == itemId }
         return if (index >= 0) {
             items.removeAt(index)
-            saveItems()
+            indexStale = true
+            val editor = prefs.edit().remove(ITEM_KEY_PREFIX + itemId)
+            putOrder(editor)
+            editor.apply()
             true
         } else {
             false
@@ -304,9 +413,11 @@ class ItemManager private constructor(context: Context) {
     /**
      * Clear all items.
      */
+    @Synchronized
     fun clearItems() {
         items.clear()
-        saveItems()
+        indexStale = true
+        prefs.edit().clear().apply()
     }
 
     /**
@@ -314,6 +425,7 @@ class ItemManager private constructor(context: Context) {
      * @param fromPosition The current position of the item.
      * @param toPosition The target position to move the item to.
      */
+    @Synchronized
     fun reorderItems(fromPosition: Int, toPosition: Int) {
         if (fromPosition < 0 || fromPosition >= items.size ||
             toPosition < 0 || toPosition >= items.size) {
@@ -321,155 +433,136 @@ class ItemManager private constructor(context: Context) {
         }
         val item = items.removeAt(fromPosition)
         items.add(toPosition, item)
-        saveItems()
+        indexStale = true
+        val editor = prefs.edit()
+        putOrder(editor)
+        editor.apply()
     }
 
     /**
      * Import items from a CSV file.
      * @param csvFilePath Path to the CSV file.
-     * @param clearExisting Whether to clear existing items before importing.
-     * @return Number of items imported.
+     * @param clearExisting Whether to remove items that are not in the file.
+     * @return Number of rows imported.
      */
     fun importItemsFromCsv(csvFilePath: String, clearExisting: Boolean): Int {
-        if (clearExisting) {
-            items.clear()
+        val file = File(csvFilePath)
+        if (!file.exists()) {
+            Log.e(TAG, "CSV file not found: $csvFilePath")
+            return 0
         }
-
-        var importedCount = 0
-        var reader: BufferedReader? = null
-
-        try {
-            val file = File(csvFilePath)
-            if (!file.exists()) {
-                Log.e(TAG, "CSV file not found: $csvFilePath")
-                return 0
-            }
-
-            reader = BufferedReader(FileReader(file))
-
-            // Skip header lines (first 5 lines based on Square template)
-            repeat(5) {
-                reader.readLine()
-            }
-
-            var line: String?
-            while (reader.readLine().also { line = it } != null) {
-                val currentLine = line ?: continue
-                // Parse CSV line
-                val values = parseCsvLine(currentLine)
-                if (values.size < 14) { // Need at least 14 columns for basic item data
-                    continue
-                }
-
-                // Item data starts at column 1 (index 0 is token)
-                val name = values[1]
-                val variationName = values[2]
-                val sku = values[3]
-                val description = values[4]
-                val category = values[5]
-                val gtin = values[7]
-
-                // Parse price (index 12)
-                var price = 0.0
-                try {
-                    price = values[12].toDouble()
-                } catch (e: NumberFormatException) {
-                    Log.w(TAG, "Invalid price format for item: $name")
-                }
-
-                // Parse quantity (index 20)
-                var quantity = 0
-                if (values.size > 20) {
-                    try {
-                        quantity = values[20].toInt()
-                    } catch (e: NumberFormatException) {
-                        Log.w(TAG, "Invalid quantity format for item: $name")
-                    }
-                }
-
-                // Parse stock alert (index 22-23)
-                var alertEnabled = false
-                var alertThreshold = 0
-
-                if (values.size > 22) {
-                    alertEnabled = values[22].equals("Y", ignoreCase = true)
-                }
-
-                if (values.size > 23) {
-                    try {
-                        alertThreshold = values[23].toInt()
-                    } catch (e: NumberFormatException) {
-                        Log.w(TAG, "Invalid alert threshold format for item: $name")
-                    }
-                }
-
-                // Create new item
-                val item = Item().apply {
-                    id = UUID.randomUUID().toString()
-                    this.name = name
-                    this.variationName = variationName
-                    this.sku = sku
-                    this.description = description
-                    this.category = category
-                    this.gtin = gtin
-                    this.price = price
-                    this.quantity = quantity
-                    this.alertEnabled = alertEnabled
-                    this.alertThreshold = alertThreshold
-                }
-
-                items.add(item)
-                importedCount++
-            }
-
-            // Save imported items
-            if (importedCount > 0) {
-                saveItems()
-            }
-
-            Log.d(TAG, "Imported $importedCount items from CSV")
+        return try {
+            file.reader().use { importItems(it, clearExisting).imported }
         } catch (e: IOException) {
             Log.e(TAG, "Error importing items from CSV: ${e.message}", e)
-        } finally {
-            try {
-                reader?.close()
-            } catch (e: IOException) {
-                Log.e(TAG, "Error closing CSV reader: ${e.message}", e)
-            }
+            0
         }
-
-        return importedCount
     }
 
     /**
-     * Parse a CSV line, handling quoted fields that may contain commas.
+     * Import items from CSV, matching rows to existing items by SKU, then GTIN.
+     *
+     * Rows are streamed through [CatalogCsvReader], so columns are found by
+     * header. A row that matches an item replaces it with an updated copy,
+     * keeping its id, image and any field the file has no column for (the
+     * instance callers got from [getAllItems] is never changed); other rows
+     * become new items. Every [IMPORT_BATCH_SIZE] rows the changed items go to the store
+     * in one edit and [progress] hears the running count. The lock is only
+     * held per batch, so the catalog stays usable while a large file loads.
+     *
+     * @param clearExisting Whether items not in the file are removed at the
+     * end (only if the import finished and imported at least one row).
      */
-    private fun parseCsvLine(line: String): Array<String> {
-        val result = mutableListOf<String>()
-        val field = StringBuilder()
-        var inQuotes = false
-
-        for (c in line) {
-            when {
-                c == '"' -> {
-                    if (inQuotes && field.isNotEmpty() && field.last() == '"') {
-                        // Escaped quote within quotes
-                        field.append('"')
+    @Throws(IOException::class)
+    fun importItems(input: Reader, clearExisting: Boolean, progress: ImportProgress? = null): ImportResult {
+        val csv = CatalogCsvReader(input)
+        val seen: MutableSet<Item> = Collections.newSetFromMap(IdentityHashMap())
+        var added = 0
+        var updated = 0
+        var removed = 0
+        var finished = false
+        try {
+            while (!finished) {
+                synchronized(this) {
+                    ensureIndex()
+                    val editor = prefs.edit()
+                    // Built on the first match of the batch; the list may have
+                    // changed while the lock was released
+                    val positions = IdentityHashMap<Item, Int>()
+                    var rows = 0
+                    while (rows < IMPORT_BATCH_SIZE) {
+                        if (!csv.next()) {
+                            finished = true
+                            break
+                        }
+                        val existing = findImportMatch(csv)
+                        val item = existing?.copy() ?: Item(id = UUID.randomUUID().toString())
+                        csv.applyTo(item)
+                        if (existing == null) {
+                            if (positions.isNotEmpty()) positions[item] = items.size
+                            items.add(item)
+                            added++
+                        } else {
+                            if (positions.isEmpty()) items.forEachIndexed { i, it -> positions[it] = i }
+                            val at = positions.remove(existing) ?: items.indexOf(existing)
+                            items[at] = item
+                            positions[item] = at
+                            unindex(existing)
+                            seen.remove(existing)
+                            updated++
+                        }
+                        index(item)
+                        seen.add(item)
+                        putItem(editor, item)
+                        rows++
                     }
-                    inQuotes = !inQuotes
+                    if (rows > 0) editor.apply()
                 }
-                c == ',' && !inQuotes -> {
-                    result.add(field.toString())
-                    field.setLength(0)
+                progress?.onProgress(added + updated)
+            }
+        } finally {
+            synchronized(this) {
+                val editor = prefs.edit()
+                if (finished && clearExisting && seen.isNotEmpty()) {
+                    val iterator = items.iterator()
+                    while (iterator.hasNext()) {
+                        val item = iterator.next()
+                        if (item !in seen) {
+                            iterator.remove()
+                            editor.remove(ITEM_KEY_PREFIX + item.id)
+                            removed++
+                        }
+                    }
                 }
-                else -> field.append(c)
+                indexStale = true
+                putOrder(editor)
+                editor.commit()
             }
         }
 
-        // Add the last field
-        result.add(field.toString())
+        Log.d(TAG, "Imported CSV: $added added, $updated updated, ${csv.skipped} skipped, $removed removed")
+        return ImportResult(added, updated, csv.skipped, removed)
+    }
+
+    private fun findImportMatch(csv: CatalogCsvReader): Item? {
+        csv.value(CatalogColumn.SKU)?.let { sku ->
+            skuIndex[indexKey(sku)]?.let { return it }
+        }
+        return csv.value(CatalogColumn.GTIN)?.let { gtinIndex[indexKey(it)] }
+    }
 
-        return result.toTypedArray()
+    /**
+     * Write the catalog, in display order, to [out] as CSV that [importItems] reads back.
+     * @return Number of items written.
+     */
+    @Throws(IOException::class)
+    fun exportItems(out: Writer): Int {
+        val snapshot = getAllItems()
+        val csv = CatalogCsvWriter(out)
+        csv.writeHeader()
+        for (item in snapshot) csv.write(item)
+        out.flush()
+        return snapshot.size
     }
 
     /**
@@ -0,0 +1,55 @@
+package com.electricdreams.numo.core.util
+
+import java.text.SimpleDateFormat
+import java.util.Date
+import java.util.Locale
+
+/**
+ * Fixed-size in-memory log of the most recent [capacity] entries. Once full,
+ * each new entry overwrites the oldest one, so recording never allocates
+ * beyond the entry itself.
+ */
+class LogRingBuffer(private val capacity: Int) {
+
+    private val times = LongArray(capacity)
+    private val levels = CharArray(capacity)
+    private val tags = arrayOfNulls<String>(capacity)
+    private val messages = arrayOfNulls<String>(capacity)
+    private var next = 0
+    private var size = 0
+
+    @Synchronized
+    fun add(level: Char, tag: String, message: String, time: Long = System.currentTimeMillis()) {
+        times[next] = time
+        levels[next] = level
+        tags[next] = tag
+        messages[next] = message
+        next = (next + 1) % capacity
+        if (size < capacity) size++
+    }
+
+    @Synchronized
+    fun clear() {
+        tags.fill(null)
+        messages.fill(null)
+        next = 0
+        size = 0
+    }
+
+    /** Entries oldest first, one per line. */
+    @Synchronized
+    fun dump(): String {
+        val format = SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US)
+        val out = StringBuilder(size * 80)
+        val start = (next - size + capacity) % capacity
+        for (i in 0 until size) {
+            val index = (start + i) % capacity
+            out.append(format.format(Date(times[index])))
+                .append(' ').append(levels[index])
+                .append('/').append(tags[index])
+                .append(": ").append(messages[index])
+                .append('\n')
+        }
+        return out.toString()
+    }
+}
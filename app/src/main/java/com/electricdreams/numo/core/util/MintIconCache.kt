@@ -20,11 +20,13 @@ object MintIconCache {
     private const val CACHE_DIR_NAME = "mint_icons"
     
     private lateinit var cacheDir: File
+    @Volatile
     private var initialized = false
     
     /**
      * Initialize the icon cache with the application context.
      */
+    @Synchronized
     fun initialize(context: Context) {
         if (!initialized) {
             cacheDir = File(context.filesDir, CACHE_DIR_NAME)
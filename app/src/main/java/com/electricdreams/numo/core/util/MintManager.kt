@@ -4,6 +4,7 @@ import android.content.Context
 import android.content.SharedPreferences
 import android.util.Log
 import com.electricdreams.numo.core.cashu.CashuWalletManager
+import com.electricdreams.numo.core.data.KeyValueStore
 import com.electricdreams.numo.nostr.NostrMintBackup
 import org.json.JSONObject
 import java.net.URI
@@ -53,7 +54,7 @@ class MintManager private constructor(context: Context) {
 
     private val context: Context = context.applicationContext
     private val preferences: SharedPreferences =
-        this.context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+        KeyValueStore.open(this.context, PREFS_NAME)
 
     private var allowedMints: MutableSet<String> =
         HashSet(preferences.getStringSet(KEY_MINTS, DEFAULT_MINTS) ?: DEFAULT_MINTS)
@@ -0,0 +1,97 @@
+package com.electricdreams.numo.core.util
+
+import android.os.Build
+import android.util.Log
+import com.electricdreams.numo.BuildConfig
+
+/**
+ * Logging for the payment paths.
+ *
+ * [DEBUG] is a compile-time constant (the `LOG_DEBUG` build config field), so
+ * debug-level calls guarded by it are removed by the compiler in release
+ * builds: Kotlin callers use the lambda overload of [d], Java callers wrap the
+ * call in `if (NumoLog.DEBUG)`. Release builds then never build per-APDU
+ * messages.
+ *
+ * Everything that is logged is also kept in a small ring buffer that can be
+ * exported from the developer settings for field diagnostics. Tokens and
+ * payment requests must go through [redact] first; they never belong in
+ * logcat or in the export.
+ */
+object NumoLog {
+
+    const val DEBUG: Boolean = BuildConfig.LOG_DEBUG
+
+    private const val CAPACITY = 512
+    private const val REDACT_PREFIX = 8
+
+    private val buffer = LogRingBuffer(CAPACITY)
+
+    inline fun d(tag: String, message: () -> String) {
+        if (DEBUG) d(tag, message())
+    }
+
+    /** Debug output; a no-op in release builds. */
+    @JvmStatic
+    fun d(tag: String, message: String) {
+        if (!DEBUG) return
+        Log.d(tag, message)
+        buffer.add('D', tag, message)
+    }
+
+    /**
+     * Payment and lifecycle events. Always kept in the ring buffer so exports
+     * from release builds still show what happened; printed to logcat only in
+     * debug builds. Not for per-APDU or per-message detail; use [d].
+     */
+    @JvmStatic
+    fun i(tag: String, message: String) {
+        if (DEBUG) Log.i(tag, message)
+        buffer.add('I', tag, message)
+    }
+
+    @JvmStatic
+    @JvmOverloads
+    fun w(tag: String, message: String, error: Throwable? = null) {
+        Log.w(tag, message, error)
+        buffer.add('W', tag, withError(message, error))
+    }
+
+    @JvmStatic
+    @JvmOverloads
+    fun e(tag: String, message: String, error: Throwable? = null) {
+        Log.e(tag, message, error)
+        buffer.add('E', tag, withError(message, error))
+    }
+
+    /**
+     * Shorten a secret (token, payment request, payload) to a recognisable
+     * prefix and its length, e.g. `cashuBo2F…[1834 chars]`.
+     */
+    @JvmStatic
+    fun redact(secret: String?): String {
+        if (secret == null) return "null"
+        if (secret.length <= REDACT_PREFIX) return "[${secret.length} chars]"
+        return secret.substring(0, REDACT_PREFIX) + "…[" + secret.length + " chars]"
+    }
+
+    /** Buffered entries, oldest first, preceded by a short device header. */
+    @JvmStatic
+    fun export(): String {
+        return buildString {
+            append("Numo ").append(BuildConfig.VERSION_NAME)
+                .append(" (").append(BuildConfig.VERSION_CODE).append(")\n")
+            append("Android ").append(Build.VERSION.RELEASE)
+                .append(" / ").append(Build.MANUFACTURER).append(' ').append(Build.MODEL).append("\n\n")
+            append(buffer.dump())
+        }
+    }
+
+    @JvmStatic
+    fun clear() {
+        buffer.clear()
+    }
+
+    private fun withError(message: String, error: Throwable?): String =
+        if (error == null) message else "$message (${error.javaClass.simpleName}: ${error.message})"
+}
@@ -3,6 +3,7 @@ import com.electricdreams.numo.R
 
 import android.content.Context
 import android.content.Intent
+import android.graphics.BitmapFactory
 import android.print.PrintAttributes
 import android.print.PrintManager
 import android.webkit.WebView
@@ -10,6 +11,9 @@ import android.webkit.WebViewClient
 import androidx.core.content.FileProvider
 import com.electricdreams.numo.core.model.Amount
 import com.electricdreams.numo.core.model.CheckoutBasket
+import com.electricdreams.numo.core.printing.EscPosReceiptRenderer
+import com.electricdreams.numo.core.printing.ReceiptPrintQueue
+import com.electricdreams.numo.core.printing.ThermalPrinterPrefs
 import java.io.File
 import java.io.FileOutputStream
 import java.text.SimpleDateFormat
@@ -57,6 +61,8 @@ class ReceiptPrinter(private val context: Context) {
         // Tip information
         val tipAmountSats: Long = 0,
         val tipPercentage: Int = 0,
+        // Cashu token, printed as a QR code by the ESC/POS backend
+        val token: String? = null,
     )
 
     /**
@@ -95,21 +101,44 @@ class ReceiptPrinter(private val context: Context) {
      */
     fun generateTextReceipt(data: ReceiptData): String {
         val sb = StringBuilder()
+        appendTextHeader(sb, data)
+        appendTextBody(sb, data)
+        return sb.toString()
+    }
+
+    /**
+     * Generate the receipt text below the merchant header. The ESC/POS backend
+     * prints its own (cached) header with the logo and reuses this for the rest.
+     */
+    fun generateTextReceiptBody(data: ReceiptData): String {
+        val sb = StringBuilder()
+        appendTextBody(sb, data)
+        return sb.toString()
+    }
+
+    private fun center(text: String): String {
+        val padding = (RECEIPT_WIDTH_CHARS - text.length) / 2
+        return " ".repeat(maxOf(0, padding)) + text
+    }
+
+    private fun leftRight(left: String, right: String): String {
+        val spaces = RECEIPT_WIDTH_CHARS - left.length - right.length
+        return left + " ".repeat(maxOf(1, spaces)) + right
+    }
+
+    private fun line() = LINE_SEPARATOR.take(RECEIPT_WIDTH_CHARS)
+    private fun doubleLine() = DOUBLE_LINE.take(RECEIPT_WIDTH_CHARS)
+
+    private fun appendTextHeader(sb: StringBuilder, data: ReceiptData) {
+        sb.appendLine()
+        sb.appendLine(center(data.merchantName))
+        data.merchantAddress?.let { sb.appendLine(center(it)) }
+        data.merchantVatNumber?.let { sb.appendLine(center("VAT: $it")) }
+        sb.appendLine()
+    }
+
+    private fun appendTextBody(sb: StringBuilder, data: ReceiptData) {
         val w = RECEIPT_WIDTH_CHARS
-        
-        // Helper functions
-        fun center(text: String): String {
-            val padding = (w - text.length) / 2
-            return " ".repeat(maxOf(0, padding)) + text
-        }
-        
-        fun leftRight(left: String, right: String): String {
-            val spaces = w - left.length - right.length
-            return left + " ".repeat(maxOf(1, spaces)) + right
-        }
-        
-        fun line() = LINE_SEPARATOR.take(w)
-        fun doubleLine() = DOUBLE_LINE.take(w)
 
         // Currency helper
         val currency = data.basket?.let { Amount.Currency.fromCode(it.currency) } 
@@ -121,13 +150,8 @@ class ReceiptPrinter(private val context: Context) {
         val totalSats = data.basket?.totalSatoshis ?: data.totalSatoshis
 
         // ═══════════════════════════════════════════
-        // HEADER
+        // TITLE
         // ═══════════════════════════════════════════
-        sb.appendLine()
-        sb.appendLine(center(data.merchantName))
-        data.merchantAddress?.let { sb.appendLine(center(it)) }
-        data.merchantVatNumber?.let { sb.appendLine(center("VAT: $it")) }
-        sb.appendLine()
         sb.appendLine(doubleLine())
         sb.appendLine(center("RECEIPT"))
         sb.appendLine(doubleLine())
@@ -329,8 +353,6 @@ class ReceiptPrinter(private val context: Context) {
         sb.appendLine(center("Powered by Bitcoin"))
         sb.appendLine(center("⚡"))
         sb.appendLine()
-
-        return sb.toString()
     }
 
     /**
@@ -637,10 +659,30 @@ class ReceiptPrinter(private val context: Context) {
         """.trimIndent()
     }
 
+    /**
+     * Print the receipt. Goes straight to the configured ESC/POS network printer
+     * when there is one, otherwise falls back to Android's print framework.
+     */
+    fun printReceipt(data: ReceiptData, callback: ReceiptPrintQueue.Callback? = null) {
+        val host = ThermalPrinterPrefs.getHost(context)
+        if (host == null) {
+            printWithPrintFramework(data)
+            return
+        }
+
+        val renderer = EscPosReceiptRenderer(
+            this,
+            ThermalPrinterPrefs.getPaperWidthDots(context),
+        ) { BitmapFactory.decodeResource(context.resources, R.mipmap.ic_launcher_foreground) }
+
+        ReceiptPrintQueue.forNetworkPrinter(host, ThermalPrinterPrefs.getPort(context))
+            .enqueue("${data.merchantName} Receipt", callback) { renderer.render(data) }
+    }
+
     /**
      * Print the receipt using Android's print framework.
      */
-    fun printReceipt(data: ReceiptData) {
+    private fun printWithPrintFramework(data: ReceiptData) {
         val printManager = context.getSystemService(Context.PRINT_SERVICE) as PrintManager
         val html = generateHtmlReceipt(data)
         
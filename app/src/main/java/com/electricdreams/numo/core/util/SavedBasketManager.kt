@@ -2,23 +2,21 @@ package com.electricdreams.numo.core.util
 
 import android.content.Context
 import android.content.SharedPreferences
-import com.electricdreams.numo.core.model.BasketItem
+import android.util.Log
 import com.electricdreams.numo.core.model.BasketStatus
-import com.electricdreams.numo.core.model.Item
-import com.electricdreams.numo.core.model.PriceType
 import com.electricdreams.numo.core.model.SavedBasket
-import org.json.JSONArray
-import org.json.JSONObject
+import java.io.File
 
 /**
  * Manager class for persisting saved baskets and archived (paid) baskets.
- * Uses SharedPreferences with JSON serialization.
+ * Active baskets are kept in memory; the archive is read page by page from
+ * [BasketStore], which also owns the on-disk format.
  */
 class SavedBasketManager private constructor(context: Context) {
     
     private val prefs: SharedPreferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+    private val store = BasketStore(File(context.filesDir, STORE_DIR))
     private val savedBaskets: MutableList<SavedBasket> = mutableListOf()
-    private val archivedBaskets: MutableList<SavedBasket> = mutableListOf()
     
     // Currently editing basket ID (null if creating new)
     var currentEditingBasketId: String? = null
@@ -28,6 +26,8 @@ class SavedBasketManager private constructor(context: Context) {
         private const val PREFS_NAME = "saved_baskets"
         private const val KEY_BASKETS = "baskets"
         private const val KEY_ARCHIVED = "archived_baskets"
+        private const val STORE_DIR = "baskets"
+        private const val TAG = "SavedBasketManager"
         
         @Volatile
         private var instance: SavedBasketManager? = null
@@ -35,78 +35,45 @@ class SavedBasketManager private constructor(context: Context) {
         @JvmStatic
         fun getInstance(context: Context): SavedBasketManager {
             return instance ?: synchronized(this) {
+                // Load before publishing: the fast path above reads without the lock
                 instance ?: SavedBasketManager(context.applicationContext).also {
-                    instance = it
                     it.loadBaskets()
+                    instance = it
                 }
             }
         }
     }
     
     /**
-     * Load saved baskets from storage.
+     * Load saved baskets from storage, importing baskets from the old
+     * SharedPreferences format on first run.
      */
     private fun loadBaskets() {
+        migrateFromPreferences()
         savedBaskets.clear()
-        archivedBaskets.clear()
-        
-        // Load active baskets
-        val json = prefs.getString(KEY_BASKETS, null)
-        if (json != null) {
-            try {
-                val jsonArray = JSONArray(json)
-                for (i in 0 until jsonArray.length()) {
-                    val basketJson = jsonArray.getJSONObject(i)
-                    savedBaskets.add(deserializeBasket(basketJson))
-                }
-            } catch (e: Exception) {
-                e.printStackTrace()
-            }
-        }
-        
-        // Load archived baskets
-        val archivedJson = prefs.getString(KEY_ARCHIVED, null)
-        if (archivedJson != null) {
-            try {
-                val jsonArray = JSONArray(archivedJson)
-                for (i in 0 until jsonArray.length()) {
-                    val basketJson = jsonArray.getJSONObject(i)
-                    archivedBaskets.add(deserializeBasket(basketJson))
-                }
-            } catch (e: Exception) {
-                e.printStackTrace()
-            }
-        }
+        savedBaskets.addAll(store.loadActive())
     }
     
     /**
-     * Save baskets to storage.
+     * Move baskets stored as JSON arrays in SharedPreferences into [store].
+     * Each preference key is removed only once its baskets are on disk, so an
+     * import that fails is retried on the next launch.
      */
-    private fun saveBaskets() {
-        try {
-            val jsonArray = JSONArray()
-            savedBaskets.forEach { basket ->
-                jsonArray.put(serializeBasket(basket))
-            }
-            prefs.edit().putString(KEY_BASKETS, jsonArray.toString()).apply()
-        } catch (e: Exception) {
-            e.printStackTrace()
-        }
-    }
-    
-    /**
-     * Save archived baskets to storage.
-     */
-    private fun saveArchivedBaskets() {
-        try {
-            val jsonArray = JSONArray()
-            archivedBaskets.forEach { basket ->
-                jsonArray.put(serializeBasket(basket))
+    private fun migrateFromPreferences() {
+        if (!prefs.contains(KEY_BASKETS) && !prefs.contains(KEY_ARCHIVED)) return
+        
+        val editor = prefs.edit()
+        for (key in listOf(KEY_BASKETS, KEY_ARCHIVED)) {
+            val json = prefs.getString(key, null) ?: continue
+            val imported = if (key == KEY_BASKETS) store.importActive(json) else store.importArchived(json)
+            if (imported) {
+                editor.remove(key)
+                Log.i(TAG, "Imported $key from preferences")
+            } else {
+                Log.w(TAG, "Keeping $key in preferences; import will be retried")
             }
-            prefs.edit().putString(KEY_ARCHIVED, jsonArray.toString()).apply()
-        } catch (e: Exception) {
-            e.printStackTrace()
         }
+        editor.apply()
     }
     
     /**
@@ -115,21 +82,23 @@ class SavedBasketManager private constructor(context: Context) {
     fun getSavedBaskets(): List<SavedBasket> = savedBaskets.toList()
     
     /**
-     * Get all archived (paid) baskets.
+     * Get a page of archived (paid) baskets, most recently paid first.
+     * @param offset Position of the first basket to return
+     * @param limit Maximum number of baskets to return
      */
-    fun getArchivedBaskets(): List<SavedBasket> = archivedBaskets.sortedByDescending { it.paidAt ?: it.updatedAt }
+    fun getArchivedBasketsPage(offset: Int, limit: Int): List<SavedBasket> = store.archivedPage(offset, limit)
     
     /**
      * Get a saved basket by ID (searches both active and archived).
      */
     fun getBasket(id: String): SavedBasket? = 
-        savedBaskets.find { it.id == id } ?: archivedBaskets.find { it.id == id }
+        savedBaskets.find { it.id == id } ?: store.getArchived(id)
     
     /**
      * Get a basket by its associated payment ID.
      */
     fun getBasketByPaymentId(paymentId: String): SavedBasket? =
-        archivedBaskets.find { it.paymentId == paymentId } ?: savedBaskets.find { it.paymentId == paymentId }
+        store.getArchivedByPaymentId(paymentId) ?: savedBaskets.find { it.paymentId == paymentId }
     
     /**
      * Get the index of a basket for display name fallback.
@@ -139,7 +108,7 @@ class SavedBasketManager private constructor(context: Context) {
     /**
      * Get the index of an archived basket for display name fallback.
      */
-    fun getArchivedBasketIndex(id: String): Int = archivedBaskets.indexOfFirst { it.id == id }
+    fun getArchivedBasketIndex(id: String): Int = store.archivedPosition(id)
     
     /**
      * Save current basket from BasketManager.
@@ -157,7 +126,7 @@ class SavedBasketManager private constructor(context: Context) {
             existingBasket.name = name
             existingBasket.items = items
             existingBasket.updatedAt = System.currentTimeMillis()
-            saveBaskets()
+            store.putActive(existingBasket)
             existingBasket
         } else {
             // Create new basket
@@ -167,7 +136,7 @@ class SavedBasketManager private constructor(context: Context) {
                 status = BasketStatus.ACTIVE
             )
             savedBaskets.add(basket)
-            saveBaskets()
+            store.putActive(basket)
             basket
         }
     }
@@ -206,7 +175,7 @@ class SavedBasketManager private constructor(context: Context) {
     fun deleteBasket(basketId: String): Boolean {
         val removed = savedBaskets.removeAll { it.id == basketId }
         if (removed) {
-            saveBaskets()
+            store.removeActive(basketId)
             if (currentEditingBasketId == basketId) {
                 currentEditingBasketId = null
             }
@@ -217,13 +186,7 @@ class SavedBasketManager private constructor(context: Context) {
     /**
      * Delete an archived basket.
      */
-    fun deleteArchivedBasket(basketId: String): Boolean {
-        val removed = archivedBaskets.removeAll { it.id == basketId }
-        if (removed) {
-            saveArchivedBaskets()
-        }
-        return removed
-    }
+    fun deleteArchivedBasket(basketId: String): Boolean = store.deleteArchived(basketId)
     
     /**
      * Mark a basket as paid and move it to archive.
@@ -242,17 +205,14 @@ class SavedBasketManager private constructor(context: Context) {
         
         // Move from active to archived
         savedBaskets.remove(basket)
-        archivedBaskets.add(0, basket)
+        store.archive(basket)
+        store.removeActive(basketId)
         
         // Clear editing state if this was being edited
         if (currentEditingBasketId == basketId) {
             currentEditingBasketId = null
         }
         
-        // Persist changes
-        saveBaskets()
-        saveArchivedBaskets()
-        
         return basket
     }
     
@@ -265,9 +225,9 @@ class SavedBasketManager private constructor(context: Context) {
         basket.updatedAt = System.currentTimeMillis()
         
         if (basket.isPaid()) {
-            saveArchivedBaskets()
+            store.updateArchived(basket)
         } else {
-            saveBaskets()
+            store.putActive(basket)
         }
         return true
     }
@@ -280,7 +240,7 @@ class SavedBasketManager private constructor(context: Context) {
     /**
      * Get total count of archived baskets.
      */
-    fun getArchivedBasketCount(): Int = archivedBaskets.size
+    fun getArchivedBasketCount(): Int = store.archivedCount()
     
     /**
      * Check if we're currently editing an existing basket.
@@ -291,98 +251,4 @@ class SavedBasketManager private constructor(context: Context) {
      * Get the basket currently being edited.
      */
     fun getCurrentEditingBasket(): SavedBasket? = currentEditingBasketId?.let { getBasket(it) }
-    
-    // ----- JSON Serialization -----
-    
-    private fun serializeBasket(basket: SavedBasket): JSONObject {
-        return JSONObject().apply {
-            put("id", basket.id)
-            put("name", basket.name ?: JSONObject.NULL)
-            put("createdAt", basket.createdAt)
-            put("updatedAt", basket.updatedAt)
-            put("status", basket.status.name)
-            put("paymentId", basket.paymentId ?: JSONObject.NULL)
-            put("paidAt", basket.paidAt ?: JSONObject.NULL)
-            put("items", JSONArray().apply {
-                basket.items.forEach { item ->
-                    put(serializeBasketItem(item))
-                }
-            })
-        }
-    }
-    
-    private fun deserializeBasket(json: JSONObject): SavedBasket {
-        val itemsArray = json.getJSONArray("items")
-        val items = mutableListOf<BasketItem>()
-        for (i in 0 until itemsArray.length()) {
-            items.add(deserializeBasketItem(itemsArray.getJSONObject(i)))
-        }
-        
-        return SavedBasket(
-            id = json.getString("id"),
-            name = if (json.isNull("name")) null else json.getString("name"),
-            createdAt = json.getLong("createdAt"),
-            updatedAt = json.getLong("updatedAt"),
-            status = try { 
-                BasketStatus.valueOf(json.optString("status", "ACTIVE")) 
-            } catch (e: Exception) { 
-                BasketStatus.ACTIVE 
-            },
-            paymentId = if (json.isNull("paymentId")) null else json.optString("paymentId"),
-            paidAt = if (json.isNull("paidAt")) null else json.optLong("paidAt"),
-            items = items
-        )
-    }
-    
-    private fun serializeBasketItem(basketItem: BasketItem): JSONObject {
-        return JSONObject().apply {
-            put("quantity", basketItem.quantity)
-            put("item", serializeItem(basketItem.item))
-        }
-    }
-    
-    private fun deserializeBasketItem(json: JSONObject): BasketItem {
-        return BasketItem(
-            quantity = json.getInt("quantity"),
-            item = deserializeItem(json.getJSONObject("item"))
-        )
-    }
-    
-    private fun serializeItem(item: Item): JSONObject {
-        return JSONObject().apply {
-            put("id", item.id ?: JSONObject.NULL)
-            put("uuid", item.uuid)
-            put("name", item.name ?: JSONObject.NULL)
-            put("variationName", item.variationName ?: JSONObject.NULL)
-            put("sku", item.sku ?: JSONObject.NULL)
-            put("description", item.description ?: JSONObject.NULL)
-            put("category", item.category ?: JSONObject.NULL)
-            put("gtin", item.gtin ?: JSONObject.NULL)
-            put("price", item.price)
-            put("priceSats", item.priceSats)
-            put("priceType", item.priceType.name)
-            put("vatEnabled", item.vatEnabled)
-            put("vatRate", item.vatRate)
-            put("imagePath", item.imagePath ?: JSONObject.NULL)
-        }
-    }
-    
-    private fun deserializeItem(json: JSONObject): Item {
-        return Item(
-            id = if (json.isNull("id")) null else json.getString("id"),
-            uuid = json.optString("uuid", java.util.UUID.randomUUID().toString()),
-            name = if (json.isNull("name")) null else json.getString("name"),
-            variationName = if (json.isNull("variationName")) null else json.optString("variationName"),
-            sku = if (json.isNull("sku")) null else json.optString("sku"),
-            description = if (json.isNull("description")) null else json.optString("description"),
-            category = if (json.isNull("category")) null else json.optString("category"),
-            gtin = if (json.isNull("gtin")) null else json.optString("gtin"),
-            price = json.optDouble("price", 0.0),
-            priceSats = json.optLong("priceSats", 0L),
-            priceType = try { PriceType.valueOf(json.optString("priceType", "FIAT")) } catch (e: Exception) { PriceType.FIAT },
-            vatEnabled = json.optBoolean("vatEnabled", false),
-            vatRate = json.optInt("vatRate", 0),
-            imagePath = if (json.isNull("imagePath")) null else json.optString("imagePath")
-        )
-    }
 }
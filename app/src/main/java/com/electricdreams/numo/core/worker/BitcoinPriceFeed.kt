@@ -0,0 +1,193 @@
+package com.electricdreams.numo.core.worker
+
+import android.content.Context
+import android.content.SharedPreferences
+import android.util.Log
+import com.electricdreams.numo.core.data.KeyValueStore
+import com.electricdreams.numo.core.util.CurrencyManager
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.launch
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import org.json.JSONException
+import org.json.JSONObject
+import java.io.IOException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Hot feed of BTC prices in every supported fiat currency.
+ *
+ * All rates are fetched with a single Coinbase exchange-rates request and published
+ * as one [PriceSnapshot]. The last snapshot is persisted and served immediately on
+ * startup (stale-while-revalidate), so switching currency never shows a zero price
+ * while a fetch is in flight. Readers only touch [prices].value, which never blocks.
+ */
+class BitcoinPriceFeed internal constructor(
+    private val prefs: SharedPreferences,
+    private val clock: () -> Long,
+) {
+
+    constructor(context: Context) : this(KeyValueStore.open(context, PREFS_NAME), System::currentTimeMillis)
+
+    /**
+     * BTC prices keyed by currency code, and when they were fetched.
+     * [fetchedAtMillis] is 0 when nothing has ever been fetched.
+     */
+    data class PriceSnapshot(
+        val prices: Map<String, Double>,
+        val fetchedAtMillis: Long,
+    ) {
+        fun priceFor(currency: String): Double = prices[currency] ?: 0.0
+
+        fun ageMillis(now: Long = System.currentTimeMillis()): Long =
+            if (fetchedAtMillis == 0L) Long.MAX_VALUE else now - fetchedAtMillis
+
+        companion object {
+            val EMPTY = PriceSnapshot(emptyMap(), 0L)
+        }
+    }
+
+    companion object {
+        private const val TAG = "BitcoinPriceFeed"
+        private const val PREFS_NAME = "BitcoinPricePrefs"
+        private const val KEY_PRICES_JSON = "btcPrices"
+        private const val KEY_PRICE_PREFIX = "btcPrice_"
+        private const val KEY_LAST_UPDATE_TIME = "lastUpdateTime"
+        private const val EXCHANGE_RATES_URL = "https://api.coinbase.com/v2/exchange-rates?currency=BTC"
+
+        /** Prices older than this are revalidated in the background. */
+        val MAX_AGE_MILLIS: Long = TimeUnit.MINUTES.toMillis(1)
+
+        @JvmField
+        val SUPPORTED_CURRENCIES = listOf(
+            CurrencyManager.CURRENCY_USD,
+            CurrencyManager.CURRENCY_EUR,
+            CurrencyManager.CURRENCY_GBP,
+            CurrencyManager.CURRENCY_JPY,
+        )
+
+        /**
+         * Pick the supported currencies out of a Coinbase exchange-rates body.
+         * @return null if none of them has a positive rate.
+         */
+        @Throws(JSONException::class)
+        internal fun parseRates(body: String, fetchedAtMillis: Long): PriceSnapshot? {
+            val rates = JSONObject(body).getJSONObject("data").getJSONObject("rates")
+            val prices = HashMap<String, Double>(SUPPORTED_CURRENCIES.size)
+            for (currency in SUPPORTED_CURRENCIES) {
+                // Rates are returned as decimal strings
+                val price = rates.optString(currency).toDoubleOrNull() ?: continue
+                if (price > 0) prices[currency] = price
+            }
+            return if (prices.isEmpty()) null else PriceSnapshot(prices, fetchedAtMillis)
+        }
+    }
+
+    private val client = OkHttpClient.Builder()
+        .connectTimeout(5, TimeUnit.SECONDS)
+        .readTimeout(5, TimeUnit.SECONDS)
+        .build()
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private val fetchInFlight = AtomicBoolean(false)
+
+    private val _prices = MutableStateFlow(loadCachedSnapshot())
+
+    /** Latest known prices; starts with the persisted snapshot, possibly stale. */
+    val prices: StateFlow<PriceSnapshot> = _prices.asStateFlow()
+
+    fun isStale(): Boolean = _prices.value.ageMillis(clock()) >= MAX_AGE_MILLIS
+
+    /** Revalidate in the background if the current snapshot is stale. */
+    fun refreshIfStale() {
+        if (isStale()) refresh()
+    }
+
+    /**
+     * Fetch all rates in the background. Concurrent calls collapse into the one
+     * request already in flight.
+     */
+    fun refresh() {
+        if (!fetchInFlight.compareAndSet(false, true)) return
+        scope.launch {
+            try {
+                fetchSnapshot()?.let { publish(it) }
+            } finally {
+                fetchInFlight.set(false)
+            }
+        }
+    }
+
+    /**
+     * Convert satoshis to [currency] using the latest known price. Never blocks and
+     * never touches the network; returns 0.0 if no price has ever been fetched.
+     */
+    fun satoshisToFiat(satoshis: Long, currency: String): Double {
+        val price = _prices.value.priceFor(currency)
+        if (price <= 0) return 0.0
+        return satoshis / 100_000_000.0 * price
+    }
+
+    private fun fetchSnapshot(): PriceSnapshot? {
+        val request = Request.Builder().url(EXCHANGE_RATES_URL).get().build()
+        return try {
+            client.newCall(request).execute().use { response ->
+                if (!response.isSuccessful) {
+                    Log.e(TAG, "Failed to fetch Bitcoin prices, response code: ${response.code}")
+                    return null
+                }
+                val body = response.body?.string() ?: return null
+                parseRates(body, clock())
+            }
+        } catch (e: IOException) {
+            Log.e(TAG, "Error fetching Bitcoin prices: ${e.message}", e)
+            null
+        } catch (e: JSONException) {
+            Log.e(TAG, "Error parsing Bitcoin prices JSON: ${e.message}", e)
+            null
+        }
+    }
+
+    private fun loadCachedSnapshot(): PriceSnapshot {
+        val fetchedAt = prefs.getLong(KEY_LAST_UPDATE_TIME, 0L)
+        val prices = HashMap<String, Double>()
+
+        val json = prefs.getString(KEY_PRICES_JSON, null)
+        if (json != null) {
+            try {
+                val obj = JSONObject(json)
+                for (currency in SUPPORTED_CURRENCIES) {
+                    val price = obj.optDouble(currency, 0.0)
+                    if (price > 0) prices[currency] = price
+                }
+            } catch (e: JSONException) {
+                Log.w(TAG, "Ignoring corrupt cached prices: ${e.message}")
+            }
+        } else {
+            // Prices cached per currency as floats by older versions
+            for (currency in SUPPORTED_CURRENCIES) {
+                val price = prefs.getFloat(KEY_PRICE_PREFIX + currency, 0.0f)
+                if (price > 0f) prices[currency] = price.toDouble()
+            }
+        }
+
+        if (prices.isEmpty()) return PriceSnapshot.EMPTY
+        Log.d(TAG, "Loaded cached prices: $prices")
+        return PriceSnapshot(prices, fetchedAt)
+    }
+
+    /** Make [snapshot] the current prices and keep it for the next start. */
+    internal fun publish(snapshot: PriceSnapshot) {
+        _prices.value = snapshot
+        prefs.edit()
+            .putString(KEY_PRICES_JSON, JSONObject(snapshot.prices).toString())
+            .putLong(KEY_LAST_UPDATE_TIME, snapshot.fetchedAtMillis)
+            .apply()
+        Log.d(TAG, "Bitcoin prices updated: ${snapshot.prices}")
+    }
+}
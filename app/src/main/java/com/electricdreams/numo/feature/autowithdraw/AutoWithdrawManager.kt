@@ -3,19 +3,28 @@ package com.electricdreams.numo.feature.autowithdraw
 import android.content.Context
 import android.util.Log
 import com.electricdreams.numo.core.cashu.CashuWalletManager
+import com.electricdreams.numo.core.cashu.ReceivedToken
+import com.electricdreams.numo.core.data.KeyValueStore
 import com.electricdreams.numo.core.util.BalanceRefreshBroadcast
 import com.electricdreams.numo.core.util.MintManager
 import com.google.gson.Gson
 import com.google.gson.reflect.TypeToken
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
 import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.isActive
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
+import kotlinx.coroutines.withTimeoutOrNull
 import org.cashudevkit.MintUrl
 import org.cashudevkit.QuoteState
+import java.io.File
 import java.util.Date
 import java.util.UUID
+import java.util.concurrent.TimeUnit
 
 /**
  * Data class representing a withdrawal history entry (automatic or manual).
@@ -71,6 +80,12 @@ class AutoWithdrawManager private constructor(private val context: Context) {
         private const val PREFS_NAME = "AutoWithdrawHistory" // shared for all withdrawals
         private const val KEY_HISTORY = "history"
         private const val MAX_HISTORY_ENTRIES = 100
+        private const val MAX_MELT_ATTEMPTS = 3
+        private const val WALLET_WAIT_MS = 5000L
+        private const val STORAGE_RETRY_MS = 30_000L
+        private const val MAX_CHECK_ATTEMPTS = 20
+        private val BASE_CHECK_BACKOFF_MS = TimeUnit.SECONDS.toMillis(15)
+        private val MAX_CHECK_BACKOFF_MS = TimeUnit.MINUTES.toMillis(30)
 
         @Volatile
         private var instance: AutoWithdrawManager? = null
@@ -86,12 +101,14 @@ class AutoWithdrawManager private constructor(private val context: Context) {
 
     private val settingsManager = AutoWithdrawSettingsManager.getInstance(context)
     private val mintManager = MintManager.getInstance(context)
+    private val withdrawalPlanner = WithdrawalPlanner.getInstance(context)
     private val gson = Gson()
     
     private var progressListener: AutoWithdrawProgressListener? = null
-    
-    @Volatile
-    private var isWithdrawInProgress = false
+
+    private val jobQueue = WithdrawJobQueue(File(context.filesDir, "autowithdraw").apply { mkdirs() })
+    private val wakeups = Channel<Unit>(Channel.CONFLATED)
+    private var worker: Job? = null
     
     /**
      * Application-scoped coroutine scope for background withdrawal operations.
@@ -110,7 +127,32 @@ class AutoWithdrawManager private constructor(private val context: Context) {
     /**
      * Check if a withdrawal is currently in progress.
      */
-    fun isWithdrawing(): Boolean = isWithdrawInProgress
+    fun isWithdrawing(): Boolean = jobQueue.hasActive()
+
+    /**
+     * Start the withdrawal worker, resuming any withdrawal that was interrupted
+     * by the process dying. Safe to call more than once.
+     */
+    @Synchronized
+    fun resumePendingJobs() {
+        if (worker != null) return
+        worker = withdrawalScope.launch(Dispatchers.IO) {
+            while (isActive) {
+                var job = jobQueue.nextDue()
+                while (job != null) {
+                    runJob(job)
+                    job = jobQueue.nextDue()
+                }
+                val nextDue = jobQueue.nextDueAt()
+                if (nextDue == null) {
+                    wakeups.receive()
+                } else {
+                    val delayMs = (nextDue - System.currentTimeMillis()).coerceAtLeast(0L)
+                    withTimeoutOrNull(delayMs) { wakeups.receive() }
+                }
+            }
+        }
+    }
 
     /**
      * Called after a successful payment to check if auto-withdrawal should be triggered.
@@ -120,21 +162,12 @@ class AutoWithdrawManager private constructor(private val context: Context) {
      * activity lifecycle changes. The withdrawal will continue even if the calling
      * activity is destroyed.
      * 
-     * @param token The Cashu token received (can be empty for Lightning payments)
-     * @param lightningMintUrl The mint URL for Lightning payments (used when token is empty)
+     * @param token The decoded Cashu token received (null for Lightning payments)
+     * @param lightningMintUrl The mint URL for Lightning payments (used when token is null)
      */
-    fun onPaymentReceived(token: String, lightningMintUrl: String?) {
-        // Determine the mint URL
-        val mintUrl: String? = if (token.isNotEmpty()) {
-            try {
-                com.cashujdk.nut00.Token.decode(token).mint
-            } catch (e: Exception) {
-                Log.w(TAG, "Could not extract mint URL from token: ${e.message}")
-                null
-            }
-        } else {
-            lightningMintUrl
-        }
+    fun onPaymentReceived(token: ReceivedToken?, lightningMintUrl: String?) {
+        // The token was decoded at the entry point; no need to parse it again
+        val mintUrl: String? = token?.mintUrl ?: lightningMintUrl
         
         Log.d(TAG, "💰 Payment received, checking for auto-withdrawal. mintUrl=$mintUrl")
         
@@ -156,19 +189,17 @@ class AutoWithdrawManager private constructor(private val context: Context) {
     }
 
     /**
-     * Check all mints and trigger withdrawals if needed.
+     * Check all mints and queue withdrawals for those over their threshold.
      * Called after a payment is received.
      * 
+     * Withdrawals run once the batch window has passed, so several payments
+     * crossing the threshold in quick succession end up in a single melt per mint.
+     * 
      * @param paymentMintUrl Optional: the mint that just received payment (checked first)
      */
     suspend fun checkAndTriggerWithdrawals(paymentMintUrl: String? = null) {
         Log.d(TAG, "=== checkAndTriggerWithdrawals START ===")
         Log.d(TAG, "paymentMintUrl: $paymentMintUrl")
-        
-        if (isWithdrawInProgress) {
-            Log.d(TAG, "Withdrawal already in progress, skipping check")
-            return
-        }
 
         if (!settingsManager.isGloballyEnabled()) {
             Log.d(TAG, "Auto-withdraw is globally disabled, skipping")
@@ -186,41 +217,41 @@ class AutoWithdrawManager private constructor(private val context: Context) {
                 Log.w(TAG, "No mint balances found!")
                 return
             }
-            
-            // Check payment mint first if specified
-            if (paymentMintUrl != null) {
-                Log.d(TAG, "Checking payment mint first: $paymentMintUrl")
-                if (balances.containsKey(paymentMintUrl)) {
-                    val balance = balances[paymentMintUrl] ?: 0L
-                    Log.d(TAG, "Payment mint balance: $balance sats")
-                    if (settingsManager.shouldTriggerWithdrawal(paymentMintUrl, balance)) {
-                        Log.d(TAG, ">>> Triggering withdrawal for payment mint!")
-                        executeWithdrawal(paymentMintUrl, balance)
-                        return // Only process one withdrawal at a time
-                    } else {
-                        Log.d(TAG, "Payment mint did not trigger withdrawal")
-                    }
-                } else {
-                    Log.w(TAG, "Payment mint URL not found in balances! Available mints: ${balances.keys}")
-                }
+
+            if (paymentMintUrl != null && !balances.containsKey(paymentMintUrl)) {
+                Log.w(TAG, "Payment mint URL not found in balances! Available mints: ${balances.keys}")
             }
 
-            // Check other mints
-            Log.d(TAG, "Checking other mints...")
-            for ((mintUrl, balance) in balances) {
-                if (mintUrl == paymentMintUrl) {
-                    Log.d(TAG, "Skipping $mintUrl (already checked as payment mint)")
+            // Payment mint first, then the others
+            val ordered = balances.entries.sortedByDescending { it.key == paymentMintUrl }
+            val notBefore = System.currentTimeMillis() + settingsManager.getBatchWindowSeconds() * 1000L
+            var queued = 0
+            for ((mintUrl, balance) in ordered) {
+                Log.d(TAG, "Checking mint: $mintUrl with balance: $balance")
+                if (!settingsManager.shouldTriggerWithdrawal(mintUrl, balance)) continue
+
+                val address = settingsManager.getMintSettings(mintUrl).lightningAddress
+                val job = try {
+                    jobQueue.enqueue(mintUrl, address, notBefore)
+                } catch (e: WithdrawJobQueue.PersistException) {
+                    // Not queued; the next payment over the threshold tries again
+                    Log.e(TAG, "Could not queue withdrawal for $mintUrl: ${e.message}")
                     continue
                 }
-                Log.d(TAG, "Checking mint: $mintUrl with balance: $balance")
-                if (settingsManager.shouldTriggerWithdrawal(mintUrl, balance)) {
-                    Log.d(TAG, ">>> Triggering withdrawal for mint: $mintUrl")
-                    executeWithdrawal(mintUrl, balance)
-                    return // Only process one withdrawal at a time
+                if (job != null) {
+                    Log.d(TAG, ">>> Queued withdrawal for mint: $mintUrl")
+                    queued++
+                } else {
+                    Log.d(TAG, "Withdrawal for $mintUrl already queued, coalescing")
                 }
             }
-            
-            Log.d(TAG, "No withdrawals triggered for any mint")
+
+            if (queued > 0) {
+                resumePendingJobs()
+                wakeups.trySend(Unit)
+            } else {
+                Log.d(TAG, "No new withdrawals queued")
+            }
         } catch (e: Exception) {
             Log.e(TAG, "Error checking balances for auto-withdraw", e)
         }
@@ -229,14 +260,61 @@ class AutoWithdrawManager private constructor(private val context: Context) {
     }
 
     /**
-     * Execute a withdrawal for a specific mint.
+     * Advance a job by one state. Every transition is persisted before the next
+     * call to the mint, so running a job again after a crash is safe: a melt
+     * whose outcome is unknown is always checked before being retried, and the
+     * mint pays a quote at most once.
+     *
+     * If a transition cannot be written the job stays in its last recorded
+     * state, which is always safe to run again, and is retried after
+     * [STORAGE_RETRY_MS].
+     */
+    private suspend fun runJob(job: WithdrawJobQueue.Job) {
+        try {
+            if (CashuWalletManager.getWallet() == null) {
+                // Still starting up; try again shortly
+                jobQueue.update(job.copy(notBefore = System.currentTimeMillis() + WALLET_WAIT_MS))
+                return
+            }
+            try {
+                when (job.state) {
+                    WithdrawJobQueue.State.QUEUED -> quoteJob(job)
+                    WithdrawJobQueue.State.QUOTED -> meltJob(job)
+                    WithdrawJobQueue.State.MELTING,
+                    WithdrawJobQueue.State.VERIFYING -> verifyJob(job)
+                }
+            } catch (e: WithdrawJobQueue.PersistException) {
+                throw e
+            } catch (e: Exception) {
+                if (e is kotlinx.coroutines.CancellationException) throw e
+                Log.e(TAG, "💥 Withdrawal job ${job.id} failed in ${job.state}: ${e.message}", e)
+                if (job.state == WithdrawJobQueue.State.QUEUED || job.state == WithdrawJobQueue.State.QUOTED) {
+                    failJob(job, e.message ?: "Unknown error")
+                } else {
+                    // The melt may have gone through; keep asking the mint
+                    scheduleCheck(job, e.message)
+                }
+            }
+        } catch (e: WithdrawJobQueue.PersistException) {
+            Log.e(TAG, "Could not record withdrawal job ${job.id}, retrying in ${STORAGE_RETRY_MS}ms: ${e.message}")
+            delay(STORAGE_RETRY_MS)
+        }
+    }
+
+    /**
+     * QUEUED -> QUOTED: size the withdrawal from the current balance and get a quote.
+     * The job moves to the mint that pays it; its own queued job, if any, then
+     * waits behind it and re-checks that mint's balance.
      */
-    private suspend fun executeWithdrawal(mintUrl: String, currentBalance: Long) {
-        if (isWithdrawInProgress) {
-            Log.w(TAG, "executeWithdrawal called but already in progress, skipping")
+    private suspend fun quoteJob(job: WithdrawJobQueue.Job) {
+        val mintUrl = job.mintUrl
+        val balances = CashuWalletManager.getAllMintBalances()
+        val currentBalance = balances[mintUrl] ?: 0L
+        if (!settingsManager.shouldTriggerWithdrawal(mintUrl, currentBalance)) {
+            Log.d(TAG, "Balance of $mintUrl is back under its threshold, dropping queued withdrawal")
+            jobQueue.remove(job.id)
             return
         }
-        isWithdrawInProgress = true
 
         val settings = settingsManager.getMintSettings(mintUrl)
         val withdrawAmount = settingsManager.calculateWithdrawAmount(mintUrl, currentBalance)
@@ -251,166 +329,208 @@ class AutoWithdrawManager private constructor(private val context: Context) {
 
         withContext(Dispatchers.Main) {
             progressListener?.onWithdrawStarted(mintUrl, withdrawAmount, lightningAddress)
-            progressListener?.onWithdrawProgress("Preparing", "Getting quote...")
+            progressListener?.onWithdrawProgress("Quote", "Getting Lightning quote...")
         }
 
-        var historyEntry = WithdrawHistoryEntry(
-            mintUrl = mintUrl,
+        // Any other mint over its threshold and withdrawing to the same address
+        // may pay instead if its fee reserve is lower; mints with a withdrawal
+        // in flight are left out since their balance is about to change
+        val busyMints = jobQueue.inFlightMints()
+        val candidates = balances.filter { (url, balance) ->
+            url !in busyMints &&
+                settingsManager.shouldTriggerWithdrawal(url, balance) &&
+                settingsManager.getMintSettings(url).lightningAddress == lightningAddress
+        } + (mintUrl to currentBalance)
+
+        // The planner resolves the address through the LNURL cache and also
+        // enforces that the balance covers amount + fee reserve
+        val plan = withdrawalPlanner.planToAddress(
+            address = lightningAddress,
+            amountSats = withdrawAmount,
+            candidates = candidates,
+            preferredMint = mintUrl,
+        )
+        val meltQuote = plan.quote
+        val payingMint = plan.mintUrl
+        if (payingMint != mintUrl) {
+            Log.d(TAG, "   Paying from $payingMint, which quoted a lower fee reserve")
+        }
+
+        val feeReserve = meltQuote.feeReserve.value.toLong()
+        Log.d(TAG, "✅ Melt quote received:")
+        Log.d(TAG, "   Quote ID: ${meltQuote.id}")
+        Log.d(TAG, "   Amount: ${meltQuote.amount.value} sats")
+        Log.d(TAG, "   Fee reserve: $feeReserve sats")
+        Log.d(TAG, "   Request (BOLT11): ${meltQuote.request}")
+
+        val historyEntry = WithdrawHistoryEntry(
+            mintUrl = payingMint,
             lightningAddress = lightningAddress,
             destination = lightningAddress,
             destinationType = "auto_address",
             amountSats = withdrawAmount,
-            feeSats = 0,
+            feeSats = feeReserve,
             status = WithdrawHistoryEntry.STATUS_PENDING,
+            quoteId = meltQuote.id,
             automatic = true
         )
+        addToHistory(historyEntry)
+
+        val quoted = job.copy(
+            mintUrl = payingMint,
+            state = WithdrawJobQueue.State.QUOTED,
+            lightningAddress = lightningAddress,
+            amountSats = withdrawAmount,
+            feeReserveSats = feeReserve,
+            quoteId = meltQuote.id,
+            historyId = historyEntry.id,
+        )
+        jobQueue.update(quoted)
+        meltJob(quoted)
+    }
+
+    /**
+     * QUOTED -> MELTING -> VERIFYING: pay the quote.
+     */
+    private suspend fun meltJob(job: WithdrawJobQueue.Job) {
+        val wallet = CashuWalletManager.getWallet() ?: throw Exception("Wallet not initialized")
+        val quoteId = job.quoteId ?: throw Exception("Job has no melt quote")
+
+        // Record the attempt before the mint sees it; if we die during the call
+        // the job resumes by checking the quote instead of melting again
+        val melting = job.copy(state = WithdrawJobQueue.State.MELTING, meltAttempts = job.meltAttempts + 1)
+        jobQueue.update(melting)
 
+        withContext(Dispatchers.Main) {
+            progressListener?.onWithdrawProgress("Sending", "Sending payment...")
+        }
+
+        Log.d(TAG, "   Making CDK call: wallet.meltWithMint()")
         try {
-            Log.d(TAG, "📋 Step 1: Getting wallet instance...")
-            val wallet = CashuWalletManager.getWallet()
-            if (wallet == null) {
-                throw Exception("Wallet not initialized")
-            }
-            Log.d(TAG, "✅ Wallet instance obtained")
+            wallet.meltWithMint(MintUrl(job.mintUrl), quoteId)
+            Log.d(TAG, "   ✅ Melt completed")
+        } catch (e: Exception) {
+            if (e is kotlinx.coroutines.CancellationException) throw e
+            // A failed call does not mean the payment failed; the quote state decides
+            Log.e(TAG, "   ❌ Melt failed: ${e.message}", e)
+        }
 
-            // Get melt quote for Lightning address
-            Log.d(TAG, "📋 Step 2: Getting melt quote...")
-            withContext(Dispatchers.Main) {
-                progressListener?.onWithdrawProgress("Quote", "Getting Lightning quote...")
-            }
+        val verifying = melting.copy(state = WithdrawJobQueue.State.VERIFYING)
+        jobQueue.update(verifying)
+        try {
+            verifyJob(verifying)
+        } catch (e: WithdrawJobQueue.PersistException) {
+            throw e
+        } catch (e: Exception) {
+            if (e is kotlinx.coroutines.CancellationException) throw e
+            Log.e(TAG, "   ❌ Quote check failed: ${e.message}", e)
+            scheduleCheck(verifying, e.message)
+        }
+    }
 
-            val amountMsat = withdrawAmount * 1000
-            Log.d(TAG, "   Requesting quote for $withdrawAmount sats ($amountMsat msat) to $lightningAddress")
-            
-            val meltQuote = withContext(Dispatchers.IO) {
-                Log.d(TAG, "   Making CDK call: wallet.meltLightningAddressQuote()")
-                try {
-                    val quote = wallet.meltLightningAddressQuote(MintUrl(mintUrl), lightningAddress, amountMsat.toULong())
-                    Log.d(TAG, "   ✅ Quote received: id=${quote.id}")
-                    quote
-                } catch (e: Exception) {
-                    Log.e(TAG, "   ❌ Quote failed: ${e.message}", e)
-                    throw e
-                }
-            }
+    /**
+     * VERIFYING: ask the mint what happened to the quote.
+     */
+    private suspend fun verifyJob(job: WithdrawJobQueue.Job) {
+        val wallet = CashuWalletManager.getWallet() ?: throw Exception("Wallet not initialized")
+        val quoteId = job.quoteId ?: throw Exception("Job has no melt quote")
 
-            val quoteAmount = meltQuote.amount.value.toLong()
-            val feeReserve = meltQuote.feeReserve.value.toLong()
-            val totalRequired = quoteAmount + feeReserve
-
-            Log.d(TAG, "✅ Melt quote received:")
-            Log.d(TAG, "   Quote ID: ${meltQuote.id}")
-            Log.d(TAG, "   Amount: $quoteAmount sats")
-            Log.d(TAG, "   Fee reserve: $feeReserve sats")
-            Log.d(TAG, "   Total required: $totalRequired sats")
-            Log.d(TAG, "   Request (BOLT11): ${meltQuote.request}")
-
-            // Check if we have enough balance
-            if (totalRequired > currentBalance) {
-                Log.e(TAG, "❌ Insufficient balance: need $totalRequired sats, have $currentBalance sats")
-                throw Exception("Insufficient balance for withdrawal + fees (need $totalRequired, have $currentBalance)")
-            }
-            Log.d(TAG, "✅ Balance check passed: $currentBalance >= $totalRequired")
+        Log.d(TAG, "   Making CDK call: wallet.checkMeltQuote()")
+        val finalQuote = wallet.checkMeltQuote(MintUrl(job.mintUrl), quoteId)
+        Log.d(TAG, "   ✅ Final quote state: ${finalQuote.state}")
 
-            // Update history entry with quote info
-            historyEntry = historyEntry.copy(
-                quoteId = meltQuote.id,
-                feeSats = feeReserve
-            )
+        when (finalQuote.state) {
+            QuoteState.PAID -> {
+                Log.d(TAG, "🎉 AUTO-WITHDRAWAL SUCCESSFUL!")
+                Log.d(TAG, "   Amount withdrawn: ${job.amountSats} sats")
+                Log.d(TAG, "   Fee reserve: ${job.feeReserveSats} sats")
+                Log.d(TAG, "   Lightning address: ${job.lightningAddress}")
 
-            // Execute melt
-            Log.d(TAG, "📋 Step 4: Executing melt operation...")
-            withContext(Dispatchers.Main) {
-                progressListener?.onWithdrawProgress("Sending", "Sending payment...")
-            }
+                jobQueue.remove(job.id)
+                job.historyId?.let { updateWithdrawalStatus(it, WithdrawHistoryEntry.STATUS_COMPLETED) }
 
-            val melted = withContext(Dispatchers.IO) {
-                Log.d(TAG, "   Making CDK call: wallet.meltWithMint()")
-                try {
-                    val result = wallet.meltWithMint(MintUrl(mintUrl), meltQuote.id)
-                    Log.d(TAG, "   ✅ Melt completed")
-                    result
-                } catch (e: Exception) {
-                    Log.e(TAG, "   ❌ Melt failed: ${e.message}", e)
-                    throw e
-                }
-            }
+                // Broadcast balance change so other activities can refresh
+                BalanceRefreshBroadcast.send(context, BalanceRefreshBroadcast.REASON_AUTO_WITHDRAWAL)
 
-            // Check melt state
-            Log.d(TAG, "📋 Step 5: Checking final quote state...")
-            val finalQuote = withContext(Dispatchers.IO) {
-                Log.d(TAG, "   Making CDK call: wallet.checkMeltQuote()")
-                try {
-                    val quote = wallet.checkMeltQuote(MintUrl(mintUrl), meltQuote.id)
-                    Log.d(TAG, "   ✅ Final quote state: ${quote.state}")
-                    quote
-                } catch (e: Exception) {
-                    Log.e(TAG, "   ❌ Quote check failed: ${e.message}", e)
-                    throw e
+                withContext(Dispatchers.Main) {
+                    progressListener?.onWithdrawCompleted(job.mintUrl, job.amountSats, job.feeReserveSats)
                 }
             }
-
-            when (finalQuote.state) {
-                QuoteState.PAID -> {
-                    Log.d(TAG, "🎉 AUTO-WITHDRAWAL SUCCESSFUL!")
-                    Log.d(TAG, "   Amount withdrawn: $withdrawAmount sats")
-                    Log.d(TAG, "   Fee paid: $feeReserve sats")
-                    Log.d(TAG, "   Lightning address: $lightningAddress")
-                    
-                    historyEntry = historyEntry.copy(status = WithdrawHistoryEntry.STATUS_COMPLETED)
-                    
-                    // Broadcast balance change so other activities can refresh
-                    BalanceRefreshBroadcast.send(context, BalanceRefreshBroadcast.REASON_AUTO_WITHDRAWAL)
-                    
-                    withContext(Dispatchers.Main) {
-                        progressListener?.onWithdrawCompleted(mintUrl, withdrawAmount, feeReserve)
-                    }
+            QuoteState.PENDING -> {
+                Log.d(TAG, "⏳ Auto-withdrawal pending (waiting for Lightning payment)")
+                job.historyId?.let {
+                    updateWithdrawalStatus(it, WithdrawHistoryEntry.STATUS_PENDING, "Payment pending - check back later")
                 }
-                QuoteState.PENDING -> {
-                    Log.d(TAG, "⏳ Auto-withdrawal pending (waiting for Lightning payment)")
-                    historyEntry = historyEntry.copy(
-                        status = WithdrawHistoryEntry.STATUS_PENDING,
-                        errorMessage = "Payment pending - check back later"
-                    )
-                    withContext(Dispatchers.Main) {
-                        progressListener?.onWithdrawProgress("Pending", "Payment is pending...")
-                    }
+                withContext(Dispatchers.Main) {
+                    progressListener?.onWithdrawProgress("Pending", "Payment is pending...")
                 }
-                QuoteState.UNPAID -> {
+                scheduleCheck(job, null)
+            }
+            QuoteState.UNPAID -> {
+                if (job.meltAttempts < MAX_MELT_ATTEMPTS) {
+                    // The melt never reached the mint or was refused; paying the same quote again is safe
+                    Log.w(TAG, "Quote $quoteId is unpaid after ${job.meltAttempts} attempt(s), melting again")
+                    jobQueue.update(job.copy(state = WithdrawJobQueue.State.QUOTED))
+                } else {
                     Log.e(TAG, "❌ Auto-withdrawal failed: Quote is UNPAID")
-                    throw Exception("Payment failed: Quote state is UNPAID")
-                }
-                else -> {
-                    Log.e(TAG, "❌ Auto-withdrawal failed: Unknown quote state ${finalQuote.state}")
-                    throw Exception("Payment failed: Unknown quote state ${finalQuote.state}")
+                    failJob(job, "Payment failed: Quote state is UNPAID")
                 }
             }
-
-        } catch (e: Exception) {
-            Log.e(TAG, "💥 AUTO-WITHDRAWAL FAILED:")
-            Log.e(TAG, "   Mint: $mintUrl")
-            Log.e(TAG, "   Amount: $withdrawAmount sats")
-            Log.e(TAG, "   Error: ${e.message}")
-            Log.e(TAG, "   Exception type: ${e.javaClass.simpleName}")
-            
-            // If it's a JobCancellationException, log that specifically
-            if (e is kotlinx.coroutines.CancellationException) {
-                Log.e(TAG, "   🚫 Withdrawal was cancelled (likely due to scope cancellation)")
+            else -> {
+                Log.e(TAG, "❌ Auto-withdrawal failed: Unknown quote state ${finalQuote.state}")
+                failJob(job, "Payment failed: Unknown quote state ${finalQuote.state}")
             }
-            
-            historyEntry = historyEntry.copy(
-                status = WithdrawHistoryEntry.STATUS_FAILED,
-                errorMessage = e.message
+        }
+    }
+
+    /**
+     * Check the quote again later, backing off; give up after [MAX_CHECK_ATTEMPTS]
+     * and leave the history entry pending.
+     */
+    private fun scheduleCheck(job: WithdrawJobQueue.Job, error: String?) {
+        if (job.checkAttempts >= MAX_CHECK_ATTEMPTS) {
+            Log.e(TAG, "Giving up on checking withdrawal ${job.id} after ${job.checkAttempts} attempts")
+            jobQueue.remove(job.id)
+            return
+        }
+        val backoff = (BASE_CHECK_BACKOFF_MS shl job.checkAttempts.coerceAtMost(16)).coerceAtMost(MAX_CHECK_BACKOFF_MS)
+        jobQueue.update(
+            job.copy(
+                state = WithdrawJobQueue.State.VERIFYING,
+                checkAttempts = job.checkAttempts + 1,
+                notBefore = System.currentTimeMillis() + backoff,
+                lastError = error,
             )
-            withContext(Dispatchers.Main) {
-                progressListener?.onWithdrawFailed(mintUrl, e.message ?: "Unknown error")
-            }
-        } finally {
-            Log.d(TAG, "🏁 Withdrawal finished, saving to history...")
-            // Save to auto-withdraw history
-            addToHistory(historyEntry)
-            isWithdrawInProgress = false
-            Log.d(TAG, "🏁 Auto-withdrawal process completed")
+        )
+    }
+
+    private suspend fun failJob(job: WithdrawJobQueue.Job, error: String) {
+        Log.e(TAG, "💥 AUTO-WITHDRAWAL FAILED:")
+        Log.e(TAG, "   Mint: ${job.mintUrl}")
+        Log.e(TAG, "   Amount: ${job.amountSats} sats")
+        Log.e(TAG, "   Error: $error")
+
+        jobQueue.remove(job.id)
+        val historyId = job.historyId
+        if (historyId != null) {
+            updateWithdrawalStatus(historyId, WithdrawHistoryEntry.STATUS_FAILED, error)
+        } else {
+            addToHistory(
+                WithdrawHistoryEntry(
+                    mintUrl = job.mintUrl,
+                    lightningAddress = job.lightningAddress,
+                    destination = job.lightningAddress,
+                    destinationType = "auto_address",
+                    amountSats = job.amountSats,
+                    feeSats = 0,
+                    status = WithdrawHistoryEntry.STATUS_FAILED,
+                    errorMessage = error,
+                    automatic = true
+                )
+            )
+        }
+        withContext(Dispatchers.Main) {
+            progressListener?.onWithdrawFailed(job.mintUrl, error)
         }
     }
 
@@ -418,7 +538,7 @@ class AutoWithdrawManager private constructor(private val context: Context) {
      * Get auto-withdraw history.
      */
     fun getHistory(): List<WithdrawHistoryEntry> {
-        val prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+        val prefs = KeyValueStore.open(context, PREFS_NAME)
         val json = prefs.getString(KEY_HISTORY, null) ?: return emptyList()
         return try {
             val type = object : TypeToken<List<WithdrawHistoryEntry>>() {}.type
@@ -448,7 +568,7 @@ class AutoWithdrawManager private constructor(private val context: Context) {
      * Save auto-withdraw history.
      */
     private fun saveHistory(history: List<WithdrawHistoryEntry>) {
-        val prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+        val prefs = KeyValueStore.open(context, PREFS_NAME)
         val json = gson.toJson(history)
         prefs.edit().putString(KEY_HISTORY, json).apply()
     }
@@ -457,7 +577,7 @@ class AutoWithdrawManager private constructor(private val context: Context) {
      * Clear auto-withdraw history.
      */
     fun clearHistory() {
-        val prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+        val prefs = KeyValueStore.open(context, PREFS_NAME)
         prefs.edit().remove(KEY_HISTORY).apply()
     }
 
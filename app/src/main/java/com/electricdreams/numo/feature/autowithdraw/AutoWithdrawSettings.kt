@@ -28,6 +28,7 @@ class AutoWithdrawSettingsManager private constructor(private val context: Conte
         private const val KEY_MINT_SETTINGS = "mintSettings"
         private const val KEY_DEFAULT_THRESHOLD = "defaultThreshold"
         private const val KEY_DEFAULT_PERCENTAGE = "defaultPercentage"
+        private const val KEY_BATCH_WINDOW_SECONDS = "batchWindowSeconds"
         // Note: Lightning address is now managed by LightningAddressManager for consistency
         // across auto-withdraw and manual withdraw features
         
@@ -37,6 +38,8 @@ class AutoWithdrawSettingsManager private constructor(private val context: Conte
         const val MAX_WITHDRAW_PERCENTAGE = 98
         const val DEFAULT_THRESHOLD_SATS = 50000L // 50k sats (₿50,000)
         const val DEFAULT_WITHDRAW_PERCENTAGE = 95
+        const val DEFAULT_BATCH_WINDOW_SECONDS = 30
+        const val MAX_BATCH_WINDOW_SECONDS = 600
 
         @Volatile
         private var instance: AutoWithdrawSettingsManager? = null
@@ -92,6 +95,20 @@ class AutoWithdrawSettingsManager private constructor(private val context: Conte
         prefs.edit().putInt(KEY_DEFAULT_PERCENTAGE, clamped).apply()
     }
 
+    /**
+     * Get how long, in seconds, a threshold crossing waits before withdrawing, so
+     * that crossings during a busy period are paid out in one melt per mint.
+     */
+    fun getBatchWindowSeconds(): Int = prefs.getInt(KEY_BATCH_WINDOW_SECONDS, DEFAULT_BATCH_WINDOW_SECONDS)
+
+    /**
+     * Set the batch window in seconds; 0 withdraws as soon as the threshold is crossed.
+     */
+    fun setBatchWindowSeconds(seconds: Int) {
+        val clamped = seconds.coerceIn(0, MAX_BATCH_WINDOW_SECONDS)
+        prefs.edit().putInt(KEY_BATCH_WINDOW_SECONDS, clamped).apply()
+    }
+
     /**
      * Get the default lightning address.
      * Uses the shared LightningAddressManager for consistency with manual withdrawals.
@@ -0,0 +1,149 @@
+package com.electricdreams.numo.feature.autowithdraw
+
+import android.content.Context
+import android.content.SharedPreferences
+import android.util.Log
+import com.google.gson.Gson
+import com.google.gson.JsonObject
+import okhttp3.HttpUrl.Companion.toHttpUrlOrNull
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import java.io.IOException
+import java.util.Locale
+import java.util.concurrent.TimeUnit
+
+/**
+ * Resolves Lightning addresses (LUD-16) to their LNURL-pay endpoint and keeps
+ * the result per address for [TTL_MS], so repeat withdrawals to the same
+ * address go straight to the callback for an invoice.
+ *
+ * Entries are persisted so the cache survives process restarts. An entry whose
+ * callback fails is dropped and resolved again once.
+ */
+class LnurlPayCache private constructor(context: Context) {
+
+    /** LNURL-pay parameters of one address. */
+    data class PayEndpoint(
+        val callback: String,
+        val minSendableMsat: Long,
+        val maxSendableMsat: Long,
+        val resolvedAt: Long,
+    )
+
+    companion object {
+        private const val TAG = "LnurlPayCache"
+        private const val PREFS_NAME = "LnurlPayCache"
+        private const val TTL_MS = 6 * 60 * 60 * 1000L
+
+        @Volatile
+        private var instance: LnurlPayCache? = null
+
+        fun getInstance(context: Context): LnurlPayCache {
+            return instance ?: synchronized(this) {
+                instance ?: LnurlPayCache(context.applicationContext).also {
+                    instance = it
+                }
+            }
+        }
+    }
+
+    private val prefs: SharedPreferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+    private val gson = Gson()
+    private val client = OkHttpClient.Builder()
+        .connectTimeout(10, TimeUnit.SECONDS)
+        .readTimeout(15, TimeUnit.SECONDS)
+        .build()
+
+    /**
+     * Request a BOLT11 invoice for [amountSats] from [address]. Blocking; call
+     * off the main thread.
+     *
+     * @throws IOException if the address cannot be resolved or returns no invoice
+     * @throws IllegalArgumentException if the address does not accept [amountSats]
+     */
+    fun fetchInvoice(address: String, amountSats: Long): String {
+        val key = normalize(address)
+        val cached = getFresh(key)
+        if (cached != null) {
+            try {
+                return requestInvoice(cached, amountSats)
+            } catch (e: IOException) {
+                Log.w(TAG, "Cached endpoint for $key failed, resolving again: ${e.message}")
+                prefs.edit().remove(key).apply()
+            }
+        }
+        return requestInvoice(resolve(key), amountSats)
+    }
+
+    private fun getFresh(key: String): PayEndpoint? {
+        val json = prefs.getString(key, null) ?: return null
+        val endpoint = try {
+            gson.fromJson(json, PayEndpoint::class.java)
+        } catch (e: Exception) {
+            null
+        }
+        if (endpoint == null || System.currentTimeMillis() - endpoint.resolvedAt > TTL_MS) {
+            return null
+        }
+        return endpoint
+    }
+
+    private fun resolve(key: String): PayEndpoint {
+        val at = key.lastIndexOf('@')
+        if (at <= 0 || at == key.length - 1) throw IOException("Invalid Lightning address: $key")
+        val user = key.substring(0, at)
+        val domain = key.substring(at + 1)
+        val scheme = if (domain.endsWith(".onion")) "http" else "https"
+
+        val body = get("$scheme://$domain/.well-known/lnurlp/$user")
+        if (body.get("tag")?.asString != "payRequest") {
+            throw IOException("Lightning address $key is not an LNURL-pay endpoint")
+        }
+        val endpoint = PayEndpoint(
+            callback = body.get("callback")?.asString ?: throw IOException("LNURL-pay response has no callback"),
+            minSendableMsat = body.get("minSendable")?.asLong ?: 1L,
+            maxSendableMsat = body.get("maxSendable")?.asLong ?: Long.MAX_VALUE,
+            resolvedAt = System.currentTimeMillis(),
+        )
+        prefs.edit().putString(key, gson.toJson(endpoint)).apply()
+        Log.d(TAG, "Resolved $key")
+        return endpoint
+    }
+
+    private fun requestInvoice(endpoint: PayEndpoint, amountSats: Long): String {
+        val amountMsat = amountSats * 1000
+        if (amountMsat < endpoint.minSendableMsat || amountMsat > endpoint.maxSendableMsat) {
+            throw IllegalArgumentException(
+                "Amount $amountSats sats is outside the range accepted by this address " +
+                    "(${endpoint.minSendableMsat / 1000}-${endpoint.maxSendableMsat / 1000} sats)"
+            )
+        }
+        val url = endpoint.callback.toHttpUrlOrNull()
+            ?.newBuilder()
+            ?.addQueryParameter("amount", amountMsat.toString())
+            ?.build()
+            ?: throw IOException("Invalid LNURL-pay callback: ${endpoint.callback}")
+
+        val body = get(url.toString())
+        return body.get("pr")?.asString ?: throw IOException("LNURL-pay callback returned no invoice")
+    }
+
+    private fun get(url: String): JsonObject {
+        val request = Request.Builder().url(url).get().build()
+        client.newCall(request).execute().use { response ->
+            val text = response.body?.string().orEmpty()
+            if (!response.isSuccessful) throw IOException("HTTP ${response.code} from $url")
+            val json = try {
+                gson.fromJson(text, JsonObject::class.java)
+            } catch (e: Exception) {
+                null
+            } ?: throw IOException("Invalid LNURL response from $url")
+            if (json.get("status")?.asString.equals("ERROR", ignoreCase = true)) {
+                throw IOException(json.get("reason")?.asString ?: "LNURL error")
+            }
+            return json
+        }
+    }
+
+    private fun normalize(address: String): String = address.trim().lowercase(Locale.ROOT)
+}
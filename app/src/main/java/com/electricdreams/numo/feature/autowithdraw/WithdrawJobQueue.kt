@@ -0,0 +1,204 @@
+package com.electricdreams.numo.feature.autowithdraw
+
+import android.util.Log
+import com.electricdreams.numo.core.data.JsonFile
+import org.json.JSONArray
+import org.json.JSONException
+import org.json.JSONObject
+import java.io.File
+import java.io.IOException
+import java.util.UUID
+
+/**
+ * Durable queue of automatic withdrawals.
+ *
+ * Each job walks QUEUED -> QUOTED -> MELTING -> VERIFYING and leaves the queue
+ * once the mint reports its quote paid or the withdrawal definitively failed.
+ * The state is written to disk before every step that talks to the mint, so
+ * after a crash the job resumes from the last recorded step (see
+ * [AutoWithdrawManager]) instead of being forgotten mid-melt. A change that
+ * cannot be written is not applied and [PersistException] is thrown, so the
+ * caller never moves on from a step that would be lost on restart.
+ *
+ * There is at most one QUEUED job per mint: further threshold crossings while
+ * it waits for its batch window are folded into it, and its amount is taken
+ * from the balance when it actually runs.
+ */
+class WithdrawJobQueue(dir: File) {
+
+    companion object {
+        private const val TAG = "WithdrawJobQueue"
+        private const val FILE_NAME = "withdraw_jobs.json"
+    }
+
+    enum class State {
+        /** Waiting for the batch window to close; nothing requested from the mint yet. */
+        QUEUED,
+        /** Melt quote obtained and recorded in history. */
+        QUOTED,
+        /** Melt requested; the outcome is unknown until the quote is checked. */
+        MELTING,
+        /** Waiting for the mint to report the quote paid or unpaid. */
+        VERIFYING,
+    }
+
+    data class Job(
+        val id: String,
+        val mintUrl: String,
+        val lightningAddress: String,
+        val state: State,
+        val createdAt: Long,
+        /** The job is not run before this time. */
+        val notBefore: Long,
+        val amountSats: Long = 0L,
+        val feeReserveSats: Long = 0L,
+        val quoteId: String? = null,
+        /** Id of the [WithdrawHistoryEntry] recording this withdrawal. */
+        val historyId: String? = null,
+        val meltAttempts: Int = 0,
+        val checkAttempts: Int = 0,
+        val lastError: String? = null,
+    )
+
+    /** The job file could not be written; the queue is unchanged. */
+    class PersistException(message: String, cause: Throwable) : IOException(message, cause)
+
+    private val file = JsonFile(File(dir, FILE_NAME))
+    private val jobs = LinkedHashMap<String, Job>()
+
+    init {
+        load()
+    }
+
+    /**
+     * Queue a withdrawal for [mintUrl] unless one is already waiting.
+     * @return the new job, or null if it was coalesced into a queued one
+     */
+    @Synchronized
+    @Throws(PersistException::class)
+    fun enqueue(mintUrl: String, lightningAddress: String, notBefore: Long, now: Long = System.currentTimeMillis()): Job? {
+        if (jobs.values.any { it.mintUrl == mintUrl && it.state == State.QUEUED }) return null
+        val job = Job(
+            id = UUID.randomUUID().toString(),
+            mintUrl = mintUrl,
+            lightningAddress = lightningAddress,
+            state = State.QUEUED,
+            createdAt = now,
+            notBefore = notBefore,
+        )
+        commit(LinkedHashMap(jobs).apply { put(job.id, job) })
+        return job
+    }
+
+    /**
+     * The oldest job that is due. A queued job waits while another job of the
+     * same mint is in flight, since its amount depends on that mint's balance.
+     */
+    @Synchronized
+    fun nextDue(now: Long = System.currentTimeMillis()): Job? {
+        val busyMints = inFlightMints()
+        return jobs.values.firstOrNull { job ->
+            job.notBefore <= now && (job.state != State.QUEUED || job.mintUrl !in busyMints)
+        }
+    }
+
+    /**
+     * Earliest time a job may become due, or null if the queue is empty. Queued
+     * jobs held back by an in-flight job of their mint are not counted; that
+     * job's own due time covers them.
+     */
+    @Synchronized
+    fun nextDueAt(): Long? {
+        val busyMints = inFlightMints()
+        return jobs.values
+            .filter { it.state != State.QUEUED || it.mintUrl !in busyMints }
+            .minOfOrNull { it.notBefore }
+    }
+
+    /** Mints with a withdrawal past waiting in the queue; their balance is about to change. */
+    @Synchronized
+    fun inFlightMints(): Set<String> =
+        jobs.values.filter { it.state != State.QUEUED }.mapTo(HashSet()) { it.mintUrl }
+
+    /** True while a withdrawal has progressed past waiting in the queue. */
+    @Synchronized
+    fun hasActive(): Boolean = jobs.values.any { it.state != State.QUEUED }
+
+    /** Replace a job with its next state and persist it before returning. */
+    @Synchronized
+    @Throws(PersistException::class)
+    fun update(job: Job) {
+        if (!jobs.containsKey(job.id)) return
+        commit(LinkedHashMap(jobs).apply { put(job.id, job) })
+    }
+
+    @Synchronized
+    @Throws(PersistException::class)
+    fun remove(id: String) {
+        if (!jobs.containsKey(id)) return
+        commit(LinkedHashMap(jobs).apply { remove(id) })
+    }
+
+    /** Write [next] and only then make it the queue's state. */
+    private fun commit(next: LinkedHashMap<String, Job>) {
+        val array = JSONArray()
+        for (job in next.values) {
+            array.put(
+                JSONObject()
+                    .put("id", job.id)
+                    .put("mintUrl", job.mintUrl)
+                    .put("lightningAddress", job.lightningAddress)
+                    .put("state", job.state.name)
+                    .put("createdAt", job.createdAt)
+                    .put("notBefore", job.notBefore)
+                    .put("amountSats", job.amountSats)
+                    .put("feeReserveSats", job.feeReserveSats)
+                    .put("quoteId", job.quoteId ?: JSONObject.NULL)
+                    .put("historyId", job.historyId ?: JSONObject.NULL)
+                    .put("meltAttempts", job.meltAttempts)
+                    .put("checkAttempts", job.checkAttempts)
+                    .put("lastError", job.lastError ?: JSONObject.NULL),
+            )
+        }
+        try {
+            file.write(array)
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to persist withdraw jobs: ${e.message}", e)
+            throw PersistException("Failed to persist withdraw jobs", e)
+        }
+        jobs.clear()
+        jobs.putAll(next)
+    }
+
+    private fun load() {
+        try {
+            val array = file.readArray() ?: return
+            for (i in 0 until array.length()) {
+                val obj = array.getJSONObject(i)
+                val job = Job(
+                    id = obj.getString("id"),
+                    mintUrl = obj.getString("mintUrl"),
+                    lightningAddress = obj.getString("lightningAddress"),
+                    state = State.valueOf(obj.getString("state")),
+                    createdAt = obj.getLong("createdAt"),
+                    notBefore = obj.optLong("notBefore"),
+                    amountSats = obj.optLong("amountSats"),
+                    feeReserveSats = obj.optLong("feeReserveSats"),
+                    quoteId = if (obj.isNull("quoteId")) null else obj.getString("quoteId"),
+                    historyId = if (obj.isNull("historyId")) null else obj.getString("historyId"),
+                    meltAttempts = obj.optInt("meltAttempts"),
+                    checkAttempts = obj.optInt("checkAttempts"),
+                    lastError = if (obj.isNull("lastError")) null else obj.getString("lastError"),
+                )
+                jobs[job.id] = job
+            }
+            Log.d(TAG, "Loaded ${jobs.size} withdraw jobs")
+        } catch (e: JSONException) {
+            Log.e(TAG, "Corrupt withdraw job file: ${e.message}", e)
+        } catch (e: IllegalArgumentException) {
+            Log.e(TAG, "Unknown withdraw job state: ${e.message}", e)
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to read withdraw jobs: ${e.message}", e)
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.electricdreams.numo.feature.autowithdraw
+
+import android.content.Context
+import android.util.Log
+import com.electricdreams.numo.core.cashu.CashuWalletManager
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.withContext
+import org.cashudevkit.MeltQuote
+import org.cashudevkit.MintUrl
+
+/**
+ * Picks the mint to pay a Lightning withdrawal from.
+ *
+ * The invoice is obtained once (through [LnurlPayCache] for Lightning
+ * addresses) and melt quotes for it are requested from every candidate mint in
+ * parallel. The plan uses the mint with the lowest fee reserve whose balance
+ * covers amount + fee reserve, preferring the caller's mint on a tie. Quotes
+ * from the other mints are simply left to expire. Callers that must pay from a
+ * particular mint pass only that mint as a candidate.
+ *
+ * A withdrawal is always paid by a single mint; splitting one invoice across
+ * several mints would need multi-path payments the mints do not offer.
+ */
+class WithdrawalPlanner private constructor(context: Context) {
+
+    /**
+     * @param quote melt quote to execute against [mintUrl]
+     * @param invoice the BOLT11 invoice being paid
+     */
+    data class Plan(
+        val mintUrl: String,
+        val quote: MeltQuote,
+        val invoice: String,
+    ) {
+        val amountSats: Long get() = quote.amount.value.toLong()
+        val feeReserveSats: Long get() = quote.feeReserve.value.toLong()
+    }
+
+    /** One candidate mint's answer to the melt quote request: a [quote] or an [error]. */
+    internal data class QuoteResult<Q>(
+        val mintUrl: String,
+        val balance: Long,
+        val quote: Q? = null,
+        val amountSats: Long = 0L,
+        val feeReserveSats: Long = 0L,
+        val error: Throwable? = null,
+    )
+
+    /** No candidate mint can pay; [message] explains the best attempt. */
+    class PlanningException(message: String, cause: Throwable? = null) : Exception(message, cause)
+
+    companion object {
+        private const val TAG = "WithdrawalPlanner"
+
+        @Volatile
+        private var instance: WithdrawalPlanner? = null
+
+        fun getInstance(context: Context): WithdrawalPlanner {
+            return instance ?: synchronized(this) {
+                instance ?: WithdrawalPlanner(context.applicationContext).also {
+                    instance = it
+                }
+            }
+        }
+
+        /**
+         * The quote with the lowest fee reserve among the mints whose balance
+         * covers amount + fee reserve; [preferredMint] wins a tie.
+         */
+        internal fun <Q> choose(results: List<QuoteResult<Q>>, preferredMint: String?): QuoteResult<Q> {
+            var best: QuoteResult<Q>? = null
+            var shortfall: String? = null
+            var lastError: Throwable? = null
+            for (result in results) {
+                if (result.quote == null) {
+                    Log.w(TAG, "Melt quote from ${result.mintUrl} failed: ${result.error?.message}")
+                    lastError = result.error ?: lastError
+                    continue
+                }
+
+                val required = result.amountSats + result.feeReserveSats
+                Log.d(
+                    TAG,
+                    "${result.mintUrl}: amount ${result.amountSats}, fee reserve ${result.feeReserveSats}, balance ${result.balance}",
+                )
+                if (required > result.balance) {
+                    shortfall = "Insufficient balance for withdrawal + fees (need $required, have ${result.balance})"
+                    continue
+                }
+
+                val current = best
+                if (current == null ||
+                    result.feeReserveSats < current.feeReserveSats ||
+                    (result.feeReserveSats == current.feeReserveSats && result.mintUrl == preferredMint)
+                ) {
+                    best = result
+                }
+            }
+
+            return best ?: throw PlanningException(
+                shortfall ?: lastError?.message ?: "No mint could quote this invoice",
+                lastError,
+            )
+        }
+    }
+
+    private val lnurlCache = LnurlPayCache.getInstance(context)
+
+    /**
+     * Plan paying [amountSats] to a Lightning address.
+     *
+     * @param candidates mint URL to spendable balance, in sats
+     * @param preferredMint wins ties on fee reserve
+     */
+    suspend fun planToAddress(
+        address: String,
+        amountSats: Long,
+        candidates: Map<String, Long>,
+        preferredMint: String? = null,
+    ): Plan {
+        val invoice = withContext(Dispatchers.IO) { lnurlCache.fetchInvoice(address, amountSats) }
+        val plan = planToInvoice(invoice, candidates, preferredMint)
+        // The invoice comes from a third party; make sure it asks for what we meant to send
+        if (plan.amountSats != amountSats) {
+            throw PlanningException(
+                "Invoice from $address is for ${plan.amountSats} sats, expected $amountSats sats"
+            )
+        }
+        return plan
+    }
+
+    /**
+     * Plan paying a BOLT11 [invoice].
+     *
+     * @param candidates mint URL to spendable balance, in sats
+     * @param preferredMint wins ties on fee reserve
+     */
+    suspend fun planToInvoice(
+        invoice: String,
+        candidates: Map<String, Long>,
+        preferredMint: String? = null,
+    ): Plan {
+        val wallet = CashuWalletManager.getWallet() ?: throw PlanningException("Wallet not initialized")
+        val mints = candidates.filterValues { it > 0 }
+        if (mints.isEmpty()) throw PlanningException("No mint has a balance to withdraw from")
+
+        val results = coroutineScope {
+            mints.map { (mintUrl, balance) ->
+                async(Dispatchers.IO) {
+                    runCatching { wallet.meltQuote(MintUrl(mintUrl), invoice, null) }.fold(
+                        onSuccess = {
+                            QuoteResult(mintUrl, balance, it, it.amount.value.toLong(), it.feeReserve.value.toLong())
+                        },
+                        onFailure = { QuoteResult<MeltQuote>(mintUrl, balance, error = it) },
+                    )
+                }
+            }.awaitAll()
+        }
+
+        val best = choose(results, preferredMint)
+        Log.d(TAG, "Paying from ${best.mintUrl} with fee reserve ${best.feeReserveSats} sats")
+        return Plan(best.mintUrl, best.quote!!, invoice)
+    }
+}
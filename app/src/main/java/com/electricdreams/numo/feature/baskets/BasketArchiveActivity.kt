@@ -37,6 +37,9 @@ class BasketArchiveActivity : AppCompatActivity() {
     private lateinit var emptyView: LinearLayout
     private lateinit var adapter: BasketArchiveAdapter
 
+    // Number of archived baskets loaded into the adapter so far
+    private var loadedCount = 0
+
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
         setContentView(R.layout.activity_basket_archive)
@@ -75,12 +78,25 @@ class BasketArchiveActivity : AppCompatActivity() {
             onDeleteClick = { basket -> showDeleteConfirmation(basket) }
         )
 
-        archiveRecyclerView.layoutManager = LinearLayoutManager(this)
+        val layoutManager = LinearLayoutManager(this)
+        archiveRecyclerView.layoutManager = layoutManager
         archiveRecyclerView.adapter = adapter
+
+        // Load older baskets as the list nears its end
+        archiveRecyclerView.addOnScrollListener(object : RecyclerView.OnScrollListener() {
+            override fun onScrolled(recyclerView: RecyclerView, dx: Int, dy: Int) {
+                if (dy <= 0) return
+                if (layoutManager.findLastVisibleItemPosition() >= loadedCount - PREFETCH_DISTANCE) {
+                    loadNextPage()
+                }
+            }
+        })
     }
 
     private fun loadArchivedBaskets() {
-        val baskets = savedBasketManager.getArchivedBaskets()
+        // Reload the pages already shown so the scroll position survives onResume
+        val baskets = savedBasketManager.getArchivedBasketsPage(0, maxOf(loadedCount, PAGE_SIZE))
+        loadedCount = baskets.size
         adapter.updateBaskets(baskets)
 
         if (baskets.isEmpty()) {
@@ -92,6 +108,13 @@ class BasketArchiveActivity : AppCompatActivity() {
         }
     }
 
+    private fun loadNextPage() {
+        if (loadedCount >= savedBasketManager.getArchivedBasketCount()) return
+        val page = savedBasketManager.getArchivedBasketsPage(loadedCount, PAGE_SIZE)
+        loadedCount += page.size
+        adapter.appendBaskets(page)
+    }
+
     private fun showBasketDetails(basket: SavedBasket) {
         // Show expandable details in a bottom sheet or dialog
         val dialog = BasketDetailDialog(this, basket, currencyManager) {
@@ -149,6 +172,11 @@ class BasketArchiveActivity : AppCompatActivity() {
             )
         )
     }
+
+    companion object {
+        private const val PAGE_SIZE = 30
+        private const val PREFETCH_DISTANCE = 10
+    }
 }
 
 /**
@@ -24,7 +24,7 @@ class BasketArchiveAdapter(
     private val onDeleteClick: (SavedBasket) -> Unit
 ) : RecyclerView.Adapter<BasketArchiveAdapter.ViewHolder>() {
 
-    private var baskets: List<SavedBasket> = emptyList()
+    private val baskets: MutableList<SavedBasket> = mutableListOf()
     private val dateFormat = SimpleDateFormat("MMM d, yyyy 'at' h:mm a", Locale.getDefault())
 
     inner class ViewHolder(view: View) : RecyclerView.ViewHolder(view) {
@@ -84,7 +84,16 @@ class BasketArchiveAdapter(
     override fun getItemCount(): Int = baskets.size
 
     fun updateBaskets(newBaskets: List<SavedBasket>) {
-        baskets = newBaskets
+        baskets.clear()
+        baskets.addAll(newBaskets)
         notifyDataSetChanged()
     }
+
+    /** Append the next page of older baskets. */
+    fun appendBaskets(moreBaskets: List<SavedBasket>) {
+        if (moreBaskets.isEmpty()) return
+        val start = baskets.size
+        baskets.addAll(moreBaskets)
+        notifyItemRangeInserted(start, moreBaskets.size)
+    }
 }
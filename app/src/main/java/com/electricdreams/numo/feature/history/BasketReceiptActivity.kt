@@ -11,8 +11,10 @@ import com.electricdreams.numo.R
 import com.electricdreams.numo.core.model.Amount
 import com.electricdreams.numo.core.model.CheckoutBasket
 import com.electricdreams.numo.core.model.CheckoutBasketItem
+import com.electricdreams.numo.core.printing.ReceiptPrintQueue
 import com.electricdreams.numo.core.util.ReceiptPrinter
 import com.electricdreams.numo.feature.enableEdgeToEdgeWithPill
+import com.electricdreams.numo.ui.util.DialogHelper
 import java.text.SimpleDateFormat
 import java.util.Date
 import java.util.Locale
@@ -55,6 +57,7 @@ class BasketReceiptActivity : AppCompatActivity() {
     private var paymentType: String? = null
     private var paymentDate: Date = Date()
     private var transactionId: String? = null
+    private var token: String? = null
     private var mintUrl: String? = null
     private var bitcoinPrice: Double? = null
     
@@ -122,6 +125,7 @@ class BasketReceiptActivity : AppCompatActivity() {
         val dateMillis = intent.getLongExtra(EXTRA_PAYMENT_DATE, System.currentTimeMillis())
         paymentDate = Date(dateMillis)
         transactionId = intent.getStringExtra(EXTRA_TRANSACTION_ID)
+        token = intent.getStringExtra(EXTRA_TOKEN)
         mintUrl = intent.getStringExtra(EXTRA_MINT_URL)
         val btcPrice = intent.getDoubleExtra(EXTRA_BITCOIN_PRICE, -1.0)
         bitcoinPrice = if (btcPrice > 0) btcPrice else null
@@ -155,10 +159,28 @@ class BasketReceiptActivity : AppCompatActivity() {
             enteredCurrency = enteredCurrency,
             tipAmountSats = tipAmountSats,
             tipPercentage = tipPercentage,
+            token = token,
         )
         
         // Print directly - one click printing
-        receiptPrinter.printReceipt(receiptData)
+        receiptPrinter.printReceipt(receiptData, ReceiptPrintQueue.Callback { _, error ->
+            if (error != null) runOnUiThread { showPrintFailed(error) }
+        })
+    }
+
+    /** Tell the user a direct print failed and offer to send it again. */
+    private fun showPrintFailed(error: Exception) {
+        if (isFinishing || isDestroyed) return
+        DialogHelper.showConfirmation(
+            context = this,
+            config = DialogHelper.ConfirmationConfig(
+                title = getString(R.string.receipt_print_failed_title),
+                message = getString(R.string.receipt_print_failed_message, error.message ?: error.javaClass.simpleName),
+                confirmText = getString(R.string.receipt_print_failed_retry),
+                cancelText = getString(R.string.common_cancel),
+                onConfirm = { printReceipt() },
+            )
+        )
     }
     
     /**
@@ -631,6 +653,7 @@ class BasketReceiptActivity : AppCompatActivity() {
         const val EXTRA_PAYMENT_TYPE = "payment_type"
         const val EXTRA_PAYMENT_DATE = "payment_date"
         const val EXTRA_TRANSACTION_ID = "transaction_id"
+        const val EXTRA_TOKEN = "token"
         const val EXTRA_MINT_URL = "mint_url"
         const val EXTRA_BITCOIN_PRICE = "bitcoin_price"
         const val EXTRA_TOTAL_SATOSHIS = "total_satoshis"
@@ -13,6 +13,7 @@ import androidx.appcompat.app.AlertDialog
 import androidx.appcompat.app.AppCompatActivity
 import androidx.recyclerview.widget.LinearLayoutManager
 import androidx.recyclerview.widget.RecyclerView
+import com.electricdreams.numo.core.data.KeyValueStore
 import com.electricdreams.numo.feature.enableEdgeToEdgeWithPill
 import com.electricdreams.numo.PaymentRequestActivity
 import com.electricdreams.numo.R
@@ -192,7 +193,7 @@ class PaymentsHistoryActivity : AppCompatActivity() {
     }
 
     private fun clearAllHistory() {
-        val prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+        val prefs = KeyValueStore.open(this, PREFS_NAME)
         prefs.edit().putString(KEY_HISTORY, "[]").apply()
         loadHistory()
     }
@@ -204,7 +205,7 @@ class PaymentsHistoryActivity : AppCompatActivity() {
             history.removeAt(position)
             Collections.reverse(history)
 
-            val prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+            val prefs = KeyValueStore.open(this, PREFS_NAME)
             prefs.edit().putString(KEY_HISTORY, Gson().toJson(history)).apply()
 
             loadHistory()
@@ -221,7 +222,7 @@ class PaymentsHistoryActivity : AppCompatActivity() {
 
         @JvmStatic
         fun getPaymentHistory(context: Context): List<PaymentHistoryEntry> {
-            val prefs = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+            val prefs = KeyValueStore.open(context, PREFS_NAME)
             val json = prefs.getString(KEY_HISTORY, "[]")
             val type: Type = object : TypeToken<ArrayList<PaymentHistoryEntry>>() {}.type
             return Gson().fromJson(json, type)
@@ -261,7 +262,7 @@ class PaymentsHistoryActivity : AppCompatActivity() {
             val history = getPaymentHistory(context).toMutableList()
             history.add(entry)
 
-            val prefs = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+            val prefs = KeyValueStore.open(context, PREFS_NAME)
             prefs.edit().putString(KEY_HISTORY, Gson().toJson(history)).apply()
 
             return entry.id
@@ -310,7 +311,7 @@ class PaymentsHistoryActivity : AppCompatActivity() {
                 )
                 history[index] = updated
 
-                val prefs = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+                val prefs = KeyValueStore.open(context, PREFS_NAME)
                 prefs.edit().putString(KEY_HISTORY, Gson().toJson(history)).apply()
             }
         }
@@ -357,7 +358,7 @@ class PaymentsHistoryActivity : AppCompatActivity() {
                 )
                 history[index] = updated
 
-                val prefs = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+                val prefs = KeyValueStore.open(context, PREFS_NAME)
                 prefs.edit().putString(KEY_HISTORY, Gson().toJson(history)).apply()
             }
         }
@@ -403,7 +404,7 @@ class PaymentsHistoryActivity : AppCompatActivity() {
                 )
                 history[index] = updated
 
-                val prefs = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+                val prefs = KeyValueStore.open(context, PREFS_NAME)
                 prefs.edit().putString(KEY_HISTORY, Gson().toJson(history)).apply()
             }
         }
@@ -450,11 +451,54 @@ class PaymentsHistoryActivity : AppCompatActivity() {
                 )
                 history[index] = updated
 
-                val prefs = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+                val prefs = KeyValueStore.open(context, PREFS_NAME)
                 prefs.edit().putString(KEY_HISTORY, Gson().toJson(history)).apply()
             }
         }
 
+        /**
+         * Record a second payment for checkout [paymentId], made over another
+         * channel at the moment the first one completed. The new entry takes
+         * the checkout's amounts but not its basket, which was already sold once.
+         */
+        @JvmStatic
+        fun addLatePayment(
+            context: Context,
+            paymentId: String?,
+            amount: Long,
+            token: String,
+            paymentType: String,
+            mintUrl: String?,
+            lightningInvoice: String? = null,
+            lightningQuoteId: String? = null,
+            lightningMintUrl: String? = null,
+        ) {
+            val history = getPaymentHistory(context).toMutableList()
+            val checkout = paymentId?.let { id -> history.firstOrNull { it.id == id } }
+            history.add(
+                PaymentHistoryEntry(
+                    token = token,
+                    amount = checkout?.amount ?: amount,
+                    date = java.util.Date(),
+                    rawUnit = checkout?.getUnit() ?: "sat",
+                    rawEntryUnit = checkout?.getEntryUnit() ?: "sat",
+                    enteredAmount = checkout?.enteredAmount ?: amount,
+                    bitcoinPrice = checkout?.bitcoinPrice,
+                    mintUrl = mintUrl,
+                    paymentRequest = checkout?.paymentRequest,
+                    rawStatus = PaymentHistoryEntry.STATUS_COMPLETED,
+                    paymentType = paymentType,
+                    lightningInvoice = lightningInvoice,
+                    lightningQuoteId = lightningQuoteId,
+                    lightningMintUrl = lightningMintUrl,
+                    formattedAmount = checkout?.formattedAmount,
+                ),
+            )
+
+            val prefs = KeyValueStore.open(context, PREFS_NAME)
+            prefs.edit().putString(KEY_HISTORY, Gson().toJson(history)).apply()
+        }
+
         /**
          * Cancel a pending payment (mark as cancelled or delete).
          */
@@ -464,7 +508,23 @@ class PaymentsHistoryActivity : AppCompatActivity() {
             // Remove cancelled pending payments (they're not useful)
             history.removeAll { it.id == paymentId && it.isPending() }
 
-            val prefs = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+            val prefs = KeyValueStore.open(context, PREFS_NAME)
+            prefs.edit().putString(KEY_HISTORY, Gson().toJson(history)).apply()
+        }
+
+        /**
+         * Mark the payment made with [token] as rejected, after the mint refused a
+         * token that had been accepted offline.
+         */
+        @JvmStatic
+        fun markPaymentRejected(context: Context, token: String) {
+            val history = getPaymentHistory(context).toMutableList()
+            val index = history.indexOfFirst { it.token == token }
+            if (index < 0) return
+
+            history[index] = history[index].copy(rawStatus = PaymentHistoryEntry.STATUS_REJECTED)
+
+            val prefs = KeyValueStore.open(context, PREFS_NAME)
             prefs.edit().putString(KEY_HISTORY, Gson().toJson(history)).apply()
         }
 
@@ -500,7 +560,7 @@ class PaymentsHistoryActivity : AppCompatActivity() {
                 ),
             )
 
-            val prefs = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+            val prefs = KeyValueStore.open(context, PREFS_NAME)
             prefs.edit().putString(KEY_HISTORY, Gson().toJson(history)).apply()
         }
 
@@ -1,29 +1,40 @@
 package com.electricdreams.numo.feature.history
 
 import android.content.Context
-import android.content.SharedPreferences
+import android.content.Intent
 import android.os.Bundle
+import android.util.Log
+import android.view.Menu
+import android.view.MenuItem
 import android.view.View
 import android.widget.TextView
+import android.widget.Toast
 import androidx.appcompat.app.AlertDialog
 import androidx.appcompat.app.AppCompatActivity
 import androidx.appcompat.widget.Toolbar
+import androidx.core.content.FileProvider
+import androidx.lifecycle.lifecycleScope
 import androidx.recyclerview.widget.LinearLayoutManager
 import androidx.recyclerview.widget.RecyclerView
 import com.electricdreams.numo.feature.enableEdgeToEdgeWithPill
 import com.electricdreams.numo.R
-import com.electricdreams.numo.core.data.model.TokenHistoryEntry
+import com.electricdreams.numo.core.data.TokenHistoryStore
 import com.electricdreams.numo.ui.adapter.TokenHistoryAdapter
-import com.google.gson.Gson
-import com.google.gson.reflect.TypeToken
-import java.lang.reflect.Type
-import java.util.Collections
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+import java.io.File
+import java.io.IOException
 
 class TokenHistoryActivity : AppCompatActivity() {
 
+    private lateinit var store: TokenHistoryStore
     private lateinit var adapter: TokenHistoryAdapter
     private lateinit var emptyView: TextView
 
+    // Number of entries loaded into the adapter so far
+    private var loadedCount = 0
+
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
         setContentView(R.layout.activity_history)
@@ -39,39 +50,85 @@ class TokenHistoryActivity : AppCompatActivity() {
             title = getString(R.string.token_history_toolbar_title)
         }
 
+        store = TokenHistoryStore.getInstance(this)
+
         val recyclerView: RecyclerView = findViewById(R.id.history_recycler_view)
         emptyView = findViewById(R.id.empty_view)
 
         adapter = TokenHistoryAdapter().apply {
-            setOnDeleteClickListener { entry, position ->
+            setOnDeleteClickListener { entry, _ ->
                 AlertDialog.Builder(this@TokenHistoryActivity)
                     .setTitle(R.string.token_history_dialog_delete_title)
                     .setMessage(R.string.token_history_dialog_delete_message)
-                    .setPositiveButton(R.string.token_history_dialog_delete_positive) { _, _ -> deleteTokenFromHistory(position) }
+                    .setPositiveButton(R.string.token_history_dialog_delete_positive) { _, _ -> deleteTokenFromHistory(entry.id) }
                     .setNegativeButton(R.string.common_cancel, null)
                     .show()
             }
         }
 
+        val layoutManager = LinearLayoutManager(this)
         recyclerView.adapter = adapter
-        recyclerView.layoutManager = LinearLayoutManager(this)
+        recyclerView.layoutManager = layoutManager
+
+        // Load older entries as the list nears its end
+        recyclerView.addOnScrollListener(object : RecyclerView.OnScrollListener() {
+            override fun onScrolled(recyclerView: RecyclerView, dx: Int, dy: Int) {
+                if (dy <= 0) return
+                if (layoutManager.findLastVisibleItemPosition() >= loadedCount - PREFETCH_DISTANCE) {
+                    loadNextPage()
+                }
+            }
+        })
 
         // Load and display history
         loadHistory()
     }
 
+    override fun onCreateOptionsMenu(menu: Menu): Boolean {
+        menuInflater.inflate(R.menu.token_history_menu, menu)
+        return true
+    }
+
+    override fun onOptionsItemSelected(item: MenuItem): Boolean {
+        return when (item.itemId) {
+            R.id.action_export_csv -> {
+                exportHistory(csv = true)
+                true
+            }
+            R.id.action_export_json -> {
+                exportHistory(csv = false)
+                true
+            }
+            R.id.action_clear_history -> {
+                showClearHistoryConfirmation()
+                true
+            }
+            else -> super.onOptionsItemSelected(item)
+        }
+    }
+
     override fun onSupportNavigateUp(): Boolean {
         finish()
         return true
     }
 
     private fun loadHistory() {
-        val history = getTokenHistory().toMutableList()
-        Collections.reverse(history) // Show newest first
+        // Newest first; keep as many entries as were already shown
+        val history = store.page(0, maxOf(loadedCount, PAGE_SIZE))
+        loadedCount = history.size
         adapter.setEntries(history)
+        updateEmptyView()
+    }
 
-        val isEmpty = history.isEmpty()
-        emptyView.visibility = if (isEmpty) View.VISIBLE else View.GONE
+    private fun loadNextPage() {
+        if (loadedCount >= store.size()) return
+        val page = store.page(loadedCount, PAGE_SIZE)
+        loadedCount += page.size
+        adapter.appendEntries(page)
+    }
+
+    private fun updateEmptyView() {
+        emptyView.visibility = if (store.size() == 0) View.VISIBLE else View.GONE
     }
 
     private fun showClearHistoryConfirmation() {
@@ -84,46 +141,65 @@ class TokenHistoryActivity : AppCompatActivity() {
     }
 
     private fun clearAllHistory() {
-        val prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
-        prefs.edit().putString(KEY_HISTORY, "[]").apply()
-        loadHistory()
+        store.clear()
+        loadedCount = 0
+        adapter.setEntries(emptyList())
+        updateEmptyView()
     }
 
-    private fun deleteTokenFromHistory(position: Int) {
-        val history = getTokenHistory().toMutableList()
-        Collections.reverse(history)
-        if (position in 0 until history.size) {
-            history.removeAt(position)
-            Collections.reverse(history)
+    private fun deleteTokenFromHistory(id: Long) {
+        if (store.delete(id)) {
+            loadedCount--
+            adapter.removeEntry(id)
+            updateEmptyView()
+        }
+    }
 
-            val prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
-            prefs.edit().putString(KEY_HISTORY, Gson().toJson(history)).apply()
+    /** Stream the history into a file in the cache and offer it for sharing. */
+    private fun exportHistory(csv: Boolean) {
+        lifecycleScope.launch {
+            val file = try {
+                withContext(Dispatchers.IO) {
+                    val dir = File(cacheDir, EXPORT_DIR).apply { mkdirs() }
+                    val file = File(dir, if (csv) "token_history.csv" else "token_history.json")
+                    file.bufferedWriter().use { out ->
+                        if (csv) store.exportCsv(out) else store.exportJson(out)
+                    }
+                    file
+                }
+            } catch (e: IOException) {
+                Log.e(TAG, "Failed to export token history: ${e.message}", e)
+                Toast.makeText(
+                    this@TokenHistoryActivity,
+                    R.string.token_history_export_failed,
+                    Toast.LENGTH_SHORT,
+                ).show()
+                return@launch
+            }
 
-            loadHistory()
+            val uri = FileProvider.getUriForFile(
+                this@TokenHistoryActivity,
+                "$packageName.fileprovider",
+                file,
+            )
+            val shareIntent = Intent(Intent.ACTION_SEND).apply {
+                type = if (csv) "text/csv" else "application/json"
+                putExtra(Intent.EXTRA_STREAM, uri)
+                addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION)
+            }
+            startActivity(Intent.createChooser(shareIntent, getString(R.string.token_history_export_chooser)))
         }
     }
 
-    private fun getTokenHistory(): List<TokenHistoryEntry> = getTokenHistory(this)
-
     companion object {
-        private const val PREFS_NAME = "TokenHistory"
-        private const val KEY_HISTORY = "history"
-
-        @JvmStatic
-        fun getTokenHistory(context: Context): List<TokenHistoryEntry> {
-            val prefs = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
-            val json = prefs.getString(KEY_HISTORY, "[]")
-            val type: Type = object : TypeToken<ArrayList<TokenHistoryEntry>>() {}.type
-            return Gson().fromJson(json, type)
-        }
+        private const val TAG = "TokenHistoryActivity"
+        private const val EXPORT_DIR = "exports"
+        private const val PAGE_SIZE = 50
+        private const val PREFETCH_DISTANCE = 10
 
         @JvmStatic
         fun addToHistory(context: Context, token: String, amount: Long) {
-            val history = getTokenHistory(context).toMutableList()
-            history.add(TokenHistoryEntry(token, amount, java.util.Date()))
-
-            val prefs = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
-            prefs.edit().putString(KEY_HISTORY, Gson().toJson(history)).apply()
+            TokenHistoryStore.getInstance(context).add(token, amount)
         }
     }
 }
@@ -379,6 +379,7 @@ class TransactionDetailActivity : AppCompatActivity() {
             putExtra(BasketReceiptActivity.EXTRA_PAYMENT_TYPE, paymentType)
             putExtra(BasketReceiptActivity.EXTRA_PAYMENT_DATE, entry.date.time)
             putExtra(BasketReceiptActivity.EXTRA_TRANSACTION_ID, entry.token.takeIf { it.isNotEmpty() }?.take(32))
+            putExtra(BasketReceiptActivity.EXTRA_TOKEN, entry.token.takeIf { it.isNotEmpty() })
             putExtra(BasketReceiptActivity.EXTRA_MINT_URL, entry.mintUrl)
             entry.bitcoinPrice?.let { putExtra(BasketReceiptActivity.EXTRA_BITCOIN_PRICE, it) }
             
@@ -4,27 +4,18 @@ import android.Manifest
 import android.content.Intent
 import android.content.pm.PackageManager
 import android.os.Bundle
-import android.util.Log
 import android.view.View
 import android.widget.ImageButton
 import android.widget.TextView
 import android.widget.Toast
 import androidx.appcompat.app.AppCompatActivity
-import androidx.camera.core.CameraSelector
-import androidx.camera.core.ImageAnalysis
-import androidx.camera.core.Preview
-import androidx.camera.lifecycle.ProcessCameraProvider
 import androidx.camera.view.PreviewView
 import androidx.core.app.ActivityCompat
 import androidx.core.content.ContextCompat
 import com.electricdreams.numo.R
-import com.google.mlkit.vision.barcode.BarcodeScanner
-import com.google.mlkit.vision.barcode.BarcodeScannerOptions
-import com.google.mlkit.vision.barcode.BarcodeScanning
+import com.electricdreams.numo.feature.scanner.BarcodeFormats
+import com.electricdreams.numo.feature.scanner.BarcodeScanEngine
 import com.google.mlkit.vision.barcode.common.Barcode
-import com.google.mlkit.vision.common.InputImage
-import java.util.concurrent.ExecutorService
-import java.util.concurrent.Executors
 
 /**
  * Activity for scanning barcodes using CameraX and ML Kit.
@@ -33,8 +24,11 @@ import java.util.concurrent.Executors
 class BarcodeScannerActivity : AppCompatActivity() {
 
     companion object {
-        private const val TAG = "BarcodeScanner"
         private const val REQUEST_CAMERA_PERMISSION = 1001
+
+        // Cutout of @drawable/scanner_overlay
+        internal const val VIEWFINDER_WIDTH_DP = 280f
+        internal const val VIEWFINDER_HEIGHT_DP = 160f
         const val EXTRA_BARCODE_VALUE = "barcode_value"
         const val EXTRA_BARCODE_FORMAT = "barcode_format"
     }
@@ -44,9 +38,7 @@ class BarcodeScannerActivity : AppCompatActivity() {
     private lateinit var instructionText: TextView
     private lateinit var closeButton: ImageButton
 
-    private lateinit var cameraExecutor: ExecutorService
-    private var barcodeScanner: BarcodeScanner? = null
-    private var isScanning = true
+    private lateinit var scanEngine: BarcodeScanEngine
 
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
@@ -62,26 +54,16 @@ class BarcodeScannerActivity : AppCompatActivity() {
             finish()
         }
 
-        cameraExecutor = Executors.newSingleThreadExecutor()
-
-        // Configure barcode scanner for all common barcode formats
-        val options = BarcodeScannerOptions.Builder()
-            .setBarcodeFormats(
-                Barcode.FORMAT_EAN_13,
-                Barcode.FORMAT_EAN_8,
-                Barcode.FORMAT_UPC_A,
-                Barcode.FORMAT_UPC_E,
-                Barcode.FORMAT_CODE_128,
-                Barcode.FORMAT_CODE_39,
-                Barcode.FORMAT_CODE_93,
-                Barcode.FORMAT_ITF,
-                Barcode.FORMAT_CODABAR,
-                Barcode.FORMAT_QR_CODE,
-                Barcode.FORMAT_DATA_MATRIX
-            )
-            .build()
-
-        barcodeScanner = BarcodeScanning.getClient(options)
+        // The code being captured is new to the catalog, so accept every common format
+        scanEngine = BarcodeScanEngine(
+            context = this,
+            lifecycleOwner = this,
+            previewView = previewView,
+            formats = BarcodeFormats.ALL,
+            singleShot = true,
+            listener = ::onBarcodeDetected,
+        )
+        scanEngine.setCenteredRegionOfInterest(VIEWFINDER_WIDTH_DP, VIEWFINDER_HEIGHT_DP)
 
         if (checkCameraPermission()) {
             startCamera()
@@ -126,86 +108,19 @@ class BarcodeScannerActivity : AppCompatActivity() {
     }
 
     private fun startCamera() {
-        val cameraProviderFuture = ProcessCameraProvider.getInstance(this)
-
-        cameraProviderFuture.addListener({
-            val cameraProvider = cameraProviderFuture.get()
-
-            val preview = Preview.Builder()
-                .build()
-                .also {
-                    it.setSurfaceProvider(previewView.surfaceProvider)
-                }
-
-            val imageAnalysis = ImageAnalysis.Builder()
-                .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
-                .build()
-                .also {
-                    it.setAnalyzer(cameraExecutor) { imageProxy ->
-                        if (!isScanning) {
-                            imageProxy.close()
-                            return@setAnalyzer
-                        }
-
-                        @androidx.camera.core.ExperimentalGetImage
-                        val mediaImage = imageProxy.image
-                        if (mediaImage != null) {
-                            val image = InputImage.fromMediaImage(
-                                mediaImage,
-                                imageProxy.imageInfo.rotationDegrees
-                            )
-
-                            barcodeScanner?.process(image)
-                                ?.addOnSuccessListener { barcodes ->
-                                    if (barcodes.isNotEmpty() && isScanning) {
-                                        val barcode = barcodes.first()
-                                        barcode.rawValue?.let { value ->
-                                            isScanning = false
-                                            onBarcodeDetected(value, barcode.format)
-                                        }
-                                    }
-                                }
-                                ?.addOnFailureListener { e ->
-                                    Log.e(TAG, "Barcode scanning failed: ${e.message}")
-                                }
-                                ?.addOnCompleteListener {
-                                    imageProxy.close()
-                                }
-                        } else {
-                            imageProxy.close()
-                        }
-                    }
-                }
-
-            val cameraSelector = CameraSelector.DEFAULT_BACK_CAMERA
-
-            try {
-                cameraProvider.unbindAll()
-                cameraProvider.bindToLifecycle(
-                    this,
-                    cameraSelector,
-                    preview,
-                    imageAnalysis
-                )
-            } catch (e: Exception) {
-                Log.e(TAG, "Camera binding failed: ${e.message}")
-            }
-
-        }, ContextCompat.getMainExecutor(this))
+        scanEngine.start()
     }
 
     private fun onBarcodeDetected(value: String, format: Int) {
-        runOnUiThread {
-            // Provide haptic feedback
-            previewView.performHapticFeedback(android.view.HapticFeedbackConstants.CONFIRM)
+        // Provide haptic feedback
+        previewView.performHapticFeedback(android.view.HapticFeedbackConstants.CONFIRM)
 
-            val intent = Intent().apply {
-                putExtra(EXTRA_BARCODE_VALUE, value)
-                putExtra(EXTRA_BARCODE_FORMAT, formatToString(format))
-            }
-            setResult(RESULT_OK, intent)
-            finish()
+        val intent = Intent().apply {
+            putExtra(EXTRA_BARCODE_VALUE, value)
+            putExtra(EXTRA_BARCODE_FORMAT, formatToString(format))
         }
+        setResult(RESULT_OK, intent)
+        finish()
     }
 
     private fun formatToString(format: Int): String {
@@ -227,7 +142,6 @@ class BarcodeScannerActivity : AppCompatActivity() {
 
     override fun onDestroy() {
         super.onDestroy()
-        cameraExecutor.shutdown()
-        barcodeScanner?.close()
+        scanEngine.close()
     }
 }
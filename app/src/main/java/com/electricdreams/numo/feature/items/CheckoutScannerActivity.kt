@@ -8,7 +8,6 @@ import android.content.pm.PackageManager
 import android.graphics.Bitmap
 import android.graphics.BitmapFactory
 import android.os.Bundle
-import android.util.Log
 import android.view.View
 import android.view.animation.DecelerateInterpolator
 import android.widget.Button
@@ -18,10 +17,6 @@ import android.widget.LinearLayout
 import android.widget.TextView
 import android.widget.Toast
 import androidx.appcompat.app.AppCompatActivity
-import androidx.camera.core.CameraSelector
-import androidx.camera.core.ImageAnalysis
-import androidx.camera.core.Preview
-import androidx.camera.lifecycle.ProcessCameraProvider
 import androidx.camera.view.PreviewView
 import androidx.core.app.ActivityCompat
 import androidx.core.content.ContextCompat
@@ -31,14 +26,9 @@ import com.electricdreams.numo.core.model.Item
 import com.electricdreams.numo.core.util.BasketManager
 import com.electricdreams.numo.core.util.CurrencyManager
 import com.electricdreams.numo.core.util.ItemManager
-import com.google.mlkit.vision.barcode.BarcodeScanner
-import com.google.mlkit.vision.barcode.BarcodeScannerOptions
-import com.google.mlkit.vision.barcode.BarcodeScanning
-import com.google.mlkit.vision.barcode.common.Barcode
-import com.google.mlkit.vision.common.InputImage
+import com.electricdreams.numo.feature.scanner.BarcodeFormats
+import com.electricdreams.numo.feature.scanner.BarcodeScanEngine
 import java.io.File
-import java.util.concurrent.ExecutorService
-import java.util.concurrent.Executors
 
 /**
  * Barcode scanner for checkout mode - adds items to basket without closing.
@@ -63,8 +53,7 @@ class CheckoutScannerActivity : AppCompatActivity() {
     private lateinit var decreaseButton: ImageButton
     private lateinit var increaseButton: ImageButton
 
-    private lateinit var cameraExecutor: ExecutorService
-    private var barcodeScanner: BarcodeScanner? = null
+    private lateinit var scanEngine: BarcodeScanEngine
 
     private lateinit var itemManager: ItemManager
     private lateinit var basketManager: BasketManager
@@ -72,12 +61,9 @@ class CheckoutScannerActivity : AppCompatActivity() {
     private var currentItem: Item? = null
     private var currentQuantity: Int = 0
     private var lastScannedGtin: String? = null
-    private var lastScanTime: Long = 0
-    private var barcodeLeftView = true
     private var basketUpdated = false
     
     companion object {
-        private const val TAG = "CheckoutScanner"
         private const val REQUEST_CAMERA_PERMISSION = 1001
         const val RESULT_BASKET_UPDATED = 1002
         private const val SAME_BARCODE_COOLDOWN_MS = 2000L // 2 second cooldown for same barcode
@@ -93,26 +79,21 @@ class CheckoutScannerActivity : AppCompatActivity() {
         initViews()
         setupListeners()
 
-        cameraExecutor = Executors.newSingleThreadExecutor()
-
-        // Configure barcode scanner
-        val options = BarcodeScannerOptions.Builder()
-            .setBarcodeFormats(
-                Barcode.FORMAT_EAN_13,
-                Barcode.FORMAT_EAN_8,
-                Barcode.FORMAT_UPC_A,
-                Barcode.FORMAT_UPC_E,
-                Barcode.FORMAT_CODE_128,
-                Barcode.FORMAT_CODE_39,
-                Barcode.FORMAT_CODE_93,
-                Barcode.FORMAT_ITF,
-                Barcode.FORMAT_CODABAR,
-                Barcode.FORMAT_QR_CODE,
-                Barcode.FORMAT_DATA_MATRIX
-            )
-            .build()
-
-        barcodeScanner = BarcodeScanning.getClient(options)
+        // Only look for the symbologies the catalog's GTINs can be printed in.
+        // The engine reports a code held in view again only after the cooldown,
+        // which is what bumps the quantity of the current item.
+        val catalogGtins = itemManager.getAllItems().mapNotNull { it.gtin }
+        scanEngine = BarcodeScanEngine(
+            context = this,
+            lifecycleOwner = this,
+            previewView = previewView,
+            formats = BarcodeFormats.forGtins(catalogGtins),
+            duplicateWindowMs = SAME_BARCODE_COOLDOWN_MS,
+        ) { value, _ -> onBarcodeDetected(value) }
+        scanEngine.setCenteredRegionOfInterest(
+            BarcodeScannerActivity.VIEWFINDER_WIDTH_DP,
+            BarcodeScannerActivity.VIEWFINDER_HEIGHT_DP,
+        )
 
         if (checkCameraPermission()) {
             startCamera()
@@ -242,97 +223,26 @@ class CheckoutScannerActivity : AppCompatActivity() {
     }
 
     private fun startCamera() {
-        val cameraProviderFuture = ProcessCameraProvider.getInstance(this)
-
-        cameraProviderFuture.addListener({
-            val cameraProvider = cameraProviderFuture.get()
-
-            val preview = Preview.Builder()
-                .build()
-                .also {
-                    it.setSurfaceProvider(previewView.surfaceProvider)
-                }
-
-            val imageAnalysis = ImageAnalysis.Builder()
-                .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
-                .build()
-                .also {
-                    it.setAnalyzer(cameraExecutor) { imageProxy ->
-                        @androidx.camera.core.ExperimentalGetImage
-                        val mediaImage = imageProxy.image
-                        if (mediaImage != null) {
-                            val image = InputImage.fromMediaImage(
-                                mediaImage,
-                                imageProxy.imageInfo.rotationDegrees
-                            )
-
-                            barcodeScanner?.process(image)
-                                ?.addOnSuccessListener { barcodes ->
-                                    if (barcodes.isNotEmpty()) {
-                                        val barcode = barcodes.first()
-                                        barcode.rawValue?.let { value ->
-                                            onBarcodeDetected(value)
-                                        }
-                                    }
-                                }
-                                ?.addOnFailureListener { e ->
-                                    Log.e(TAG, "Barcode scanning failed: ${e.message}")
-                                }
-                                ?.addOnCompleteListener {
-                                    imageProxy.close()
-                                }
-                        } else {
-                            imageProxy.close()
-                        }
-                    }
-                }
-
-            val cameraSelector = CameraSelector.DEFAULT_BACK_CAMERA
-
-            try {
-                cameraProvider.unbindAll()
-                cameraProvider.bindToLifecycle(
-                    this,
-                    cameraSelector,
-                    preview,
-                    imageAnalysis
-                )
-            } catch (e: Exception) {
-                Log.e(TAG, "Camera binding failed: ${e.message}")
-            }
-
-        }, ContextCompat.getMainExecutor(this))
+        scanEngine.start()
     }
 
     private fun onBarcodeDetected(gtin: String) {
-        val currentTime = System.currentTimeMillis()
-        
-        // Check if this is the same barcode and we're within cooldown period
-        if (gtin == lastScannedGtin && currentTime - lastScanTime < SAME_BARCODE_COOLDOWN_MS) {
-            // Still in cooldown period, ignore this scan (no vibration)
-            return
-        }
-        
-        // Check if this is the same barcode after cooldown has passed
+        // Same barcode again after the cooldown - increment quantity
         if (gtin == lastScannedGtin) {
-            // Cooldown passed - increment quantity
-            if (currentItem != null) {
-                lastScanTime = currentTime
-                runOnUiThread {
-                    val item = currentItem ?: return@runOnUiThread
-                    val hasStock = if (item.trackInventory) {
-                        item.quantity > currentQuantity
-                    } else {
-                        true
-                    }
-
-                    if (hasStock) {
-                        currentQuantity++
-                        updateQuantityDisplay()
-                        updateBasketForCurrentItem()
-                        // Haptic feedback for successful quantity increment
-                        previewView.performHapticFeedback(android.view.HapticFeedbackConstants.CONFIRM)
-                    }
+            val item = currentItem
+            if (item != null) {
+                val hasStock = if (item.trackInventory) {
+                    item.quantity > currentQuantity
+                } else {
+                    true
+                }
+
+                if (hasStock) {
+                    currentQuantity++
+                    updateQuantityDisplay()
+                    updateBasketForCurrentItem()
+                    // Haptic feedback for successful quantity increment
+                    previewView.performHapticFeedback(android.view.HapticFeedbackConstants.CONFIRM)
                 }
                 return
             }
@@ -341,24 +251,21 @@ class CheckoutScannerActivity : AppCompatActivity() {
         // Different barcode - find item by Gtin
         val item = itemManager.findItemByGtin(gtin)
         if (item == null) {
-            // No haptic feedback for unknown items during cooldown
+            // No haptic feedback for unknown items
             return
         }
 
         lastScannedGtin = gtin
-        lastScanTime = currentTime
         currentItem = item
 
         // Get current basket quantity for this item
         val basketItem = basketManager.getBasketItems().find { it.item.id == item.id }
         currentQuantity = (basketItem?.quantity ?: 0) + 1
 
-        runOnUiThread {
-            showItemOverlay(item)
-            updateBasketForCurrentItem()
-            // Haptic feedback ONLY for successful scans (not during cooldown)
-            previewView.performHapticFeedback(android.view.HapticFeedbackConstants.CONFIRM)
-        }
+        showItemOverlay(item)
+        updateBasketForCurrentItem()
+        // Haptic feedback ONLY for successful scans (not during cooldown)
+        previewView.performHapticFeedback(android.view.HapticFeedbackConstants.CONFIRM)
     }
 
     private fun showItemOverlay(item: Item) {
@@ -436,8 +343,7 @@ class CheckoutScannerActivity : AppCompatActivity() {
 
     override fun onDestroy() {
         super.onDestroy()
-        cameraExecutor.shutdown()
-        barcodeScanner?.close()
+        scanEngine.close()
     }
 
     override fun onBackPressed() {
@@ -19,6 +19,8 @@ import android.widget.Toast
 import androidx.activity.result.ActivityResultLauncher
 import androidx.activity.result.contract.ActivityResultContracts
 import androidx.appcompat.app.AppCompatActivity
+import androidx.core.content.FileProvider
+import androidx.lifecycle.lifecycleScope
 import androidx.recyclerview.widget.ItemTouchHelper
 import androidx.recyclerview.widget.LinearLayoutManager
 import androidx.recyclerview.widget.RecyclerView
@@ -26,11 +28,11 @@ import com.electricdreams.numo.R
 import com.electricdreams.numo.core.model.Item
 import com.electricdreams.numo.core.util.ItemManager
 import com.electricdreams.numo.ui.util.DialogHelper
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 import java.io.File
-import java.io.FileOutputStream
 import java.io.IOException
-import java.io.InputStream
-import java.io.OutputStream
 import java.util.Collections
 
 class ItemListActivity : AppCompatActivity() {
@@ -43,6 +45,7 @@ class ItemListActivity : AppCompatActivity() {
     private lateinit var doneReorderButton: ImageButton
     private lateinit var adapter: ItemAdapter
     private lateinit var itemTouchHelper: ItemTouchHelper
+    private lateinit var importCsvButton: Button
 
     // Reordering mode state
     private var isReorderingMode = false
@@ -80,7 +83,8 @@ class ItemListActivity : AppCompatActivity() {
         bottomActions = findViewById(R.id.bottom_actions)
         fabAddItem = findViewById(R.id.fab_add_item)
         doneReorderButton = findViewById(R.id.done_reorder_button)
-        val importCsvButton: Button = findViewById(R.id.import_csv_button)
+        importCsvButton = findViewById(R.id.import_csv_button)
+        val exportCsvButton: Button = findViewById(R.id.export_csv_button)
         val clearItemsButton: TextView = findViewById(R.id.clear_items_button)
 
         itemManager = ItemManager.getInstance(this)
@@ -107,6 +111,10 @@ class ItemListActivity : AppCompatActivity() {
             csvPickerLauncher.launch("text/csv")
         }
 
+        exportCsvButton.setOnClickListener {
+            exportCsvFile()
+        }
+
         clearItemsButton.setOnClickListener {
             showClearAllDialog()
         }
@@ -152,41 +160,80 @@ class ItemListActivity : AppCompatActivity() {
         )
     }
 
+    /** Stream the picked file into the catalog off the main thread, showing the row count as it goes. */
     private fun importCsvFile(uri: Uri) {
-        try {
-            val tempFile = File(cacheDir, "import_catalog.csv")
-
-            contentResolver.openInputStream(uri)?.use { inputStream ->
-                FileOutputStream(tempFile).use { outputStream ->
-                    copyStream(inputStream, outputStream)
+        importCsvButton.isEnabled = false
+        lifecycleScope.launch {
+            val result = try {
+                withContext(Dispatchers.IO) {
+                    contentResolver.openInputStream(uri)?.reader()?.use { reader ->
+                        itemManager.importItems(reader, true) { rows ->
+                            runOnUiThread {
+                                importCsvButton.text = getString(R.string.item_list_importing_items, rows)
+                            }
+                        }
+                    }
                 }
-            } ?: run {
-                Toast.makeText(this, getString(R.string.item_list_toast_failed_open_csv), Toast.LENGTH_SHORT).show()
-                return
+            } catch (e: IOException) {
+                Log.e(TAG, "Error importing CSV file: ${e.message}", e)
+                Toast.makeText(
+                    this@ItemListActivity,
+                    getString(R.string.item_list_toast_error_importing_csv, e.message),
+                    Toast.LENGTH_SHORT,
+                ).show()
+                return@launch
+            } finally {
+                importCsvButton.isEnabled = true
+                importCsvButton.setText(R.string.item_list_import_from_csv)
+                refreshItems()
             }
 
-            val importedCount = itemManager.importItemsFromCsv(tempFile.absolutePath, true)
-
-            if (importedCount > 0) {
-                Toast.makeText(this, getString(R.string.item_list_toast_imported_items, importedCount), Toast.LENGTH_SHORT).show()
-                refreshItems()
-                setResult(Activity.RESULT_OK)
-            } else {
-                Toast.makeText(this, getString(R.string.item_list_toast_no_items_imported), Toast.LENGTH_SHORT).show()
+            when {
+                result == null -> Toast.makeText(
+                    this@ItemListActivity,
+                    getString(R.string.item_list_toast_failed_open_csv),
+                    Toast.LENGTH_SHORT,
+                ).show()
+                result.imported > 0 -> {
+                    Toast.makeText(
+                        this@ItemListActivity,
+                        getString(R.string.item_list_toast_imported_items, result.imported),
+                        Toast.LENGTH_SHORT,
+                    ).show()
+                    setResult(Activity.RESULT_OK)
+                }
+                else -> Toast.makeText(
+                    this@ItemListActivity,
+                    getString(R.string.item_list_toast_no_items_imported),
+                    Toast.LENGTH_SHORT,
+                ).show()
             }
-        } catch (e: IOException) {
-            Log.e(TAG, "Error importing CSV file: ${e.message}", e)
-            Toast.makeText(this, getString(R.string.item_list_toast_error_importing_csv, e.message), Toast.LENGTH_SHORT).show()
         }
     }
 
-    private fun copyStream(inputStream: InputStream, outputStream: OutputStream) {
-        val buffer = ByteArray(4096)
-        var bytesRead: Int
-        while (true) {
-            bytesRead = inputStream.read(buffer)
-            if (bytesRead == -1) break
-            outputStream.write(buffer, 0, bytesRead)
+    /** Stream the catalog into a file in the cache and offer it for sharing. */
+    private fun exportCsvFile() {
+        lifecycleScope.launch {
+            val file = try {
+                withContext(Dispatchers.IO) {
+                    val dir = File(cacheDir, EXPORT_DIR).apply { mkdirs() }
+                    val file = File(dir, "catalog.csv")
+                    file.bufferedWriter().use { itemManager.exportItems(it) }
+                    file
+                }
+            } catch (e: IOException) {
+                Log.e(TAG, "Failed to export catalog: ${e.message}", e)
+                Toast.makeText(this@ItemListActivity, R.string.item_list_toast_export_failed, Toast.LENGTH_SHORT).show()
+                return@launch
+            }
+
+            val uri = FileProvider.getUriForFile(this@ItemListActivity, "$packageName.fileprovider", file)
+            val shareIntent = Intent(Intent.ACTION_SEND).apply {
+                type = "text/csv"
+                putExtra(Intent.EXTRA_STREAM, uri)
+                addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION)
+            }
+            startActivity(Intent.createChooser(shareIntent, getString(R.string.item_list_export_chooser)))
         }
     }
 
@@ -479,5 +526,6 @@ class ItemListActivity : AppCompatActivity() {
 
     companion object {
         private const val TAG = "ItemListActivity"
+        private const val EXPORT_DIR = "exports"
     }
 }
@@ -74,7 +74,7 @@ class SelectionBasketAdapter(
             } else {
                 val currencyCode = currencyManager.getCurrentCurrency()
                 val currency = Amount.Currency.fromCode(currencyCode)
-                Amount.fromMajorUnits(basketItem.getTotalPrice(), currency).toString()
+                Amount(basketItem.getTotalCents(), currency).toString()
             }
 
             removeButton.setOnClickListener {
@@ -70,7 +70,7 @@ class BasketUIHandler(
      */
     fun updateBasketTotal() {
         val itemCount = basketManager.getTotalItemCount()
-        val fiatTotal = basketManager.getTotalPrice()
+        val fiatCents = basketManager.getTotalFiatCents()
         val satsTotal = basketManager.getTotalSatsDirectPrice()
 
         val formattedTotal = if (itemCount > 0) {
@@ -78,13 +78,13 @@ class BasketUIHandler(
             val currency = Amount.Currency.fromCode(currencyCode)
 
             when {
-                fiatTotal > 0 && satsTotal > 0 -> {
-                    val fiatAmount = Amount.fromMajorUnits(fiatTotal, currency)
+                fiatCents > 0 && satsTotal > 0 -> {
+                    val fiatAmount = Amount(fiatCents, currency)
                     val satsAmount = Amount(satsTotal, Amount.Currency.BTC)
                     "$fiatAmount + $satsAmount"
                 }
                 satsTotal > 0 -> Amount(satsTotal, Amount.Currency.BTC).toString()
-                else -> Amount.fromMajorUnits(fiatTotal, currency).toString()
+                else -> Amount(fiatCents, currency).toString()
             }
         } else {
             "0.00"
@@ -36,7 +36,7 @@ class CheckoutHandler(
             return
         }
 
-        val fiatTotal = basketManager.getTotalPrice()
+        val fiatCents = basketManager.getTotalFiatCents()
         val satsTotal = basketManager.getTotalSatsDirectPrice()
         val btcPrice = bitcoinPriceWorker.getCurrentPrice()
 
@@ -49,7 +49,7 @@ class CheckoutHandler(
         }
 
         // Determine how to format the amount for PaymentRequestActivity
-        val formattedAmount = formatPaymentAmount(fiatTotal, satsTotal)
+        val formattedAmount = formatPaymentAmount(fiatCents, satsTotal)
 
         // Create a snapshot of the basket BEFORE clearing it
         // This preserves the checkout data for receipt generation
@@ -99,17 +99,16 @@ class CheckoutHandler(
      * - Pure sats: Display as BTC/sats
      * - Mixed: Treat as pure sats (display as BTC)
      */
-    private fun formatPaymentAmount(fiatTotal: Double, satsTotal: Long): String {
+    private fun formatPaymentAmount(fiatCents: Long, satsTotal: Long): String {
         return when {
             // Pure fiat (no sats items) - display as fiat
-            satsTotal == 0L && fiatTotal > 0 -> {
+            satsTotal == 0L && fiatCents > 0 -> {
                 val currencyCode = currencyManager.getCurrentCurrency()
                 val currency = Amount.Currency.fromCode(currencyCode)
-                val fiatCents = (fiatTotal * 100).toLong()
                 Amount(fiatCents, currency).toString()
             }
             // Pure sats (no fiat items) - display as BTC/sats
-            fiatTotal == 0.0 && satsTotal > 0 -> {
+            fiatCents == 0L && satsTotal > 0 -> {
                 Amount(satsTotal, Amount.Currency.BTC).toString()
             }
             // Mixed fiat + sats - treat as pure sats (display as BTC)
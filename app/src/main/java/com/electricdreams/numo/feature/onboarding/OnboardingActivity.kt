@@ -37,6 +37,7 @@ import androidx.lifecycle.lifecycleScope
 import com.electricdreams.numo.ModernPOSActivity
 import com.electricdreams.numo.R
 import com.electricdreams.numo.core.cashu.CashuWalletManager
+import com.electricdreams.numo.core.cashu.offline.OfflineAcceptance
 import com.electricdreams.numo.core.util.MintManager
 import com.electricdreams.numo.nostr.NostrMintBackup
 import com.google.android.material.button.MaterialButton
@@ -755,6 +756,9 @@ class OnboardingActivity : AppCompatActivity() {
 
         lifecycleScope.launch {
             try {
+                // AppStartup leaves the wallet closed until onboarding is done
+                CashuWalletManager.init(this@OnboardingActivity)
+                CashuWalletManager.awaitInitialized()
                 val results = CashuWalletManager.restoreFromMnemonic(mnemonic) { mintUrl, status, before, after ->
                     if (selectedMints.contains(mintUrl)) {
                         withContext(Dispatchers.Main) {
@@ -1172,8 +1176,9 @@ class OnboardingActivity : AppCompatActivity() {
     private fun completeOnboarding() {
         setOnboardingComplete(this, true)
 
-        // Initialize CashuWalletManager if not already done
+        // AppStartup skipped these in a process started before onboarding
         CashuWalletManager.init(this)
+        OfflineAcceptance.init(this)
 
         // Go to main activity
         val intent = Intent(this, ModernPOSActivity::class.java)
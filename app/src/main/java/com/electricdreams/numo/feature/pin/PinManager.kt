@@ -5,6 +5,7 @@ import android.content.SharedPreferences
 import android.security.keystore.KeyGenParameterSpec
 import android.security.keystore.KeyProperties
 import android.util.Base64
+import com.electricdreams.numo.core.data.KeyValueStore
 import java.security.KeyStore
 import javax.crypto.Cipher
 import javax.crypto.KeyGenerator
@@ -22,7 +23,7 @@ import javax.crypto.spec.GCMParameterSpec
  */
 class PinManager private constructor(private val context: Context) {
 
-    private val prefs: SharedPreferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+    private val prefs: SharedPreferences = KeyValueStore.open(context, PREFS_NAME)
 
     companion object {
         private const val PREFS_NAME = "pin_prefs"
@@ -147,7 +148,7 @@ class PinManager private constructor(private val context: Context) {
                 prefs.edit()
                     .putInt(KEY_FAILED_ATTEMPTS, failedAttempts)
                     .putLong(KEY_LOCKOUT_UNTIL, System.currentTimeMillis() + LOCKOUT_DURATION_MS)
-                    .apply()
+                    .commit() // on disk before we answer, so killing the app cannot undo it
                 ValidationResult(
                     success = false,
                     error = "Too many failed attempts. Locked for 1 hour.",
@@ -155,7 +156,7 @@ class PinManager private constructor(private val context: Context) {
                     remainingLockoutMs = LOCKOUT_DURATION_MS
                 )
             } else {
-                prefs.edit().putInt(KEY_FAILED_ATTEMPTS, failedAttempts).apply()
+                prefs.edit().putInt(KEY_FAILED_ATTEMPTS, failedAttempts).commit()
                 ValidationResult(
                     success = false,
                     error = "Incorrect PIN. $attemptsRemaining attempt${if (attemptsRemaining > 1) "s" else ""} remaining.",
@@ -0,0 +1,67 @@
+package com.electricdreams.numo.feature.scanner
+
+import com.google.mlkit.vision.barcode.common.Barcode
+
+/**
+ * Barcode format sets for [BarcodeScanEngine]. Every format enabled makes ML Kit
+ * try another decoder on each frame, so scanners should ask only for the
+ * formats they can actually use.
+ */
+object BarcodeFormats {
+
+    /** Everything a product label might carry; for capturing an unknown GTIN. */
+    @JvmField
+    val ALL = intArrayOf(
+        Barcode.FORMAT_EAN_13,
+        Barcode.FORMAT_EAN_8,
+        Barcode.FORMAT_UPC_A,
+        Barcode.FORMAT_UPC_E,
+        Barcode.FORMAT_CODE_128,
+        Barcode.FORMAT_CODE_39,
+        Barcode.FORMAT_CODE_93,
+        Barcode.FORMAT_ITF,
+        Barcode.FORMAT_CODABAR,
+        Barcode.FORMAT_QR_CODE,
+        Barcode.FORMAT_DATA_MATRIX,
+    )
+
+    @JvmField
+    val QR_ONLY = intArrayOf(Barcode.FORMAT_QR_CODE)
+
+    /**
+     * The formats that can encode the given catalog GTINs, or [ALL] if the
+     * catalog has none (nothing to restrict to).
+     *
+     * GTIN-8/12/13 are printed as EAN/UPC symbols, GTIN-14 as ITF-14 or GS1-128;
+     * anything else a merchant typed in is assumed to be a Code 128/39 label.
+     */
+    @JvmStatic
+    fun forGtins(gtins: Collection<String>): IntArray {
+        val formats = LinkedHashSet<Int>()
+        for (raw in gtins) {
+            val gtin = raw.trim()
+            if (gtin.isEmpty()) continue
+            val numeric = gtin.all { it in '0'..'9' }
+            when {
+                numeric && gtin.length == 8 -> {
+                    formats.add(Barcode.FORMAT_EAN_8)
+                    formats.add(Barcode.FORMAT_UPC_E)
+                }
+                numeric && (gtin.length == 12 || gtin.length == 13) -> {
+                    // A UPC-A symbol is also a GTIN-13 with a leading zero
+                    formats.add(Barcode.FORMAT_UPC_A)
+                    formats.add(Barcode.FORMAT_EAN_13)
+                }
+                numeric && gtin.length == 14 -> {
+                    formats.add(Barcode.FORMAT_ITF)
+                    formats.add(Barcode.FORMAT_CODE_128)
+                }
+                else -> {
+                    formats.add(Barcode.FORMAT_CODE_128)
+                    formats.add(Barcode.FORMAT_CODE_39)
+                }
+            }
+        }
+        return if (formats.isEmpty()) ALL else formats.toIntArray()
+    }
+}
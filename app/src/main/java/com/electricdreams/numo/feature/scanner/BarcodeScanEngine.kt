@@ -0,0 +1,375 @@
+package com.electricdreams.numo.feature.scanner
+
+import android.app.ActivityManager
+import android.content.Context
+import android.graphics.RectF
+import android.os.SystemClock
+import android.util.Log
+import android.util.Size
+import android.view.View
+import androidx.camera.core.CameraSelector
+import androidx.camera.core.ImageAnalysis
+import androidx.camera.core.ImageProxy
+import androidx.camera.core.Preview
+import androidx.camera.core.resolutionselector.ResolutionSelector
+import androidx.camera.core.resolutionselector.ResolutionStrategy
+import androidx.camera.lifecycle.ProcessCameraProvider
+import androidx.camera.view.PreviewView
+import androidx.core.content.ContextCompat
+import androidx.lifecycle.LifecycleOwner
+import com.google.mlkit.vision.barcode.BarcodeScanner
+import com.google.mlkit.vision.barcode.BarcodeScannerOptions
+import com.google.mlkit.vision.barcode.BarcodeScanning
+import com.google.mlkit.vision.common.InputImage
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Camera + ML Kit barcode pipeline shared by the scanner screens.
+ *
+ * Compared to handing every full frame to ML Kit, the engine:
+ * - decodes only the region of interest (the on-screen viewfinder), copied out
+ *   of the luma plane into a reused buffer;
+ * - analyses at 640x480 on low-end devices and 1280x720 otherwise, dropping to
+ *   the lower resolution once if decoding turns out to be slow;
+ * - enables only the requested [formats] (see [BarcodeFormats]);
+ * - keeps a single decode in flight and drops frames that arrive meanwhile;
+ * - reports the same value at most once per [duplicateWindowMs].
+ *
+ * Detections are delivered to [listener] on the main thread. Call [start] once
+ * the camera permission is granted and [close] when the screen is destroyed.
+ *
+ * @param singleShot stop scanning after the first detection
+ */
+class BarcodeScanEngine(
+    private val context: Context,
+    private val lifecycleOwner: LifecycleOwner,
+    private val previewView: PreviewView,
+    formats: IntArray,
+    private val duplicateWindowMs: Long = DEFAULT_DUPLICATE_WINDOW_MS,
+    private val singleShot: Boolean = false,
+    private val listener: Listener,
+) {
+
+    fun interface Listener {
+        fun onBarcodeDetected(value: String, format: Int)
+    }
+
+    /** Snapshot of recent scanning performance. */
+    data class Stats(
+        val framesPerSecond: Float,
+        val averageDecodeMs: Float,
+        val analysisSize: Size?,
+    )
+
+    private val scanner: BarcodeScanner = BarcodeScanning.getClient(
+        BarcodeScannerOptions.Builder()
+            .setBarcodeFormats(formats.first(), *formats.copyOfRange(1, formats.size))
+            .build()
+    )
+    private val cameraExecutor: ExecutorService = Executors.newSingleThreadExecutor()
+    private val decodeInFlight = AtomicBoolean(false)
+
+    @Volatile
+    private var scanning = true
+
+    @Volatile
+    private var closed = false
+
+    // Region of interest in PreviewView pixels; null scans the whole frame
+    @Volatile
+    private var region: RectF? = null
+
+    private var cameraProvider: ProcessCameraProvider? = null
+    private var imageAnalysis: ImageAnalysis? = null
+    private var targetSize = if (isLowEndDevice()) LOW_RESOLUTION else HIGH_RESOLUTION
+    private var downgraded = false
+
+    // Reused NV21 buffer; only touched on the camera thread while no decode is in flight
+    private var cropBuffer = ByteArray(0)
+
+    // Main thread only
+    private val lastReported = HashMap<String, Long>()
+
+    // Guarded by statsLock
+    private val statsLock = Any()
+    private var windowStart = SystemClock.elapsedRealtime()
+    private var windowFrames = 0
+    private var windowDecodeMs = 0L
+    private var totalDecodes = 0
+    private var totalDecodeMs = 0L
+    private var lastStats = Stats(0f, 0f, null)
+
+    /** Performance over the last completed reporting window. */
+    val stats: Stats get() = synchronized(statsLock) { lastStats }
+
+    /** Bind the camera preview and analysis to [lifecycleOwner]. */
+    fun start() {
+        val providerFuture = ProcessCameraProvider.getInstance(context)
+        providerFuture.addListener({
+            if (closed) return@addListener
+            val provider = providerFuture.get()
+            cameraProvider = provider
+
+            val preview = Preview.Builder()
+                .build()
+                .also { it.setSurfaceProvider(previewView.surfaceProvider) }
+
+            try {
+                provider.unbindAll()
+                provider.bindToLifecycle(lifecycleOwner, CameraSelector.DEFAULT_BACK_CAMERA, preview)
+                bindAnalysis()
+            } catch (e: Exception) {
+                Log.e(TAG, "Camera binding failed: ${e.message}")
+            }
+        }, ContextCompat.getMainExecutor(context))
+    }
+
+    /** Restrict decoding to the on-screen bounds of [view], once it is laid out. */
+    fun setRegionOfInterest(view: View) {
+        view.post {
+            val viewLocation = IntArray(2)
+            val previewLocation = IntArray(2)
+            view.getLocationOnScreen(viewLocation)
+            previewView.getLocationOnScreen(previewLocation)
+            val left = (viewLocation[0] - previewLocation[0]).toFloat()
+            val top = (viewLocation[1] - previewLocation[1]).toFloat()
+            region = RectF(left, top, left + view.width, top + view.height)
+        }
+    }
+
+    /** Restrict decoding to a rectangle of the given size centred in the preview. */
+    fun setCenteredRegionOfInterest(widthDp: Float, heightDp: Float) {
+        previewView.post {
+            val density = previewView.resources.displayMetrics.density
+            val halfWidth = widthDp * density / 2f
+            val halfHeight = heightDp * density / 2f
+            val centerX = previewView.width / 2f
+            val centerY = previewView.height / 2f
+            region = RectF(centerX - halfWidth, centerY - halfHeight, centerX + halfWidth, centerY + halfHeight)
+        }
+    }
+
+    /** Resume scanning after a single-shot detection. */
+    fun resume() {
+        scanning = true
+    }
+
+    fun close() {
+        closed = true
+        scanning = false
+        cameraExecutor.shutdown()
+        scanner.close()
+    }
+
+    private fun bindAnalysis() {
+        val provider = cameraProvider ?: return
+        imageAnalysis?.let { provider.unbind(it) }
+
+        val analysis = ImageAnalysis.Builder()
+            .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+            .setResolutionSelector(
+                ResolutionSelector.Builder()
+                    .setResolutionStrategy(
+                        ResolutionStrategy(targetSize, ResolutionStrategy.FALLBACK_RULE_CLOSEST_LOWER_THEN_HIGHER)
+                    )
+                    .build()
+            )
+            .build()
+        analysis.setAnalyzer(cameraExecutor, ::analyze)
+        provider.bindToLifecycle(lifecycleOwner, CameraSelector.DEFAULT_BACK_CAMERA, analysis)
+        imageAnalysis = analysis
+        Log.d(TAG, "Analysis bound, target ${targetSize.width}x${targetSize.height}")
+    }
+
+    private fun analyze(imageProxy: ImageProxy) {
+        if (!scanning || closed || !decodeInFlight.compareAndSet(false, true)) {
+            imageProxy.close()
+            return
+        }
+
+        val frameSize = Size(imageProxy.width, imageProxy.height)
+        val image = try {
+            cropToRegion(imageProxy)
+        } catch (e: Exception) {
+            Log.e(TAG, "Frame crop failed: ${e.message}")
+            decodeInFlight.set(false)
+            return
+        } finally {
+            // The crop is a copy, so the camera can reuse the frame right away
+            imageProxy.close()
+        }
+
+        val started = SystemClock.elapsedRealtime()
+        scanner.process(image)
+            .addOnSuccessListener { barcodes ->
+                val barcode = barcodes.firstOrNull { it.rawValue != null } ?: return@addOnSuccessListener
+                deliver(barcode.rawValue!!, barcode.format)
+            }
+            .addOnFailureListener { e ->
+                Log.e(TAG, "Barcode scanning failed: ${e.message}")
+            }
+            .addOnCompleteListener {
+                recordDecode(SystemClock.elapsedRealtime() - started, frameSize)
+                decodeInFlight.set(false)
+            }
+    }
+
+    /**
+     * Copy the region of interest out of the Y plane into an NV21 image with
+     * neutral chroma; barcode decoding only looks at luma.
+     */
+    private fun cropToRegion(imageProxy: ImageProxy): InputImage {
+        val rotation = imageProxy.imageInfo.rotationDegrees
+        val frameWidth = imageProxy.width
+        val frameHeight = imageProxy.height
+        val crop = sensorRegion(frameWidth, frameHeight, rotation)
+
+        // NV21 needs even dimensions and origin
+        val left = (crop[0] * frameWidth).toInt() and 1.inv()
+        val top = (crop[1] * frameHeight).toInt() and 1.inv()
+        val width = (((crop[2] * frameWidth).toInt() - left) and 1.inv()).coerceAtLeast(2)
+        val height = (((crop[3] * frameHeight).toInt() - top) and 1.inv()).coerceAtLeast(2)
+
+        val lumaSize = width * height
+        val size = lumaSize + lumaSize / 2
+        if (cropBuffer.size != size) {
+            cropBuffer = ByteArray(size)
+            cropBuffer.fill(NEUTRAL_CHROMA, lumaSize, size)
+        }
+
+        val plane = imageProxy.planes[0]
+        val source = plane.buffer
+        val rowStride = plane.rowStride
+        val pixelStride = plane.pixelStride
+        for (row in 0 until height) {
+            val rowStart = (top + row) * rowStride + left * pixelStride
+            if (pixelStride == 1) {
+                source.position(rowStart)
+                source.get(cropBuffer, row * width, width)
+            } else {
+                for (col in 0 until width) {
+                    cropBuffer[row * width + col] = source.get(rowStart + col * pixelStride)
+                }
+            }
+        }
+        return InputImage.fromByteArray(cropBuffer, width, height, rotation, InputImage.IMAGE_FORMAT_NV21)
+    }
+
+    /**
+     * Map [region] from preview coordinates to a normalised (left, top, right,
+     * bottom) rectangle of the unrotated sensor frame, assuming the preview's
+     * default FILL_CENTER scaling.
+     */
+    private fun sensorRegion(frameWidth: Int, frameHeight: Int, rotation: Int): FloatArray {
+        val roi = region
+        val viewWidth = previewView.width
+        val viewHeight = previewView.height
+        if (roi == null || viewWidth == 0 || viewHeight == 0) return floatArrayOf(0f, 0f, 1f, 1f)
+
+        val rotated = rotation == 90 || rotation == 270
+        val uprightWidth = if (rotated) frameHeight else frameWidth
+        val uprightHeight = if (rotated) frameWidth else frameHeight
+        val scale = maxOf(viewWidth.toFloat() / uprightWidth, viewHeight.toFloat() / uprightHeight)
+        val offsetX = (viewWidth - uprightWidth * scale) / 2f
+        val offsetY = (viewHeight - uprightHeight * scale) / 2f
+
+        // Normalised in the upright frame, with a margin for imprecise aiming
+        val marginX = roi.width() * REGION_MARGIN
+        val marginY = roi.height() * REGION_MARGIN
+        val l = ((roi.left - marginX - offsetX) / scale / uprightWidth).coerceIn(0f, 1f)
+        val t = ((roi.top - marginY - offsetY) / scale / uprightHeight).coerceIn(0f, 1f)
+        val r = ((roi.right + marginX - offsetX) / scale / uprightWidth).coerceIn(0f, 1f)
+        val b = ((roi.bottom + marginY - offsetY) / scale / uprightHeight).coerceIn(0f, 1f)
+        if (r - l < MIN_REGION_FRACTION || b - t < MIN_REGION_FRACTION) return floatArrayOf(0f, 0f, 1f, 1f)
+
+        // The upright frame is the sensor frame rotated clockwise by [rotation]
+        return when (rotation) {
+            90 -> floatArrayOf(t, 1f - r, b, 1f - l)
+            180 -> floatArrayOf(1f - r, 1f - b, 1f - l, 1f - t)
+            270 -> floatArrayOf(1f - b, l, 1f - t, r)
+            else -> floatArrayOf(l, t, r, b)
+        }
+    }
+
+    private fun deliver(value: String, format: Int) {
+        if (!scanning || closed) return
+        val now = SystemClock.elapsedRealtime()
+        val last = lastReported[value]
+        if (last != null && now - last < duplicateWindowMs) return
+
+        if (lastReported.size >= MAX_TRACKED_VALUES) {
+            lastReported.entries.removeAll { now - it.value >= duplicateWindowMs }
+        }
+        lastReported[value] = now
+        if (singleShot) scanning = false
+        listener.onBarcodeDetected(value, format)
+    }
+
+    private fun recordDecode(decodeMs: Long, frameSize: Size) {
+        var slow = false
+        synchronized(statsLock) {
+            windowFrames++
+            windowDecodeMs += decodeMs
+            totalDecodes++
+            totalDecodeMs += decodeMs
+
+            val now = SystemClock.elapsedRealtime()
+            val elapsed = now - windowStart
+            if (elapsed >= STATS_WINDOW_MS) {
+                lastStats = Stats(
+                    framesPerSecond = windowFrames * 1000f / elapsed,
+                    averageDecodeMs = windowDecodeMs.toFloat() / windowFrames,
+                    analysisSize = frameSize,
+                )
+                Log.d(
+                    TAG,
+                    "Scanning ${frameSize.width}x${frameSize.height}: " +
+                        "%.1f fps, %.1f ms/decode".format(lastStats.framesPerSecond, lastStats.averageDecodeMs),
+                )
+                windowStart = now
+                windowFrames = 0
+                windowDecodeMs = 0
+            }
+
+            if (!downgraded && totalDecodes >= WARMUP_DECODES) {
+                slow = totalDecodeMs / totalDecodes > SLOW_DECODE_MS
+                if (slow || targetSize == LOW_RESOLUTION) downgraded = true
+            }
+        }
+        if (slow && targetSize != LOW_RESOLUTION && !closed) {
+            Log.d(TAG, "Decoding is slow, dropping analysis to ${LOW_RESOLUTION.width}x${LOW_RESOLUTION.height}")
+            targetSize = LOW_RESOLUTION
+            try {
+                bindAnalysis()
+            } catch (e: Exception) {
+                Log.e(TAG, "Rebinding analysis failed: ${e.message}")
+            }
+        }
+    }
+
+    private fun isLowEndDevice(): Boolean {
+        val activityManager = context.getSystemService(Context.ACTIVITY_SERVICE) as? ActivityManager
+        return activityManager?.isLowRamDevice == true ||
+            Runtime.getRuntime().availableProcessors() <= LOW_END_MAX_CORES
+    }
+
+    companion object {
+        private const val TAG = "BarcodeScanEngine"
+
+        const val DEFAULT_DUPLICATE_WINDOW_MS = 2000L
+
+        private val LOW_RESOLUTION = Size(640, 480)
+        private val HIGH_RESOLUTION = Size(1280, 720)
+        private const val LOW_END_MAX_CORES = 4
+        private const val WARMUP_DECODES = 30
+        private const val SLOW_DECODE_MS = 120L
+
+        private const val STATS_WINDOW_MS = 5000L
+        private const val REGION_MARGIN = 0.15f
+        private const val MIN_REGION_FRACTION = 0.05f
+        private const val MAX_TRACKED_VALUES = 32
+        private const val NEUTRAL_CHROMA: Byte = 0x80.toByte()
+    }
+}
@@ -4,17 +4,12 @@ import android.Manifest
 import android.content.Intent
 import android.content.pm.PackageManager
 import android.os.Bundle
-import android.util.Log
 import android.view.View
 import android.view.WindowManager
 import android.widget.ImageButton
 import android.widget.TextView
 import android.widget.Toast
 import androidx.appcompat.app.AppCompatActivity
-import androidx.camera.core.CameraSelector
-import androidx.camera.core.ImageAnalysis
-import androidx.camera.core.Preview
-import androidx.camera.lifecycle.ProcessCameraProvider
 import androidx.camera.view.PreviewView
 import androidx.core.app.ActivityCompat
 import androidx.core.content.ContextCompat
@@ -22,13 +17,6 @@ import androidx.core.view.WindowCompat
 import androidx.core.view.WindowInsetsCompat
 import androidx.core.view.WindowInsetsControllerCompat
 import com.electricdreams.numo.R
-import com.google.mlkit.vision.barcode.BarcodeScanner
-import com.google.mlkit.vision.barcode.BarcodeScannerOptions
-import com.google.mlkit.vision.barcode.BarcodeScanning
-import com.google.mlkit.vision.barcode.common.Barcode
-import com.google.mlkit.vision.common.InputImage
-import java.util.concurrent.ExecutorService
-import java.util.concurrent.Executors
 
 /**
  * Clean, fullscreen QR Code Scanner.
@@ -42,7 +30,6 @@ import java.util.concurrent.Executors
 class QRScannerActivity : AppCompatActivity() {
 
     companion object {
-        private const val TAG = "QRScanner"
         private const val REQUEST_CAMERA_PERMISSION = 1002
         
         const val EXTRA_QR_VALUE = "qr_value"
@@ -56,9 +43,7 @@ class QRScannerActivity : AppCompatActivity() {
     private lateinit var instructionText: TextView
     private lateinit var closeButton: ImageButton
 
-    private lateinit var cameraExecutor: ExecutorService
-    private var barcodeScanner: BarcodeScanner? = null
-    private var isScanning = true
+    private lateinit var scanEngine: BarcodeScanEngine
 
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
@@ -71,14 +56,15 @@ class QRScannerActivity : AppCompatActivity() {
         initViews()
         setupCustomization()
         
-        cameraExecutor = Executors.newSingleThreadExecutor()
-
-        // Configure scanner for QR codes only
-        val options = BarcodeScannerOptions.Builder()
-            .setBarcodeFormats(Barcode.FORMAT_QR_CODE)
-            .build()
-
-        barcodeScanner = BarcodeScanning.getClient(options)
+        // QR codes only, decoded inside the viewfinder frame
+        scanEngine = BarcodeScanEngine(
+            context = this,
+            lifecycleOwner = this,
+            previewView = previewView,
+            formats = BarcodeFormats.QR_ONLY,
+            singleShot = true,
+        ) { value, _ -> onQRCodeDetected(value) }
+        scanEngine.setRegionOfInterest(viewfinderFrame)
 
         if (checkCameraPermission()) {
             startCamera()
@@ -165,99 +151,30 @@ class QRScannerActivity : AppCompatActivity() {
     }
 
     private fun startCamera() {
-        val cameraProviderFuture = ProcessCameraProvider.getInstance(this)
-
-        cameraProviderFuture.addListener({
-            val cameraProvider = cameraProviderFuture.get()
-
-            val preview = Preview.Builder()
-                .build()
-                .also {
-                    it.setSurfaceProvider(previewView.surfaceProvider)
-                }
-
-            val imageAnalysis = ImageAnalysis.Builder()
-                .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
-                .build()
-                .also {
-                    it.setAnalyzer(cameraExecutor) { imageProxy ->
-                        if (!isScanning) {
-                            imageProxy.close()
-                            return@setAnalyzer
-                        }
-
-                        @androidx.camera.core.ExperimentalGetImage
-                        val mediaImage = imageProxy.image
-                        if (mediaImage != null) {
-                            val image = InputImage.fromMediaImage(
-                                mediaImage,
-                                imageProxy.imageInfo.rotationDegrees
-                            )
-
-                            barcodeScanner?.process(image)
-                                ?.addOnSuccessListener { barcodes ->
-                                    if (barcodes.isNotEmpty() && isScanning) {
-                                        val barcode = barcodes.first()
-                                        barcode.rawValue?.let { value ->
-                                            isScanning = false
-                                            onQRCodeDetected(value)
-                                        }
-                                    }
-                                }
-                                ?.addOnFailureListener { e ->
-                                    Log.e(TAG, "QR scanning failed: ${e.message}")
-                                }
-                                ?.addOnCompleteListener {
-                                    imageProxy.close()
-                                }
-                        } else {
-                            imageProxy.close()
-                        }
-                    }
-                }
-
-            val cameraSelector = CameraSelector.DEFAULT_BACK_CAMERA
-
-            try {
-                cameraProvider.unbindAll()
-                cameraProvider.bindToLifecycle(
-                    this,
-                    cameraSelector,
-                    preview,
-                    imageAnalysis
-                )
-            } catch (e: Exception) {
-                Log.e(TAG, "Camera binding failed: ${e.message}")
-            }
-
-        }, ContextCompat.getMainExecutor(this))
+        scanEngine.start()
     }
 
     private fun onQRCodeDetected(value: String) {
-        runOnUiThread {
-            // Haptic feedback
-            previewView.performHapticFeedback(android.view.HapticFeedbackConstants.CONFIRM)
-            
-            // Quick success pulse on viewfinder
-            viewfinderFrame.animate()
-                .scaleX(1.05f)
-                .scaleY(1.05f)
-                .setDuration(100)
-                .withEndAction {
-                    val intent = Intent().apply {
-                        putExtra(EXTRA_QR_VALUE, value)
-                    }
-                    setResult(RESULT_OK, intent)
-                    finish()
+        // Haptic feedback
+        previewView.performHapticFeedback(android.view.HapticFeedbackConstants.CONFIRM)
+        
+        // Quick success pulse on viewfinder
+        viewfinderFrame.animate()
+            .scaleX(1.05f)
+            .scaleY(1.05f)
+            .setDuration(100)
+            .withEndAction {
+                val intent = Intent().apply {
+                    putExtra(EXTRA_QR_VALUE, value)
                 }
-                .start()
-        }
+                setResult(RESULT_OK, intent)
+                finish()
+            }
+            .start()
     }
 
     override fun onDestroy() {
         super.onDestroy()
-        isScanning = false
-        cameraExecutor.shutdown()
-        barcodeScanner?.close()
+        scanEngine.close()
     }
 }
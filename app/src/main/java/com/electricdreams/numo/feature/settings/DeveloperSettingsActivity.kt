@@ -3,9 +3,13 @@ package com.electricdreams.numo.feature.settings
 import android.content.Intent
 import android.os.Bundle
 import android.view.View
+import android.widget.TextView
 import android.widget.Toast
 import androidx.appcompat.app.AppCompatActivity
+import androidx.appcompat.widget.SwitchCompat
 import com.electricdreams.numo.R
+import com.electricdreams.numo.core.cashu.offline.OfflineAcceptance
+import com.electricdreams.numo.core.util.NumoLog
 import com.electricdreams.numo.ui.util.DialogHelper
 import com.electricdreams.numo.feature.onboarding.OnboardingActivity
 
@@ -20,6 +24,70 @@ class DeveloperSettingsActivity : AppCompatActivity() {
         findViewById<View>(R.id.restart_onboarding_item).setOnClickListener {
             showRestartOnboardingDialog()
         }
+
+        findViewById<View>(R.id.export_diagnostics_item).setOnClickListener {
+            exportDiagnosticsLog()
+        }
+
+        findViewById<View>(R.id.payment_metrics_item).setOnClickListener {
+            startActivity(Intent(this, PaymentMetricsActivity::class.java))
+        }
+
+        val offlineSwitch = findViewById<SwitchCompat>(R.id.offline_acceptance_switch)
+        offlineSwitch.isChecked = OfflineAcceptance.isEnabled(this)
+        offlineSwitch.setOnCheckedChangeListener { _, isChecked ->
+            OfflineAcceptance.setEnabled(this, isChecked)
+        }
+        findViewById<View>(R.id.offline_acceptance_item).setOnClickListener {
+            if (OfflineAcceptance.isOutboxDamaged()) showDamagedOutboxDialog() else offlineSwitch.toggle()
+        }
+    }
+
+    override fun onResume() {
+        super.onResume()
+        updateOfflineSubtitle()
+    }
+
+    private fun updateOfflineSubtitle() {
+        val damaged = OfflineAcceptance.isOutboxDamaged()
+        findViewById<TextView>(R.id.offline_acceptance_subtitle).apply {
+            setText(
+                if (damaged) R.string.developer_settings_offline_outbox_damaged
+                else R.string.developer_settings_offline_acceptance_subtitle
+            )
+            setTextColor(getColor(if (damaged) R.color.color_warning else R.color.color_text_secondary))
+        }
+    }
+
+    private fun showDamagedOutboxDialog() {
+        DialogHelper.showConfirmation(
+            context = this,
+            config = DialogHelper.ConfirmationConfig(
+                title = getString(R.string.developer_settings_offline_outbox_dialog_title),
+                message = getString(R.string.developer_settings_offline_outbox_dialog_message),
+                confirmText = getString(R.string.developer_settings_offline_outbox_dialog_positive),
+                cancelText = getString(R.string.common_cancel),
+                isDestructive = false,
+                onConfirm = {
+                    val shareIntent = Intent(Intent.ACTION_SEND).apply {
+                        type = "text/plain"
+                        putExtra(Intent.EXTRA_TEXT, OfflineAcceptance.damagedOutboxContents().joinToString("\n\n"))
+                    }
+                    startActivity(Intent.createChooser(shareIntent, getString(R.string.developer_settings_offline_outbox_chooser)))
+                    OfflineAcceptance.resolveOutboxDamage()
+                    updateOfflineSubtitle()
+                }
+            )
+        )
+    }
+
+    private fun exportDiagnosticsLog() {
+        val shareIntent = Intent(Intent.ACTION_SEND).apply {
+            type = "text/plain"
+            putExtra(Intent.EXTRA_SUBJECT, getString(R.string.developer_settings_export_log_title))
+            putExtra(Intent.EXTRA_TEXT, NumoLog.export())
+        }
+        startActivity(Intent.createChooser(shareIntent, getString(R.string.developer_settings_export_log_chooser)))
     }
 
     private fun showRestartOnboardingDialog() {
@@ -0,0 +1,112 @@
+package com.electricdreams.numo.feature.settings
+
+import android.content.Intent
+import android.os.Bundle
+import android.util.Log
+import android.view.View
+import android.widget.TextView
+import android.widget.Toast
+import androidx.appcompat.app.AppCompatActivity
+import androidx.lifecycle.lifecycleScope
+import com.electricdreams.numo.R
+import com.electricdreams.numo.core.metrics.PaymentMetrics
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+import java.io.IOException
+import java.util.Locale
+
+/**
+ * Developer screen listing the [PaymentMetrics] collected since the app
+ * started, with JSON export and reset.
+ */
+class PaymentMetricsActivity : AppCompatActivity() {
+
+    private lateinit var metricsText: TextView
+
+    override fun onCreate(savedInstanceState: Bundle?) {
+        super.onCreate(savedInstanceState)
+        setContentView(R.layout.activity_payment_metrics)
+
+        metricsText = findViewById(R.id.metrics_text)
+
+        findViewById<View?>(R.id.back_button)?.setOnClickListener { finish() }
+        findViewById<View>(R.id.reset_button).setOnClickListener {
+            PaymentMetrics.reset()
+            render()
+        }
+        findViewById<View>(R.id.export_button).setOnClickListener { export() }
+    }
+
+    override fun onResume() {
+        super.onResume()
+        render()
+    }
+
+    private fun render() {
+        val histograms = PaymentMetrics.histograms()
+        val counters = PaymentMetrics.counters()
+        if (histograms.isEmpty() && counters.isEmpty()) {
+            metricsText.text = getString(R.string.payment_metrics_empty)
+            return
+        }
+
+        val text = StringBuilder()
+        if (histograms.isNotEmpty()) {
+            text.append(getString(R.string.payment_metrics_section_latency)).append('\n')
+            text.append(String.format(Locale.US, "%8s %7s %7s %7s\n", "n", "p50", "p95", "max"))
+            for ((name, snapshot) in histograms) {
+                text.append(name).append('\n')
+                text.append(
+                    String.format(
+                        Locale.US,
+                        "%8d %7d %7d %7d\n",
+                        snapshot.count,
+                        snapshot.p50Ms,
+                        snapshot.p95Ms,
+                        snapshot.maxMs,
+                    )
+                )
+            }
+        }
+        if (counters.isNotEmpty()) {
+            if (text.isNotEmpty()) text.append('\n')
+            text.append(getString(R.string.payment_metrics_section_counters)).append('\n')
+            for ((name, value) in counters) {
+                text.append(name).append(": ").append(value).append('\n')
+            }
+        }
+        metricsText.text = text
+    }
+
+    private fun export() {
+        lifecycleScope.launch {
+            val json = try {
+                withContext(Dispatchers.IO) {
+                    val file = PaymentMetrics.exportToFile(this@PaymentMetricsActivity)
+                    Log.d(TAG, "Exported payment metrics to ${file.absolutePath}")
+                    file.readText()
+                }
+            } catch (e: IOException) {
+                Log.e(TAG, "Failed to export payment metrics: ${e.message}", e)
+                Toast.makeText(
+                    this@PaymentMetricsActivity,
+                    getString(R.string.payment_metrics_export_failed),
+                    Toast.LENGTH_SHORT,
+                ).show()
+                return@launch
+            }
+
+            val shareIntent = Intent(Intent.ACTION_SEND).apply {
+                type = "application/json"
+                putExtra(Intent.EXTRA_SUBJECT, getString(R.string.payment_metrics_title))
+                putExtra(Intent.EXTRA_TEXT, json)
+            }
+            startActivity(Intent.createChooser(shareIntent, getString(R.string.payment_metrics_export)))
+        }
+    }
+
+    companion object {
+        private const val TAG = "PaymentMetricsActivity"
+    }
+}
@@ -0,0 +1,126 @@
+package com.electricdreams.numo.feature.settings
+
+import android.os.Bundle
+import android.widget.Button
+import android.widget.EditText
+import android.widget.ImageButton
+import android.widget.RadioGroup
+import android.widget.TextView
+import android.widget.Toast
+import androidx.appcompat.app.AppCompatActivity
+import com.electricdreams.numo.R
+import com.electricdreams.numo.core.printing.EscPosBuilder
+import com.electricdreams.numo.core.printing.NetworkPrinterConnection
+import com.electricdreams.numo.core.printing.ReceiptPrintQueue
+import com.electricdreams.numo.core.printing.ThermalPrinterPrefs
+
+/**
+ * Settings screen for the direct ESC/POS network printer.
+ *
+ * With a printer address saved, receipts are sent straight to the printer;
+ * without one they go through Android's print framework as before.
+ */
+class PrinterSettingsActivity : AppCompatActivity() {
+
+    private lateinit var hostInput: EditText
+    private lateinit var portInput: EditText
+    private lateinit var paperGroup: RadioGroup
+    private lateinit var testButton: Button
+
+    override fun onCreate(savedInstanceState: Bundle?) {
+        super.onCreate(savedInstanceState)
+        setContentView(R.layout.activity_printer_settings)
+
+        findViewById<ImageButton>(R.id.back_button).setOnClickListener { finish() }
+
+        hostInput = findViewById(R.id.printer_host_input)
+        portInput = findViewById(R.id.printer_port_input)
+        paperGroup = findViewById(R.id.paper_width_group)
+        testButton = findViewById(R.id.test_print_button)
+
+        hostInput.setText(ThermalPrinterPrefs.getHost(this).orEmpty())
+        portInput.setText(ThermalPrinterPrefs.getPort(this).toString())
+        paperGroup.check(
+            if (ThermalPrinterPrefs.getPaperWidthDots(this) == ThermalPrinterPrefs.PAPER_80MM_DOTS) {
+                R.id.radio_paper_80mm
+            } else {
+                R.id.radio_paper_58mm
+            }
+        )
+
+        findViewById<Button>(R.id.save_printer_button).setOnClickListener { save() }
+        testButton.setOnClickListener { printTestPage() }
+        findViewById<TextView>(R.id.use_system_print_button).setOnClickListener {
+            ThermalPrinterPrefs.setPrinter(this, null, NetworkPrinterConnection.DEFAULT_PORT, selectedPaperWidth())
+            hostInput.setText("")
+            portInput.setText(NetworkPrinterConnection.DEFAULT_PORT.toString())
+            Toast.makeText(this, R.string.printer_settings_toast_cleared, Toast.LENGTH_SHORT).show()
+        }
+    }
+
+    private fun save() {
+        val port = enteredPort() ?: return
+        val host = hostInput.text.toString().trim()
+        ThermalPrinterPrefs.setPrinter(this, host.ifEmpty { null }, port, selectedPaperWidth())
+        Toast.makeText(
+            this,
+            if (host.isEmpty()) R.string.printer_settings_toast_cleared else R.string.printer_settings_toast_saved,
+            Toast.LENGTH_SHORT,
+        ).show()
+        finish()
+    }
+
+    /** Send a short page to the entered (not necessarily saved) printer. */
+    private fun printTestPage() {
+        val host = hostInput.text.toString().trim()
+        if (host.isEmpty()) {
+            hostInput.requestFocus()
+            return
+        }
+        val port = enteredPort() ?: return
+        val title = getString(R.string.printer_settings_test_page)
+
+        testButton.isEnabled = false
+        ReceiptPrintQueue.forNetworkPrinter(host, port).enqueue(title, { _, error ->
+            runOnUiThread {
+                testButton.isEnabled = true
+                if (error == null) {
+                    Toast.makeText(this, R.string.printer_settings_toast_test_sent, Toast.LENGTH_SHORT).show()
+                } else {
+                    Toast.makeText(
+                        this,
+                        getString(R.string.printer_settings_toast_test_failed, error.message ?: host),
+                        Toast.LENGTH_LONG,
+                    ).show()
+                }
+            }
+        }) {
+            EscPosBuilder()
+                .initialize()
+                .align(EscPosBuilder.Align.CENTER)
+                .bold(true)
+                .line(title)
+                .bold(false)
+                .line("$host:$port")
+                .feed(3)
+                .cut()
+                .build()
+        }
+    }
+
+    private fun enteredPort(): Int? {
+        val port = portInput.text.toString().trim().toIntOrNull()
+        if (port == null || port !in 1..65535) {
+            Toast.makeText(this, R.string.printer_settings_toast_invalid_port, Toast.LENGTH_SHORT).show()
+            return null
+        }
+        return port
+    }
+
+    private fun selectedPaperWidth(): Int =
+        if (paperGroup.checkedRadioButtonId == R.id.radio_paper_80mm) {
+            ThermalPrinterPrefs.PAPER_80MM_DOTS
+        } else {
+            ThermalPrinterPrefs.PAPER_58MM_DOTS
+        }
+}
@@ -82,6 +82,11 @@ class SettingsActivity : AppCompatActivity() {
             startActivity(Intent(this, BasketNamesSettingsActivity::class.java))
         }
 
+        // Receipt printer - unprotected (only where receipts are printed)
+        findViewById<View>(R.id.printer_settings_item).setOnClickListener {
+            startActivity(Intent(this, PrinterSettingsActivity::class.java))
+        }
+
         // === Payments Section ===
 
         findViewById<View>(R.id.currency_settings_item).setOnClickListener {
@@ -8,6 +8,7 @@ import androidx.appcompat.app.AppCompatActivity
 import androidx.appcompat.app.AppCompatDelegate
 import androidx.appcompat.widget.SwitchCompat
 import com.electricdreams.numo.R
+import com.electricdreams.numo.core.data.KeyValueStore
 
 class ThemeSettingsActivity : AppCompatActivity() {
 
@@ -36,7 +37,7 @@ class ThemeSettingsActivity : AppCompatActivity() {
 
         // Initialize dark mode switch
         darkModeSwitch = findViewById(R.id.dark_mode_switch)
-        val prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+        val prefs = KeyValueStore.open(this, PREFS_NAME)
         val isDarkMode = prefs.getBoolean(KEY_DARK_MODE, false)
         darkModeSwitch.isChecked = isDarkMode
 
@@ -19,13 +19,13 @@ import com.electricdreams.numo.core.model.Amount
 import com.electricdreams.numo.core.util.BalanceRefreshBroadcast
 import com.electricdreams.numo.core.util.LightningAddressManager
 import com.electricdreams.numo.core.util.MintManager
+import com.electricdreams.numo.feature.autowithdraw.WithdrawalPlanner
 import com.electricdreams.numo.ui.components.WithdrawAddressCard
 import com.electricdreams.numo.ui.components.WithdrawInvoiceCard
 import com.google.android.material.card.MaterialCardView
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
-import org.cashudevkit.MintUrl
 
 /**
  * Premium Apple-like activity for withdrawing balance from a mint via Lightning.
@@ -49,6 +49,7 @@ class WithdrawLightningActivity : AppCompatActivity() {
     private var balance: Long = 0
     private lateinit var mintManager: MintManager
     private lateinit var lightningAddressManager: LightningAddressManager
+    private lateinit var withdrawalPlanner: WithdrawalPlanner
 
     // Views
     private lateinit var backButton: ImageButton
@@ -73,6 +74,7 @@ class WithdrawLightningActivity : AppCompatActivity() {
         balance = intent.getLongExtra("balance", 0)
         mintManager = MintManager.getInstance(this)
         lightningAddressManager = LightningAddressManager.getInstance(this)
+        withdrawalPlanner = WithdrawalPlanner.getInstance(this)
 
         if (mintUrl.isEmpty()) {
             Toast.makeText(
@@ -185,8 +187,7 @@ class WithdrawLightningActivity : AppCompatActivity() {
 
         lifecycleScope.launch {
             try {
-                val wallet = CashuWalletManager.getWallet()
-                if (wallet == null) {
+                if (CashuWalletManager.getWallet() == null) {
                     withContext(Dispatchers.Main) {
                         Toast.makeText(
                             this@WithdrawLightningActivity, 
@@ -198,28 +199,14 @@ class WithdrawLightningActivity : AppCompatActivity() {
                     return@launch
                 }
 
-                // Get melt quote
-                val meltQuote = withContext(Dispatchers.IO) {
-                    wallet.meltQuote(MintUrl(mintUrl), invoice, null)
-                }
+                // Pay from the mint the user picked; the planner only quotes it
+                val plan = withdrawalPlanner.planToInvoice(invoice, withdrawCandidates())
 
                 withContext(Dispatchers.Main) {
                     setLoading(false)
-                    
-                    // Check if we have enough balance (including fee reserve)
-                    val totalRequired = meltQuote.amount.value.toLong() + meltQuote.feeReserve.value.toLong()
-                    if (totalRequired > balance) {
-                        val maxAmount = (balance * (1 - FEE_BUFFER_PERCENT)).toLong()
-                        Toast.makeText(
-                            this@WithdrawLightningActivity,
-                            "Insufficient balance. Amount + fees ($totalRequired sats) exceeds your balance ($balance sats). Try an amount under $maxAmount sats.",
-                            Toast.LENGTH_LONG
-                        ).show()
-                        return@withContext
-                    }
 
                     // Launch melt quote activity
-                    launchMeltQuoteActivity(meltQuote, invoice, null)
+                    launchMeltQuoteActivity(plan, invoice, null)
                 }
             } catch (e: Exception) {
                 Log.e(TAG, "Error getting melt quote for invoice", e)
@@ -258,8 +245,7 @@ class WithdrawLightningActivity : AppCompatActivity() {
 
         lifecycleScope.launch {
             try {
-                val wallet = CashuWalletManager.getWallet()
-                if (wallet == null) {
+                if (CashuWalletManager.getWallet() == null) {
                     withContext(Dispatchers.Main) {
                         Toast.makeText(
                             this@WithdrawLightningActivity, 
@@ -271,33 +257,19 @@ class WithdrawLightningActivity : AppCompatActivity() {
                     return@launch
                 }
 
-                // Get melt quote for Lightning address
-                val amountMsat = amountSats * 1000
-                val meltQuote = withContext(Dispatchers.IO) {
-                    wallet.meltLightningAddressQuote(MintUrl(mintUrl), address, amountMsat.toULong())
-                }
+                // Resolve the address through the LNURL cache and quote the
+                // mint the user picked
+                val plan = withdrawalPlanner.planToAddress(address, amountSats, withdrawCandidates())
 
                 withContext(Dispatchers.Main) {
                     setLoading(false)
-                    
-                    // Check if we have enough balance (including fee reserve)
-                    val totalRequired = meltQuote.amount.value.toLong() + meltQuote.feeReserve.value.toLong()
-                    if (totalRequired > balance) {
-                        val maxAmount = (balance * (1 - FEE_BUFFER_PERCENT)).toLong()
-                        Toast.makeText(
-                            this@WithdrawLightningActivity,
-                            "Insufficient balance. Amount + fees ($totalRequired sats) exceeds your balance ($balance sats). Try an amount under $maxAmount sats.",
-                            Toast.LENGTH_LONG
-                        ).show()
-                        return@withContext
-                    }
 
                     // Save the lightning address to shared manager
                     // This persists it for both manual and auto withdrawals
                     lightningAddressManager.setLightningAddress(address)
 
                     // Launch melt quote activity
-                    launchMeltQuoteActivity(meltQuote, null, address)
+                    launchMeltQuoteActivity(plan, null, address)
                 }
             } catch (e: Exception) {
                 Log.e(TAG, "Error getting melt quote for Lightning address", e)
@@ -313,13 +285,21 @@ class WithdrawLightningActivity : AppCompatActivity() {
         }
     }
 
+    /**
+     * Only the mint this screen was opened for, at the balance it was opened
+     * with. The user chose which mint to withdraw from, so the planner must not
+     * move the payment to another one even if it would be cheaper.
+     */
+    private fun withdrawCandidates(): Map<String, Long> = mapOf(mintUrl to balance)
+
     private fun launchMeltQuoteActivity(
-        meltQuote: org.cashudevkit.MeltQuote, 
+        plan: WithdrawalPlanner.Plan,
         invoice: String?, 
         lightningAddress: String?
     ) {
+        val meltQuote = plan.quote
         val intent = Intent(this, WithdrawMeltQuoteActivity::class.java)
-        intent.putExtra("mint_url", mintUrl)
+        intent.putExtra("mint_url", plan.mintUrl)
         intent.putExtra("quote_id", meltQuote.id)
         intent.putExtra("amount", meltQuote.amount.value.toLong())
         intent.putExtra("fee_reserve", meltQuote.feeReserve.value.toLong())
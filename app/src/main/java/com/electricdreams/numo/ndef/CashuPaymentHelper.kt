@@ -1,9 +1,13 @@
 package com.electricdreams.numo.ndef
 
-import android.util.Log
 import com.cashujdk.nut18.PaymentRequest
 import com.cashujdk.nut18.Transport
 import com.cashujdk.nut18.TransportTag
+import com.electricdreams.numo.core.cashu.ReceivedProofIndex
+import com.electricdreams.numo.core.cashu.ReceivedToken
+import com.electricdreams.numo.core.cashu.offline.OfflineAcceptance
+import com.electricdreams.numo.core.metrics.PaymentMetrics
+import com.electricdreams.numo.core.util.NumoLog
 import com.google.gson.*
 import kotlinx.coroutines.runBlocking
 import java.math.BigInteger
@@ -44,15 +48,15 @@ object CashuPaymentHelper {
                 if (!allowedMints.isNullOrEmpty()) {
                     val mintsArray = allowedMints.toTypedArray()
                     mints = Optional.of(mintsArray)
-                    Log.d(TAG, "Added ${allowedMints.size} allowed mints to payment request")
+                    NumoLog.d(TAG) { "Added ${allowedMints.size} allowed mints to payment request" }
                 }
             }
 
             val encoded = paymentRequest.encode()
-            Log.d(TAG, "Created payment request: $encoded")
+            NumoLog.d(TAG) { "Created payment request: ${NumoLog.redact(encoded)}" }
             encoded
         } catch (e: Exception) {
-            Log.e(TAG, "Error creating payment request: ${e.message}", e)
+            NumoLog.e(TAG, "Error creating payment request: ${e.message}", e)
             null
         }
     }
@@ -84,7 +88,7 @@ object CashuPaymentHelper {
                 if (!allowedMints.isNullOrEmpty()) {
                     val mintsArray = allowedMints.toTypedArray()
                     mints = Optional.of(mintsArray)
-                    Log.d(TAG, "Added ${allowedMints.size} allowed mints to payment request (Nostr)")
+                    NumoLog.d(TAG) { "Added ${allowedMints.size} allowed mints to payment request (Nostr)" }
                 }
 
                 val nostrTransport = Transport().apply {
@@ -102,10 +106,10 @@ object CashuPaymentHelper {
             }
 
             val encoded = paymentRequest.encode()
-            Log.d(TAG, "Created Nostr payment request: $encoded")
+            NumoLog.d(TAG) { "Created Nostr payment request: ${NumoLog.redact(encoded)}" }
             encoded
         } catch (e: Exception) {
-            Log.e(TAG, "Error creating Nostr payment request: ${e.message}", e)
+            NumoLog.e(TAG, "Error creating Nostr payment request: ${e.message}", e)
             null
         }
     }
@@ -119,30 +123,30 @@ object CashuPaymentHelper {
     @JvmStatic
     fun extractCashuToken(text: String?): String? {
         if (text == null) {
-            Log.i(TAG, "extractCashuToken: Input text is null")
+            NumoLog.d(TAG) { "extractCashuToken: Input text is null" }
             return null
         }
 
         if (isCashuToken(text)) {
-            Log.i(TAG, "extractCashuToken: Input is already a Cashu token")
+            NumoLog.d(TAG) { "extractCashuToken: Input is already a Cashu token" }
             return text
         }
 
-        Log.i(TAG, "extractCashuToken: Analyzing text: $text")
+        NumoLog.d(TAG) { "extractCashuToken: Analyzing ${text.length} chars" }
 
         if (text.contains("#token=cashu")) {
-            Log.i(TAG, "extractCashuToken: Found #token=cashu pattern")
+            NumoLog.d(TAG) { "extractCashuToken: Found #token=cashu pattern" }
             val tokenStart = text.indexOf("#token=cashu")
             val cashuStart = tokenStart + 7
             val cashuEnd = text.length
 
             val token = text.substring(cashuStart, cashuEnd)
-            Log.i(TAG, "extractCashuToken: Extracted token from URL fragment: $token")
+            NumoLog.d(TAG) { "extractCashuToken: Extracted token from URL fragment: ${NumoLog.redact(token)}" }
             return token
         }
 
         if (text.contains("token=cashu")) {
-            Log.i(TAG, "extractCashuToken: Found token=cashu pattern")
+            NumoLog.d(TAG) { "extractCashuToken: Found token=cashu pattern" }
             val tokenStart = text.indexOf("token=cashu")
             val cashuStart = tokenStart + 6
             var cashuEnd = text.length
@@ -153,7 +157,7 @@ object CashuPaymentHelper {
             if (hashIndex > cashuStart && hashIndex < cashuEnd) cashuEnd = hashIndex
 
             val token = text.substring(cashuStart, cashuEnd)
-            Log.i(TAG, "extractCashuToken: Extracted token from URL parameter: $token")
+            NumoLog.d(TAG) { "extractCashuToken: Extracted token from URL parameter: ${NumoLog.redact(token)}" }
             return token
         }
 
@@ -161,7 +165,7 @@ object CashuPaymentHelper {
         for (prefix in prefixes) {
             val tokenIndex = text.indexOf(prefix)
             if (tokenIndex >= 0) {
-                Log.i(TAG, "extractCashuToken: Found $prefix at position $tokenIndex")
+                NumoLog.d(TAG) { "extractCashuToken: Found $prefix at position $tokenIndex" }
                 var endIndex = text.length
                 for (i in tokenIndex + prefix.length until text.length) {
                     val c = text[i]
@@ -171,12 +175,12 @@ object CashuPaymentHelper {
                     }
                 }
                 val token = text.substring(tokenIndex, endIndex)
-                Log.i(TAG, "extractCashuToken: Extracted token from text: $token")
+                NumoLog.d(TAG) { "extractCashuToken: Extracted token from text: ${NumoLog.redact(token)}" }
                 return token
             }
         }
 
-        Log.i(TAG, "extractCashuToken: No Cashu token found in text")
+        NumoLog.d(TAG) { "extractCashuToken: No Cashu token found in text" }
         return null
     }
 
@@ -184,55 +188,76 @@ object CashuPaymentHelper {
     fun isCashuPaymentRequest(text: String?): Boolean =
         text != null && text.startsWith("creqA")
 
+    // === Decoding ============================================================
+
+    /**
+     * Decode a token once at the entry point so later steps can share the result.
+     * Returns null if the text is not a decodable Cashu token.
+     */
+    @JvmStatic
+    fun decodeToken(tokenString: String?): ReceivedToken? {
+        if (!isCashuToken(tokenString)) {
+            NumoLog.e(TAG, "Invalid token format (not a Cashu token)")
+            return null
+        }
+        return try {
+            ReceivedToken.decode(tokenString ?: error("tokenString is null"))
+        } catch (e: Exception) {
+            NumoLog.e(TAG, "Token decoding failed: ${e.message}", e)
+            null
+        }
+    }
+
     // === Validation using CDK Token ========================================
 
     @JvmStatic
     fun validateToken(
-        tokenString: String?,
+        token: ReceivedToken,
         expectedAmount: Long,
         allowedMints: List<String>?,
     ): Boolean {
-        if (!isCashuToken(tokenString)) {
-            Log.e(TAG, "Invalid token format (not a Cashu token)")
+        if (!token.isSat) {
+            NumoLog.e(TAG, "Unsupported token unit: ${token.unit}")
             return false
         }
 
-        return try {
-            val token = org.cashudevkit.Token.Companion.decode(
-                tokenString ?: error("tokenString is null"),
-            )
+        if (isAlreadyReceived(token)) {
+            NumoLog.w(TAG, "Token was already received, rejecting replay")
+            return false
+        }
 
-            if (token.unit() != org.cashudevkit.CurrencyUnit.Sat) {
-                Log.e(TAG, "Unsupported token unit: ${token.unit()}")
+        if (!allowedMints.isNullOrEmpty()) {
+            val mintUrl = token.mintUrl
+            if (!allowedMints.contains(mintUrl)) {
+                NumoLog.e(TAG, "Mint not in allowed list: $mintUrl")
                 return false
+            } else {
+                NumoLog.d(TAG) { "Token mint validated: $mintUrl" }
             }
+        }
 
-            if (!allowedMints.isNullOrEmpty()) {
-                val mintUrl = token.mintUrl().url
-                if (!allowedMints.contains(mintUrl)) {
-                    Log.e(TAG, "Mint not in allowed list: $mintUrl")
-                    return false
-                } else {
-                    Log.d(TAG, "Token mint validated: $mintUrl")
-                }
-            }
+        val tokenAmount = token.amount
 
-            val tokenAmount = token.value().value.toLong()
+        if (tokenAmount < expectedAmount) {
+            NumoLog.e(
+                TAG,
+                "Amount was insufficient: $expectedAmount sats required but $tokenAmount sats provided",
+            )
+            return false
+        }
 
-            if (tokenAmount < expectedAmount) {
-                Log.e(
-                    TAG,
-                    "Amount was insufficient: $expectedAmount sats required but $tokenAmount sats provided",
-                )
-                return false
-            }
+        NumoLog.d(TAG) { "Token format validation passed using CDK Token; amount=$tokenAmount sats" }
+        return true
+    }
 
-            Log.d(TAG, "Token format validation passed using CDK Token; amount=$tokenAmount sats")
-            true
-        } catch (e: Exception) {
-            Log.e(TAG, "Token validation failed: ${e.message}", e)
-            false
-        }
+    @JvmStatic
+    fun validateToken(
+        tokenString: String?,
+        expectedAmount: Long,
+        allowedMints: List<String>?,
+    ): Boolean {
+        val token = decodeToken(tokenString) ?: return false
+        return validateToken(token, expectedAmount, allowedMints)
     }
 
     @JvmStatic
@@ -241,31 +266,22 @@ object CashuPaymentHelper {
 
     // === Redemption using CDK MultiMintWallet ===============================
 
+    /**
+     * Receive an already-decoded token into the wallet.
+     * @return the same token, for recording in history
+     */
     @JvmStatic
     @Throws(RedemptionException::class)
-    fun redeemToken(tokenString: String?): String {
-        if (!isCashuToken(tokenString)) {
-            val errorMsg = "Cannot redeem: Invalid token format"
-            Log.e(TAG, errorMsg)
-            throw RedemptionException(errorMsg)
-        }
-
+    fun redeemToken(token: ReceivedToken): ReceivedToken {
         try {
             val wallet =
                 com.electricdreams.numo.core.cashu.CashuWalletManager.getWallet()
                     ?: throw RedemptionException("CDK wallet not initialized")
 
-            // Decode incoming token using CDK Token
-            val cdkToken = org.cashudevkit.Token.Companion.decode(
-                tokenString ?: error("tokenString is null"),
-            )
-
-            if (cdkToken.unit() != org.cashudevkit.CurrencyUnit.Sat) {
-                throw RedemptionException("Unsupported token unit: ${cdkToken.unit()}")
+            if (!token.isSat) {
+                throw RedemptionException("Unsupported token unit: ${token.unit}")
             }
 
-            val mintUrl: org.cashudevkit.MintUrl = cdkToken.mintUrl()
-
             // Receive into wallet
             val receiveOptions = org.cashudevkit.ReceiveOptions(
                 amountSplitTarget = org.cashudevkit.SplitTarget.None,
@@ -280,36 +296,99 @@ object CashuPaymentHelper {
             )
 
             // Receive into wallet
-            runBlocking {
-                wallet.receive(cdkToken, mmReceive)
+            PaymentMetrics.time(PaymentMetrics.perMint("mint.receive", token.mintUrl)) {
+                runBlocking {
+                    wallet.receive(token.cdkToken, mmReceive)
+                }
             }
 
-            Log.d(TAG, "Token received via CDK successfully")
+            NumoLog.d(TAG) { "Token received via CDK successfully" }
             // Return the original token instead of sending a new one
-            return tokenString ?: error("tokenString is null")
+            return token
         } catch (e: RedemptionException) {
             throw e
         } catch (e: Exception) {
             val errorMsg = "Token redemption via CDK failed: ${e.message}"
-            Log.e(TAG, errorMsg, e)
+            NumoLog.e(TAG, errorMsg, e)
             throw RedemptionException(errorMsg, e)
         }
     }
 
+    /**
+     * Take payment of a validated token: accept it offline when it verifies
+     * against cached mint keys, otherwise redeem it at the mint right away.
+     *
+     * Its proofs are claimed in the [ReceivedProofIndex] first, so a token
+     * that was already received, or is being redeemed through another
+     * channel, fails here without a mint round trip.
+     * @return the same token, for recording in history
+     */
+    @JvmStatic
+    @Throws(RedemptionException::class)
+    fun receiveToken(
+        token: ReceivedToken,
+        expectedAmount: Long,
+        allowedMints: List<String>?,
+    ): ReceivedToken {
+        val index = ReceivedProofIndex.get()
+        val secrets = index?.let { ReceivedProofIndex.secretsOf(token) }
+        if (index != null && secrets != null && !index.claim(secrets)) {
+            PaymentMetrics.increment("payment.duplicate_rejected")
+            throw RedemptionException("Token was already received")
+        }
+
+        try {
+            if (OfflineAcceptance.tryAccept(token, expectedAmount, allowedMints)) {
+                NumoLog.d(TAG) { "Token accepted offline, redemption deferred" }
+            } else {
+                redeemToken(token)
+            }
+        } catch (e: Exception) {
+            if (secrets != null) index?.release(secrets)
+            throw e
+        }
+        if (secrets != null) index?.commit(secrets)
+        return token
+    }
+
+    /** True if any proof of [token] was received before or is being redeemed now. */
+    private fun isAlreadyReceived(token: ReceivedToken): Boolean {
+        val index = ReceivedProofIndex.get() ?: return false
+        val secrets = ReceivedProofIndex.secretsOf(token) ?: return false
+        if (!index.containsAny(secrets)) return false
+        PaymentMetrics.increment("payment.duplicate_rejected")
+        return true
+    }
+
+    @JvmStatic
+    @Throws(RedemptionException::class)
+    fun redeemToken(tokenString: String?): String {
+        val token = decodeToken(tokenString)
+            ?: throw RedemptionException("Cannot redeem: Invalid token format")
+        return redeemToken(token).encoded
+    }
+
     // === Redemption from PaymentRequestPayload (still cashu-jdk proofs) ==== 
 
+    /**
+     * Validate and redeem a NUT-18 PaymentRequestPayload.
+     *
+     * The proofs are checked against the request while still in payload form.
+     * They are then encoded into a token and decoded by CDK exactly once; the
+     * resulting [ReceivedToken] is what flows on to history and auto-withdraw.
+     */
     @JvmStatic
     @Throws(RedemptionException::class)
     fun redeemFromPRPayload(
         payloadJson: String?,
         expectedAmount: Long,
         allowedMints: List<String>?,
-    ): String {
+    ): ReceivedToken {
         if (payloadJson == null) {
             throw RedemptionException("PaymentRequestPayload JSON is null")
         }
         try {
-            Log.d(TAG, "payloadJson: $payloadJson")
+            NumoLog.d(TAG) { "Redeeming PaymentRequestPayload (${payloadJson.length} chars)" }
             val payload = PaymentRequestPayload.GSON.fromJson(
                 payloadJson,
                 PaymentRequestPayload::class.java,
@@ -338,22 +417,22 @@ object CashuPaymentHelper {
                 )
             }
 
-            // Build a legacy cashu-jdk Token from proofs, then let CDK wallet
-            // handle the redemption via redeemToken(encoded).
+            // CDK only accepts encoded tokens, so build one from the proofs and
+            // decode it a single time; everything downstream reuses the result.
             val tempToken = com.cashujdk.nut00.Token(payload.proofs!!, payload.unit!!, mintUrl)
-            val encoded = tempToken.encode()
-            return redeemToken(encoded)
+            val token = ReceivedToken.decode(tempToken.encode())
+            return receiveToken(token, expectedAmount, allowedMints)
         } catch (e: JsonSyntaxException) {
             throw RedemptionException("Invalid JSON for PaymentRequestPayload: ${e.message}", e)
         } catch (e: JsonIOException) {
             val errorMsg = "PaymentRequestPayload redemption failed: ${e.message}"
-            Log.e(TAG, errorMsg, e)
+            NumoLog.e(TAG, errorMsg, e)
             throw RedemptionException(errorMsg, e)
         } catch (e: RedemptionException) {
             throw e
         } catch (e: Exception) {
             val errorMsg = "PaymentRequestPayload redemption failed: ${e.message}"
-            Log.e(TAG, errorMsg, e)
+            NumoLog.e(TAG, errorMsg, e)
             throw RedemptionException(errorMsg, e)
         }
     }
@@ -1,6 +1,6 @@
 package com.electricdreams.numo.ndef;
 
-import android.util.Log;
+import com.electricdreams.numo.core.util.NumoLog;
 import java.util.Arrays;
 
 /**
@@ -19,18 +19,25 @@ public class NdefApduHandler {
      * Handle SELECT FILE commands
      */
     public byte[] handleSelectFile(byte[] apdu) {
-        byte[] fileId = Arrays.copyOfRange(apdu, 5, 7);
+        // The file id follows a 1-byte Lc, or a 3-byte one in extended form
+        int dataOffset = NdefUtils.isExtendedLength(apdu) ? 7 : 5;
+        if (apdu.length < dataOffset + 2) {
+            return NdefConstants.NDEF_RESPONSE_ERROR;
+        }
+        byte[] fileId = Arrays.copyOfRange(apdu, dataOffset, dataOffset + 2);
         
         if (Arrays.equals(fileId, NdefConstants.CC_FILE_ID)) {
-            stateManager.setSelectedFile(NdefConstants.CC_FILE);
-            Log.d(TAG, "CC File selected");
+            // Offer reads beyond 256 bytes only to a reader known to ask for them
+            boolean extended = stateManager.isReaderUsesExtendedLength();
+            stateManager.setSelectedFile(extended ? NdefConstants.CC_FILE_EXTENDED : NdefConstants.CC_FILE);
+            if (NumoLog.DEBUG) NumoLog.d(TAG, "CC File selected (extended reads: " + extended + ")");
             return NdefConstants.NDEF_RESPONSE_OK;
         } else if (Arrays.equals(fileId, NdefConstants.NDEF_FILE_ID)) {
             // Only respond if we're in payment mode (write mode enabled with a message)
-            if (stateManager.isInWriteMode() && !stateManager.getMessageToSend().isEmpty()) {
-                Log.d(TAG, "NDEF File selected, in write mode with message: " + stateManager.getMessageToSend());
-                byte[] ndefMessage = NdefMessageBuilder.createNdefMessage(stateManager.getMessageToSend());
-                stateManager.setSelectedFile(ndefMessage);
+            byte[] ndefFile = stateManager.getNdefFile();
+            if (stateManager.isInWriteMode() && ndefFile != null) {
+                if (NumoLog.DEBUG) NumoLog.d(TAG, "NDEF File selected, in write mode with " + ndefFile.length + " byte file");
+                stateManager.setSelectedFile(ndefFile);
                 
                 // Notify that the message is being sent
                 if (stateManager.getCallback() != null) {
@@ -39,18 +46,24 @@ public class NdefApduHandler {
                 return NdefConstants.NDEF_RESPONSE_OK;
             } else {
                 // Not in payment mode - return error to prevent exposing "en" language code
-                Log.d(TAG, "NDEF File selected but not in payment mode (write mode: " + stateManager.isInWriteMode() + 
+                if (NumoLog.DEBUG) NumoLog.d(TAG, "NDEF File selected but not in payment mode (write mode: " + stateManager.isInWriteMode() + 
                       ", has message: " + !stateManager.getMessageToSend().isEmpty() + ") - returning error");
                 return NdefConstants.NDEF_RESPONSE_ERROR;
             }
         } else {
-            Log.e(TAG, "Unknown file selected");
+            NumoLog.e(TAG, "Unknown file selected");
             return NdefConstants.NDEF_RESPONSE_ERROR;
         }
     }
     
     /**
-     * Handle READ BINARY commands
+     * Handle READ BINARY commands.
+     *
+     * Accepts both a short Le (1 byte, 0 meaning 256) and an extended Le
+     * (0x00 followed by 2 bytes, 0 meaning 65536), capped at
+     * {@link NdefConstants#MAX_READ_LENGTH}. Readers follow the MLe of the CC
+     * file, so only readers that have sent extended APDUs are told to use the
+     * larger reads.
      */
     public byte[] handleReadBinary(byte[] apdu) {
         byte[] selectedFile = stateManager.getSelectedFile();
@@ -59,24 +72,35 @@ public class NdefApduHandler {
         }
         
         // Determine the offset and length
-        int length = (apdu[4] & 0xFF);
-        if (length == 0) length = 256;
         int offset = ((apdu[2] & 0xFF) << 8) | (apdu[3] & 0xFF);
+        int length;
+        if (apdu.length == 7 && apdu[4] == 0) {
+            length = ((apdu[5] & 0xFF) << 8) | (apdu[6] & 0xFF);
+            if (length == 0) length = 65536;
+        } else {
+            length = (apdu[4] & 0xFF);
+            if (length == 0) length = 256;
+        }
+        length = Math.min(length, NdefConstants.MAX_READ_LENGTH);
         
-        if (offset + length > selectedFile.length) {
+        if (offset >= selectedFile.length) {
             return NdefConstants.NDEF_RESPONSE_ERROR;
         }
         
-        // Extract the requested data
-        byte[] data = Arrays.copyOfRange(selectedFile, offset, offset + length);
+        // Serve what is left of the file if Le asks for more
+        byte[] status = NdefConstants.NDEF_RESPONSE_OK;
+        if (offset + length > selectedFile.length) {
+            length = selectedFile.length - offset;
+            status = NdefConstants.NDEF_RESPONSE_END_OF_FILE;
+        }
         
-        // Combine the data with the status word
-        byte[] response = new byte[data.length + 2];
-        System.arraycopy(data, 0, response, 0, data.length);
-        System.arraycopy(NdefConstants.NDEF_RESPONSE_OK, 0, response, data.length, 2);
+        // Copy the slice straight out of the cached file, followed by the status word
+        byte[] response = new byte[length + 2];
+        System.arraycopy(selectedFile, offset, response, 0, length);
+        response[length] = status[0];
+        response[length + 1] = status[1];
         
-        Log.d(TAG, "READ BINARY requested " + length + " bytes at offset " + offset);
-        Log.d(TAG, "READ BINARY response: " + NdefUtils.bytesToHex(response));
+        if (NumoLog.DEBUG) NumoLog.d(TAG, "READ BINARY served " + length + " bytes at offset " + offset);
         
         return response;
     }
@@ -22,20 +22,34 @@ public class NdefConstants {
             0x00                      // Le (Length of expected response)
     };
 
+    // Largest READ BINARY response advertised (MLe in the CC file) to readers
+    // that have only sent short APDUs. A short Le cannot ask for more anyway.
+    public static final int SHORT_MAX_READ_LENGTH = 0x00FF;
+
+    // Largest READ BINARY response served, advertised as MLe only once the
+    // reader has sent an extended-length APDU in the current session, so that
+    // it can fetch a whole payment request at once.
+    public static final int MAX_READ_LENGTH = 0x0800;
+
     // Step 2: Select CC File (Capability Container)
     public static final byte[] CC_FILE_ID = {(byte) 0xE1, 0x03};
-    public static final byte[] CC_FILE = {
-            0x00, 0x0F,               // CCLEN = 15
-            0x20,                     // Mapping version (2.0)
-            0x00, 0x3B,               // MLe (max read)
-            0x00, 0x34,               // MLc (max write)
-            0x04,                     // T (NDEF File Control TLV)
-            0x06,                     // L
-            (byte) 0xE1, 0x04,        // File ID
-            (byte) 0x70, (byte) 0xFF, // Size (0x70FF = 28,671 bytes)
-            0x00,                     // Read access (unrestricted)
-            0x00                      // Write access (unrestricted)
-    };
+    public static final byte[] CC_FILE = buildCcFile(SHORT_MAX_READ_LENGTH);
+    public static final byte[] CC_FILE_EXTENDED = buildCcFile(MAX_READ_LENGTH);
+
+    private static byte[] buildCcFile(int maxReadLength) {
+        return new byte[] {
+                0x00, 0x0F,               // CCLEN = 15
+                0x20,                     // Mapping version (2.0)
+                (byte) (maxReadLength >> 8), (byte) maxReadLength, // MLe (max read)
+                0x00, 0x34,               // MLc (max write)
+                0x04,                     // T (NDEF File Control TLV)
+                0x06,                     // L
+                (byte) 0xE1, 0x04,        // File ID
+                (byte) 0x70, (byte) 0xFF, // Size (0x70FF = 28,671 bytes)
+                0x00,                     // Read access (unrestricted)
+                0x00                      // Write access (unrestricted)
+        };
+    }
 
     // Step 3: Select NDEF File
     public static final byte[] NDEF_FILE_ID = {(byte) 0xE1, 0x04};
@@ -49,6 +63,8 @@ public class NdefConstants {
     // Success and Error Responses
     public static final byte[] NDEF_RESPONSE_OK = {(byte) 0x90, 0x00};
     public static final byte[] NDEF_RESPONSE_ERROR = {(byte) 0x6A, (byte) 0x82};
+    // Warning: end of file reached before Le bytes were read
+    public static final byte[] NDEF_RESPONSE_END_OF_FILE = {(byte) 0x62, (byte) 0x82};
     
     // Record type flags
     public static final byte TEXT_RECORD_TYPE = 0x54; // 'T'
@@ -7,10 +7,13 @@ import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
 import android.content.Intent;
-import android.util.Log;
 
 import com.electricdreams.numo.R;
+import com.electricdreams.numo.core.cashu.ReceivedToken;
+import com.electricdreams.numo.core.metrics.PaymentMetrics;
+import com.electricdreams.numo.core.util.NumoLog;
 
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -43,15 +46,21 @@ public class NdefHostCardEmulationService extends HostApduService {
     
     // NFC reading state tracking
     private boolean isNfcReading = false;
+    // A received message is being validated or redeemed; guarded by this
+    private boolean handlingMessage = false;
+    // Drop the payment callback once the current message is handled; guarded by this
+    private boolean releaseCallbackWhenIdle = false;
     private Handler nfcTimeoutHandler;
     private Runnable nfcTimeoutRunnable;
     private static final long NFC_TIMEOUT_MS = 2000; // 2 seconds
+    // From the first APDU of a tap to the complete NDEF message
+    private volatile PaymentMetrics.Span tapSpan;
     
     /**
      * Callback interface for Cashu payments
      */
     public interface CashuPaymentCallback {
-        void onCashuTokenReceived(String token);
+        void onCashuTokenReceived(ReceivedToken token);
         void onCashuPaymentError(String errorMessage);
         void onNfcReadingStarted();
         void onNfcReadingStopped();
@@ -61,21 +70,23 @@ public class NdefHostCardEmulationService extends HostApduService {
      * Get the singleton instance
      */
     public static NdefHostCardEmulationService getInstance() {
-        Log.i(TAG, "getInstance called, instance: " + (instance != null ? "available" : "null"));
+        if (NumoLog.DEBUG) NumoLog.d(TAG, "getInstance called, instance: " + (instance != null ? "available" : "null"));
         return instance;
     }
     
     @Override
     public void onCreate() {
         super.onCreate();
-        Log.i(TAG, "=== NdefHostCardEmulationService created ===");
+        NumoLog.i(TAG, "=== NdefHostCardEmulationService created ===");
         
         // Initialize NFC timeout handler
         nfcTimeoutHandler = new Handler(Looper.getMainLooper());
         nfcTimeoutRunnable = new Runnable() {
             @Override
             public void run() {
-                Log.i(TAG, "NFC reading timeout - no APDU received for " + NFC_TIMEOUT_MS + "ms");
+                NumoLog.i(TAG, "NFC reading timeout - no APDU received for " + NFC_TIMEOUT_MS + "ms");
+                PaymentMetrics.increment("nfc.tap_timeouts");
+                tapSpan = null;
                 stopNfcReading();
             }
         };
@@ -85,139 +96,169 @@ public class NdefHostCardEmulationService extends HostApduService {
             ndefProcessor = new NdefProcessor(new NdefProcessor.NdefMessageCallback() {
                 @Override
                 public void onNdefMessageReceived(String message) {
+                    if (!beginMessage()) {
+                        // Nobody would receive the result, so leave the customer's token unspent
+                        NumoLog.w(TAG, "No payment callback set, ignoring NDEF message");
+                        return;
+                    }
                     try {
-                        // Log all NDEF messages at the INFO level to ensure visibility
-                        Log.i(TAG, "========== RECEIVED NDEF MESSAGE ==========");
-                        Log.i(TAG, "Message content: " + message);
+                        NumoLog.i(TAG, "Received NDEF message: " + NumoLog.redact(message));
+                        PaymentMetrics.Span tap = tapSpan;
+                        tapSpan = null;
+                        if (tap != null) {
+                            tap.end();
+                        }
                         
                         // Stop NFC reading indicator since we received the complete message
                         stopNfcReading();
                         
                         // First try to extract a Cashu token from the message
-                        String cashuToken = CashuPaymentHelper.extractCashuToken(message);
+                        String cashuTokenString = CashuPaymentHelper.extractCashuToken(message);
                         
-                        if (cashuToken != null) {
-                            Log.i(TAG, "Extracted Cashu token: " + cashuToken);
+                        if (cashuTokenString != null) {
+                            NumoLog.i(TAG, "Extracted Cashu token: " + NumoLog.redact(cashuTokenString));
+
+                            // Decode once; validation, redemption and history all share it
+                            ReceivedToken cashuToken = CashuPaymentHelper.decodeToken(cashuTokenString);
+                            if (cashuToken == null) {
+                                String errorMsg = "Received token could not be decoded";
+                                PaymentMetrics.increment("nfc.decode_failures");
+                                NumoLog.e(TAG, errorMsg);
+                                clearPaymentRequest();
+                                if (paymentCallback != null) {
+                                    paymentCallback.onCashuPaymentError(errorMsg);
+                                }
+                                return;
+                            }
                             
                             // Get the list of allowed mints
                             List<String> allowedMints = com.electricdreams.numo.core.util.MintManager.getInstance(getApplicationContext()).getAllowedMints();
-                            Log.i(TAG, "Using allowed mints list with " + allowedMints.size() + " entries");
+                            NumoLog.i(TAG, "Using allowed mints list with " + allowedMints.size() + " entries");
                             for (String mint : allowedMints) {
-                                Log.d(TAG, "allowed mint: " + mint);
+                                if (NumoLog.DEBUG) NumoLog.d(TAG, "allowed mint: " + mint);
                             }
                             
                             // Validate the token against expected amount and mints
                             boolean isValid = false;
                             if (expectedAmount > 0) {
-                                Log.i(TAG, "Validating token for expected amount: " + expectedAmount);
+                                NumoLog.i(TAG, "Validating token for expected amount: " + expectedAmount);
+                                PaymentMetrics.Span validateSpan = PaymentMetrics.startSpan("nfc.validate");
                                 isValid = CashuPaymentHelper.validateToken(cashuToken, expectedAmount, allowedMints);
                                 if (!isValid) {
+                                    validateSpan.fail();
                                     String errorMsg = "Token validation failed for amount or mint";
-                                    Log.e(TAG, errorMsg);
+                                    NumoLog.e(TAG, errorMsg);
                                     
                                     // Clear payment request on validation failure
                                     clearPaymentRequest();
                                     
                                     // Notify callback of validation error
                                     if (paymentCallback != null) {
-                                        Log.i(TAG, "Calling error callback with: " + errorMsg);
+                                        NumoLog.i(TAG, "Calling error callback with: " + errorMsg);
                                         paymentCallback.onCashuPaymentError(errorMsg);
                                     } else {
-                                        Log.e(TAG, "Payment callback is null, can't report validation error");
+                                        NumoLog.e(TAG, "Payment callback is null, can't report validation error");
                                     }
                                     return;
                                 }
-                                Log.i(TAG, "Token passed amount and mint validation for " + expectedAmount + " sats");
+                                validateSpan.end();
+                                NumoLog.i(TAG, "Token passed amount and mint validation for " + expectedAmount + " sats");
                             } else {
                                 // If no expected amount, just do basic validation
-                                Log.w(TAG, "No expected amount set for validation, performing basic check only");
+                                NumoLog.w(TAG, "No expected amount set for validation, performing basic check only");
                                 isValid = true;
                             }
                             
                             if (isValid) {
-                                Log.i(TAG, "Token passed validation, attempting redemption...");
+                                NumoLog.i(TAG, "Token passed validation, attempting redemption...");
+                                PaymentMetrics.Span receiveSpan = PaymentMetrics.startSpan("nfc.receive");
                                 
                                 try {
                                     // Try to redeem the token - this will throw an exception if redemption fails
-                                    String redeemedToken = CashuPaymentHelper.redeemToken(cashuToken);
-                                    Log.i(TAG, "Token successfully redeemed and reissued: " + redeemedToken.substring(0, Math.min(redeemedToken.length(), 20)) + "...");
+                                    ReceivedToken redeemedToken = CashuPaymentHelper.receiveToken(cashuToken, expectedAmount, allowedMints);
+                                    receiveSpan.end();
+                                    NumoLog.i(TAG, "Token successfully redeemed: " + redeemedToken);
                                     
                                     // Notify the callback with the redeemed token
                                     // The callback will handle success feedback (sound + vibration)
                                     if (paymentCallback != null) {
-                                        Log.i(TAG, "Calling payment success callback");
+                                        NumoLog.i(TAG, "Calling payment success callback");
                                         paymentCallback.onCashuTokenReceived(redeemedToken);
                                     } else {
-                                        Log.e(TAG, "Payment callback is null, can't deliver redeemed token");
+                                        NumoLog.e(TAG, "Payment callback is null, can't deliver redeemed token");
                                     }
                                 } catch (CashuPaymentHelper.RedemptionException e) {
                                     // This is a specific redemption failure
                                     String errorMsg = "Token redemption failed: " + e.getMessage();
-                                    Log.e(TAG, errorMsg, e);
+                                    receiveSpan.fail();
+                                    NumoLog.e(TAG, errorMsg, e);
                                     
                                     // Reset service state on error
                                     clearPaymentRequest();
                                     
                                     // Notify callback of error
                                     if (paymentCallback != null) {
-                                        Log.i(TAG, "Calling payment error callback for redemption failure");
+                                        NumoLog.i(TAG, "Calling payment error callback for redemption failure");
                                         paymentCallback.onCashuPaymentError(errorMsg);
                                     } else {
-                                        Log.e(TAG, "Payment callback is null, can't report redemption error");
+                                        NumoLog.e(TAG, "Payment callback is null, can't report redemption error");
                                     }
                                 } catch (Exception e) {
                                     // This is an unexpected error
                                     String errorMsg = "Unexpected error during token redemption: " + e.getMessage();
-                                    Log.e(TAG, errorMsg, e);
+                                    receiveSpan.fail();
+                                    NumoLog.e(TAG, errorMsg, e);
                                     
                                     // Reset service state on error
                                     clearPaymentRequest();
                                     
                                     // Notify callback of error
                                     if (paymentCallback != null) {
-                                        Log.i(TAG, "Calling payment error callback for unexpected error");
+                                        NumoLog.i(TAG, "Calling payment error callback for unexpected error");
                                         paymentCallback.onCashuPaymentError(errorMsg);
                                     } else {
-                                        Log.e(TAG, "Payment callback is null, can't report redemption error");
+                                        NumoLog.e(TAG, "Payment callback is null, can't report redemption error");
                                     }
                                 } finally {
                                     // Instead of always maintaining write mode, we now only maintain
                                     // write mode and processing flags if we want to continue receiving tokens
-                                    Log.i(TAG, "Token processing complete");
+                                    NumoLog.i(TAG, "Token processing complete");
                                     // Disable incoming message processing after successful token processing
                                     if (ndefProcessor != null) {
-                                        Log.i(TAG, "Disabling incoming message processing after token processing");
+                                        NumoLog.i(TAG, "Disabling incoming message processing after token processing");
                                         ndefProcessor.setProcessIncomingMessages(false);
                                     }
                                 }
                             } else {
-                                Log.e(TAG, "Token failed validation, ignoring");
+                                NumoLog.e(TAG, "Token failed validation, ignoring");
                             }
                         } else {
-                            Log.i(TAG, "No Cashu token found in received message");
+                            NumoLog.i(TAG, "No Cashu token found in received message");
                         }
                     } catch (Exception e) {
-                        Log.e(TAG, "Error in onNdefMessageReceived: " + e.getMessage(), e);
+                        NumoLog.e(TAG, "Error in onNdefMessageReceived: " + e.getMessage(), e);
+                    } finally {
+                        endMessage();
                     }
                 }
                 
                 @Override
                 public void onMessageSent() {
-                    Log.i(TAG, "NDEF message sent to peer device");
+                    NumoLog.i(TAG, "NDEF message sent to peer device");
                 }
             });
             
             // Set the instance
             instance = this;
-            Log.i(TAG, "NdefHostCardEmulationService initialization complete");
+            NumoLog.i(TAG, "NdefHostCardEmulationService initialization complete");
         } catch (Exception e) {
-            Log.e(TAG, "Error creating HCE service: " + e.getMessage(), e);
+            NumoLog.e(TAG, "Error creating HCE service: " + e.getMessage(), e);
         }
     }
     
     @Override
     public void onDestroy() {
-        Log.i(TAG, "=== HCE Service onDestroy called ===");
+        NumoLog.i(TAG, "=== HCE Service onDestroy called ===");
         super.onDestroy();
         
         // Clean up NFC reading timeout
@@ -225,7 +266,7 @@ public class NdefHostCardEmulationService extends HostApduService {
             nfcTimeoutHandler.removeCallbacks(nfcTimeoutRunnable);
         }
         
-        Log.i(TAG, "NdefHostCardEmulationService destroyed");
+        NumoLog.i(TAG, "NdefHostCardEmulationService destroyed");
         
         // Clear the instance if this is the current one
         if (instance == this) {
@@ -236,10 +277,7 @@ public class NdefHostCardEmulationService extends HostApduService {
     @Override
     public byte[] processCommandApdu(byte[] commandApdu, Bundle extras) {
         try {
-            // Log all incoming APDUs at INFO level for visibility
-            Log.i(TAG, "=== Received APDU command ===");
-            Log.i(TAG, "Hex: " + bytesToHex(commandApdu));
-            if (commandApdu.length > 0) {
+            if (NumoLog.DEBUG && commandApdu.length > 0) {
                 String description = "";
                 if (commandApdu.length >= 2) {
                     byte ins = commandApdu[1];
@@ -250,7 +288,9 @@ public class NdefHostCardEmulationService extends HostApduService {
                         default: description = "UNKNOWN";
                     }
                 }
-                Log.i(TAG, "Command: " + description);
+                // Header only: UPDATE BINARY bodies are pieces of the incoming token
+                NumoLog.d(TAG, "APDU " + description + " " + NdefUtils.apduHeaderToHex(commandApdu)
+                        + " (" + commandApdu.length + " bytes)");
             }
             
             // Start/reset NFC reading indicator when we receive APDU commands
@@ -260,33 +300,37 @@ public class NdefHostCardEmulationService extends HostApduService {
             }
             
             // Try to process with the NDEF processor
-            Log.i(TAG, "Delegating to NDEF processor");
             byte[] response = ndefProcessor.processCommandApdu(commandApdu);
             
             if (response != NdefConstants.NDEF_RESPONSE_ERROR) {
-                Log.i(TAG, "NDEF processor handled command successfully");
-                Log.i(TAG, "Response: " + bytesToHex(response));
+                // Responses can carry the whole payment request; log only size and status word
+                if (NumoLog.DEBUG) NumoLog.d(TAG, "NDEF processor handled command successfully, " + response.length
+                        + " byte response, SW " + NdefUtils.bytesToHex(Arrays.copyOfRange(response, response.length - 2, response.length)));
                 return response;
             }
             
             // If not handled by the NDEF processor, try other commands
             if (isAidSelectCommand(commandApdu)) {
-                Log.i(TAG, "AID select command received and handled");
+                if (NumoLog.DEBUG) NumoLog.d(TAG, "AID select command received and handled");
                 return STATUS_SUCCESS;
             }
             
             // Unknown command
-            Log.w(TAG, "Unknown command not handled by NDEF processor: " + bytesToHex(commandApdu));
+            NumoLog.w(TAG, "Unknown command not handled by NDEF processor, INS "
+                    + (commandApdu.length >= 2 ? String.format("%02X", commandApdu[1]) : "-"));
             return STATUS_FAILED;
         } catch (Exception e) {
-            Log.e(TAG, "Error processing APDU command: " + e.getMessage(), e);
+            NumoLog.e(TAG, "Error processing APDU command: " + e.getMessage(), e);
             return STATUS_FAILED;
         }
     }
 
     @Override
     public void onDeactivated(int reason) {
-        Log.i(TAG, "=== HCE Service deactivated with reason: " + reason + " ===");
+        NumoLog.i(TAG, "=== HCE Service deactivated with reason: " + reason + " ===");
+        if (ndefProcessor != null) {
+            ndefProcessor.onDeactivated();
+        }
     }
     
     /**
@@ -295,16 +339,16 @@ public class NdefHostCardEmulationService extends HostApduService {
      * @param amount The expected amount in sats
      */
     public void setPaymentRequest(String paymentRequest, long amount) {
-        Log.i(TAG, "Setting payment request: " + paymentRequest + " for amount: " + amount);
+        NumoLog.i(TAG, "Setting payment request: " + NumoLog.redact(paymentRequest) + " for amount: " + amount);
         this.expectedAmount = amount;
         if (ndefProcessor != null) {
             ndefProcessor.setMessageToSend(paymentRequest);
             ndefProcessor.setWriteMode(true); // Enable write mode to send payment request
             // Explicitly enable incoming message processing
             ndefProcessor.setProcessIncomingMessages(true);
-            Log.i(TAG, "NDEF processor ready to send and receive messages");
+            NumoLog.i(TAG, "NDEF processor ready to send and receive messages");
         } else {
-            Log.e(TAG, "NDEF processor is null, can't set payment request");
+            NumoLog.e(TAG, "NDEF processor is null, can't set payment request");
         }
     }
     
@@ -320,7 +364,7 @@ public class NdefHostCardEmulationService extends HostApduService {
      * Clear the payment request
      */
     public void clearPaymentRequest() {
-        Log.i(TAG, "Clearing payment request");
+        NumoLog.i(TAG, "Clearing payment request");
         this.expectedAmount = 0;
         
         // Stop NFC reading if active
@@ -332,18 +376,46 @@ public class NdefHostCardEmulationService extends HostApduService {
             ndefProcessor.setWriteMode(false);
             // Explicitly disable incoming message processing when payment is not expected
             ndefProcessor.setProcessIncomingMessages(false);
-            Log.i(TAG, "NDEF processor no longer processing incoming messages");
+            NumoLog.i(TAG, "NDEF processor no longer processing incoming messages");
         } else {
-            Log.e(TAG, "NDEF processor is null, can't clear payment request");
+            NumoLog.e(TAG, "NDEF processor is null, can't clear payment request");
         }
     }
     
     /**
      * Set the payment callback
      */
-    public void setPaymentCallback(CashuPaymentCallback callback) {
+    public synchronized void setPaymentCallback(CashuPaymentCallback callback) {
         this.paymentCallback = callback;
-        Log.i(TAG, "Payment callback set: " + (callback != null ? "yes" : "no"));
+        releaseCallbackWhenIdle = false;
+        NumoLog.i(TAG, "Payment callback set: " + (callback != null ? "yes" : "no"));
+    }
+
+    /**
+     * Detach the payment callback once the service is idle. A token received
+     * before this call may still be redeeming; the callback stays attached
+     * until its result has been delivered, so the payment is not lost.
+     */
+    public synchronized void releasePaymentCallback() {
+        if (handlingMessage) {
+            NumoLog.i(TAG, "Message still being handled; releasing payment callback when done");
+            releaseCallbackWhenIdle = true;
+        } else {
+            setPaymentCallback(null);
+        }
+    }
+
+    private synchronized boolean beginMessage() {
+        if (paymentCallback == null) return false;
+        handlingMessage = true;
+        return true;
+    }
+
+    private synchronized void endMessage() {
+        handlingMessage = false;
+        if (releaseCallbackWhenIdle) {
+            setPaymentCallback(null);
+        }
     }
     
     /**
@@ -364,17 +436,6 @@ public class NdefHostCardEmulationService extends HostApduService {
         return true;
     }
     
-    /**
-     * Convert a byte array to a hex string
-     */
-    private String bytesToHex(byte[] bytes) {
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) {
-            sb.append(String.format("%02X", b));
-        }
-        return sb.toString();
-    }
-    
     /**
      * Static method to check if HCE is available on this device
      */
@@ -384,34 +445,34 @@ public class NdefHostCardEmulationService extends HostApduService {
             android.nfc.NfcAdapter adapter = manager.getDefaultAdapter();
             
             if (adapter == null) {
-                Log.i(TAG, "NFC is not supported on this device");
+                NumoLog.i(TAG, "NFC is not supported on this device");
                 return false;
             }
             
             if (!adapter.isEnabled()) {
-                Log.i(TAG, "NFC is disabled on this device");
+                NumoLog.i(TAG, "NFC is disabled on this device");
                 return false;
             }
             
             if (!context.getPackageManager().hasSystemFeature(android.content.pm.PackageManager.FEATURE_NFC_HOST_CARD_EMULATION)) {
-                Log.i(TAG, "HCE is not supported on this device");
+                NumoLog.i(TAG, "HCE is not supported on this device");
                 return false;
             }
             
-            Log.i(TAG, "HCE is available on this device");
+            NumoLog.i(TAG, "HCE is available on this device");
             return true;
         } catch (Exception e) {
-            Log.e(TAG, "Error checking HCE availability: " + e.getMessage(), e);
+            NumoLog.e(TAG, "Error checking HCE availability: " + e.getMessage(), e);
             return false;
         }
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        Log.i(TAG, "=== HCE Service onStartCommand called ===");
-        Log.i(TAG, "Intent: " + (intent != null ? intent.toString() : "null"));
-        Log.i(TAG, "Flags: " + flags);
-        Log.i(TAG, "StartId: " + startId);
+        NumoLog.i(TAG, "=== HCE Service onStartCommand called ===");
+        NumoLog.i(TAG, "Intent: " + (intent != null ? intent.toString() : "null"));
+        NumoLog.i(TAG, "Flags: " + flags);
+        NumoLog.i(TAG, "StartId: " + startId);
         
         return START_STICKY;
     }
@@ -420,26 +481,26 @@ public class NdefHostCardEmulationService extends HostApduService {
      * Log bind events (using a wrapped method since onBind is final)
      */
     public void logBindEvent(Intent intent) {
-        Log.i(TAG, "=== HCE Service bind event ===");
-        Log.i(TAG, "Intent: " + (intent != null ? intent.toString() : "null"));
+        NumoLog.i(TAG, "=== HCE Service bind event ===");
+        NumoLog.i(TAG, "Intent: " + (intent != null ? intent.toString() : "null"));
     }
 
     @Override
     public void onTrimMemory(int level) {
-        Log.i(TAG, "=== HCE Service onTrimMemory called with level: " + level);
+        NumoLog.i(TAG, "=== HCE Service onTrimMemory called with level: " + level);
         super.onTrimMemory(level);
     }
 
     @Override
     public void onLowMemory() {
-        Log.i(TAG, "=== HCE Service onLowMemory called ===");
+        NumoLog.i(TAG, "=== HCE Service onLowMemory called ===");
         super.onLowMemory();
     }
 
     @Override
     public void onTaskRemoved(Intent rootIntent) {
-        Log.i(TAG, "=== HCE Service onTaskRemoved called ===");
-        Log.i(TAG, "Root Intent: " + (rootIntent != null ? rootIntent.toString() : "null"));
+        NumoLog.i(TAG, "=== HCE Service onTaskRemoved called ===");
+        NumoLog.i(TAG, "Root Intent: " + (rootIntent != null ? rootIntent.toString() : "null"));
         super.onTaskRemoved(rootIntent);
     }
     
@@ -450,8 +511,9 @@ public class NdefHostCardEmulationService extends HostApduService {
     private void startOrResetNfcReading() {
         // If not currently reading, notify callback that we've started
         if (!isNfcReading) {
-            Log.i(TAG, "NFC reading started");
+            NumoLog.i(TAG, "NFC reading started");
             isNfcReading = true;
+            tapSpan = PaymentMetrics.startSpan("nfc.tap_to_ndef");
             if (paymentCallback != null) {
                 paymentCallback.onNfcReadingStarted();
             }
@@ -468,7 +530,7 @@ public class NdefHostCardEmulationService extends HostApduService {
      */
     private void stopNfcReading() {
         if (isNfcReading) {
-            Log.i(TAG, "NFC reading stopped");
+            NumoLog.i(TAG, "NFC reading stopped");
             isNfcReading = false;
             
             // Cancel any pending timeout
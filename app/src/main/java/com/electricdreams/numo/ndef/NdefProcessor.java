@@ -1,6 +1,6 @@
 package com.electricdreams.numo.ndef;
 
-import android.util.Log;
+import com.electricdreams.numo.core.util.NumoLog;
 import java.util.Arrays;
 
 /**
@@ -66,35 +66,47 @@ public class NdefProcessor {
      * Process an APDU command and return the appropriate response
      */
     public byte[] processCommandApdu(byte[] commandApdu) {
+        if (NdefUtils.isExtendedLength(commandApdu) && !stateManager.isReaderUsesExtendedLength()) {
+            if (NumoLog.DEBUG) NumoLog.d(TAG, "Reader sent an extended-length APDU");
+            stateManager.setReaderUsesExtendedLength(true);
+        }
+
         // Check if NDEF AID is selected
         if (Arrays.equals(commandApdu, NdefConstants.NDEF_SELECT_AID)) {
-            Log.d(TAG, "NDEF AID selected (write mode: " + stateManager.isInWriteMode() + 
+            if (NumoLog.DEBUG) NumoLog.d(TAG, "NDEF AID selected (write mode: " + stateManager.isInWriteMode() + 
                   ", has message: " + !stateManager.getMessageToSend().isEmpty() + ")");
             return NdefConstants.NDEF_RESPONSE_OK;
         }
         
         // Handle File Selection
         if (isSelectFileCommand(commandApdu)) {
-            Log.d(TAG, "SELECT FILE command received");
+            if (NumoLog.DEBUG) NumoLog.d(TAG, "SELECT FILE command received");
             return apduHandler.handleSelectFile(commandApdu);
         }
         
         // Handle Read Binary
         if (isReadBinaryCommand(commandApdu)) {
-            Log.d(TAG, "READ BINARY command received");
+            if (NumoLog.DEBUG) NumoLog.d(TAG, "READ BINARY command received");
             return apduHandler.handleReadBinary(commandApdu);
         }
         
         // Handle Update Binary
         if (isUpdateBinaryCommand(commandApdu)) {
-            Log.d(TAG, "UPDATE BINARY command received: " + NdefUtils.bytesToHex(commandApdu));
+            if (NumoLog.DEBUG) NumoLog.d(TAG, "UPDATE BINARY command received: " + NdefUtils.apduHeaderToHex(commandApdu));
             return updateBinaryHandler.handleUpdateBinary(commandApdu);
         }
         
-        Log.d(TAG, "Invalid APDU received: " + NdefUtils.bytesToHex(commandApdu));
+        if (NumoLog.DEBUG) NumoLog.d(TAG, "Invalid APDU received: " + NdefUtils.apduHeaderToHex(commandApdu));
         return NdefConstants.NDEF_RESPONSE_ERROR;
     }
 
+    /**
+     * The reader left the field; the next one starts from scratch.
+     */
+    public void onDeactivated() {
+        stateManager.resetReaderSession();
+    }
+
     /**
      * Check if the command is a SELECT FILE command
      */
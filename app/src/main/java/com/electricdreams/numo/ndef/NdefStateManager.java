@@ -1,6 +1,6 @@
 package com.electricdreams.numo.ndef;
 
-import android.util.Log;
+import com.electricdreams.numo.core.util.NumoLog;
 import java.util.Arrays;
 
 /**
@@ -10,7 +10,11 @@ public class NdefStateManager {
     private static final String TAG = "NdefStateManager";
     
     // Message to be sent when in write mode
-    private String messageToSend = "";
+    private volatile String messageToSend = "";
+
+    // NDEF file for messageToSend, built once when the message is set so that
+    // SELECT and READ BINARY only ever index into it
+    private volatile byte[] ndefFile = null;
     
     // Flag to indicate if the processor is in write mode (NDEF tag emulation)
     private boolean isInWriteMode = false;
@@ -24,6 +28,9 @@ public class NdefStateManager {
     
     // Selected file during operation
     private byte[] selectedFile = null;
+
+    // Whether the current reader has sent an extended-length APDU
+    private boolean readerUsesExtendedLength = false;
     
     // Track last message activity time for timeout handling
     private long lastMessageActivityTime = 0;
@@ -40,8 +47,16 @@ public class NdefStateManager {
     }
     
     public void setMessageToSend(String message) {
+        this.ndefFile = message.isEmpty() ? null : NdefMessageBuilder.createNdefMessage(message);
         this.messageToSend = message;
-        Log.i(TAG, "Message to send set: " + message);
+        if (NumoLog.DEBUG) NumoLog.d(TAG, "Message to send set: " + NumoLog.redact(message));
+    }
+
+    /**
+     * The NDEF file (NLEN + message) for the message to send, or null if there is none.
+     */
+    public byte[] getNdefFile() {
+        return ndefFile;
     }
     
     public boolean isInWriteMode() {
@@ -50,21 +65,21 @@ public class NdefStateManager {
     
     public void setWriteMode(boolean enabled) {
         this.isInWriteMode = enabled;
-        Log.i(TAG, "Write mode set to " + enabled);
+        if (NumoLog.DEBUG) NumoLog.d(TAG, "Write mode set to " + enabled);
         
         if (enabled) {
             // When enabling write mode, also enable processing incoming messages
             this.processIncomingMessages = true;
-            Log.i(TAG, "Processor is now in write mode, ready to send message: " + 
-                  (messageToSend.isEmpty() ? "<empty>" : messageToSend));
-            Log.i(TAG, "Incoming message processing enabled");
+            if (NumoLog.DEBUG) NumoLog.d(TAG, "Processor is now in write mode, ready to send message: " + 
+                  (messageToSend.isEmpty() ? "<empty>" : NumoLog.redact(messageToSend)));
+            if (NumoLog.DEBUG) NumoLog.d(TAG, "Incoming message processing enabled");
         } else {
             // Keep the message when disabling write mode, just don't send it
-            Log.i(TAG, "Processor is now in read-only mode, message preserved but not being sent");
+            if (NumoLog.DEBUG) NumoLog.d(TAG, "Processor is now in read-only mode, message preserved but not being sent");
             
             // When disabling write mode, also disable processing incoming messages by default
             this.processIncomingMessages = false;
-            Log.i(TAG, "Incoming message processing disabled");
+            if (NumoLog.DEBUG) NumoLog.d(TAG, "Incoming message processing disabled");
         }
     }
     
@@ -74,7 +89,7 @@ public class NdefStateManager {
     
     public void setProcessIncomingMessages(boolean enabled) {
         this.processIncomingMessages = enabled;
-        Log.i(TAG, "Process incoming messages set to: " + enabled);
+        if (NumoLog.DEBUG) NumoLog.d(TAG, "Process incoming messages set to: " + enabled);
     }
     
     public byte[] getSelectedFile() {
@@ -85,6 +100,22 @@ public class NdefStateManager {
         this.selectedFile = file;
     }
     
+    public boolean isReaderUsesExtendedLength() {
+        return readerUsesExtendedLength;
+    }
+
+    public void setReaderUsesExtendedLength(boolean extended) {
+        this.readerUsesExtendedLength = extended;
+    }
+
+    /**
+     * Forget what was learned about the reader once it leaves the field.
+     */
+    public void resetReaderSession() {
+        readerUsesExtendedLength = false;
+        selectedFile = null;
+    }
+
     public byte[] getNdefData() {
         return ndefData;
     }
@@ -1,6 +1,7 @@
 package com.electricdreams.numo.ndef;
 
-import android.util.Log;
+import com.electricdreams.numo.core.util.NumoLog;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 /**
@@ -23,23 +24,24 @@ public class NdefUpdateBinaryHandler {
     public byte[] handleUpdateBinary(byte[] apdu) {
         byte[] selectedFile = stateManager.getSelectedFile();
         if (selectedFile == null || apdu.length < 5) {
-            Log.e(TAG, "UPDATE BINARY selectedFile is null or apdu.length < 5");
+            NumoLog.e(TAG, "UPDATE BINARY selectedFile is null or apdu.length < 5");
             return NdefConstants.NDEF_RESPONSE_ERROR;
         }
         
         int offset = ((apdu[2] & 0xFF) << 8) | (apdu[3] & 0xFF);
         int dataLength = (apdu[4] & 0xFF);
         
-        Log.d(TAG, "UPDATE BINARY with offset=" + offset + ", length=" + dataLength);
+        if (NumoLog.DEBUG) NumoLog.d(TAG, "UPDATE BINARY with offset=" + offset + ", length=" + dataLength);
         
         if (apdu.length < 5 + dataLength) {
-            Log.e(TAG, "UPDATE BINARY apdu.length < 5 + dataLength: " + apdu.length + " < " + (5 + dataLength));
+            NumoLog.e(TAG, "UPDATE BINARY apdu.length < 5 + dataLength: " + apdu.length + " < " + (5 + dataLength));
             return NdefConstants.NDEF_RESPONSE_ERROR;
         }
         
         // Cannot write to CC file
-        if (Arrays.equals(selectedFile, NdefConstants.CC_FILE)) {
-            Log.e(TAG, "Attempt to write to CC file is forbidden");
+        if (Arrays.equals(selectedFile, NdefConstants.CC_FILE)
+                || Arrays.equals(selectedFile, NdefConstants.CC_FILE_EXTENDED)) {
+            NumoLog.e(TAG, "Attempt to write to CC file is forbidden");
             return NdefConstants.NDEF_RESPONSE_ERROR;
         }
         
@@ -48,13 +50,13 @@ public class NdefUpdateBinaryHandler {
         // Prevent overflow
         byte[] ndefData = stateManager.getNdefData();
         if (offset + dataLength > ndefData.length) {
-            Log.e(TAG, "UPDATE BINARY command would overflow NDEF data buffer");
+            NumoLog.e(TAG, "UPDATE BINARY command would overflow NDEF data buffer");
             return NdefConstants.NDEF_RESPONSE_ERROR;
         }
         
-        Log.d(TAG, "UPDATE BINARY storing " + dataLength + " bytes at offset " + offset);
+        if (NumoLog.DEBUG) NumoLog.d(TAG, "UPDATE BINARY storing " + dataLength + " bytes at offset " + offset);
         if (dataLength > 0) {
-            logDataContent(data);
+            if (NumoLog.DEBUG) logDataContent(data);
         }
         
         // Store the data
@@ -73,15 +75,11 @@ public class NdefUpdateBinaryHandler {
     }
     
     /**
-     * Log data content for debugging
+     * Log data content for debugging. Chunks carry pieces of a token, so only
+     * a redacted preview is logged.
      */
     private void logDataContent(byte[] data) {
-        try {
-            Log.d(TAG, "Data (if text): " + new String(data, "UTF-8"));
-        } catch (Exception e) {
-            // Ignore if not valid UTF-8
-        }
-        Log.d(TAG, "Data (hex): " + NdefUtils.bytesToHex(data));
+        NumoLog.d(TAG, "Data: " + NumoLog.redact(new String(data, StandardCharsets.UTF_8)));
     }
     
     /**
@@ -92,25 +90,25 @@ public class NdefUpdateBinaryHandler {
         
         // Don't reset expectedNdefLength if the new length is 0 (could be initialization)
         if (newLength > 0) {
-            Log.d(TAG, "NDEF message length updated: " + newLength + " bytes");
+            if (NumoLog.DEBUG) NumoLog.d(TAG, "NDEF message length updated: " + newLength + " bytes");
             stateManager.setExpectedNdefLength(newLength);
             
             // Check if we have any non-zero data beyond the header
             boolean hasData = hasNonZeroData(ndefData, newLength);
             
             if (hasData) {
-                Log.d(TAG, "Length header updated and there appears to be data already in buffer. Processing message.");
+                if (NumoLog.DEBUG) NumoLog.d(TAG, "Length header updated and there appears to be data already in buffer. Processing message.");
                 return processMessageAndReset(ndefData);
             }
             
             // Original check for cases where data is provided with the header
             else if (stateManager.getExpectedNdefLength() > 0 && offset + dataLength >= stateManager.getExpectedNdefLength() + 2) {
-                Log.d(TAG, "Length header updated and we have enough data to process the message");
+                if (NumoLog.DEBUG) NumoLog.d(TAG, "Length header updated and we have enough data to process the message");
                 return processMessageAndReset(ndefData);
             }
         } else if (newLength == 0) {
             // This is likely an initialization or empty message - log but don't process
-            Log.d(TAG, "Received zero-length NDEF message header - ignoring as likely initialization");
+            if (NumoLog.DEBUG) NumoLog.d(TAG, "Received zero-length NDEF message header - ignoring as likely initialization");
             // We'll still set expectedNdefLength for completeness, but we won't process this as a complete message
             stateManager.setExpectedNdefLength(newLength);
             return NdefConstants.NDEF_RESPONSE_OK;
@@ -138,10 +136,10 @@ public class NdefUpdateBinaryHandler {
         int expectedNdefLength = stateManager.getExpectedNdefLength();
         
         if (expectedNdefLength > 0) { // Changed from != -1 to > 0 to prevent processing zero-length messages
-            Log.d(TAG, "Current position: " + (offset + dataLength) + ", need: " + (expectedNdefLength + 2));
+            if (NumoLog.DEBUG) NumoLog.d(TAG, "Current position: " + (offset + dataLength) + ", need: " + (expectedNdefLength + 2));
             
             if ((offset + dataLength) >= (expectedNdefLength + 2)) {
-                Log.d(TAG, "Complete NDEF message received, processing...");
+                if (NumoLog.DEBUG) NumoLog.d(TAG, "Complete NDEF message received, processing...");
                 return processMessageAndReset(stateManager.getNdefData());
             } else {
                 return handlePartialMessage();
@@ -164,7 +162,7 @@ public class NdefUpdateBinaryHandler {
         
         if (hasData) {
             // We have some data already - start a timeout handler to process partial data if needed
-            Log.d(TAG, "Waiting for more data to complete NDEF message, but data already exists in buffer");
+            if (NumoLog.DEBUG) NumoLog.d(TAG, "Waiting for more data to complete NDEF message, but data already exists in buffer");
             
             // Set last activity time for timeout tracking
             if (stateManager.getLastMessageActivityTime() == 0) {
@@ -173,12 +171,12 @@ public class NdefUpdateBinaryHandler {
                 // Check if we've been waiting too long without receiving new data
                 long currentTime = System.currentTimeMillis();
                 if (currentTime - stateManager.getLastMessageActivityTime() > NdefConstants.MESSAGE_TIMEOUT_MS) {
-                    Log.i(TAG, "Message reception timeout reached. Processing with available data.");
+                    if (NumoLog.DEBUG) NumoLog.d(TAG, "Message reception timeout reached. Processing with available data.");
                     return processMessageAndReset(ndefData);
                 }
             }
         } else {
-            Log.d(TAG, "Waiting for more data to complete NDEF message");
+            if (NumoLog.DEBUG) NumoLog.d(TAG, "Waiting for more data to complete NDEF message");
         }
         
         return NdefConstants.NDEF_RESPONSE_OK;
@@ -200,7 +198,7 @@ public class NdefUpdateBinaryHandler {
             final byte[] ndefCopy = Arrays.copyOf(ndefData, copyLength);
             final boolean shouldProcess = stateManager.isProcessIncomingMessages();
 
-            Log.d(TAG, "Spawning async task to process received NDEF message (length=" + copyLength + ", process=" + shouldProcess + ")");
+            if (NumoLog.DEBUG) NumoLog.d(TAG, "Spawning async task to process received NDEF message (length=" + copyLength + ", process=" + shouldProcess + ")");
 
             // Process the message on a background thread so we can return 0x9000
             // to the reader immediately and not block the APDU flow on payment logic.
@@ -210,18 +208,18 @@ public class NdefUpdateBinaryHandler {
                     try {
                         messageParser.processReceivedNdefMessage(ndefCopy, shouldProcess);
                     } catch (Exception e) {
-                        Log.e(TAG, "Error processing received NDEF message asynchronously: " + e.getMessage(), e);
+                        NumoLog.e(TAG, "Error processing received NDEF message asynchronously: " + e.getMessage(), e);
                     } finally {
                         // Once processing is done (success or failure), reset for the next message
                         stateManager.resetForNextMessage();
-                        Log.d(TAG, "Async NDEF processing complete, state reset for next message");
+                        if (NumoLog.DEBUG) NumoLog.d(TAG, "Async NDEF processing complete, state reset for next message");
                     }
                 }
             }, "NdefMessageProcessor");
 
             worker.start();
         } catch (Exception e) {
-            Log.e(TAG, "Error scheduling async processing for received NDEF message: " + e.getMessage(), e);
+            NumoLog.e(TAG, "Error scheduling async processing for received NDEF message: " + e.getMessage(), e);
         }
 
         // Always acknowledge the UPDATE BINARY APDU immediately at the transport layer.
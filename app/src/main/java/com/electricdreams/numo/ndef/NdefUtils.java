@@ -4,15 +4,42 @@ package com.electricdreams.numo.ndef;
  * Utility methods for NDEF processing
  */
 public class NdefUtils {
-    
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /** CLA, INS, P1, P2 and Lc/Le of a command APDU. */
+    private static final int APDU_HEADER_LENGTH = 5;
+
     /**
      * Convert a byte array to a hex string
      */
     public static String bytesToHex(byte[] bytes) {
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) {
-            sb.append(String.format("%02X", b));
+        return bytesToHex(bytes, bytes.length);
+    }
+
+    /**
+     * Hex of the APDU header only, for logging commands whose body may carry
+     * token data.
+     */
+    public static String apduHeaderToHex(byte[] apdu) {
+        return bytesToHex(apdu, Math.min(apdu.length, APDU_HEADER_LENGTH));
+    }
+
+    /**
+     * Whether a command APDU uses extended-length encoding: a zero byte after
+     * the header, followed by a 2-byte Lc or Le. A short APDU never has Lc 0.
+     */
+    public static boolean isExtendedLength(byte[] apdu) {
+        return apdu.length >= APDU_HEADER_LENGTH + 2 && apdu[4] == 0;
+    }
+
+    private static String bytesToHex(byte[] bytes, int length) {
+        char[] out = new char[length * 2];
+        for (int i = 0; i < length; i++) {
+            int b = bytes[i] & 0xFF;
+            out[i * 2] = HEX_DIGITS[b >>> 4];
+            out[i * 2 + 1] = HEX_DIGITS[b & 0x0F];
         }
-        return sb.toString();
+        return new String(out);
     }
 }
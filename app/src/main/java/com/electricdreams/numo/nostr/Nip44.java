@@ -1,34 +1,63 @@
 package com.electricdreams.numo.nostr;
 
-import org.bouncycastle.asn1.sec.SECNamedCurves;
-import org.bouncycastle.asn1.x9.X9ECParameters;
 import org.bouncycastle.crypto.digests.SHA256Digest;
 import org.bouncycastle.crypto.engines.ChaCha7539Engine;
-import org.bouncycastle.crypto.generators.HKDFBytesGenerator;
 import org.bouncycastle.crypto.macs.HMac;
-import org.bouncycastle.crypto.params.HKDFParameters;
 import org.bouncycastle.crypto.params.KeyParameter;
 import org.bouncycastle.crypto.params.ParametersWithIV;
-import org.bouncycastle.math.ec.ECPoint;
 
-import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
 import java.util.Arrays;
 
 /**
- * NIP-44 v2 encryption helpers (decrypt + conversation key).
+ * NIP-44 v2 encryption helpers (conversation key, encrypt, decrypt).
  *
- * We only implement the parts needed for the POS listener:
- *  - derive a conversation key between our privkey and remote pubkey
- *  - decrypt payloads produced according to NIP-44 v2
+ * Each thread keeps one {@link Context} with its ChaCha20 engine, HMAC and
+ * scratch buffers, so a message costs no digest or cipher setup and no
+ * intermediate arrays: HKDF output lands in a fixed buffer, padding and
+ * encryption happen in place in the output buffer, and base64 is read and
+ * written directly against the caller's buffers. The ByteBuffer variants
+ * take raw (not base64) payloads; the String ones wrap them for nostr event
+ * content.
  */
 public final class Nip44 {
 
     public static final String TAG = "Nip44";
 
-    private static final X9ECParameters SECP256K1_PARAMS = SECNamedCurves.getByName("secp256k1");
-    private static final BigInteger CURVE_P = SECP256K1_PARAMS.getCurve().getField().getCharacteristic();
+    private static final byte VERSION = 2;
+    private static final int NONCE_SIZE = 32;
+    private static final int MAC_SIZE = 32;
+    /** version || nonce || ... || mac */
+    private static final int OVERHEAD = 1 + NONCE_SIZE + MAC_SIZE;
+    private static final int MIN_PAYLOAD = OVERHEAD + 2 + 32;
+    private static final int MIN_BASE64 = 132;
+    private static final int MAX_BASE64 = 87472;
+
+    private static final byte[] SALT = "nip44-v2".getBytes(StandardCharsets.UTF_8);
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final char[] BASE64 =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final byte[] BASE64_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(BASE64_VALUES, (byte) -1);
+        for (int i = 0; i < BASE64.length; i++) {
+            BASE64_VALUES[BASE64[i]] = (byte) i;
+        }
+    }
+
+    private static final ThreadLocal<Context> CONTEXT = new ThreadLocal<Context>() {
+        @Override
+        protected Context initialValue() {
+            return new Context();
+        }
+    };
 
     private Nip44() {}
 
@@ -42,23 +71,15 @@ public final class Nip44 {
         if (priv32 == null || priv32.length != 32 || pubX32 == null || pubX32.length != 32) {
             throw new IllegalArgumentException("priv and pub must be 32 bytes");
         }
-        BigInteger d = new BigInteger(1, priv32);
-        if (d.signum() <= 0 || d.compareTo(SECP256K1_PARAMS.getN()) >= 0) {
-            throw new IllegalArgumentException("invalid private key scalar");
-        }
-
-        BigInteger x = new BigInteger(1, pubX32);
-        ECPoint P = liftX(x);
-        if (P == null) {
-            throw new IllegalArgumentException("invalid x-only public key");
-        }
-
-        ECPoint shared = P.multiply(d).normalize();
-        byte[] sharedX = shared.getAffineXCoord().getEncoded(); // 32 bytes
+        byte[] sharedX = Secp256k1.ecdh(priv32, pubX32); // 32 bytes
 
         // NIP-44 v2: conversation_key = HKDF-EXTRACT(IKM=shared_x, salt="nip44-v2")
-        byte[] salt = "nip44-v2".getBytes(StandardCharsets.UTF_8);
-        return hkdfExtract(salt, sharedX);
+        HMac mac = CONTEXT.get().mac;
+        mac.init(new KeyParameter(SALT));
+        mac.update(sharedX, 0, sharedX.length);
+        byte[] prk = new byte[32];
+        mac.doFinal(prk, 0);
+        return prk;
     }
 
     /**
@@ -66,235 +87,304 @@ public final class Nip44 {
      * Returns a base64-encoded payload.
      */
     public static String encrypt(String plaintext, byte[] conversationKey) throws Exception {
-        if (conversationKey == null || conversationKey.length != 32) {
-            throw new IllegalArgumentException("conversationKey must be 32 bytes");
-        }
+        return encrypt(plaintext, conversationKey, null);
+    }
+
+    /** As {@link #encrypt(String, byte[])} with a fixed nonce, for test vectors. */
+    static String encrypt(String plaintext, byte[] conversationKey, byte[] nonce) {
         if (plaintext == null) {
             throw new IllegalArgumentException("plaintext cannot be null");
         }
-
-        byte[] plaintextBytes = plaintext.getBytes(StandardCharsets.UTF_8);
-        
-        // Pad the plaintext
-        byte[] padded = pad(plaintextBytes);
-        
-        // Generate random 32-byte nonce
-        byte[] nonce = new byte[32];
-        new SecureRandom().nextBytes(nonce);
-        
-        // Derive per-message keys via HKDF-EXPAND (L=76) from conversation key
-        byte[] okm = hkdfExpand(conversationKey, nonce, 76);
-        
-        byte[] chachaKey = Arrays.copyOfRange(okm, 0, 32);
-        byte[] chachaNonce = Arrays.copyOfRange(okm, 32, 44); // 12 bytes
-        byte[] hmacKey = Arrays.copyOfRange(okm, 44, 76);
-        
-        // Encrypt with ChaCha20 (RFC7539 variant, 12-byte nonce)
-        ChaCha7539Engine engine = new ChaCha7539Engine();
-        engine.init(true, new ParametersWithIV(new KeyParameter(chachaKey), chachaNonce));
-        byte[] ciphertext = new byte[padded.length];
-        engine.processBytes(padded, 0, padded.length, ciphertext, 0);
-        
-        // Calculate MAC = HMAC-SHA256(key=hmacKey, data=nonce||ciphertext)
-        HMac hmac = new HMac(new SHA256Digest());
-        hmac.init(new KeyParameter(hmacKey));
-        hmac.update(nonce, 0, nonce.length);
-        hmac.update(ciphertext, 0, ciphertext.length);
-        byte[] mac = new byte[32];
-        hmac.doFinal(mac, 0);
-        
-        // Build payload: version(1) || nonce(32) || ciphertext(variable) || mac(32)
-        byte[] payload = new byte[1 + 32 + ciphertext.length + 32];
-        payload[0] = 2; // version
-        System.arraycopy(nonce, 0, payload, 1, 32);
-        System.arraycopy(ciphertext, 0, payload, 33, ciphertext.length);
-        System.arraycopy(mac, 0, payload, 33 + ciphertext.length, 32);
-        
-        return java.util.Base64.getEncoder().encodeToString(payload);
+        Context ctx = CONTEXT.get();
+        ByteBuffer plain = ctx.utf8(plaintext);
+        ByteBuffer payload = ctx.payload(payloadLength(plain.remaining()));
+        encrypt(plain, conversationKey, payload, nonce);
+
+        char[] chars = ctx.chars(base64Length(payload.position()));
+        int n = encodeBase64(payload.array(), 0, payload.position(), chars, 0);
+        return new String(chars, 0, n);
     }
 
     /**
      * Decrypt a NIP-44 v2 payload using a precomputed 32-byte conversation key.
      */
     public static String decrypt(String payloadBase64, byte[] conversationKey) throws Exception {
-        if (conversationKey == null || conversationKey.length != 32) {
-            throw new IllegalArgumentException("conversationKey must be 32 bytes");
+        if (payloadBase64 == null || payloadBase64.isEmpty()) {
+            throw new IllegalArgumentException("empty payload");
         }
-        Decoded dec = decodePayload(payloadBase64);
+        if (payloadBase64.charAt(0) == '#') {
+            throw new IllegalArgumentException("unsupported NIP-44 version prefix '#'");
+        }
+        int length = payloadBase64.length();
+        if (length < MIN_BASE64 || length > MAX_BASE64) {
+            throw new IllegalArgumentException("NIP-44: invalid payload length " + length);
+        }
+        Context ctx = CONTEXT.get();
+        ByteBuffer payload = ctx.payload(length / 4 * 3);
+        payload.limit(decodeBase64(payloadBase64, payload.array(), 0));
 
-        // Derive per-message keys via HKDF-EXPAND (L=76) from the already-extracted conversationKey.
-        // Spec: keys = hkdf_expand(OKM=conversation_key, info=nonce, L=76)
-        byte[] okm = hkdfExpand(conversationKey, dec.nonce, 76);
+        ByteBuffer plain = ctx.plain(payload.limit() - OVERHEAD);
+        decrypt(payload, conversationKey, plain);
+        return new String(plain.array(), 0, plain.position(), StandardCharsets.UTF_8);
+    }
 
-        byte[] chachaKey = Arrays.copyOfRange(okm, 0, 32);
-        byte[] chachaNonce = Arrays.copyOfRange(okm, 32, 44); // 12 bytes
-        byte[] hmacKey = Arrays.copyOfRange(okm, 44, 76);
+    // --- ByteBuffer API ---
 
-        // Verify MAC = HMAC-SHA256(key=hmacKey, data=nonce||ciphertext)
-        HMac hmac = new HMac(new SHA256Digest());
-        hmac.init(new KeyParameter(hmacKey));
-        hmac.update(dec.nonce, 0, dec.nonce.length);
-        hmac.update(dec.ciphertext, 0, dec.ciphertext.length);
-        byte[] macCalc = new byte[32];
-        hmac.doFinal(macCalc, 0);
-        if (!constantTimeEquals(macCalc, dec.mac)) {
-            throw new IllegalArgumentException("NIP-44: invalid MAC");
+    /** Size of the raw payload {@link #encrypt(ByteBuffer, byte[], ByteBuffer)} writes. */
+    public static int payloadLength(int plaintextLength) {
+        return OVERHEAD + 2 + calcPaddedLen(plaintextLength);
+    }
+
+    /**
+     * Encrypt the remaining bytes of {@code plaintext} into {@code out} as a
+     * raw payload: version || nonce || ChaCha20(padded) || HMAC. The plaintext
+     * is padded and encrypted in place in out's backing array.
+     *
+     * @param out array-backed, with at least {@link #payloadLength} bytes remaining
+     * @return bytes written; both buffers' positions are advanced
+     */
+    public static int encrypt(ByteBuffer plaintext, byte[] conversationKey, ByteBuffer out) {
+        return encrypt(plaintext, conversationKey, out, null);
+    }
+
+    private static int encrypt(ByteBuffer plaintext, byte[] conversationKey, ByteBuffer out, byte[] nonce) {
+        checkKey(conversationKey);
+        int len = plaintext.remaining();
+        int paddedLen = 2 + calcPaddedLen(len);
+        int total = OVERHEAD + paddedLen;
+        if (!out.hasArray() || out.remaining() < total) {
+            throw new IllegalArgumentException("NIP-44: output must be array-backed with " + total + " bytes free");
+        }
+        Context ctx = CONTEXT.get();
+        byte[] buf = out.array();
+        int start = out.arrayOffset() + out.position();
+        int body = start + 1 + NONCE_SIZE;
+
+        buf[start] = VERSION;
+        if (nonce != null) {
+            System.arraycopy(nonce, 0, buf, start + 1, NONCE_SIZE);
+        } else {
+            RANDOM.nextBytes(ctx.nonce);
+            System.arraycopy(ctx.nonce, 0, buf, start + 1, NONCE_SIZE);
         }
 
-        // Decrypt with ChaCha20 (RFC7539 variant, 12-byte nonce)
-        ChaCha7539Engine engine = new ChaCha7539Engine();
-        engine.init(false, new ParametersWithIV(new KeyParameter(chachaKey), chachaNonce));
-        byte[] padded = new byte[dec.ciphertext.length];
-        engine.processBytes(dec.ciphertext, 0, dec.ciphertext.length, padded, 0);
+        // [2-byte big-endian length] + [plaintext] + [zero padding]
+        buf[body] = (byte) (len >>> 8);
+        buf[body + 1] = (byte) len;
+        plaintext.get(buf, body + 2, len);
+        Arrays.fill(buf, body + 2 + len, body + paddedLen, (byte) 0);
 
-        // Remove padding and return plaintext string
-        return unpad(padded);
-    }
+        ctx.deriveMessageKeys(conversationKey, buf, start + 1, true);
+        ctx.chacha.processBytes(buf, body, paddedLen, buf, body);
 
-    // --- HKDF helpers (RFC 5869, SHA-256) ---
+        // MAC = HMAC-SHA256(key=hmacKey, data=nonce||ciphertext)
+        ctx.mac.update(buf, start + 1, NONCE_SIZE + paddedLen);
+        ctx.mac.doFinal(buf, body + paddedLen);
 
-    /** HKDF-Extract: PRK = HMAC(salt, IKM) */
-    private static byte[] hkdfExtract(byte[] salt, byte[] ikm) {
-        HMac mac = new HMac(new SHA256Digest());
-        if (salt == null) {
-            salt = new byte[32]; // zero salt when not provided
-        }
-        mac.init(new KeyParameter(salt));
-        mac.update(ikm, 0, ikm.length);
-        byte[] prk = new byte[32];
-        mac.doFinal(prk, 0);
-        return prk;
+        out.position(out.position() + total);
+        return total;
     }
 
-    /** HKDF-Expand: OKM = T(1) || T(2) || ... truncated to 'length' */
-    private static byte[] hkdfExpand(byte[] prk, byte[] info, int length) {
-        if (length <= 0) {
-            throw new IllegalArgumentException("HKDF: invalid length");
+    /**
+     * Decrypt the remaining bytes of a raw payload into {@code out}. The MAC
+     * is checked before anything is decrypted.
+     *
+     * @param payload array-backed
+     * @param out array-backed, with room for the padded plaintext (payload
+     *            size minus 65); only the plaintext counts as written, the
+     *            bytes after it are scratch
+     * @return plaintext length; both buffers' positions are advanced
+     */
+    public static int decrypt(ByteBuffer payload, byte[] conversationKey, ByteBuffer out) {
+        checkKey(conversationKey);
+        int size = payload.remaining();
+        if (!payload.hasArray() || !out.hasArray()) {
+            throw new IllegalArgumentException("NIP-44: buffers must be array-backed");
         }
-
-        HMac mac = new HMac(new SHA256Digest());
-        KeyParameter keyParam = new KeyParameter(prk);
-        mac.init(keyParam);
-
-        int hashLen = 32; // SHA-256 output length
-        int n = (int) Math.ceil((double) length / hashLen);
-        if (n > 255) {
-            throw new IllegalArgumentException("HKDF: length too large");
+        if (size < MIN_PAYLOAD) {
+            throw new IllegalArgumentException("NIP-44: payload too short");
         }
+        byte[] in = payload.array();
+        int start = payload.arrayOffset() + payload.position();
+        if (in[start] != VERSION) {
+            throw new IllegalArgumentException("NIP-44: unknown version " + in[start]);
+        }
+        int body = start + 1 + NONCE_SIZE;
+        int paddedLen = size - OVERHEAD;
 
-        byte[] okm = new byte[length];
-        byte[] t = new byte[0];
-        int pos = 0;
+        // Verify MAC = HMAC-SHA256(key=hmacKey, data=nonce||ciphertext)
+        Context ctx = CONTEXT.get();
+        ctx.deriveMessageKeys(conversationKey, in, start + 1, false);
+        ctx.mac.update(in, start + 1, NONCE_SIZE + paddedLen);
+        ctx.mac.doFinal(ctx.macOut, 0);
+        if (!constantTimeEquals(ctx.macOut, in, body + paddedLen)) {
+            throw new IllegalArgumentException("NIP-44: invalid MAC");
+        }
 
-        for (int i = 1; i <= n; i++) {
-            mac.reset();
-            mac.init(keyParam);
-            if (t.length > 0) {
-                mac.update(t, 0, t.length);
-            }
-            if (info != null) {
-                mac.update(info, 0, info.length);
-            }
-            mac.update((byte) i);
-            t = new byte[hashLen];
-            mac.doFinal(t, 0);
+        if (out.remaining() < paddedLen) {
+            throw new IllegalArgumentException("NIP-44: output needs " + paddedLen + " bytes free");
+        }
+        byte[] dst = out.array();
+        int at = out.arrayOffset() + out.position();
+        ctx.chacha.processBytes(in, body, paddedLen, dst, at);
 
-            int copyLen = Math.min(hashLen, length - pos);
-            System.arraycopy(t, 0, okm, pos, copyLen);
-            pos += copyLen;
+        // Remove padding
+        int len = ((dst[at] & 0xff) << 8) | (dst[at + 1] & 0xff);
+        if (len <= 0) {
+            throw new IllegalArgumentException("NIP-44: invalid plaintext length " + len);
+        }
+        if (paddedLen != 2 + calcPaddedLen(len)) {
+            throw new IllegalArgumentException("NIP-44: invalid padding length");
         }
+        System.arraycopy(dst, at + 2, dst, at, len);
 
-        return okm;
+        payload.position(payload.position() + size);
+        out.position(out.position() + len);
+        return len;
     }
 
-    // --- Internal structures & helpers ---
+    // --- Base64 (RFC 4648, padded) straight into caller buffers ---
 
-    private static final class Decoded {
-        final byte version;
-        final byte[] nonce;      // 32 bytes
-        final byte[] ciphertext; // variable
-        final byte[] mac;        // 32 bytes
-
-        Decoded(byte version, byte[] nonce, byte[] ciphertext, byte[] mac) {
-            this.version = version;
-            this.nonce = nonce;
-            this.ciphertext = ciphertext;
-            this.mac = mac;
-        }
+    /** Characters {@link #encodeBase64} writes for {@code length} bytes. */
+    public static int base64Length(int length) {
+        return (length + 2) / 3 * 4;
     }
 
-    private static Decoded decodePayload(String payload) {
-        if (payload == null || payload.isEmpty()) {
-            throw new IllegalArgumentException("empty payload");
+    /** Encode {@code src[off, off+len)} into {@code dst} at {@code dstOff}; returns chars written. */
+    public static int encodeBase64(byte[] src, int off, int len, char[] dst, int dstOff) {
+        int o = dstOff;
+        int end = off + len;
+        int i = off;
+        for (; i + 3 <= end; i += 3) {
+            int v = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8 | (src[i + 2] & 0xff);
+            dst[o++] = BASE64[v >>> 18];
+            dst[o++] = BASE64[(v >>> 12) & 0x3f];
+            dst[o++] = BASE64[(v >>> 6) & 0x3f];
+            dst[o++] = BASE64[v & 0x3f];
         }
-        if (payload.charAt(0) == '#') {
-            throw new IllegalArgumentException("unsupported NIP-44 version prefix '#'");
-        }
-        // Spec limits: 132..87472 chars, but we only enforce rough sanity
-        byte[] data = java.util.Base64.getDecoder().decode(payload);
-        if (data.length < 99) {
-            throw new IllegalArgumentException("NIP-44: payload too short");
+        int rest = end - i;
+        if (rest > 0) {
+            int v = (src[i] & 0xff) << 16 | (rest == 2 ? (src[i + 1] & 0xff) << 8 : 0);
+            dst[o++] = BASE64[v >>> 18];
+            dst[o++] = BASE64[(v >>> 12) & 0x3f];
+            dst[o++] = rest == 2 ? BASE64[(v >>> 6) & 0x3f] : '=';
+            dst[o++] = '=';
         }
-        byte version = data[0];
-        if (version != 2) {
-            throw new IllegalArgumentException("NIP-44: unknown version " + version);
+        return o - dstOff;
+    }
+
+    /**
+     * Decode base64 text into {@code dst} at {@code dstOff}, which needs
+     * {@code src.length() / 4 * 3} bytes free; returns bytes written.
+     */
+    public static int decodeBase64(CharSequence src, byte[] dst, int dstOff) {
+        int end = src.length();
+        if ((end & 3) != 0) {
+            throw new IllegalArgumentException("NIP-44: invalid base64 length");
         }
-        byte[] nonce = Arrays.copyOfRange(data, 1, 33);
-        byte[] mac = Arrays.copyOfRange(data, data.length - 32, data.length);
-        byte[] ciphertext = Arrays.copyOfRange(data, 33, data.length - 32);
-        if (nonce.length != 32 || mac.length != 32 || ciphertext.length < 2) {
-            throw new IllegalArgumentException("NIP-44: invalid payload structure");
+        if (end > 0 && src.charAt(end - 1) == '=') end--;
+        if (end > 0 && src.charAt(end - 1) == '=') end--;
+        int o = dstOff;
+        int acc = 0;
+        int bits = 0;
+        for (int i = 0; i < end; i++) {
+            char c = src.charAt(i);
+            int v = c < 128 ? BASE64_VALUES[c] : -1;
+            if (v < 0) {
+                throw new IllegalArgumentException("NIP-44: invalid base64 character");
+            }
+            acc = (acc << 6) | v;
+            bits += 6;
+            if (bits >= 8) {
+                bits -= 8;
+                dst[o++] = (byte) (acc >>> bits);
+            }
         }
-        return new Decoded(version, nonce, ciphertext, mac);
+        return o - dstOff;
     }
 
-    private static boolean constantTimeEquals(byte[] a, byte[] b) {
-        if (a == null || b == null || a.length != b.length) return false;
-        int diff = 0;
-        for (int i = 0; i < a.length; i++) {
-            diff |= (a[i] ^ b[i]);
+    // --- Internal structures & helpers ---
+
+    /** Per-thread cipher, MAC and scratch buffers; buffers grow on demand. */
+    private static final class Context {
+        final ChaCha7539Engine chacha = new ChaCha7539Engine();
+        final HMac mac = new HMac(new SHA256Digest());
+        final CharsetEncoder utf8 = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        /** HKDF-Expand output: three SHA-256 blocks, of which 76 bytes are used. */
+        final byte[] okm = new byte[96];
+        final byte[] nonce = new byte[NONCE_SIZE];
+        final byte[] macOut = new byte[MAC_SIZE];
+        ByteBuffer plain = ByteBuffer.allocate(512);
+        ByteBuffer payload = ByteBuffer.allocate(1024);
+        char[] chars = new char[2048];
+
+        /**
+         * keys = HKDF-Expand(PRK=conversation_key, info=nonce, L=76); sets up
+         * ChaCha20 with keys[0:32] and keys[32:44] and keys the HMAC with
+         * keys[44:76].
+         */
+        void deriveMessageKeys(byte[] conversationKey, byte[] nonceSrc, int nonceOff, boolean forEncryption) {
+            mac.init(new KeyParameter(conversationKey));
+            for (int block = 0; block < 3; block++) {
+                if (block > 0) {
+                    mac.update(okm, (block - 1) * 32, 32);
+                }
+                mac.update(nonceSrc, nonceOff, NONCE_SIZE);
+                mac.update((byte) (block + 1));
+                mac.doFinal(okm, block * 32);
+            }
+            chacha.init(forEncryption, new ParametersWithIV(new KeyParameter(okm, 0, 32), okm, 32, 12));
+            mac.init(new KeyParameter(okm, 44, 32));
         }
-        return diff == 0;
-    }
 
-    // --- Padding helpers ---
+        /** {@code text} as UTF-8 in the plaintext scratch buffer, flipped for reading. */
+        ByteBuffer utf8(String text) {
+            ByteBuffer buf = plain(text.length() * 3);
+            utf8.reset();
+            utf8.encode(CharBuffer.wrap(text), buf, true);
+            utf8.flush(buf);
+            buf.flip();
+            return buf;
+        }
 
-    /**
-     * Pad plaintext bytes according to NIP-44 v2 spec.
-     * Format: [2-byte big-endian length] + [plaintext] + [zero padding to calcPaddedLen]
-     */
-    private static byte[] pad(byte[] plaintext) {
-        int len = plaintext.length;
-        if (len <= 0 || len > 65535) {
-            throw new IllegalArgumentException("NIP-44: invalid plaintext length " + len);
+        ByteBuffer plain(int capacity) {
+            if (plain.capacity() < capacity) {
+                plain = ByteBuffer.allocate(Math.max(capacity, plain.capacity() * 2));
+            }
+            plain.clear();
+            return plain;
         }
-        int paddedLen = calcPaddedLen(len);
-        byte[] result = new byte[2 + paddedLen];
-        // 2-byte big-endian length prefix
-        result[0] = (byte) ((len >> 8) & 0xff);
-        result[1] = (byte) (len & 0xff);
-        // Copy plaintext
-        System.arraycopy(plaintext, 0, result, 2, len);
-        // Remaining bytes are already zero-initialized
-        return result;
-    }
 
-    private static String unpad(byte[] padded) {
-        if (padded.length < 3) {
-            throw new IllegalArgumentException("NIP-44: padded message too short");
+        ByteBuffer payload(int capacity) {
+            if (payload.capacity() < capacity) {
+                payload = ByteBuffer.allocate(Math.max(capacity, payload.capacity() * 2));
+            }
+            payload.clear();
+            return payload;
         }
-        int len = ((padded[0] & 0xff) << 8) | (padded[1] & 0xff);
-        if (len <= 0 || len > 65535) {
-            throw new IllegalArgumentException("NIP-44: invalid plaintext length " + len);
+
+        char[] chars(int capacity) {
+            if (chars.length < capacity) {
+                chars = new char[Math.max(capacity, chars.length * 2)];
+            }
+            return chars;
         }
-        if (padded.length != 2 + calcPaddedLen(len)) {
-            throw new IllegalArgumentException("NIP-44: invalid padding length");
+    }
+
+    private static void checkKey(byte[] conversationKey) {
+        if (conversationKey == null || conversationKey.length != 32) {
+            throw new IllegalArgumentException("conversationKey must be 32 bytes");
         }
-        if (2 + len > padded.length) {
-            throw new IllegalArgumentException("NIP-44: inconsistent lengths");
+    }
+
+    private static boolean constantTimeEquals(byte[] expected, byte[] actual, int actualOff) {
+        int diff = 0;
+        for (int i = 0; i < expected.length; i++) {
+            diff |= (expected[i] ^ actual[actualOff + i]);
         }
-        byte[] plain = Arrays.copyOfRange(padded, 2, 2 + len);
-        return new String(plain, StandardCharsets.UTF_8);
+        return diff == 0;
     }
 
     /**
@@ -302,7 +392,7 @@ public final class Nip44 {
      */
     private static int calcPaddedLen(int unpaddedLen) {
         if (unpaddedLen <= 0 || unpaddedLen > 65535) {
-            throw new IllegalArgumentException("NIP-44: invalid unpadded length");
+            throw new IllegalArgumentException("NIP-44: invalid plaintext length " + unpaddedLen);
         }
         if (unpaddedLen <= 32) {
             return 32;
@@ -312,39 +402,4 @@ public final class Nip44 {
         int chunk = (nextPower <= 256) ? 32 : nextPower / 8;
         return chunk * ((unpaddedLen - 1) / chunk + 1);
     }
-
-    // --- Shared x-only lift (duplicate of NostrEvent.liftX to avoid dependency cycle) ---
-
-    /**
-     * Lift x-only pubkey to a curve point with even Y per BIP-340,
-     * using BouncyCastle's decodePoint.
-     */
-    private static ECPoint liftX(BigInteger x) {
-        BigInteger p = SECP256K1_PARAMS.getCurve().getField().getCharacteristic();
-        if (x.signum() <= 0 || x.compareTo(p) >= 0) {
-            return null;
-        }
-        byte[] xBytes = to32Bytes(x);
-        byte[] comp = new byte[33];
-        comp[0] = 0x02; // even Y
-        System.arraycopy(xBytes, 0, comp, 1, 32);
-        try {
-            return SECP256K1_PARAMS.getCurve().decodePoint(comp).normalize();
-        } catch (IllegalArgumentException e) {
-            //Log.w(TAG, "liftX: decodePoint failed: " + e.getMessage());
-            return null;
-        }
-    }
-
-    private static byte[] to32Bytes(BigInteger v) {
-        byte[] src = v.toByteArray();
-        if (src.length == 32) return src;
-        byte[] out = new byte[32];
-        if (src.length > 32) {
-            System.arraycopy(src, src.length - 32, out, 0, 32);
-        } else {
-            System.arraycopy(src, 0, out, 32 - src.length, src.length);
-        }
-        return out;
-    }
 }
@@ -34,6 +34,16 @@ public final class Nip59 {
      * @return UnwrappedDm with giftwrap, seal (kind 13), and rumor (kind 14)
      */
     public static UnwrappedDm unwrapGiftWrappedDm(NostrEvent giftwrap, byte[] ourPriv32) throws Exception {
+        return unwrapGiftWrappedDm(giftwrap, ourPriv32, false);
+    }
+
+    /**
+     * As {@link #unwrapGiftWrappedDm(NostrEvent, byte[])}, skipping the
+     * giftwrap's own signature check when the caller already verified it
+     * (e.g. in a {@link NostrEventVerifier} batch). The seal is always verified.
+     */
+    public static UnwrappedDm unwrapGiftWrappedDm(NostrEvent giftwrap, byte[] ourPriv32,
+                                                  boolean giftwrapVerified) throws Exception {
         if (giftwrap == null) {
             throw new IllegalArgumentException("giftwrap event is null");
         }
@@ -43,7 +53,7 @@ public final class Nip59 {
         if (giftwrap.kind != 1059) {
             throw new IllegalArgumentException("expected kind 1059 giftwrap, got kind=" + giftwrap.kind);
         }
-        if (!giftwrap.verify()) {
+        if (!giftwrapVerified && !giftwrap.verify()) {
             // Strict: a giftwrap with an invalid signature MUST NOT be used.
             android.util.Log.w("Nip59", "Giftwrap Schnorr verification FAILED; aborting unwrap");
             throw new IllegalArgumentException("giftwrap Schnorr verification failed");
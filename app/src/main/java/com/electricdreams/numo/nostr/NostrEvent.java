@@ -7,12 +7,6 @@ import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonPrimitive;
 
-import org.bouncycastle.asn1.sec.SECNamedCurves;
-import org.bouncycastle.asn1.x9.X9ECParameters;
-import org.bouncycastle.crypto.params.ECDomainParameters;
-import org.bouncycastle.math.ec.ECPoint;
-
-import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
@@ -35,12 +29,6 @@ public final class NostrEvent {
     private static final Gson gson = new Gson();
     private static final String TAG = "NostrEventVerify";
 
-    private static final X9ECParameters SECP256K1_PARAMS = SECNamedCurves.getByName("secp256k1");
-    private static final ECDomainParameters SECP256K1 = new ECDomainParameters(
-            SECP256K1_PARAMS.getCurve(), SECP256K1_PARAMS.getG(),
-            SECP256K1_PARAMS.getN(), SECP256K1_PARAMS.getH()
-    );
-
     public NostrEvent() {
     }
 
@@ -85,27 +73,9 @@ public final class NostrEvent {
      */
     public boolean verify() {
         try {
-            String expectedId = computeId();
-            if (id == null || !id.equals(expectedId)) {
-                Log.w(TAG, "ID mismatch for kind=" + kind + " eventId=" + id + " computed=" + expectedId);
-                return false;
-            }
-            if (pubkey == null || sig == null) {
-                Log.w(TAG, "Missing pubkey or sig for kind=" + kind);
-                return false;
-            }
-            byte[] msg = hexToBytes(id);
-            byte[] sigBytes = hexToBytes(sig);
-            byte[] pubBytes = hexToBytes(pubkey);
-            if (msg == null || sigBytes == null || pubBytes == null) {
-                Log.w(TAG, "Hex decode failed for kind=" + kind);
-                return false;
-            }
-            if (sigBytes.length != 64 || pubBytes.length != 32) {
-                Log.w(TAG, "Unexpected lengths for kind=" + kind + " sigLen=" + sigBytes.length + " pubLen=" + pubBytes.length);
-                return false;
-            }
-            boolean ok = verifySchnorr(pubBytes, msg, sigBytes);
+            byte[][] signed = signedParts();
+            if (signed == null) return false;
+            boolean ok = Secp256k1.verify(signed[0], signed[1], signed[2]);
             if (!ok) {
                 // Strict: a failing signature means the event MUST be rejected.
                 Log.w(TAG, "Schnorr verify FAILED for kind=" + kind + " id=" + id + " pubkey=" + pubkey);
@@ -119,28 +89,87 @@ public final class NostrEvent {
         }
     }
 
-    // --- Helpers ---
-
-    // BIP340 tagged hash for challenge: hash_BIP0340/challenge(x)
-    // = SHA256(SHA256(tag) || SHA256(tag) || x) with tag = "BIP0340/challenge".
-    private static final byte[] TAG_BIP340_CHALLENGE =
-            "BIP0340/challenge".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
-    private static final byte[] TAG_BIP340_CHALLENGE_HASH = sha256(TAG_BIP340_CHALLENGE);
-    private static final byte[] TAG_BIP340_CHALLENGE_PREFIX;
-
-    static {
-        TAG_BIP340_CHALLENGE_PREFIX = new byte[64];
-        System.arraycopy(TAG_BIP340_CHALLENGE_HASH, 0, TAG_BIP340_CHALLENGE_PREFIX, 0, 32);
-        System.arraycopy(TAG_BIP340_CHALLENGE_HASH, 0, TAG_BIP340_CHALLENGE_PREFIX, 32, 32);
+    /**
+     * {@link #verify()} for several events at once. All signatures are
+     * checked in one batch; only when the batch fails is each event re-checked
+     * on its own to find the bad ones.
+     *
+     * @return whether each event verified, in order
+     */
+    public static boolean[] verifyAll(List<NostrEvent> events) {
+        int count = events.size();
+        boolean[] ok = new boolean[count];
+        byte[][] pubs = new byte[count][];
+        byte[][] msgs = new byte[count][];
+        byte[][] sigs = new byte[count][];
+        int[] index = new int[count];
+        int signed = 0;
+        for (int i = 0; i < count; i++) {
+            byte[][] parts;
+            try {
+                parts = events.get(i).signedParts();
+            } catch (Exception e) {
+                Log.e(TAG, "Exception during verify: " + e.getMessage(), e);
+                continue;
+            }
+            if (parts == null) continue;
+            pubs[signed] = parts[0];
+            msgs[signed] = parts[1];
+            sigs[signed] = parts[2];
+            index[signed++] = i;
+        }
+        if (signed == 0) return ok;
+
+        if (Secp256k1.verifyBatch(Arrays.copyOf(pubs, signed), Arrays.copyOf(msgs, signed),
+                Arrays.copyOf(sigs, signed))) {
+            for (int j = 0; j < signed; j++) {
+                ok[index[j]] = true;
+            }
+            Log.d(TAG, "Schnorr batch verify SUCCESS for " + signed + " events");
+            return ok;
+        }
+        Log.w(TAG, "Schnorr batch verify FAILED for " + signed + " events; checking one by one");
+        for (int j = 0; j < signed; j++) {
+            ok[index[j]] = Secp256k1.verify(pubs[j], msgs[j], sigs[j]);
+            if (!ok[index[j]]) {
+                NostrEvent event = events.get(index[j]);
+                Log.w(TAG, "Schnorr verify FAILED for kind=" + event.kind + " id=" + event.id
+                        + " pubkey=" + event.pubkey);
+            }
+        }
+        return ok;
     }
 
-    private static byte[] taggedHashBip340Challenge(byte[] x) {
-        byte[] buf = new byte[64 + x.length];
-        System.arraycopy(TAG_BIP340_CHALLENGE_PREFIX, 0, buf, 0, 64);
-        System.arraycopy(x, 0, buf, 64, x.length);
-        return sha256(buf);
+    /**
+     * The (pubkey, id, sig) bytes to check the signature against, or null if
+     * the id does not match the content or a field is malformed.
+     */
+    private byte[][] signedParts() {
+        String expectedId = computeId();
+        if (id == null || !id.equals(expectedId)) {
+            Log.w(TAG, "ID mismatch for kind=" + kind + " eventId=" + id + " computed=" + expectedId);
+            return null;
+        }
+        if (pubkey == null || sig == null) {
+            Log.w(TAG, "Missing pubkey or sig for kind=" + kind);
+            return null;
+        }
+        byte[] msg = hexToBytes(id);
+        byte[] sigBytes = hexToBytes(sig);
+        byte[] pubBytes = hexToBytes(pubkey);
+        if (msg == null || sigBytes == null || pubBytes == null) {
+            Log.w(TAG, "Hex decode failed for kind=" + kind);
+            return null;
+        }
+        if (sigBytes.length != 64 || pubBytes.length != 32) {
+            Log.w(TAG, "Unexpected lengths for kind=" + kind + " sigLen=" + sigBytes.length + " pubLen=" + pubBytes.length);
+            return null;
+        }
+        return new byte[][] {pubBytes, msg, sigBytes};
     }
 
+    // --- Helpers ---
+
     private static byte[] sha256(byte[] data) {
         try {
             MessageDigest md = MessageDigest.getInstance("SHA-256");
@@ -172,107 +201,4 @@ public final class NostrEvent {
         }
         return out;
     }
-
-    /**
-     * Verify a BIP-340 Schnorr signature.
-     */
-    private static boolean verifySchnorr(byte[] pub, byte[] msg, byte[] sig) {
-        if (pub.length != 32 || msg.length != 32 || sig.length != 64) {
-            Log.w(TAG, "verifySchnorr: wrong lengths pub=" + pub.length + " msg=" + msg.length + " sig=" + sig.length + " (strict fail)");
-            return false;
-        }
-
-        // Parse pubkey x coordinate
-        BigInteger px = new BigInteger(1, pub);
-        BigInteger p = SECP256K1_PARAMS.getCurve().getField().getCharacteristic();
-        if (px.signum() <= 0 || px.compareTo(p) >= 0) {
-            Log.w(TAG, "verifySchnorr: pubkey x out of range (strict fail)");
-            return false;
-        }
-
-        // Lift x to a curve point with even Y (BIP-340) using BouncyCastle's decodePoint
-        ECPoint P = liftX(px);
-        if (P == null) {
-            Log.w(TAG, "verifySchnorr: liftX returned null (strict fail)");
-            return false;
-        }
-
-        // Parse signature components
-        byte[] rBytes = Arrays.copyOfRange(sig, 0, 32);
-        byte[] sBytes = Arrays.copyOfRange(sig, 32, 64);
-
-        BigInteger r = new BigInteger(1, rBytes);
-        BigInteger s = new BigInteger(1, sBytes);
-        BigInteger n = SECP256K1.getN();
-
-        if (r.signum() <= 0 || r.compareTo(p) >= 0) {
-            Log.w(TAG, "verifySchnorr: r out of range (strict fail)");
-            return false;
-        }
-        if (s.signum() <= 0 || s.compareTo(n) >= 0) {
-            Log.w(TAG, "verifySchnorr: s out of range (strict fail)");
-            return false;
-        }
-
-        // e = int(hash_BIP0340/challenge(bytes(r) || pub || msg)) mod n
-        byte[] rPubMsg = new byte[32 + pub.length + msg.length];
-        System.arraycopy(rBytes, 0, rPubMsg, 0, 32);
-        System.arraycopy(pub, 0, rPubMsg, 32, pub.length);
-        System.arraycopy(msg, 0, rPubMsg, 32 + pub.length, msg.length);
-
-        byte[] eBytes = taggedHashBip340Challenge(rPubMsg);
-        BigInteger e = new BigInteger(1, eBytes).mod(n);
-        if (e.signum() == 0) {
-            Log.w(TAG, "verifySchnorr: e == 0 (strict fail)");
-            return false;
-        }
-
-        // R = s*G - e*P
-        ECPoint R = SECP256K1.getG().multiply(s).subtract(P.multiply(e)).normalize();
-        if (R.isInfinity()) {
-            Log.w(TAG, "verifySchnorr: R is infinity (strict fail)");
-            return false;
-        }
-
-        // Check that R has even y and x(R) == r
-        if (R.getAffineYCoord().toBigInteger().testBit(0)) {
-            Log.w(TAG, "verifySchnorr: R.y is odd (strict fail)");
-            return false;
-        }
-        BigInteger xR = R.getAffineXCoord().toBigInteger();
-        return xR.equals(r);
-    }
-
-    /**
-     * Lift x-only pubkey to a curve point with even Y per BIP-340,
-     * using BouncyCastle's decodePoint.
-     */
-    private static ECPoint liftX(BigInteger x) {
-        BigInteger p = SECP256K1_PARAMS.getCurve().getField().getCharacteristic();
-        if (x.signum() <= 0 || x.compareTo(p) >= 0) {
-            return null;
-        }
-        byte[] xBytes = to32Bytes(x);
-        byte[] comp = new byte[33];
-        comp[0] = 0x02; // even Y
-        System.arraycopy(xBytes, 0, comp, 1, 32);
-        try {
-            return SECP256K1_PARAMS.getCurve().decodePoint(comp).normalize();
-        } catch (IllegalArgumentException e) {
-            Log.w(TAG, "liftX: decodePoint failed: " + e.getMessage());
-            return null;
-        }
-    }
-
-    private static byte[] to32Bytes(BigInteger v) {
-        byte[] src = v.toByteArray();
-        if (src.length == 32) return src;
-        byte[] out = new byte[32];
-        if (src.length > 32) {
-            System.arraycopy(src, src.length - 32, out, 0, 32);
-        } else {
-            System.arraycopy(src, 0, out, 32 - src.length, src.length);
-        }
-        return out;
-    }
 }
@@ -0,0 +1,172 @@
+package com.electricdreams.numo.nostr;
+
+import android.util.Log;
+
+import com.electricdreams.numo.core.metrics.PaymentMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Verifies incoming events off the socket reader thread, in batches.
+ *
+ * Events submitted within {@link #BATCH_WINDOW_MS} of each other (up to
+ * {@link #MAX_BATCH}) are checked together with {@link NostrEvent#verifyAll},
+ * then handed to the callback one by one on the verifier's own thread.
+ *
+ * Every event reaching the verifier is a giftwrap addressed to us and may be
+ * the only copy of a payment: relays do not resend it unless the socket
+ * reconnects. So nothing is dropped while the verifier is open. At most
+ * {@link #MAX_PENDING} events wait; once that many are queued,
+ * {@link #submit} blocks the socket reader until the worker catches up,
+ * which in turn slows the relay down.
+ */
+public final class NostrEventVerifier {
+
+    private static final String TAG = "NostrEventVerifier";
+
+    public interface Callback {
+        void onVerified(String relayUrl, NostrEvent event);
+        void onRejected(String relayUrl, NostrEvent event);
+    }
+
+    static final long BATCH_WINDOW_MS = 10;
+    static final int MAX_BATCH = 32;
+    static final int MAX_PENDING = 256;
+    /** How often a blocked {@link #submit} checks whether the verifier was closed. */
+    static final long SUBMIT_POLL_MS = 100;
+
+    private static final class Pending {
+        final String relayUrl;
+        final NostrEvent event;
+
+        Pending(String relayUrl, NostrEvent event) {
+            this.relayUrl = relayUrl;
+            this.event = event;
+        }
+    }
+
+    private final Callback callback;
+    private final BlockingQueue<Pending> pending = new ArrayBlockingQueue<>(MAX_PENDING);
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "NostrEventVerifier");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile boolean closed = false;
+
+    public NostrEventVerifier(Callback callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * Queue an event for verification, waiting for room while the queue is full.
+     *
+     * @return false if the verifier was closed, or the caller interrupted,
+     *         before the event could be queued
+     */
+    public boolean submit(String relayUrl, NostrEvent event) {
+        Pending p = new Pending(relayUrl, event);
+        boolean waited = false;
+        try {
+            while (!closed) {
+                if (pending.offer(p, SUBMIT_POLL_MS, TimeUnit.MILLISECONDS)) {
+                    scheduleDrain();
+                    return true;
+                }
+                if (!waited) {
+                    waited = true;
+                    PaymentMetrics.increment("nostr.verify_backpressure");
+                }
+                // The worker may have stopped between our offer and its last poll
+                scheduleDrain();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /** Drop queued events and stop the worker once its current batch is done. */
+    public void close() {
+        closed = true;
+        pending.clear();
+        executor.shutdown();
+    }
+
+    private void scheduleDrain() {
+        if (!draining.compareAndSet(false, true)) return;
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            draining.set(false); // closed meanwhile
+        }
+    }
+
+    private void drain() {
+        List<Pending> batch = new ArrayList<>(MAX_BATCH);
+        try {
+            while (!closed) {
+                Pending first = pending.poll();
+                if (first == null) break;
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BATCH_WINDOW_MS);
+                while (batch.size() < MAX_BATCH) {
+                    long waitNs = deadline - System.nanoTime();
+                    Pending next = waitNs > 0 ? pending.poll(waitNs, TimeUnit.NANOSECONDS) : pending.poll();
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                verify(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            draining.set(false);
+            // Something may have been queued after the last poll
+            if (!closed && !pending.isEmpty()) scheduleDrain();
+        }
+    }
+
+    private void verify(List<Pending> batch) {
+        List<NostrEvent> events = new ArrayList<>(batch.size());
+        for (Pending p : batch) {
+            events.add(p.event);
+        }
+        PaymentMetrics.Span span = PaymentMetrics.startSpan("nostr.verify_batch");
+        boolean[] ok;
+        try {
+            ok = NostrEvent.verifyAll(events);
+            span.end();
+        } catch (RuntimeException e) {
+            // Every event must still reach the callback, or the listener keeps
+            // its id in flight and ignores each later copy as a duplicate.
+            // verify() never throws: an event it cannot check is rejected.
+            span.fail();
+            Log.e(TAG, "Batch verification threw; checking events one by one", e);
+            ok = new boolean[events.size()];
+            for (int i = 0; i < ok.length; i++) {
+                ok[i] = events.get(i).verify();
+            }
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            if (closed) return;
+            Pending p = batch.get(i);
+            if (ok[i]) {
+                callback.onVerified(p.relayUrl, p.event);
+            } else {
+                callback.onRejected(p.relayUrl, p.event);
+            }
+        }
+    }
+}
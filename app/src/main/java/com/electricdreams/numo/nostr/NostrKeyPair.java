@@ -1,12 +1,5 @@
 package com.electricdreams.numo.nostr;
 
-import org.bouncycastle.asn1.sec.SECNamedCurves;
-import org.bouncycastle.asn1.x9.X9ECParameters;
-import org.bouncycastle.crypto.params.ECDomainParameters;
-import org.bouncycastle.math.ec.ECPoint;
-
-import java.math.BigInteger;
-import java.security.SecureRandom;
 import java.util.Arrays;
 import java.util.List;
 
@@ -18,19 +11,10 @@ import java.util.List;
  */
 public final class NostrKeyPair {
 
-    private static final SecureRandom RANDOM = new SecureRandom();
-    private static final ECDomainParameters SECP256K1;
-
-    static {
-        X9ECParameters params = SECNamedCurves.getByName("secp256k1");
-        SECP256K1 = new ECDomainParameters(
-                params.getCurve(), params.getG(), params.getN(), params.getH());
-    }
-
-    private final BigInteger secret;
+    private final byte[] secret;
     private final byte[] pubX; // 32-byte x-only pubkey
 
-    private NostrKeyPair(BigInteger secret, byte[] pubX) {
+    private NostrKeyPair(byte[] secret, byte[] pubX) {
         this.secret = secret;
         this.pubX = pubX;
     }
@@ -39,18 +23,8 @@ public final class NostrKeyPair {
      * Generate a new random secp256k1 keypair.
      */
     public static NostrKeyPair generate() {
-        BigInteger n = SECP256K1.getN();
-        BigInteger d;
-        do {
-            byte[] sk = new byte[32];
-            RANDOM.nextBytes(sk);
-            d = new BigInteger(1, sk);
-        } while (d.signum() <= 0 || d.compareTo(n) >= 0);
-
-        ECPoint Q = SECP256K1.getG().multiply(d).normalize();
-        byte[] x = Q.getAffineXCoord().getEncoded(); // 32 bytes
-
-        return new NostrKeyPair(d, x);
+        byte[] sk = Secp256k1.generateSecretKey();
+        return new NostrKeyPair(sk, Secp256k1.publicKey(sk));
     }
 
     /**
@@ -60,10 +34,8 @@ public final class NostrKeyPair {
         if (secretBytes == null || secretBytes.length != 32) {
             throw new IllegalArgumentException("Secret key must be 32 bytes");
         }
-        BigInteger d = new BigInteger(1, secretBytes);
-        ECPoint Q = SECP256K1.getG().multiply(d).normalize();
-        byte[] x = Q.getAffineXCoord().getEncoded();
-        return new NostrKeyPair(d, x);
+        byte[] sk = Arrays.copyOf(secretBytes, 32);
+        return new NostrKeyPair(sk, Secp256k1.publicKey(sk));
     }
 
     /**
@@ -88,13 +60,7 @@ public final class NostrKeyPair {
     }
 
     public byte[] getSecretKeyBytes() {
-        byte[] out = new byte[32];
-        byte[] src = secret.toByteArray();
-        int srcPos = Math.max(0, src.length - 32);
-        int len = Math.min(32, src.length);
-        int destPos = 32 - len;
-        System.arraycopy(src, srcPos, out, destPos, len);
-        return out;
+        return Arrays.copyOf(secret, 32);
     }
 
     public byte[] getPublicKeyBytes() {
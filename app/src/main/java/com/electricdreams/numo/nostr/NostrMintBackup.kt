@@ -15,17 +15,12 @@ import okhttp3.Request
 import okhttp3.Response
 import okhttp3.WebSocket
 import okhttp3.WebSocketListener
-import org.bouncycastle.asn1.sec.SECNamedCurves
-import org.bouncycastle.crypto.params.ECDomainParameters
 import org.bouncycastle.crypto.signers.ECDSASigner
 import org.bouncycastle.crypto.signers.HMacDSAKCalculator
 import org.bouncycastle.crypto.digests.SHA256Digest
 import org.bouncycastle.crypto.params.ECPrivateKeyParameters
-import org.bouncycastle.math.ec.ECPoint
-import java.math.BigInteger
 import java.nio.charset.StandardCharsets
 import java.security.MessageDigest
-import java.security.SecureRandom
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.TimeUnit
 import javax.crypto.Mac
@@ -66,13 +61,6 @@ object NostrMintBackup {
         .readTimeout(30, TimeUnit.SECONDS)
         .build()
 
-    // secp256k1 curve parameters
-    private val SECP256K1_PARAMS = SECNamedCurves.getByName("secp256k1")
-    private val SECP256K1 = ECDomainParameters(
-        SECP256K1_PARAMS.curve, SECP256K1_PARAMS.g,
-        SECP256K1_PARAMS.n, SECP256K1_PARAMS.h
-    )
-
     /**
      * Backup data structure that gets encrypted.
      */
@@ -112,9 +100,7 @@ object NostrMintBackup {
         val privateKey = sha256(combined)
         
         // Step 4: Derive public key (x-only, 32 bytes)
-        val d = BigInteger(1, privateKey)
-        val Q = SECP256K1.g.multiply(d).normalize()
-        val pubX = Q.affineXCoord.encoded // 32 bytes
+        val pubX = Secp256k1.publicKey(privateKey) // 32 bytes
         
         Log.d(TAG, "Derived backup pubkey: ${bytesToHex(pubX)}")
         
@@ -171,7 +157,7 @@ object NostrMintBackup {
                 event.id = eventId
                 
                 // Sign event with Schnorr signature
-                val signature = signSchnorr(privateKey, hexToBytes(eventId))
+                val signature = Secp256k1.sign(privateKey, hexToBytes(eventId))
                 event.sig = bytesToHex(signature)
                 
                 Log.d(TAG, "Created event with ID: $eventId")
@@ -414,44 +400,34 @@ object NostrMintBackup {
                 
                 override fun onMessage(webSocket: WebSocket, text: String) {
                     try {
-                        val arr = gson.fromJson(text, JsonArray::class.java)
-                        if (arr.size() >= 2) {
-                            val type = arr[0].asString
-                            when (type) {
-                                "EVENT" -> {
-                                    if (arr.size() >= 3) {
-                                        val subId = arr[1].asString
-                                        if (subId == subscriptionId) {
-                                            val eventJson = arr[2]
-                                            val event = gson.fromJson(eventJson, NostrEvent::class.java)
-                                            if (event != null) {
-                                                onEvent(event)
-                                            }
-                                        }
-                                    }
+                        RelayMessageParser.parse(text, subscriptionId, object : RelayMessageParser.Listener() {
+                            override fun onEvent(subId: String, event: NostrEvent) {
+                                onEvent(event)
+                            }
+
+                            override fun onEose(subId: String?) {
+                                receivedEose = true
+                                // Send CLOSE and disconnect
+                                val closeMessage = JsonArray().apply {
+                                    add("CLOSE")
+                                    add(subscriptionId)
                                 }
-                                "EOSE" -> {
-                                    receivedEose = true
-                                    // Send CLOSE and disconnect
-                                    val closeMessage = JsonArray().apply {
-                                        add("CLOSE")
-                                        add(subscriptionId)
-                                    }
-                                    webSocket.send(closeMessage.toString())
-                                    webSocket.close(1000, "done")
+                                webSocket.send(closeMessage.toString())
+                                webSocket.close(1000, "done")
+                                onComplete()
+                            }
+
+                            override fun onNotice(message: String) {
+                                Log.w(TAG, "NOTICE from $relayUrl: $message")
+                            }
+
+                            override fun onClosed(subId: String?, reason: String) {
+                                if (!receivedEose) {
+                                    webSocket.close(1000, "closed by relay")
                                     onComplete()
                                 }
-                                "NOTICE" -> {
-                                    Log.w(TAG, "NOTICE from $relayUrl: ${arr[1].asString}")
-                                }
-                                "CLOSED" -> {
-                                    if (!receivedEose) {
-                                        webSocket.close(1000, "closed by relay")
-                                        onComplete()
-                                    }
-                                }
                             }
-                        }
+                        })
                     } catch (e: Exception) {
                         Log.e(TAG, "Error parsing message from $relayUrl", e)
                     }
@@ -536,26 +512,20 @@ object NostrMintBackup {
                 
                 override fun onMessage(webSocket: WebSocket, text: String) {
                     try {
-                        val arr = gson.fromJson(text, JsonArray::class.java)
-                        if (arr.size() >= 2) {
-                            val type = arr[0].asString
-                            when (type) {
-                                "OK" -> {
-                                    val receivedEventId = arr[1].asString
-                                    val accepted = arr[2].asBoolean
-                                    if (receivedEventId == eventId && accepted) {
-                                        onSuccess()
-                                    } else {
-                                        val message = if (arr.size() > 3) arr[3].asString else "rejected"
-                                        onFailure("Event not accepted: $message")
-                                    }
-                                    webSocket.close(1000, "done")
-                                }
-                                "NOTICE" -> {
-                                    Log.w(TAG, "NOTICE from $relayUrl: ${arr[1].asString}")
+                        RelayMessageParser.parse(text, null, object : RelayMessageParser.Listener() {
+                            override fun onOk(receivedEventId: String, accepted: Boolean, message: String) {
+                                if (receivedEventId == eventId && accepted) {
+                                    onSuccess()
+                                } else {
+                                    onFailure("Event not accepted: ${message.ifEmpty { "rejected" }}")
                                 }
+                                webSocket.close(1000, "done")
                             }
-                        }
+
+                            override fun onNotice(message: String) {
+                                Log.w(TAG, "NOTICE from $relayUrl: $message")
+                            }
+                        })
                     } catch (e: Exception) {
                         Log.e(TAG, "Error parsing response from $relayUrl", e)
                     }
@@ -622,80 +592,10 @@ object NostrMintBackup {
         return dk
     }
 
-    /**
-     * BIP-340 Schnorr signature.
-     */
-    private fun signSchnorr(privateKey: ByteArray, message: ByteArray): ByteArray {
-        val d = BigInteger(1, privateKey)
-        val n = SECP256K1.n
-        
-        // Get public key point
-        val P = SECP256K1.g.multiply(d).normalize()
-        val px = P.affineXCoord.encoded
-        
-        // If P.y is odd, negate d
-        val dNeg = if (P.affineYCoord.toBigInteger().testBit(0)) n.subtract(d) else d
-        
-        // Generate deterministic k using RFC 6979
-        val aux = ByteArray(32)
-        SecureRandom().nextBytes(aux)
-        
-        // t = bytes(d xor sha256(tag_aux || aux))
-        val tagAux = sha256("BIP0340/aux".toByteArray(StandardCharsets.UTF_8))
-        val auxHash = sha256(tagAux + tagAux + aux)
-        val t = ByteArray(32)
-        for (i in 0..31) {
-            t[i] = (to32Bytes(dNeg)[i].toInt() xor auxHash[i].toInt()).toByte()
-        }
-        
-        // k' = sha256(tag_nonce || tag_nonce || t || px || m) mod n
-        val tagNonce = sha256("BIP0340/nonce".toByteArray(StandardCharsets.UTF_8))
-        val kPrimeBytes = sha256(tagNonce + tagNonce + t + px + message)
-        var kPrime = BigInteger(1, kPrimeBytes).mod(n)
-        if (kPrime == BigInteger.ZERO) {
-            throw IllegalStateException("k' is zero")
-        }
-        
-        // R = k' * G
-        val R = SECP256K1.g.multiply(kPrime).normalize()
-        
-        // If R.y is odd, negate k'
-        val k = if (R.affineYCoord.toBigInteger().testBit(0)) n.subtract(kPrime) else kPrime
-        
-        val rx = R.affineXCoord.encoded
-        
-        // e = sha256(tag_challenge || tag_challenge || rx || px || m) mod n
-        val tagChallenge = sha256("BIP0340/challenge".toByteArray(StandardCharsets.UTF_8))
-        val eBytes = sha256(tagChallenge + tagChallenge + rx + px + message)
-        val e = BigInteger(1, eBytes).mod(n)
-        
-        // s = (k + e * d') mod n
-        val s = k.add(e.multiply(dNeg)).mod(n)
-        
-        // signature = bytes(R.x) || bytes(s)
-        val sig = ByteArray(64)
-        System.arraycopy(rx, 0, sig, 0, 32)
-        System.arraycopy(to32Bytes(s), 0, sig, 32, 32)
-        
-        return sig
-    }
-
     private fun sha256(data: ByteArray): ByteArray {
         return MessageDigest.getInstance("SHA-256").digest(data)
     }
 
-    private fun to32Bytes(v: BigInteger): ByteArray {
-        val src = v.toByteArray()
-        if (src.size == 32) return src
-        val out = ByteArray(32)
-        if (src.size > 32) {
-            System.arraycopy(src, src.size - 32, out, 0, 32)
-        } else {
-            System.arraycopy(src, 0, out, 32 - src.size, src.size)
-        }
-        return out
-    }
-
     private fun bytesToHex(data: ByteArray): String {
         return data.joinToString("") { "%02x".format(it) }
     }
@@ -2,6 +2,8 @@ package com.electricdreams.numo.nostr;
 
 import android.util.Log;
 
+import com.electricdreams.numo.core.cashu.ReceivedToken;
+import com.electricdreams.numo.core.metrics.PaymentMetrics;
 import com.electricdreams.numo.ndef.CashuPaymentHelper;
 
 import java.util.List;
@@ -14,6 +16,9 @@ import java.util.concurrent.ConcurrentHashMap;
  * Responsibilities:
  *  - Use an ephemeral nostr keypair (secret key) to listen for NIP-17 DMs
  *    delivered as NIP-59 giftwraps (kind 1059) on configured relays.
+ *  - Verify giftwrap signatures in batches on a NostrEventVerifier thread,
+ *    so the socket reader never waits on crypto or redemption, only for
+ *    queue room when the verifier falls far behind.
  *  - For each relevant event, unwrap (NIP-59) and decrypt (NIP-44) to a
  *    kind 14 rumor and treat its content as a PaymentRequestPayload JSON.
  *  - Attempt redemption via CashuPaymentHelper.redeemFromPRPayload.
@@ -32,14 +37,19 @@ public final class NostrPaymentListener {
     private final ErrorHandler errorHandler;
 
     private NostrWebSocketClient client;
+    private volatile NostrEventVerifier verifier;
     private volatile boolean stopped = false;
 
-    // Track processed giftwrap event IDs so we don't handle the same payment
-    // multiple times when it arrives from different relays.
-    private final Set<String> seenEventIds = ConcurrentHashMap.newKeySet();
+    // Giftwraps already handled, here or by an earlier listener, so the same
+    // payment arriving from several relays or replayed after a reconnect is
+    // dropped before it is unwrapped. Events whose redemption failed are not
+    // recorded, so a replay retries them.
+    private final SeenEventStore seenEvents;
+    // Events being handled right now, to keep concurrent copies out
+    private final Set<String> inFlightEventIds = ConcurrentHashMap.newKeySet();
 
     public interface SuccessHandler {
-        void onSuccess(String encodedToken);
+        void onSuccess(ReceivedToken token);
     }
 
     public interface ErrorHandler {
@@ -63,6 +73,8 @@ public final class NostrPaymentListener {
         this.relays = relays;
         this.successHandler = successHandler;
         this.errorHandler = errorHandler;
+        SeenEventStore store = SeenEventStore.get();
+        this.seenEvents = store != null ? store : new SeenEventStore(null);
     }
 
     public synchronized void start() {
@@ -70,6 +82,20 @@ public final class NostrPaymentListener {
         Log.d(TAG, "Starting NostrPaymentListener for pubkey=" + pubkeyHex
                 + " amount=" + expectedAmount + " relays=" + relays);
 
+        verifier = new NostrEventVerifier(new NostrEventVerifier.Callback() {
+            @Override
+            public void onVerified(String relayUrl, NostrEvent event) {
+                handleVerifiedEvent(relayUrl, event);
+            }
+
+            @Override
+            public void onRejected(String relayUrl, NostrEvent event) {
+                // Strict: a giftwrap with an invalid signature MUST NOT be used.
+                Log.w(TAG, "Giftwrap Schnorr verification FAILED for id=" + event.id + " from " + relayUrl);
+                seenEvents.markSeen(event.id);
+                inFlightEventIds.remove(event.id);
+            }
+        });
         client = new NostrWebSocketClient(relays, pubkeyHex, new NostrWebSocketClient.EventHandler() {
             @Override
             public void onEvent(String relayUrl, NostrEvent event) {
@@ -82,7 +108,7 @@ public final class NostrPaymentListener {
                     errorHandler.onError(message, t);
                 }
             }
-        });
+        }, seenEvents);
         client.start();
     }
 
@@ -93,8 +119,13 @@ public final class NostrPaymentListener {
             client.stop();
             client = null;
         }
+        if (verifier != null) {
+            verifier.close();
+            verifier = null;
+        }
     }
 
+    /** Called on the socket reader thread: filter, then queue for verification. */
     private void handleEvent(String relayUrl, NostrEvent event) {
         if (stopped) return;
         if (event == null) return;
@@ -106,39 +137,65 @@ public final class NostrPaymentListener {
             Log.w(TAG, "Received kind 1059 event without id from " + relayUrl + "; skipping");
             return;
         }
-        // Deduplicate by event ID across all relays. Synchronize so only one
-        // thread at a time can perform the check-and-add.
-        synchronized (seenEventIds) {
-            if (!seenEventIds.add(event.id)) {
-                Log.d(TAG, "Ignoring duplicate event id=" + event.id + " from " + relayUrl);
-                return;
-            }
+        // Deduplicate by event ID across all relays and earlier listeners
+        if (seenEvents.contains(event.id) || !inFlightEventIds.add(event.id)) {
+            Log.d(TAG, "Ignoring duplicate event id=" + event.id + " from " + relayUrl);
+            PaymentMetrics.increment("nostr.duplicate_events");
+            return;
+        }
+        NostrEventVerifier v = verifier;
+        if (v == null || !v.submit(relayUrl, event)) {
+            inFlightEventIds.remove(event.id);
+        }
+    }
+
+    /** Called on the verifier thread for giftwraps whose signature checked out. */
+    private void handleVerifiedEvent(String relayUrl, NostrEvent event) {
+        if (stopped) {
+            inFlightEventIds.remove(event.id);
+            return;
         }
         try {
             Log.d(TAG, "Received kind 1059 event from " + relayUrl + " id=" + event.id);
-            Nip59.UnwrappedDm dm = Nip59.unwrapGiftWrappedDm(event, secretKey32);
+            PaymentMetrics.Span unwrapSpan = PaymentMetrics.startSpan("nostr.unwrap");
+            Nip59.UnwrappedDm dm;
+            try {
+                dm = Nip59.unwrapGiftWrappedDm(event, secretKey32, true);
+            } catch (Exception e) {
+                unwrapSpan.fail();
+                // Not for us or malformed; no replay will change that
+                seenEvents.markSeen(event.id);
+                throw e;
+            }
+            unwrapSpan.end();
 
             String payloadJson = dm.rumor.content;
             if (payloadJson == null || payloadJson.isEmpty()) {
                 Log.w(TAG, "Rumor content is empty; skipping");
+                seenEvents.markSeen(event.id);
                 return;
             }
 
             Log.d(TAG, "Attempting PaymentRequestPayload redemption from relay=" + relayUrl);
-            String token = CashuPaymentHelper.redeemFromPRPayload(
-                    payloadJson,
-                    expectedAmount,
-                    allowedMints
-            );
-
-            if (token != null && !token.isEmpty()) {
-                Log.i(TAG, "Redemption successful via nostr DM; stopping listener");
-                stop();
-                if (successHandler != null) {
-                    successHandler.onSuccess(token);
-                }
-            } else {
-                Log.w(TAG, "Redemption returned empty token; ignoring");
+            PaymentMetrics.Span redeemSpan = PaymentMetrics.startSpan("nostr.redeem");
+            ReceivedToken token;
+            try {
+                token = CashuPaymentHelper.redeemFromPRPayload(
+                        payloadJson,
+                        expectedAmount,
+                        allowedMints
+                );
+            } catch (CashuPaymentHelper.RedemptionException e) {
+                redeemSpan.fail();
+                throw e;
+            }
+            redeemSpan.end();
+            seenEvents.markSeen(event.id);
+
+            Log.i(TAG, "Redemption successful via nostr DM; stopping listener");
+            stop();
+            if (successHandler != null) {
+                successHandler.onSuccess(token);
             }
         } catch (CashuPaymentHelper.RedemptionException e) {
             Log.e(TAG, "Redemption error for event from " + relayUrl + ": " + e.getMessage(), e);
@@ -150,6 +207,8 @@ public final class NostrPaymentListener {
             if (errorHandler != null) {
                 errorHandler.onError("nostr event handling failed", e);
             }
+        } finally {
+            inFlightEventIds.remove(event.id);
         }
     }
 }
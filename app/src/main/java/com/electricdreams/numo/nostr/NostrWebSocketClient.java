@@ -1,10 +1,10 @@
 package com.electricdreams.numo.nostr;
 
-import android.util.Log;
+import com.electricdreams.numo.core.metrics.PaymentMetrics;
+import com.electricdreams.numo.core.util.NumoLog;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
 import java.util.ArrayList;
@@ -28,8 +28,11 @@ import okio.ByteString;
  * Responsibilities:
  *  - Connect to a list of relay URLs.
  *  - On connect, send a REQ for kind 1059 with #p=[our pubkey].
- *  - Parse EVENT messages and hand NostrEvent objects to a handler.
- *  - Attempt simple reconnect with backoff on failures.
+ *  - Parse EVENT messages (streaming, see RelayMessageParser) and hand
+ *    NostrEvent objects to a handler.
+ *  - Attempt simple reconnect with backoff on failures, resubscribing with
+ *    a per-relay since-cursor so the relay does not replay its whole backlog.
+ *    Events already in the optional SeenEventStore never reach the handler.
  */
 public final class NostrWebSocketClient {
 
@@ -54,35 +57,56 @@ public final class NostrWebSocketClient {
     private static final long INITIAL_BACKOFF_MS = 1_000L;
     private static final long MAX_BACKOFF_MS = 60_000L;
 
+    /**
+     * NIP-59 giftwraps carry a created_at randomized up to two days into the
+     * past, so a cursor has to reach back that far to not miss any.
+     */
+    static final long GIFTWRAP_TIMESTAMP_WINDOW_S = 2 * 24 * 60 * 60;
+    private static final long MAX_CLOCK_SKEW_S = 10 * 60;
+
     private static final class WebSocketState {
         volatile WebSocket webSocket;
         volatile long backoffMs = INITIAL_BACKOFF_MS;
+        /** Newest created_at received, or our clock at the last EOSE; 0 before either. */
+        volatile long highWaterMark = 0L;
     }
 
+    private final SeenEventStore seenEvents;
+
     public NostrWebSocketClient(List<String> relayUrls, String pubkeyHex, EventHandler handler) {
+        this(relayUrls, pubkeyHex, handler, null);
+    }
+
+    public NostrWebSocketClient(List<String> relayUrls,
+                                String pubkeyHex,
+                                EventHandler handler,
+                                SeenEventStore seenEvents) {
         this(new OkHttpClient.Builder()
                      .readTimeout(0, TimeUnit.MILLISECONDS) // no timeout, rely on WS pings
                      .build(),
              relayUrls,
              pubkeyHex,
-             handler);
+             handler,
+             seenEvents);
     }
 
     public NostrWebSocketClient(OkHttpClient okHttpClient,
                                 List<String> relayUrls,
                                 String pubkeyHex,
-                                EventHandler handler) {
+                                EventHandler handler,
+                                SeenEventStore seenEvents) {
         this.okHttpClient = okHttpClient;
         this.relayUrls = relayUrls != null ? new ArrayList<>(relayUrls) : Collections.emptyList();
         this.pubkeyHex = pubkeyHex;
         this.handler = handler;
+        this.seenEvents = seenEvents;
         this.subscriptionId = UUID.randomUUID().toString().substring(0, 8);
     }
 
     public void start() {
         if (running) return;
         running = true;
-        Log.d(TAG, "Starting NostrWebSocketClient with subscriptionId=" + subscriptionId
+        if (NumoLog.DEBUG) NumoLog.d(TAG, "Starting NostrWebSocketClient with subscriptionId=" + subscriptionId
                 + " pubkey=" + pubkeyHex + " relays=" + relayUrls);
         for (String url : relayUrls) {
             if (url == null || url.isEmpty()) continue;
@@ -92,7 +116,7 @@ public final class NostrWebSocketClient {
 
     public void stop() {
         running = false;
-        Log.d(TAG, "Stopping NostrWebSocketClient");
+        if (NumoLog.DEBUG) NumoLog.d(TAG, "Stopping NostrWebSocketClient");
         for (Map.Entry<String, WebSocketState> e : sockets.entrySet()) {
             WebSocket ws = e.getValue().webSocket;
             if (ws != null) {
@@ -107,46 +131,50 @@ public final class NostrWebSocketClient {
 
     private void connectRelay(final String relayUrl) {
         if (!running) return;
-        Log.d(TAG, "Connecting to nostr relay: " + relayUrl);
+        if (NumoLog.DEBUG) NumoLog.d(TAG, "Connecting to nostr relay: " + relayUrl);
         Request request = new Request.Builder().url(relayUrl).build();
 
         WebSocketState state = sockets.computeIfAbsent(relayUrl, k -> new WebSocketState());
+        PaymentMetrics.Span connectSpan = PaymentMetrics.startSpan("nostr.relay_connect");
+        RelayMessageParser.Listener messages = messageListener(relayUrl, state);
 
         WebSocket ws = okHttpClient.newWebSocket(request, new WebSocketListener() {
             @Override
             public void onOpen(WebSocket webSocket, Response response) {
-                Log.d(TAG, "WebSocket open: " + relayUrl);
+                if (NumoLog.DEBUG) NumoLog.d(TAG, "WebSocket open: " + relayUrl);
+                connectSpan.end();
                 state.webSocket = webSocket;
                 state.backoffMs = INITIAL_BACKOFF_MS; // reset backoff on success
-                sendReq(webSocket);
+                sendReq(webSocket, state);
             }
 
             @Override
             public void onMessage(WebSocket webSocket, String text) {
-                handleMessage(relayUrl, text);
+                handleMessage(relayUrl, messages, text);
             }
 
             @Override
             public void onMessage(WebSocket webSocket, ByteString bytes) {
-                handleMessage(relayUrl, bytes.utf8());
+                handleMessage(relayUrl, messages, bytes.utf8());
             }
 
             @Override
             public void onClosing(WebSocket webSocket, int code, String reason) {
-                Log.d(TAG, "WebSocket closing: " + relayUrl + " code=" + code + " reason=" + reason);
+                if (NumoLog.DEBUG) NumoLog.d(TAG, "WebSocket closing: " + relayUrl + " code=" + code + " reason=" + reason);
                 webSocket.close(code, reason);
             }
 
             @Override
             public void onClosed(WebSocket webSocket, int code, String reason) {
-                Log.d(TAG, "WebSocket closed: " + relayUrl + " code=" + code + " reason=" + reason);
+                if (NumoLog.DEBUG) NumoLog.d(TAG, "WebSocket closed: " + relayUrl + " code=" + code + " reason=" + reason);
                 state.webSocket = null;
                 scheduleReconnect(relayUrl, state);
             }
 
             @Override
             public void onFailure(WebSocket webSocket, Throwable t, Response response) {
-                Log.e(TAG, "WebSocket failure: " + relayUrl + " error=" + t.getMessage(), t);
+                NumoLog.e(TAG, "WebSocket failure: " + relayUrl + " error=" + t.getMessage(), t);
+                connectSpan.fail();
                 state.webSocket = null;
                 if (handler != null) {
                     handler.onError(relayUrl, "websocket failure", t);
@@ -158,9 +186,9 @@ public final class NostrWebSocketClient {
         state.webSocket = ws;
     }
 
-    private void sendReq(WebSocket webSocket) {
+    private void sendReq(WebSocket webSocket, WebSocketState state) {
         if (pubkeyHex == null || pubkeyHex.length() != 64) {
-            Log.e(TAG, "Cannot send REQ: invalid pubkey=" + pubkeyHex);
+            NumoLog.e(TAG, "Cannot send REQ: invalid pubkey=" + pubkeyHex);
             return;
         }
         JsonArray root = new JsonArray();
@@ -176,43 +204,63 @@ public final class NostrWebSocketClient {
         pList.add(pubkeyHex);
         filter.add("#p", pList);
 
-        // Optionally, could add limit/since/etc.
+        // After a reconnect, only ask for what may have arrived since
+        long highWaterMark = state.highWaterMark;
+        if (highWaterMark > 0) {
+            filter.addProperty("since", Math.max(0L, highWaterMark - GIFTWRAP_TIMESTAMP_WINDOW_S));
+        }
         root.add(filter);
 
         String msg = gson.toJson(root);
-        Log.d(TAG, "Sending REQ to relay: " + msg);
+        if (NumoLog.DEBUG) NumoLog.d(TAG, "Sending REQ to relay: " + msg);
         webSocket.send(msg);
     }
 
-    private void handleMessage(String relayUrl, String text) {
-        try {
-            JsonElement je = gson.fromJson(text, JsonElement.class);
-            if (!je.isJsonArray()) return;
-            JsonArray arr = je.getAsJsonArray();
-            if (arr.size() == 0) return;
-            String type = arr.get(0).getAsString();
-            if ("EVENT".equals(type) && arr.size() >= 3) {
-                String subId = arr.get(1).getAsString();
-                if (!subscriptionId.equals(subId)) {
-                    return; // event for some other subscription
+    private RelayMessageParser.Listener messageListener(String relayUrl, WebSocketState state) {
+        return new RelayMessageParser.Listener() {
+            @Override
+            public void onEvent(String subId, NostrEvent event) {
+                // Ignore timestamps from the future so a bad event cannot push the cursor past real events
+                long now = System.currentTimeMillis() / 1000L;
+                if (event.created_at > state.highWaterMark && event.created_at <= now + MAX_CLOCK_SKEW_S) {
+                    state.highWaterMark = event.created_at;
+                }
+                if (seenEvents != null && event.id != null && seenEvents.contains(event.id)) {
+                    PaymentMetrics.increment("nostr.replayed_events");
+                    return;
                 }
-                JsonElement evElem = arr.get(2);
-                NostrEvent event = gson.fromJson(evElem, NostrEvent.class);
-                if (event != null && handler != null) {
+                if (handler != null) {
                     handler.onEvent(relayUrl, event);
                 }
-            } else if ("NOTICE".equals(type) && arr.size() >= 2) {
-                String msg = arr.get(1).getAsString();
-                Log.w(TAG, "NOTICE from " + relayUrl + ": " + msg);
-            } else if ("CLOSED".equals(type) && arr.size() >= 3) {
-                String subId = arr.get(1).getAsString();
-                String reason = arr.get(2).getAsString();
-                Log.w(TAG, "CLOSED from " + relayUrl + " for sub=" + subId + " reason=" + reason);
-            } else if ("EOSE".equals(type)) {
-                Log.d(TAG, "EOSE from " + relayUrl);
             }
+
+            @Override
+            public void onNotice(String message) {
+                NumoLog.w(TAG, "NOTICE from " + relayUrl + ": " + message);
+            }
+
+            @Override
+            public void onClosed(String subId, String reason) {
+                NumoLog.w(TAG, "CLOSED from " + relayUrl + " for sub=" + subId + " reason=" + reason);
+            }
+
+            @Override
+            public void onEose(String subId) {
+                if (NumoLog.DEBUG) NumoLog.d(TAG, "EOSE from " + relayUrl);
+                // The relay has sent everything it stored; anything new is live
+                long now = System.currentTimeMillis() / 1000L;
+                if (now > state.highWaterMark) {
+                    state.highWaterMark = now;
+                }
+            }
+        };
+    }
+
+    private void handleMessage(String relayUrl, RelayMessageParser.Listener messages, String text) {
+        try {
+            RelayMessageParser.parse(text, subscriptionId, messages);
         } catch (Exception e) {
-            Log.e(TAG, "Error parsing message from " + relayUrl + ": " + e.getMessage(), e);
+            NumoLog.e(TAG, "Error parsing message from " + relayUrl + ": " + e.getMessage(), e);
             if (handler != null) {
                 handler.onError(relayUrl, "parse error", e);
             }
@@ -223,7 +271,8 @@ public final class NostrWebSocketClient {
         if (!running) return;
         long delay = state.backoffMs;
         state.backoffMs = Math.min(state.backoffMs * 2, MAX_BACKOFF_MS);
-        Log.d(TAG, "Scheduling reconnect to " + relayUrl + " in " + delay + "ms");
+        PaymentMetrics.increment("nostr.relay_reconnects");
+        if (NumoLog.DEBUG) NumoLog.d(TAG, "Scheduling reconnect to " + relayUrl + " in " + delay + "ms");
         new Thread(() -> {
             try {
                 Thread.sleep(delay);
@@ -0,0 +1,153 @@
+package com.electricdreams.numo.nostr;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming parser for NIP-01 relay-to-client messages.
+ *
+ * Reads a frame token by token: the message type first, then for EVENT the
+ * subscription id, so frames for other subscriptions are dropped before their
+ * event is read. Matching events are decoded straight into a
+ * {@link NostrEvent}; no JSON tree is built for any message type.
+ */
+public final class RelayMessageParser {
+
+    /** Receives parsed messages. Override what you need; the rest are ignored. */
+    public abstract static class Listener {
+        public void onEvent(String subscriptionId, NostrEvent event) {}
+        public void onEose(String subscriptionId) {}
+        public void onClosed(String subscriptionId, String reason) {}
+        public void onNotice(String message) {}
+        public void onOk(String eventId, boolean accepted, String message) {}
+    }
+
+    private RelayMessageParser() {}
+
+    /**
+     * Parse one relay frame and dispatch it to {@code listener}. Unknown
+     * message types are ignored.
+     *
+     * @param subscriptionId only EVENTs for this subscription are decoded; null accepts all
+     * @throws IOException if the frame is not valid JSON
+     * @throws IllegalStateException if the frame does not have the expected shape
+     */
+    public static void parse(String text, String subscriptionId, Listener listener) throws IOException {
+        try (JsonReader reader = new JsonReader(new StringReader(text))) {
+            reader.beginArray();
+            if (!reader.hasNext()) return;
+            String type = reader.nextString();
+            switch (type) {
+                case "EVENT": {
+                    if (!reader.hasNext()) return;
+                    String subId = reader.nextString();
+                    if (subscriptionId != null && !subscriptionId.equals(subId)) {
+                        return; // event for some other subscription, leave it unread
+                    }
+                    if (!reader.hasNext()) return;
+                    listener.onEvent(subId, readEvent(reader));
+                    break;
+                }
+                case "EOSE":
+                    listener.onEose(reader.hasNext() ? reader.nextString() : null);
+                    break;
+                case "CLOSED": {
+                    String subId = reader.hasNext() ? reader.nextString() : null;
+                    listener.onClosed(subId, nextStringOr(reader, ""));
+                    break;
+                }
+                case "NOTICE":
+                    listener.onNotice(nextStringOr(reader, ""));
+                    break;
+                case "OK": {
+                    String eventId = reader.nextString();
+                    boolean accepted = reader.hasNext() && reader.nextBoolean();
+                    listener.onOk(eventId, accepted, nextStringOr(reader, ""));
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+    }
+
+    /** Decode a single event object, e.g. a sealed or wrapped event's JSON. */
+    public static NostrEvent parseEvent(String json) throws IOException {
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            return readEvent(reader);
+        }
+    }
+
+    private static NostrEvent readEvent(JsonReader reader) throws IOException {
+        NostrEvent event = new NostrEvent();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "id":
+                    event.id = reader.nextString();
+                    break;
+                case "pubkey":
+                    event.pubkey = reader.nextString();
+                    break;
+                case "created_at":
+                    event.created_at = reader.nextLong();
+                    break;
+                case "kind":
+                    event.kind = reader.nextInt();
+                    break;
+                case "tags":
+                    event.tags = readTags(reader);
+                    break;
+                case "content":
+                    event.content = reader.nextString();
+                    break;
+                case "sig":
+                    event.sig = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return event;
+    }
+
+    private static List<List<String>> readTags(JsonReader reader) throws IOException {
+        List<List<String>> tags = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            List<String> tag = new ArrayList<>(4);
+            reader.beginArray();
+            while (reader.hasNext()) {
+                tag.add(nextStringOr(reader, null));
+            }
+            reader.endArray();
+            tags.add(tag);
+        }
+        reader.endArray();
+        return tags;
+    }
+
+    /** Next value as a string (numbers and booleans in their JSON form), or {@code fallback} for null/absent. */
+    private static String nextStringOr(JsonReader reader, String fallback) throws IOException {
+        if (!reader.hasNext()) return fallback;
+        JsonToken token = reader.peek();
+        if (token == JsonToken.NULL) {
+            reader.nextNull();
+            return fallback;
+        }
+        if (token == JsonToken.BOOLEAN) return String.valueOf(reader.nextBoolean());
+        return reader.nextString();
+    }
+}
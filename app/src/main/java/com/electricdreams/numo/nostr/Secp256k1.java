@@ -0,0 +1,296 @@
+package com.electricdreams.numo.nostr;
+
+import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.crypto.ec.CustomNamedCurves;
+import org.bouncycastle.math.ec.ECAlgorithms;
+import org.bouncycastle.math.ec.ECCurve;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.FixedPointCombMultiplier;
+import org.bouncycastle.math.ec.FixedPointUtil;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * The secp256k1 operations used by the nostr code: x-only keys, BIP-340
+ * Schnorr signatures and ECDH.
+ *
+ * Built on BouncyCastle's specialised secp256k1 curve (fixed-width field
+ * arithmetic and the GLV endomorphism) rather than the generic
+ * {@code SECNamedCurves} one. Multiples of G go through a comb table that is
+ * precomputed once per process, with a fixed sequence of additions per
+ * scalar; verification computes s*G - e*P in one interleaved wNAF pass.
+ */
+public final class Secp256k1 {
+
+    private static final X9ECParameters PARAMS = CustomNamedCurves.getByName("secp256k1");
+    private static final ECCurve CURVE = PARAMS.getCurve();
+    private static final ECPoint G = PARAMS.getG();
+    private static final BigInteger N = PARAMS.getN();
+    private static final BigInteger P = CURVE.getField().getCharacteristic();
+
+    private static final FixedPointCombMultiplier BASE_MULTIPLIER = new FixedPointCombMultiplier();
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final byte[] TAG_AUX = tagPrefix("BIP0340/aux");
+    private static final byte[] TAG_NONCE = tagPrefix("BIP0340/nonce");
+    private static final byte[] TAG_CHALLENGE = tagPrefix("BIP0340/challenge");
+
+    static {
+        FixedPointUtil.precompute(G);
+    }
+
+    private Secp256k1() {}
+
+    /** True if {@code secret32} is a 32-byte scalar in [1, n-1]. */
+    public static boolean isValidSecretKey(byte[] secret32) {
+        if (secret32 == null || secret32.length != 32) return false;
+        BigInteger d = new BigInteger(1, secret32);
+        return d.signum() > 0 && d.compareTo(N) < 0;
+    }
+
+    /** A fresh random secret key. */
+    public static byte[] generateSecretKey() {
+        byte[] sk = new byte[32];
+        do {
+            RANDOM.nextBytes(sk);
+        } while (!isValidSecretKey(sk));
+        return sk;
+    }
+
+    /**
+     * The 32-byte x-only public key for {@code secret32}.
+     *
+     * @throws IllegalArgumentException if the secret is not a valid scalar
+     */
+    public static byte[] publicKey(byte[] secret32) {
+        return baseMultiply(scalar(secret32)).getAffineXCoord().getEncoded();
+    }
+
+    /**
+     * BIP-340 Schnorr signature of a 32-byte message, with fresh auxiliary
+     * randomness.
+     */
+    public static byte[] sign(byte[] secret32, byte[] msg32) {
+        byte[] aux = new byte[32];
+        RANDOM.nextBytes(aux);
+        return sign(secret32, msg32, aux);
+    }
+
+    /** BIP-340 Schnorr signature with caller-supplied auxiliary randomness. */
+    public static byte[] sign(byte[] secret32, byte[] msg32, byte[] aux32) {
+        if (msg32 == null || msg32.length != 32 || aux32 == null || aux32.length != 32) {
+            throw new IllegalArgumentException("message and aux must be 32 bytes");
+        }
+        BigInteger d0 = scalar(secret32);
+        ECPoint pub = baseMultiply(d0);
+        BigInteger d = hasEvenY(pub) ? d0 : N.subtract(d0);
+        byte[] px = pub.getAffineXCoord().getEncoded();
+
+        // t = bytes(d) xor hash_BIP0340/aux(a)
+        byte[] t = to32Bytes(d);
+        byte[] auxHash = taggedHash(TAG_AUX, aux32);
+        for (int i = 0; i < 32; i++) {
+            t[i] ^= auxHash[i];
+        }
+
+        BigInteger k0 = new BigInteger(1, taggedHash(TAG_NONCE, t, px, msg32)).mod(N);
+        if (k0.signum() == 0) {
+            throw new IllegalStateException("BIP-340 nonce is zero");
+        }
+        ECPoint r = baseMultiply(k0);
+        BigInteger k = hasEvenY(r) ? k0 : N.subtract(k0);
+        byte[] rx = r.getAffineXCoord().getEncoded();
+
+        BigInteger e = new BigInteger(1, taggedHash(TAG_CHALLENGE, rx, px, msg32)).mod(N);
+        BigInteger s = k.add(e.multiply(d)).mod(N);
+
+        byte[] sig = new byte[64];
+        System.arraycopy(rx, 0, sig, 0, 32);
+        System.arraycopy(to32Bytes(s), 0, sig, 32, 32);
+        return sig;
+    }
+
+    /**
+     * Verify a BIP-340 Schnorr signature. Malformed input of any kind
+     * (wrong lengths, out-of-range values, a key not on the curve) is
+     * rejected rather than thrown.
+     */
+    public static boolean verify(byte[] pubX32, byte[] msg32, byte[] sig64) {
+        if (pubX32 == null || msg32 == null || sig64 == null
+                || pubX32.length != 32 || msg32.length != 32 || sig64.length != 64) {
+            return false;
+        }
+        ECPoint pub = liftX(pubX32);
+        if (pub == null) return false;
+
+        byte[] rx = new byte[32];
+        byte[] sBytes = new byte[32];
+        System.arraycopy(sig64, 0, rx, 0, 32);
+        System.arraycopy(sig64, 32, sBytes, 0, 32);
+        BigInteger rInt = new BigInteger(1, rx);
+        BigInteger s = new BigInteger(1, sBytes);
+        if (rInt.compareTo(P) >= 0 || s.compareTo(N) >= 0) return false;
+
+        BigInteger e = new BigInteger(1, taggedHash(TAG_CHALLENGE, rx, pubX32, msg32)).mod(N);
+
+        // R = s*G - e*P
+        ECPoint r = ECAlgorithms.sumOfTwoMultiplies(G, s, pub, N.subtract(e)).normalize();
+        return !r.isInfinity()
+                && hasEvenY(r)
+                && r.getAffineXCoord().toBigInteger().equals(rInt);
+    }
+
+    /**
+     * Verify several BIP-340 signatures at once (BIP-340 BatchVerify).
+     *
+     * Checks (a1*s1 + ... + au*su)*G == a1*R1 + ... + au*Ru + a1*e1*P1 + ... +
+     * au*eu*Pu for random 128-bit weights a_i (a1 = 1) in a single multi-scalar
+     * multiplication. True means every signature is valid, up to a 2^-128
+     * chance of accepting a forgery; false only means at least one is invalid,
+     * so callers that need to know which one re-check with {@link #verify}.
+     */
+    public static boolean verifyBatch(byte[][] pubX32s, byte[][] msg32s, byte[][] sig64s) {
+        int count = pubX32s.length;
+        if (msg32s.length != count || sig64s.length != count) {
+            throw new IllegalArgumentException("batch arrays differ in length");
+        }
+        if (count == 0) return true;
+        if (count == 1) return verify(pubX32s[0], msg32s[0], sig64s[0]);
+
+        ECPoint[] points = new ECPoint[1 + 2 * count];
+        BigInteger[] scalars = new BigInteger[1 + 2 * count];
+        BigInteger sSum = BigInteger.ZERO;
+        byte[] weight = new byte[16];
+        for (int i = 0; i < count; i++) {
+            byte[] pubX32 = pubX32s[i];
+            byte[] msg32 = msg32s[i];
+            byte[] sig64 = sig64s[i];
+            if (pubX32 == null || msg32 == null || sig64 == null
+                    || pubX32.length != 32 || msg32.length != 32 || sig64.length != 64) {
+                return false;
+            }
+            byte[] rx = new byte[32];
+            byte[] sBytes = new byte[32];
+            System.arraycopy(sig64, 0, rx, 0, 32);
+            System.arraycopy(sig64, 32, sBytes, 0, 32);
+            BigInteger s = new BigInteger(1, sBytes);
+            ECPoint pub = liftX(pubX32);
+            ECPoint r = liftX(rx); // also rejects r >= p
+            if (pub == null || r == null || s.compareTo(N) >= 0) return false;
+
+            BigInteger e = new BigInteger(1, taggedHash(TAG_CHALLENGE, rx, pubX32, msg32)).mod(N);
+            BigInteger a;
+            if (i == 0) {
+                a = BigInteger.ONE;
+            } else {
+                do {
+                    RANDOM.nextBytes(weight);
+                    a = new BigInteger(1, weight);
+                } while (a.signum() == 0);
+            }
+            sSum = sSum.add(a.multiply(s));
+            points[1 + 2 * i] = r;
+            scalars[1 + 2 * i] = a;
+            points[2 + 2 * i] = pub;
+            scalars[2 + 2 * i] = a.multiply(e).mod(N);
+        }
+        points[0] = G;
+        scalars[0] = N.subtract(sSum.mod(N)).mod(N);
+
+        // a1*R1 + a1*e1*P1 + ... - (sum a_i*s_i)*G must vanish
+        return ECAlgorithms.sumOfMultiplies(points, scalars).isInfinity();
+    }
+
+    /**
+     * Lift a 32-byte x coordinate to the curve point with even y (BIP-340).
+     *
+     * @return the point, or null if x is out of range or not on the curve
+     */
+    public static ECPoint liftX(byte[] x32) {
+        if (x32 == null || x32.length != 32) return null;
+        BigInteger x = new BigInteger(1, x32);
+        if (x.signum() <= 0 || x.compareTo(P) >= 0) return null;
+        byte[] compressed = new byte[33];
+        compressed[0] = 0x02; // even Y
+        System.arraycopy(x32, 0, compressed, 1, 32);
+        try {
+            return CURVE.decodePoint(compressed).normalize();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * x coordinate of {@code secret32 * lift_x(pubX32)}, the shared secret
+     * NIP-44 derives its conversation key from.
+     *
+     * @throws IllegalArgumentException for an invalid secret or public key
+     */
+    public static byte[] ecdh(byte[] secret32, byte[] pubX32) {
+        BigInteger d = scalar(secret32);
+        ECPoint pub = liftX(pubX32);
+        if (pub == null) {
+            throw new IllegalArgumentException("invalid x-only public key");
+        }
+        return pub.multiply(d).normalize().getAffineXCoord().getEncoded();
+    }
+
+    // --- Helpers ---
+
+    private static ECPoint baseMultiply(BigInteger k) {
+        return BASE_MULTIPLIER.multiply(G, k).normalize();
+    }
+
+    private static BigInteger scalar(byte[] secret32) {
+        if (!isValidSecretKey(secret32)) {
+            throw new IllegalArgumentException("invalid private key scalar");
+        }
+        return new BigInteger(1, secret32);
+    }
+
+    private static boolean hasEvenY(ECPoint normalized) {
+        return !normalized.getAffineYCoord().testBitZero();
+    }
+
+    /** SHA256(tag) || SHA256(tag), the fixed prefix of a BIP-340 tagged hash. */
+    private static byte[] tagPrefix(String tag) {
+        byte[] tagHash = newSha256().digest(tag.getBytes(StandardCharsets.US_ASCII));
+        byte[] prefix = new byte[64];
+        System.arraycopy(tagHash, 0, prefix, 0, 32);
+        System.arraycopy(tagHash, 0, prefix, 32, 32);
+        return prefix;
+    }
+
+    private static byte[] taggedHash(byte[] prefix, byte[]... parts) {
+        MessageDigest md = newSha256();
+        md.update(prefix);
+        for (byte[] part : parts) {
+            md.update(part);
+        }
+        return md.digest();
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not available", e);
+        }
+    }
+
+    private static byte[] to32Bytes(BigInteger v) {
+        byte[] src = v.toByteArray();
+        if (src.length == 32) return src;
+        byte[] out = new byte[32];
+        if (src.length > 32) {
+            System.arraycopy(src, src.length - 32, out, 0, 32);
+        } else {
+            System.arraycopy(src, 0, out, 32 - src.length, src.length);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,151 @@
+package com.electricdreams.numo.nostr
+
+import android.content.Context
+import android.util.Log
+import java.io.DataInputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+
+/**
+ * Ids of nostr events this terminal has already handled, so events a relay
+ * replays after a reconnect, or that arrive from several relays, are dropped
+ * before they are verified and unwrapped.
+ *
+ * Holds the newest [MAX_ENTRIES] ids in insertion order, backed by an
+ * append-only file of 32-byte records (a torn final record is ignored). With
+ * a null [file] the set lives in memory only.
+ */
+class SeenEventStore(private val file: File?) {
+
+    private val ids = LinkedHashSet<String>()
+
+    init {
+        load()
+    }
+
+    @Synchronized
+    fun size(): Int = ids.size
+
+    @Synchronized
+    operator fun contains(eventId: String): Boolean = eventId.lowercase() in ids
+
+    /**
+     * Record [eventId] as handled.
+     * @return true if it was not seen before
+     */
+    @Synchronized
+    fun markSeen(eventId: String): Boolean {
+        val id = eventId.lowercase()
+        if (!ids.add(id)) return false
+        val record = toBytes(id) ?: return true // not a NIP-01 id; keep it in memory only
+        if (ids.size > MAX_ENTRIES + MAX_ENTRIES / 4) {
+            trim()
+        } else {
+            append(record)
+        }
+        return true
+    }
+
+    // ----- Persistence -----
+
+    private fun load() {
+        if (file == null || !file.exists()) return
+        val records = (file.length() / RECORD_SIZE).toInt()
+        val skip = maxOf(0, records - MAX_ENTRIES)
+        val record = ByteArray(RECORD_SIZE)
+        try {
+            DataInputStream(file.inputStream().buffered()).use { input ->
+                input.skipBytes(skip * RECORD_SIZE)
+                repeat(records - skip) {
+                    input.readFully(record)
+                    ids.add(toHex(record))
+                }
+            }
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to read seen events: ${e.message}", e)
+        }
+        if (skip > 0 || file.length() % RECORD_SIZE != 0L) rewrite()
+        Log.d(TAG, "Loaded ${ids.size} seen event ids")
+    }
+
+    private fun append(record: ByteArray) {
+        if (file == null) return
+        try {
+            FileOutputStream(file, true).use { it.write(record) }
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to record seen event: ${e.message}", e)
+        }
+    }
+
+    /** Drop the oldest ids down to [MAX_ENTRIES] and rewrite the file. */
+    private fun trim() {
+        val iterator = ids.iterator()
+        repeat(ids.size - MAX_ENTRIES) {
+            iterator.next()
+            iterator.remove()
+        }
+        rewrite()
+    }
+
+    private fun rewrite() {
+        if (file == null) return
+        val tmp = File(file.path + ".tmp")
+        try {
+            FileOutputStream(tmp).buffered().use { out ->
+                for (id in ids) toBytes(id)?.let { out.write(it) }
+            }
+            if (!tmp.renameTo(file)) throw IOException("rename failed")
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to compact seen events: ${e.message}", e)
+            tmp.delete()
+        }
+    }
+
+    private fun toBytes(id: String): ByteArray? {
+        if (id.length != RECORD_SIZE * 2) return null
+        val out = ByteArray(RECORD_SIZE)
+        for (i in 0 until RECORD_SIZE) {
+            val hi = Character.digit(id[2 * i], 16)
+            val lo = Character.digit(id[2 * i + 1], 16)
+            if (hi < 0 || lo < 0) return null
+            out[i] = ((hi shl 4) or lo).toByte()
+        }
+        return out
+    }
+
+    private fun toHex(bytes: ByteArray): String {
+        val chars = CharArray(bytes.size * 2)
+        for (i in bytes.indices) {
+            val v = bytes[i].toInt() and 0xff
+            chars[2 * i] = HEX[v ushr 4]
+            chars[2 * i + 1] = HEX[v and 0x0f]
+        }
+        return String(chars)
+    }
+
+    companion object {
+        private const val TAG = "SeenEventStore"
+        private const val FILE_NAME = "nostr_seen_events.bin"
+        private const val RECORD_SIZE = 32
+        private val HEX = "0123456789abcdef".toCharArray()
+
+        /** Ids kept after trimming; 256 KB on disk. */
+        const val MAX_ENTRIES = 8192
+
+        @Volatile
+        private var instance: SeenEventStore? = null
+
+        /** Open the store in the app's files dir. Safe to call multiple times. */
+        @JvmStatic
+        fun init(context: Context): SeenEventStore =
+            instance ?: synchronized(this) {
+                instance ?: SeenEventStore(File(context.applicationContext.filesDir, FILE_NAME))
+                    .also { instance = it }
+            }
+
+        /** The store, or null before [init]. */
+        @JvmStatic
+        fun get(): SeenEventStore? = instance
+    }
+}
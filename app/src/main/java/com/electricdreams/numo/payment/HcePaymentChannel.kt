@@ -0,0 +1,125 @@
+package com.electricdreams.numo.payment
+
+import android.content.Context
+import android.content.Intent
+import android.util.Log
+import com.electricdreams.numo.core.cashu.ReceivedToken
+import com.electricdreams.numo.ndef.CashuPaymentHelper
+import com.electricdreams.numo.ndef.NdefHostCardEmulationService
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.suspendCancellableCoroutine
+import kotlinx.coroutines.withTimeoutOrNull
+import java.util.concurrent.atomic.AtomicBoolean
+import kotlin.coroutines.resume
+import kotlin.coroutines.resumeWithException
+
+/**
+ * NFC channel: emulates an NDEF tag carrying the Cashu payment request and
+ * receives the token the customer's wallet writes back.
+ *
+ * The payload can be switched to a Lightning invoice while the channel runs
+ * (see [showLightning]); a Lightning payment made that way is picked up by the
+ * Lightning channel, not this one.
+ */
+class HcePaymentChannel(
+    context: Context,
+    private val paymentAmount: Long,
+    private val allowedMints: List<String>,
+) : PaymentChannel {
+
+    override val name: String = NAME
+
+    private val appContext = context.applicationContext
+
+    @Volatile
+    private var cashuRequest: String? = null
+
+    @Volatile
+    private var service: NdefHostCardEmulationService? = null
+
+    override suspend fun run(reporter: PaymentChannel.Reporter): PaymentOutcome {
+        val request = CashuPaymentHelper.createPaymentRequest(
+            paymentAmount,
+            "Payment of $paymentAmount sats",
+            allowedMints,
+        ) ?: throw IllegalStateException("Failed to create payment request for HCE")
+        cashuRequest = request
+
+        appContext.startService(Intent(appContext, NdefHostCardEmulationService::class.java))
+        val hceService = awaitService()
+            ?: throw IllegalStateException("HCE service did not start")
+        service = hceService
+
+        val resumed = AtomicBoolean(false)
+        try {
+            val token = suspendCancellableCoroutine<ReceivedToken> { cont ->
+                hceService.setPaymentCallback(object : NdefHostCardEmulationService.CashuPaymentCallback {
+                    override fun onCashuTokenReceived(token: ReceivedToken) {
+                        // A token redeemed after the channel was cancelled is still the customer's payment
+                        if (resumed.compareAndSet(false, true)) {
+                            cont.resume(token) { reporter.late(PaymentOutcome.Cashu(token)) }
+                        } else {
+                            reporter.late(PaymentOutcome.Cashu(token))
+                        }
+                    }
+
+                    override fun onCashuPaymentError(errorMessage: String) {
+                        if (resumed.compareAndSet(false, true)) {
+                            cont.resumeWithException(IllegalStateException(errorMessage))
+                        }
+                    }
+
+                    override fun onNfcReadingStarted() {
+                        reporter.busy(true)
+                    }
+
+                    override fun onNfcReadingStopped() {
+                        reporter.busy(false)
+                    }
+                })
+                hceService.setPaymentRequest(request, paymentAmount)
+                reporter.ready(request)
+            }
+            return PaymentOutcome.Cashu(token)
+        } finally {
+            Log.d(TAG, "Releasing HCE service")
+            hceService.clearPaymentRequest()
+            // Stays attached while a received token is being redeemed, so its result reaches reporter.late
+            hceService.releasePaymentCallback()
+            service = null
+        }
+    }
+
+    /** Emulate the Cashu payment request again. */
+    fun showCashu() {
+        val request = cashuRequest ?: return
+        service?.setPaymentRequest(request, paymentAmount)
+    }
+
+    /** Emulate a Lightning invoice instead of the Cashu request. */
+    fun showLightning(invoice: String) {
+        // Lightning mode is just a text payload; amount check is not used here
+        service?.setPaymentRequest("lightning:$invoice", 0L)
+    }
+
+    /**
+     * The service instance appears once Android has created it after
+     * startService; poll briefly instead of waiting a fixed delay.
+     */
+    private suspend fun awaitService(): NdefHostCardEmulationService? =
+        withTimeoutOrNull(SERVICE_START_TIMEOUT_MS) {
+            var instance = NdefHostCardEmulationService.getInstance()
+            while (instance == null) {
+                delay(SERVICE_POLL_INTERVAL_MS)
+                instance = NdefHostCardEmulationService.getInstance()
+            }
+            instance
+        }
+
+    companion object {
+        private const val TAG = "HcePaymentChannel"
+        const val NAME = "nfc"
+        private const val SERVICE_START_TIMEOUT_MS = 3000L
+        private const val SERVICE_POLL_INTERVAL_MS = 50L
+    }
+}
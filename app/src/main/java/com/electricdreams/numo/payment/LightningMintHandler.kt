@@ -2,6 +2,7 @@ package com.electricdreams.numo.payment
 
 import android.util.Log
 import com.electricdreams.numo.core.cashu.CashuWalletManager
+import com.electricdreams.numo.core.metrics.PaymentMetrics
 import com.google.gson.Gson
 import com.google.gson.JsonObject
 import kotlinx.coroutines.CancellationException
@@ -64,6 +65,10 @@ class LightningMintHandler(
     /** Atomic flag to ensure mint is only called once (WebSocket vs polling race) */
     private val mintCalled = AtomicBoolean(false)
 
+    /** From the invoice being shown to the payment succeeding; null for resumed quotes */
+    @Volatile
+    private var invoiceSpan: PaymentMetrics.Span? = null
+
     // Shared OkHttp client for mint WebSocket connections
     private val wsClient: OkHttpClient by lazy {
         OkHttpClient.Builder()
@@ -136,13 +141,16 @@ class LightningMintHandler(
                 val quoteAmount = CdkAmount(paymentAmount.toULong())
 
                 Log.d(TAG, "Requesting Lightning mint quote from ${mintUrl.url} for $paymentAmount sats")
-                val quote = wallet.mintQuote(mintUrl, quoteAmount, "Numo POS payment of $paymentAmount sats")
+                val quote = PaymentMetrics.time(PaymentMetrics.perMint("mint.quote", mintUrlStr)) {
+                    wallet.mintQuote(mintUrl, quoteAmount, "Numo POS payment of $paymentAmount sats")
+                }
                 mintQuote = quote
 
                 val bolt11 = quote.request
                 Log.d(TAG, "Received Lightning mint quote id=${quote.id} bolt11=$bolt11")
 
                 // Notify UI that invoice is ready with full quote info
+                invoiceSpan = PaymentMetrics.startSpan("lightning.invoice_to_paid")
                 launch(Dispatchers.Main) {
                     callback.onInvoiceReady(bolt11, quote.id, mintUrlStr)
                 }
@@ -159,6 +167,7 @@ class LightningMintHandler(
                         Log.d(TAG, "WebSocket subscription cancelled for quote ${quote.id}")
                     } catch (e: Exception) {
                         Log.e(TAG, "WebSocket error for quote ${quote.id}: ${e.message}", e)
+                        PaymentMetrics.increment("lightning.ws_failures")
                     }
                 }
 
@@ -270,6 +279,7 @@ class LightningMintHandler(
         mintJob?.cancel()
         mintJob = null
         mintCalled.set(false)
+        invoiceSpan = null
     }
 
     /**
@@ -469,8 +479,13 @@ class LightningMintHandler(
         }
 
         Log.d(TAG, "Mint quote $quoteId is paid (detected by $source), calling wallet.mint")
-        val proofs = wallet.mint(mintUrl, quoteId, null)
+        val proofs = PaymentMetrics.time(PaymentMetrics.perMint("mint.mint", mintUrl.url)) {
+            wallet.mint(mintUrl, quoteId, null)
+        }
         Log.d(TAG, "Lightning mint completed with ${proofs.size} proofs ($source)")
+        invoiceSpan?.end()
+        invoiceSpan = null
+        PaymentMetrics.increment(if (source == "polling") "lightning.paid_via_polling" else "lightning.paid_via_ws")
 
         uiScope.launch(Dispatchers.Main) {
             callback.onPaymentSuccess()
@@ -523,6 +538,7 @@ class LightningMintHandler(
             } catch (e: Exception) {
                 // Log but continue polling - transient errors shouldn't stop us
                 Log.w(TAG, "Error polling mint quote $quoteId: ${e.message}")
+                PaymentMetrics.increment("lightning.poll_errors")
             }
         }
     }
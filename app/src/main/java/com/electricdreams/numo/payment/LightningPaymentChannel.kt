@@ -0,0 +1,77 @@
+package com.electricdreams.numo.payment
+
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.suspendCancellableCoroutine
+import kotlin.coroutines.resume
+import kotlin.coroutines.resumeWithException
+
+/**
+ * Lightning channel: requests a mint quote, shows its BOLT11 invoice and mints
+ * the proofs once the invoice is paid.
+ *
+ * @param onInvoiceReady called with the quote details as soon as the invoice
+ *                       exists, so the pending payment can be made resumable
+ */
+class LightningPaymentChannel(
+    private val preferredMint: String?,
+    private val allowedMints: List<String>,
+    private val paymentAmount: Long,
+    private val resumeQuoteId: String? = null,
+    private val resumeMintUrl: String? = null,
+    private val resumeInvoice: String? = null,
+    private val onInvoiceReady: (invoice: String, quoteId: String, mintUrl: String) -> Unit = { _, _, _ -> },
+) : PaymentChannel {
+
+    override val name: String = NAME
+
+    @Volatile
+    private var handler: LightningMintHandler? = null
+
+    /** The invoice currently shown, if the quote has been created. */
+    val currentInvoice: String? get() = handler?.currentInvoice ?: resumeInvoice
+
+    override suspend fun run(reporter: PaymentChannel.Reporter): PaymentOutcome = coroutineScope {
+        // The handler's jobs are children of this channel, so losing the race cancels them
+        val mintHandler = LightningMintHandler(preferredMint, allowedMints, this)
+        handler = mintHandler
+        var quote: PaymentOutcome.Lightning? = null
+
+        val outcome = suspendCancellableCoroutine<PaymentOutcome> { cont ->
+            val callback = object : LightningMintHandler.Callback {
+                override fun onInvoiceReady(bolt11: String, quoteId: String, mintUrl: String) {
+                    quote = PaymentOutcome.Lightning(bolt11, quoteId, mintUrl)
+                    onInvoiceReady(bolt11, quoteId, mintUrl)
+                    reporter.ready(bolt11)
+                }
+
+                override fun onPaymentSuccess() {
+                    val paid = quote
+                    if (!cont.isActive) return
+                    if (paid != null) {
+                        cont.resume(paid)
+                    } else {
+                        cont.resumeWithException(IllegalStateException("Paid without a quote"))
+                    }
+                }
+
+                override fun onError(message: String) {
+                    if (cont.isActive) cont.resumeWithException(IllegalStateException(message))
+                }
+            }
+            cont.invokeOnCancellation { mintHandler.cancel() }
+
+            if (resumeQuoteId != null && resumeMintUrl != null && resumeInvoice != null) {
+                mintHandler.resume(resumeQuoteId, resumeMintUrl, resumeInvoice, callback)
+            } else {
+                mintHandler.start(paymentAmount, callback)
+            }
+        }
+        // Proofs are minted; stop the losing WebSocket/poll watcher
+        mintHandler.cancel()
+        outcome
+    }
+
+    companion object {
+        const val NAME = "lightning"
+    }
+}
@@ -11,6 +11,7 @@ import android.widget.Toast
 import androidx.appcompat.app.AlertDialog
 import androidx.appcompat.app.AppCompatActivity
 import com.electricdreams.numo.R
+import com.electricdreams.numo.core.metrics.PaymentMetrics
 import com.electricdreams.numo.ndef.NdefHostCardEmulationService
 import com.electricdreams.numo.SatocashNfcClient
 import com.electricdreams.numo.SatocashWallet
@@ -55,6 +56,7 @@ class NfcPaymentProcessor(
         waitingForRescan = false
         
         Thread {
+            val span = PaymentMetrics.startSpan("satocash.payment")
             try {
                 val tempClient = SatocashNfcClient(tag).also { it.connect() }
                 satocashClient = tempClient
@@ -64,6 +66,7 @@ class NfcPaymentProcessor(
                 
                 try {
                     val token = satocashWallet!!.getPayment(requestedAmount, "SAT").join()
+                    span.end()
                     onPaymentSuccess(token)
                     return@Thread
                 } catch (e: RuntimeException) {
@@ -116,6 +119,8 @@ class NfcPaymentProcessor(
                     activity.getString(R.string.nfc_payment_error_unexpected, e.message ?: "")
                 )
             } finally {
+                // No-op when the payment succeeded; otherwise counts the failure
+                span.fail()
                 try {
                     satocashClient?.close()
                     satocashClient = null
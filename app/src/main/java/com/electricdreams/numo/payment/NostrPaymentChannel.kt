@@ -0,0 +1,66 @@
+package com.electricdreams.numo.payment
+
+import com.electricdreams.numo.core.cashu.ReceivedToken
+import kotlinx.coroutines.suspendCancellableCoroutine
+import java.util.concurrent.atomic.AtomicBoolean
+import kotlin.coroutines.resume
+import kotlin.coroutines.resumeWithException
+
+/**
+ * Cashu over Nostr channel: shows a NUT-18 payment request with a Nostr
+ * transport and waits for the token to arrive as a NIP-17 DM.
+ *
+ * @param resumeSecretHex with [resumeNprofile], keys of a pending payment being resumed
+ */
+class NostrPaymentChannel(
+    private val handler: NostrPaymentHandler,
+    private val paymentAmount: Long,
+    private val pendingPaymentId: String?,
+    private val resumeSecretHex: String? = null,
+    private val resumeNprofile: String? = null,
+) : PaymentChannel {
+
+    override val name: String = NAME
+
+    /** The payment request currently shown, for sharing. */
+    val paymentRequest: String? get() = handler.paymentRequest
+
+    override suspend fun run(reporter: PaymentChannel.Reporter): PaymentOutcome {
+        val resumed = AtomicBoolean(false)
+        val token = suspendCancellableCoroutine<ReceivedToken> { cont ->
+            val callback = object : NostrPaymentHandler.Callback {
+                override fun onPaymentRequestReady(paymentRequest: String) {
+                    reporter.ready(paymentRequest)
+                }
+
+                override fun onTokenReceived(token: ReceivedToken) {
+                    // The listener finishes a redemption it started even when stopped meanwhile
+                    if (resumed.compareAndSet(false, true)) {
+                        cont.resume(token) { reporter.late(PaymentOutcome.Cashu(token)) }
+                    } else {
+                        reporter.late(PaymentOutcome.Cashu(token))
+                    }
+                }
+
+                override fun onError(message: String) {
+                    if (resumed.compareAndSet(false, true)) {
+                        cont.resumeWithException(IllegalStateException(message))
+                    }
+                }
+            }
+            cont.invokeOnCancellation { handler.stop() }
+
+            if (resumeSecretHex != null && resumeNprofile != null) {
+                handler.resume(paymentAmount, resumeSecretHex, resumeNprofile, callback)
+            } else {
+                handler.start(paymentAmount, pendingPaymentId, callback)
+            }
+        }
+        handler.stop()
+        return PaymentOutcome.Cashu(token)
+    }
+
+    companion object {
+        const val NAME = "nostr"
+    }
+}
@@ -2,6 +2,7 @@ package com.electricdreams.numo.payment
 
 import android.content.Context
 import android.util.Log
+import com.electricdreams.numo.core.cashu.ReceivedToken
 import com.electricdreams.numo.feature.history.PaymentsHistoryActivity
 import com.electricdreams.numo.ndef.CashuPaymentHelper
 import com.electricdreams.numo.nostr.Nip19
@@ -29,7 +30,7 @@ class NostrPaymentHandler(
         fun onPaymentRequestReady(paymentRequest: String)
         
         /** Called when a Cashu token is received via Nostr */
-        fun onTokenReceived(token: String)
+        fun onTokenReceived(token: ReceivedToken)
         
         /** Called when an error occurs */
         fun onError(message: String)
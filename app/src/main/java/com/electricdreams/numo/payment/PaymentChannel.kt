@@ -0,0 +1,47 @@
+package com.electricdreams.numo.payment
+
+import com.electricdreams.numo.core.cashu.ReceivedToken
+
+/**
+ * One way of getting paid (NFC, Cashu over Nostr, Lightning) run by a [PaymentSession].
+ *
+ * [run] sets the channel up, reports its payload through [Reporter.ready] once
+ * the customer can use it, and returns when the channel has been paid. It must
+ * be cancellable: when another channel wins, the session cancels the coroutine
+ * and the channel releases whatever it holds (sockets, listeners, HCE payload).
+ * A payment already being redeemed when that happens has still taken the
+ * customer's money; the channel hands it to [Reporter.late] once it completes.
+ * Throwing marks the channel failed without affecting the others.
+ */
+interface PaymentChannel {
+
+    /** Stable name used as key in [PaymentSession.State.channels] and in timing logs. */
+    val name: String
+
+    suspend fun run(reporter: Reporter): PaymentOutcome
+
+    /** Progress reporting from a running channel; safe to call from any thread. */
+    interface Reporter {
+        /** The channel can now be used, e.g. with a payment request or invoice to show. */
+        fun ready(payload: String)
+
+        /** The channel is talking to the customer's device, e.g. an NFC tap in progress. */
+        fun busy(busy: Boolean)
+
+        /** The channel was paid after [run] was cancelled; may be called after the session closed. */
+        fun late(outcome: PaymentOutcome)
+    }
+}
+
+/** How a session was paid. */
+sealed class PaymentOutcome {
+    /** A Cashu token received over NFC or Nostr and accepted into the wallet. */
+    data class Cashu(val token: ReceivedToken) : PaymentOutcome()
+
+    /** A Lightning invoice paid and its proofs minted. */
+    data class Lightning(
+        val invoice: String,
+        val quoteId: String,
+        val mintUrl: String,
+    ) : PaymentOutcome()
+}
@@ -3,6 +3,7 @@ package com.electricdreams.numo.payment
 import android.os.Handler
 import android.os.Looper
 import androidx.appcompat.app.AppCompatActivity
+import com.electricdreams.numo.core.cashu.ReceivedToken
 import com.electricdreams.numo.core.worker.BitcoinPriceWorker
 import com.electricdreams.numo.feature.autowithdraw.AutoWithdrawManager
 import com.electricdreams.numo.feature.history.PaymentsHistoryActivity
@@ -38,7 +39,9 @@ class PaymentResultHandler(
         
         val bitcoinPrice = bitcoinPriceWorker?.getCurrentPrice()?.takeIf { it > 0 }
         
-        val mintUrl = extractMintUrlFromToken(token)
+        // Card payments enter the app here: decode once for history and auto-withdraw
+        val receivedToken = ReceivedToken.decodeOrNull(token)
+        val mintUrl = receivedToken?.mintUrl
         PaymentsHistoryActivity.addToHistory(
             activity, 
             token, 
@@ -52,7 +55,7 @@ class PaymentResultHandler(
         )
         
         // Check for auto-withdrawal after successful payment (runs in background)
-        AutoWithdrawManager.getInstance(activity).onPaymentReceived(token, mintUrl)
+        AutoWithdrawManager.getInstance(activity).onPaymentReceived(receivedToken, null)
         
         // Delegate to callback for unified success handling (feedback + screen)
         mainHandler.post {
@@ -67,15 +70,4 @@ class PaymentResultHandler(
             android.widget.Toast.makeText(activity, "Payment error: $message", android.widget.Toast.LENGTH_LONG).show()
         }
     }
-
-    /** Extract mint URL from token string */
-    private fun extractMintUrlFromToken(tokenString: String?): String? = try {
-        if (!tokenString.isNullOrEmpty()) {
-            com.cashujdk.nut00.Token.decode(tokenString).mint
-        } else {
-            null
-        }
-    } catch (_: Exception) { 
-        null 
-    }
 }
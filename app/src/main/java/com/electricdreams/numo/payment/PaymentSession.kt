@@ -0,0 +1,214 @@
+package com.electricdreams.numo.payment
+
+import android.os.SystemClock
+import android.util.Log
+import com.electricdreams.numo.core.metrics.PaymentMetrics
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.update
+import kotlinx.coroutines.joinAll
+import kotlinx.coroutines.launch
+
+/**
+ * Runs every [PaymentChannel] of one checkout concurrently and resolves exactly once.
+ *
+ * All channels are started together under a single scope, so their setup
+ * (payment request creation, relay connections, mint quote) overlaps instead of
+ * running one after another. The first channel to return an outcome wins: the
+ * session records it in [state] and cancels the other channels immediately.
+ * Cancelling the session tears everything down the same way. A channel that
+ * is paid in the moment before it is cancelled has still taken the customer's
+ * money, as has one whose redemption was still running when it was cancelled
+ * (see [PaymentChannel.Reporter.late]); either outcome goes to [onLateOutcome]
+ * so the caller can record it.
+ *
+ * Per-channel time-to-ready and time-to-paid are measured from [start] and
+ * reported in [State.channels], the log and [PaymentMetrics].
+ */
+class PaymentSession(
+    private val channels: List<PaymentChannel>,
+    /** Called on a background thread with each outcome that arrives after the session resolved. */
+    private val onLateOutcome: ((channel: String, outcome: PaymentOutcome) -> Unit)? = null,
+) {
+
+    /** Lifecycle of a single channel within the session. */
+    sealed class ChannelState {
+        object Starting : ChannelState()
+
+        data class Ready(
+            val payload: String,
+            val busy: Boolean = false,
+            val timeToReadyMs: Long,
+        ) : ChannelState()
+
+        data class Failed(val message: String) : ChannelState()
+
+        data class Paid(val timeToReadyMs: Long?, val timeToPaidMs: Long) : ChannelState()
+
+        /** Stopped because another channel won or the session was cancelled. */
+        object Stopped : ChannelState()
+    }
+
+    data class State(
+        val channels: Map<String, ChannelState>,
+        /** Set once, when the first channel is paid. */
+        val outcome: PaymentOutcome? = null,
+        /** Name of the channel that produced [outcome]. */
+        val winner: String? = null,
+        val cancelled: Boolean = false,
+    ) {
+        val isResolved: Boolean get() = outcome != null || cancelled
+    }
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.Default)
+    private val _state = MutableStateFlow(State(channels.associate { it.name to ChannelState.Starting }))
+    private var startedAt = 0L
+    private var job: Job? = null
+
+    /** Single stream of channel and session state; collect on the UI thread. */
+    val state: StateFlow<State> = _state.asStateFlow()
+
+    /** Start all channels. Calling it again has no effect. */
+    @Synchronized
+    fun start() {
+        if (job != null) return
+        startedAt = SystemClock.elapsedRealtime()
+        val winner = CompletableDeferred<Win>()
+
+        job = scope.launch {
+            val channelJobs = channels.map { channel ->
+                launch { runChannel(channel, winner) }
+            }
+            // If every channel ends without being paid the session stays unresolved;
+            // the caller decides whether failed channels end the checkout.
+            launch {
+                channelJobs.joinAll()
+                winner.cancel()
+            }
+
+            val win = try {
+                winner.await()
+            } catch (e: CancellationException) {
+                return@launch
+            }
+            channelJobs.forEach { it.cancel() }
+            _state.update { current ->
+                current.copy(
+                    outcome = win.outcome,
+                    winner = win.name,
+                    channels = current.channels.mapValues { (key, value) ->
+                        when {
+                            key == win.name -> ChannelState.Paid(win.timeToReadyMs, win.timeToPaidMs)
+                            value is ChannelState.Failed -> value
+                            else -> ChannelState.Stopped
+                        }
+                    },
+                )
+            }
+            PaymentMetrics.record("session.${win.name}.paid", win.timeToPaidMs)
+            Log.d(
+                TAG,
+                "Session resolved by ${win.name}: ready after ${win.timeToReadyMs}ms, paid after ${win.timeToPaidMs}ms",
+            )
+        }
+    }
+
+    /** Stop all channels without an outcome. No effect once the session is resolved. */
+    fun cancel() {
+        var changed = false
+        _state.update { current ->
+            if (current.isResolved) {
+                current
+            } else {
+                changed = true
+                current.copy(
+                    cancelled = true,
+                    channels = current.channels.mapValues { (_, value) ->
+                        if (value is ChannelState.Failed) value else ChannelState.Stopped
+                    },
+                )
+            }
+        }
+        if (changed) Log.d(TAG, "Session cancelled after ${elapsed()}ms")
+        scope.cancel()
+    }
+
+    /** Release the session's scope. Call once the outcome has been handled. */
+    fun close() {
+        scope.cancel()
+    }
+
+    private suspend fun runChannel(
+        channel: PaymentChannel,
+        winner: CompletableDeferred<Win>,
+    ) {
+        var timeToReadyMs: Long? = null
+        val reporter = object : PaymentChannel.Reporter {
+            override fun ready(payload: String) {
+                val readyMs = timeToReadyMs ?: elapsed().also {
+                    timeToReadyMs = it
+                    PaymentMetrics.record("session.${channel.name}.ready", it)
+                }
+                Log.d(TAG, "${channel.name} ready after ${readyMs}ms")
+                setChannel(channel.name, ChannelState.Ready(payload, busy = false, timeToReadyMs = readyMs))
+            }
+
+            override fun busy(busy: Boolean) {
+                val current = _state.value.channels[channel.name] as? ChannelState.Ready ?: return
+                setChannel(channel.name, current.copy(busy = busy))
+            }
+
+            override fun late(outcome: PaymentOutcome) {
+                deliverLate(channel.name, outcome)
+            }
+        }
+
+        try {
+            val outcome = channel.run(reporter)
+            if (!winner.complete(Win(channel.name, outcome, timeToReadyMs, elapsed()))) {
+                // Lost a photo finish; the other channel's outcome stands, but this
+                // payment was made too and must not be dropped
+                deliverLate(channel.name, outcome)
+            }
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            Log.e(TAG, "${channel.name} failed: ${e.message}", e)
+            PaymentMetrics.increment("session.${channel.name}.failures")
+            setChannel(channel.name, ChannelState.Failed(e.message ?: e.javaClass.simpleName))
+        }
+    }
+
+    private fun deliverLate(name: String, outcome: PaymentOutcome) {
+        Log.w(TAG, "$name was paid after the session resolved")
+        PaymentMetrics.increment("session.$name.late")
+        onLateOutcome?.invoke(name, outcome)
+    }
+
+    private fun setChannel(name: String, channelState: ChannelState) {
+        _state.update { current ->
+            if (current.isResolved) current else current.copy(channels = current.channels + (name to channelState))
+        }
+    }
+
+    private fun elapsed(): Long = SystemClock.elapsedRealtime() - startedAt
+
+    private class Win(
+        val name: String,
+        val outcome: PaymentOutcome,
+        val timeToReadyMs: Long?,
+        val timeToPaidMs: Long,
+    )
+
+    companion object {
+        private const val TAG = "PaymentSession"
+    }
+}
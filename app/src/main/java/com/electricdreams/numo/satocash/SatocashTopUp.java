@@ -0,0 +1,218 @@
+package com.electricdreams.numo;
+
+import com.cashujdk.nut00.BlindedMessage;
+import com.cashujdk.nut00.InnerToken;
+import com.cashujdk.nut00.Proof;
+import com.cashujdk.nut00.StringSecret;
+import com.cashujdk.nut00.Token;
+import com.cashujdk.utils.Pair;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A top-up on its way onto a Satocash card: the proofs to import and how far
+ * the import got.
+ *
+ * A session starts either with the token's own proofs or, while
+ * {@link #isSwapPending()}, with the token's proofs plus the outputs they are
+ * being swapped for. The outputs' secrets and blinding factors are persisted
+ * before the mint sees them, so a swap whose answer was lost is recovered by
+ * {@link SatocashWallet#resumeTopUp}; a completed swap yields a new session
+ * holding the swapped proofs.
+ *
+ * Proofs are imported in order and {@link #getImportedCount()} only advances
+ * once the card confirmed a proof, so a session that failed half way (card
+ * lifted early) is resumed by passing it to
+ * {@link SatocashWallet#importTopUp} again. {@link #isInFlight()} marks a proof
+ * whose import was sent but never answered, together with the card's slots as
+ * they were before it was sent; the wallet looks for it among the slots that
+ * changed before resuming. Sessions are persisted via {@link #encode()},
+ * {@link #encodeSwapOutputs()} and {@link #getInFlightSlots()}, and rebuilt
+ * with {@link #restore}.
+ */
+public class SatocashTopUp {
+
+    /** Called after every proof the card confirmed, and before each import or swap is sent. */
+    public interface ProgressListener {
+        void onProgress(SatocashTopUp session);
+    }
+
+    private final String mintUrl;
+    private final String unit;
+    private final List<Proof> proofs;
+    /** Outputs the proofs are being swapped for, or null once the proofs are final. */
+    private final List<Pair<BlindedMessage, Pair<StringSecret, BigInteger>>> swapOutputs;
+    private int importedCount;
+    private String inFlightSlots;
+
+    SatocashTopUp(String mintUrl, String unit, List<Proof> proofs) {
+        this(mintUrl, unit, proofs, null);
+    }
+
+    SatocashTopUp(
+            String mintUrl,
+            String unit,
+            List<Proof> proofs,
+            List<Pair<BlindedMessage, Pair<StringSecret, BigInteger>>> swapOutputs
+    ) {
+        this.mintUrl = mintUrl;
+        this.unit = unit;
+        this.proofs = Collections.unmodifiableList(new ArrayList<>(proofs));
+        this.swapOutputs = swapOutputs == null ? null : Collections.unmodifiableList(new ArrayList<>(swapOutputs));
+    }
+
+    /**
+     * Rebuild a session saved with {@link #encode()}, {@link #getImportedCount()},
+     * {@link #getInFlightSlots()} and {@link #encodeSwapOutputs()}.
+     */
+    public static SatocashTopUp restore(
+            String encodedToken,
+            int importedCount,
+            String inFlightSlots,
+            String encodedSwapOutputs
+    ) throws Exception {
+        Token token = Token.decode(encodedToken);
+        List<Proof> proofs = new ArrayList<>();
+        for (InnerToken entry : token.tokens) {
+            proofs.addAll(entry.getProofsShortId());
+        }
+        if (encodedSwapOutputs != null) {
+            return new SatocashTopUp(token.mint, token.unit, proofs, decodeSwapOutputs(encodedSwapOutputs));
+        }
+        SatocashTopUp session = new SatocashTopUp(token.mint, token.unit, proofs);
+        session.importedCount = Math.max(0, Math.min(importedCount, proofs.size()));
+        if (session.importedCount < proofs.size()) {
+            session.inFlightSlots = inFlightSlots;
+        }
+        return session;
+    }
+
+    /**
+     * The session's proofs as a token, to persist it or to hand the funds back.
+     * While a swap is pending these are the proofs being swapped.
+     */
+    public String encode() {
+        try {
+            return new Token(proofs, unit, mintUrl).encode();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** The pending swap's outputs with their secrets and blinding factors, or null. */
+    public String encodeSwapOutputs() {
+        if (swapOutputs == null) return null;
+        try {
+            JSONArray array = new JSONArray();
+            for (Pair<BlindedMessage, Pair<StringSecret, BigInteger>> output : swapOutputs) {
+                BlindedMessage message = output.getFirst();
+                array.put(new JSONObject()
+                        .put("amount", message.amount)
+                        .put("id", message.keysetId)
+                        .put("B_", message.b_)
+                        .put("secret", output.getSecond().getFirst().getSecret())
+                        .put("r", output.getSecond().getSecond().toString(16)));
+            }
+            return array.toString();
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static List<Pair<BlindedMessage, Pair<StringSecret, BigInteger>>> decodeSwapOutputs(String json)
+            throws JSONException {
+        JSONArray array = new JSONArray(json);
+        List<Pair<BlindedMessage, Pair<StringSecret, BigInteger>>> outputs = new ArrayList<>();
+        for (int i = 0; i < array.length(); ++i) {
+            JSONObject output = array.getJSONObject(i);
+            BlindedMessage message = new BlindedMessage(
+                    output.getLong("amount"),
+                    output.getString("id"),
+                    output.getString("B_"),
+                    Optional.empty()
+            );
+            outputs.add(new Pair<>(message, new Pair<>(
+                    new StringSecret(output.getString("secret")),
+                    new BigInteger(output.getString("r"), 16)
+            )));
+        }
+        return outputs;
+    }
+
+    public String getMintUrl() {
+        return mintUrl;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    List<Proof> getProofs() {
+        return proofs;
+    }
+
+    List<Pair<BlindedMessage, Pair<StringSecret, BigInteger>>> getSwapOutputs() {
+        return swapOutputs;
+    }
+
+    /** The proofs are being swapped at the mint and cannot be imported yet. */
+    public boolean isSwapPending() {
+        return swapOutputs != null;
+    }
+
+    public int getProofCount() {
+        return swapOutputs != null ? swapOutputs.size() : proofs.size();
+    }
+
+    public long getAmount() {
+        long sum = 0;
+        if (swapOutputs != null) {
+            for (Pair<BlindedMessage, Pair<StringSecret, BigInteger>> output : swapOutputs) {
+                sum += output.getFirst().amount;
+            }
+            return sum;
+        }
+        for (Proof proof : proofs) {
+            sum += proof.amount;
+        }
+        return sum;
+    }
+
+    public int getImportedCount() {
+        return importedCount;
+    }
+
+    public boolean isInFlight() {
+        return inFlightSlots != null;
+    }
+
+    /** The card's slots before the unanswered import was sent, or null. */
+    public String getInFlightSlots() {
+        return inFlightSlots;
+    }
+
+    public boolean isComplete() {
+        return swapOutputs == null && importedCount >= proofs.size();
+    }
+
+    void markInFlight(String slots) {
+        inFlightSlots = slots;
+    }
+
+    void markImported() {
+        inFlightSlots = null;
+        importedCount++;
+    }
+
+    void clearInFlight() {
+        inFlightSlots = null;
+    }
+}
@@ -10,6 +10,7 @@ import com.cashujdk.nut00.*;
 import com.cashujdk.nut01.*;
 import com.cashujdk.nut02.*;
 import com.cashujdk.nut03.*;
+import com.cashujdk.nut09.*;
 import com.cashujdk.utils.*;
 import org.bouncycastle.math.ec.ECPoint;
 import org.jetbrains.annotations.NotNull;
@@ -41,6 +42,17 @@ public class SatocashWallet {
     private static final int SATOCASH_MAX_KEYSETS = 32;
     private static final int SATOCASH_MAX_PROOFS = 128;
 
+    /** A slot entry for which the card's proof info lists disagree in length. */
+    private static final int MISSING_SLOT = -1;
+    /** A slot filled by the running top-up session. */
+    private static final int OWN_SLOT = -2;
+    /**
+     * NUT error codes for which sending the same swap again cannot succeed:
+     * proofs invalid or spent, outputs not balancing the inputs, keyset
+     * unknown or inactive.
+     */
+    private static final Set<Integer> SWAP_REFUSED_CODES = Set.of(10003, 11001, 11002, 12001, 12002);
+
     public SatocashWallet(SatocashNfcClient _client) {
         cardClient = _client;
         authenticated = false;
@@ -231,45 +243,9 @@ public class SatocashWallet {
                         // Create output amounts
                         Pair<List<Long>, List<Long>> outputAmounts = createOutputAmounts(amount, changeAmount);
 
-                        // Create swap outputs
-                        String selectedKeysetId = keysetsResponse.keysets
-                                .stream()
-                                .filter((k) -> k.active)
-                                .min(Comparator.comparing((k) -> k.inputFee))
-                                .map(k -> k.keysetId)
-                                .orElseThrow(() -> new RuntimeException("No active keyset found"));
-                        Log.d(TAG, "Selected keyset ID for new proofs: " + selectedKeysetId);
-
-                        // Request the keys in the keyset
-                        CompletableFuture<GetKeysResponse> keysFuture = cashuHttpClient.getKeys(selectedKeysetId);
-
-                        List<Pair<BlindedMessage, Pair<StringSecret, BigInteger>>> outputsAndSecretData = Stream.concat(outputAmounts.getFirst().stream(), outputAmounts.getSecond().stream())
-                                .map((output) -> {
-                                    StringSecret secret = StringSecret.random();
-                                    BigInteger blindingFactor = generateRandomScalar();
-                                    BlindedMessage blindedMessage = new BlindedMessage(
-                                            output,
-                                            selectedKeysetId,
-                                            pointToHex(computeB_(messageToCurve(secret.getSecret()), blindingFactor), true),
-                                            Optional.empty()
-                                    );
-                                    return new Pair<>(blindedMessage, new Pair<>(secret, blindingFactor));
-                                })
+                        List<Long> swapOutputAmounts = Stream.concat(outputAmounts.getFirst().stream(), outputAmounts.getSecond().stream())
                                 .collect(Collectors.toList());
-
-                        // Create swap payload
-                        PostSwapRequest swapRequest = new PostSwapRequest();
-                        swapRequest.inputs = exportedProofs;
-                        swapRequest.outputs = outputsAndSecretData.stream().map(Pair::getFirst).collect(Collectors.toList());
-
-                        Log.d(TAG, "Attempting to swap proofs");
-
-                        PostSwapResponse response = cashuHttpClient.swap(swapRequest).join();
-                        GetKeysResponse keysResponse = keysFuture.join();
-
-                        Log.d(TAG, "Successfully swapped and received proofs");
-
-                        List<Proof> allProofs = constructAndVerifyProofs(response, keysResponse.keysets.get(0), outputsAndSecretData);
+                        List<Proof> allProofs = swap(cashuHttpClient, keysetsResponse, exportedProofs, swapOutputAmounts);
 
                         Log.d(TAG, "Successfully constructed and verified proofs");
                         List<Proof> changeProofs = allProofs.subList(0, outputAmounts.getFirst().size());
@@ -307,102 +283,367 @@ public class SatocashWallet {
         });
     }
 
+    /**
+     * Import all proofs of a token into the card.
+     * Same as {@link #prepareTopUp} followed by {@link #importTopUp}.
+     */
     public CompletableFuture<Integer> importProofsFromToken(String tokenString) {
+        return prepareTopUp(tokenString, null).thenCompose((session) -> importTopUp(session, null));
+    }
+
+    /**
+     * Decode a token for import into a card. If it holds more proofs than its
+     * amount needs, it is first swapped at the mint for the fewest possible
+     * (one per set bit of the amount after fees), which is what the card
+     * imports fastest and stores best. Needs no card, so it can run while the
+     * cashier waits for one. If the mint cannot be reached the token's own
+     * proofs are used, provided they fit on a card.
+     * @param listener given the session with the swap's outputs before the
+     *                 swap is sent, to persist it; if the mint's answer is lost
+     *                 only those outputs can recover the funds, see
+     *                 {@link #resumeTopUp}. An exception thrown here cancels
+     *                 the swap. May be null.
+     */
+    public static CompletableFuture<SatocashTopUp> prepareTopUp(String tokenString, SatocashTopUp.ProgressListener listener) {
         return CompletableFuture.supplyAsync(() -> {
+            Token token;
             try {
-                Token token = Token.decode(tokenString);
-                int importedCount = 0;
-                Log.d(TAG, "tokenString: " + tokenString);
-                Log.d(TAG, "token.tokens.size() = " + token.tokens.size());
-
-                List<Integer> metadataKeysetIndices = cardClient.getProofInfo(
-                        SatocashNfcClient.Unit.valueOf(token.unit.toUpperCase()),
-                        SatocashNfcClient.ProofInfoType.METADATA_KEYSET_INDEX,
-                        0,
-                        128
-                );
-                Log.d(TAG, "Got metadata keyset indices, size: " + metadataKeysetIndices.size());
-
-                // Only consider unique indices from unspent proofs
-                Set<Integer> uniqueKeysetIndices = new HashSet<>(metadataKeysetIndices);
-                Log.d(TAG, "Unique keyset indices (from unspent proofs): " + uniqueKeysetIndices);
-                Map<String, Integer> keysetIdsToIndices = new HashMap<>(); // To store keysetId to card index mapping
-
-                // First, populate keysetIdsToIndices with existing keysets on the card
-                List<SatocashNfcClient.KeysetInfo> existingKeysets = cardClient.exportKeysets(new ArrayList<>(uniqueKeysetIndices));
-                for (SatocashNfcClient.KeysetInfo info : existingKeysets) {
-                    keysetIdsToIndices.put(info.id, info.index);
-                }
+                token = Token.decode(tokenString);
+            } catch (Exception e) {
+                throw new RuntimeException("Invalid token", e);
+            }
+            List<Proof> proofs = new ArrayList<>();
+            for (InnerToken tokenEntry : token.tokens) {
+                proofs.addAll(tokenEntry.getProofsShortId());
+            }
+            long total = proofs.stream().mapToLong((p) -> p.amount).sum();
+            Log.d(TAG, "Preparing top-up of " + total + " " + token.unit + " in " + proofs.size() + " proofs");
 
-                String mintUrl = token.mint;
+            if (proofs.size() <= Long.bitCount(total)) {
+                // Already one proof per bit; a swap would only cost fees
+                return new SatocashTopUp(token.mint, token.unit, proofs);
+            }
 
-                // 1. Ensure existence of Mint in the card. If not use cardClient to import it.
-                int mintIndex;
-                for (mintIndex = 0; mintIndex < 16; ++mintIndex) {
-                    String expMint = cardClient.exportMint(mintIndex); // Try to export to check if it exists or for a side effect
-                    if (expMint != null) {
-                        if (expMint.equals(mintUrl)) {
-                            break;
-                        }
-                    }
+            CashuHttpClient cashuHttpClient = new CashuHttpClient(new OkHttpClient(), token.mint);
+            GetKeysetsResponse keysetsResponse;
+            try {
+                keysetsResponse = cashuHttpClient.getKeysets().join();
+            } catch (RuntimeException e) {
+                if (proofs.size() > SATOCASH_MAX_PROOFS) {
+                    throw new RuntimeException("Token has too many proofs for the card and the mint is unreachable", e);
                 }
+                Log.w(TAG, "Mint unreachable, importing token proofs as they are: " + e.getMessage());
+                return new SatocashTopUp(token.mint, token.unit, proofs);
+            }
 
-                if (mintIndex >= 16) {
-                    // Mint is not in card, import it
-                    mintIndex = cardClient.importMint(mintUrl);
-                }
+            Map<String, Integer> keysetsFeesMap = new HashMap<>();
+            for (GetKeysetsItemResponse keyset : keysetsResponse.keysets) {
+                keysetsFeesMap.put(keyset.keysetId, keyset.inputFee);
+            }
+            List<Proof> inputs = swapInputs(proofs, keysetsResponse);
+            long amount = total - FeeHelper.ComputeFee(inputs, keysetsFeesMap);
+            if (amount <= 0) {
+                throw new RuntimeException("Token amount does not cover the mint fee");
+            }
 
-                for (InnerToken tokenEntry : token.tokens) { // Correctly iterate through token entries
-
-                    // 2. For every proof:
-                    // 2a. check that the keyset exists in the card, if not import it.
-                    // 2b. Import the proof
-                    for (Proof proof : tokenEntry.getProofsShortId()) { // Correctly access proofs from TokenEntry
-                        // Check the keyset is in the card, import otherwise
-                        if (!keysetIdsToIndices.containsKey(proof.keysetId)) {
-                            Log.d(TAG, "Keyset not present on card, attempting to import: " + proof.keysetId);
-                            int index = cardClient.importKeyset(proof.keysetId, mintIndex, SatocashNfcClient.Unit.valueOf(token.unit.toUpperCase()) /* TODO: change this to the actual unit of the keyset*/);
-                            keysetIdsToIndices.put(proof.keysetId, index);
-                        } else {
-                            Log.d(TAG, "Keyset " + proof.keysetId + " is already present in card");
-                        }
-                        cardClient.importProof(
-                                keysetIdsToIndices.get(proof.keysetId),
-                                ilog2(proof.amount),
-                                proof.c,
-                                ((StringSecret) proof.secret).getSecret()
-                        );
-                        importedCount++;
-                    }
+            SatocashTopUp swapping = new SatocashTopUp(
+                    token.mint,
+                    token.unit,
+                    proofs,
+                    createOutputs(keysetsResponse, createOutputAmounts(amount, 0).getSecond())
+            );
+            if (listener != null) listener.onProgress(swapping);
+            return finishSwap(cashuHttpClient, swapping);
+        });
+    }
+
+    /**
+     * Finish the swap of a session saved while {@link SatocashTopUp#isSwapPending()}.
+     * The mint is first asked to restore signatures for the saved outputs
+     * (NUT-09): if it signed them, the swap went through and only its answer
+     * was lost. Otherwise the swap never reached the mint and is sent again
+     * with the same outputs. Sessions without a pending swap are returned as is.
+     */
+    public static CompletableFuture<SatocashTopUp> resumeTopUp(SatocashTopUp session) {
+        if (!session.isSwapPending()) {
+            return CompletableFuture.completedFuture(session);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            CashuHttpClient cashuHttpClient = new CashuHttpClient(new OkHttpClient(), session.getMintUrl());
+            List<Pair<BlindedMessage, Pair<StringSecret, BigInteger>>> outputs = session.getSwapOutputs();
+
+            PostRestoreRequest restoreRequest = new PostRestoreRequest();
+            restoreRequest.outputs = outputs.stream().map(Pair::getFirst).collect(Collectors.toList());
+            PostRestoreResponse restored = cashuHttpClient.restore(restoreRequest).join();
+            if (restored.signatures == null || restored.signatures.isEmpty()) {
+                Log.d(TAG, "Mint never signed the top-up outputs, swapping again");
+                return finishSwap(cashuHttpClient, session);
+            }
+
+            // The mint lists only outputs it signed, each next to its signature
+            Map<String, BlindSignature> signaturesByOutput = new HashMap<>();
+            for (int i = 0; i < restored.signatures.size(); ++i) {
+                signaturesByOutput.put(restored.outputs.get(i).b_, restored.signatures.get(i));
+            }
+            List<BlindSignature> signatures = new ArrayList<>();
+            for (Pair<BlindedMessage, Pair<StringSecret, BigInteger>> output : outputs) {
+                BlindSignature signature = signaturesByOutput.get(output.getFirst().b_);
+                if (signature == null) {
+                    throw new RuntimeException("Mint restored only " + signaturesByOutput.size() + " of " + outputs.size() + " outputs");
                 }
-                return importedCount;
-            }  catch (Exception e) {
+                signatures.add(signature);
+            }
+            Log.d(TAG, "Restored " + signatures.size() + " proofs of an interrupted top-up swap");
+            return swapped(cashuHttpClient, session, signatures);
+        });
+    }
+
+    /**
+     * The mint's definitive refusal of a top-up swap among {@code error}'s
+     * causes, or null if the swap may still go through when resumed, e.g.
+     * after a network or server error. A refused swap's token is spent,
+     * invalid or on a keyset the mint does not know, so
+     * {@link #resumeTopUp} would fail the same way every time.
+     */
+    public static CashuProtocolError swapRefusal(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof CashuProtocolException) {
+                CashuProtocolError refusal = ((CashuProtocolException) t).error;
+                return refusal != null && SWAP_REFUSED_CODES.contains(refusal.code) ? refusal : null;
+            }
+        }
+        return null;
+    }
+
+    /** Send the pending swap of {@code session} and return a session with the new proofs. */
+    private static SatocashTopUp finishSwap(CashuHttpClient cashuHttpClient, SatocashTopUp session) {
+        GetKeysetsResponse keysetsResponse = cashuHttpClient.getKeysets().join();
+        List<Proof> inputs = swapInputs(session.getProofs(), keysetsResponse);
+        PostSwapResponse response = swap(cashuHttpClient, inputs, session.getSwapOutputs());
+        return swapped(cashuHttpClient, session, response.signatures);
+    }
+
+    private static SatocashTopUp swapped(CashuHttpClient cashuHttpClient, SatocashTopUp session, List<BlindSignature> signatures) {
+        List<Pair<BlindedMessage, Pair<StringSecret, BigInteger>>> outputs = session.getSwapOutputs();
+        GetKeysResponse keysResponse = cashuHttpClient.getKeys(outputs.get(0).getFirst().keysetId).join();
+        List<Proof> proofs = constructAndVerifyProofs(signatures, keysResponse.keysets.get(0), outputs);
+        Log.d(TAG, "Swapped " + session.getProofs().size() + " proofs for " + proofs.size() + " worth " + session.getAmount());
+        return new SatocashTopUp(session.getMintUrl(), session.getUnit(), proofs);
+    }
+
+    /** Token proofs as swap inputs, with their keyset IDs in the mint's long form. */
+    private static List<Proof> swapInputs(List<Proof> proofs, GetKeysetsResponse keysetsResponse) {
+        List<String> fullKeysetsIds = keysetsResponse.keysets
+                .stream().map(k -> k.keysetId).collect(Collectors.toList());
+        return proofs.stream().map((p) -> new Proof(
+                p.amount,
+                KeysetIdUtil.mapLongKeysetId(p.keysetId, fullKeysetsIds),
+                (StringSecret) p.secret,
+                p.c,
+                Optional.empty(),
+                Optional.empty()
+        )).collect(Collectors.toList());
+    }
+
+    /**
+     * Import a prepared top-up into the card, resuming after the last proof
+     * the card confirmed. The mint and every keyset are resolved before the
+     * first proof, so the import loop sends proof imports back to back.
+     * @param listener told about progress, e.g. to persist the session; may be null
+     * @return number of proofs imported by this call
+     */
+    public CompletableFuture<Integer> importTopUp(SatocashTopUp session, SatocashTopUp.ProgressListener listener) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return importTopUpOnCard(session, listener);
+            } catch (IOException e) {
                 throw new RuntimeException(e);
             }
         });
     }
 
+    private int importTopUpOnCard(SatocashTopUp session, SatocashTopUp.ProgressListener listener) throws IOException {
+        if (session.isSwapPending()) {
+            throw new IllegalStateException("Top-up swap has not finished");
+        }
+        SatocashNfcClient.Unit unit = SatocashNfcClient.Unit.valueOf(session.getUnit().toUpperCase());
+        List<Proof> proofs = session.getProofs();
+
+        int[] slots = readSlots(unit);
+        if (session.isInFlight() && resolveInFlight(session, slots)) {
+            slots = readSlots(unit);
+        }
+        if (session.isComplete()) {
+            return 0;
+        }
+
+        int mintIndex = findMintIndex(session.getMintUrl());
+        if (mintIndex >= SATOCASH_MAX_MINTS) {
+            mintIndex = cardClient.importMint(session.getMintUrl());
+        }
+
+        Set<Integer> cardKeysetIndices = new HashSet<>();
+        for (int slot : slots) {
+            if (slot != MISSING_SLOT) cardKeysetIndices.add(slotKeysetIndex(slot));
+        }
+        Map<String, Integer> keysetIdsToIndices = new HashMap<>();
+        List<SatocashNfcClient.KeysetInfo> existingKeysets = cardClient.exportKeysets(new ArrayList<>(cardKeysetIndices));
+        for (SatocashNfcClient.KeysetInfo info : existingKeysets) {
+            keysetIdsToIndices.put(info.id.toLowerCase(), info.index);
+        }
+        for (int i = session.getImportedCount(); i < proofs.size(); ++i) {
+            String keysetId = cardKeysetId(proofs.get(i).keysetId);
+            if (!keysetIdsToIndices.containsKey(keysetId)) {
+                Log.d(TAG, "Keyset not present on card, importing: " + keysetId);
+                keysetIdsToIndices.put(keysetId, cardClient.importKeyset(keysetId, mintIndex, unit));
+            }
+        }
+
+        int importedCount = 0;
+        while (!session.isComplete()) {
+            Proof proof = proofs.get(session.getImportedCount());
+            session.markInFlight(encodeSlots(slots));
+            if (listener != null) listener.onProgress(session);
+
+            int proofIndex = cardClient.importProof(
+                    keysetIdsToIndices.get(cardKeysetId(proof.keysetId)),
+                    ilog2(proof.amount),
+                    proof.c,
+                    ((StringSecret) proof.secret).getSecret()
+            );
+            // Slots this session filled are never taken for the next unanswered import
+            if (proofIndex >= slots.length) {
+                int oldLength = slots.length;
+                slots = Arrays.copyOf(slots, proofIndex + 1);
+                Arrays.fill(slots, oldLength, slots.length, MISSING_SLOT);
+            }
+            slots[proofIndex] = OWN_SLOT;
+            session.markImported();
+            importedCount++;
+            if (listener != null) listener.onProgress(session);
+        }
+        Log.d(TAG, "Imported " + importedCount + " proofs, top-up complete");
+        return importedCount;
+    }
+
+    /**
+     * Decide whether the import that was unanswered when the card was lost
+     * reached it. Nothing is assumed about where the card puts a proof: any
+     * slot that changed since the import was sent and now holds an unspent
+     * proof of the pending amount is a candidate. Reading a slot's secret
+     * means exporting its proof, which spends it on the card, so candidates
+     * are exported, the pending proof is recognised by its secret and left
+     * spent (the import loop sends it again), and any other proof is imported
+     * back at once. Usually there is exactly one candidate, the pending proof.
+     * @param slots the card's slots now, from {@link #readSlots}
+     * @return true if the card's slots were changed
+     */
+    private boolean resolveInFlight(SatocashTopUp session, int[] slots) throws IOException {
+        int[] before = decodeSlots(session.getInFlightSlots());
+        Proof pending = session.getProofs().get(session.getImportedCount());
+        int exponent = ilog2(pending.amount);
+
+        List<Integer> candidates = new ArrayList<>();
+        for (int i = 0; i < slots.length; ++i) {
+            int was = i < before.length ? before[i] : MISSING_SLOT;
+            if (was == OWN_SLOT || was == slots[i] || slots[i] == MISSING_SLOT) continue;
+            // The spent bit is clear and the exponent is the pending proof's
+            if (slotAmount(slots[i]) == exponent) candidates.add(i);
+        }
+        if (candidates.isEmpty()) {
+            Log.d(TAG, "Interrupted proof import did not reach the card, resending");
+            session.clearInFlight();
+            return false;
+        }
+
+        String pendingSecret = ((StringSecret) pending.secret).getSecret();
+        boolean landed = false;
+        for (SatocashNfcClient.ProofInfo info : cardClient.exportProofs(candidates)) {
+            if (bytesToHex(info.secret).equalsIgnoreCase(pendingSecret)) {
+                landed = true;
+                continue;
+            }
+            Log.w(TAG, "Slot " + info.index + " changed since the interrupted import, importing its proof back");
+            cardClient.importProof(info.keysetIndex, info.amountExponent, bytesToHex(info.unblindedKey), bytesToHex(info.secret));
+        }
+        Log.d(TAG, landed
+                ? "Interrupted proof import reached the card; its slot was spent to check it, resending"
+                : "Interrupted proof import did not reach the card, resending");
+        session.clearInFlight();
+        return true;
+    }
+
+    /**
+     * The card's proof slots of {@code unit}: state, keyset index and amount
+     * byte of each, packed by {@link #packSlot}, or {@link #MISSING_SLOT} where
+     * one of the lists is shorter than the others.
+     */
+    private int[] readSlots(SatocashNfcClient.Unit unit) throws IOException {
+        List<Integer> states = cardClient.getProofInfo(unit, SatocashNfcClient.ProofInfoType.METADATA_STATE, 0, SATOCASH_MAX_PROOFS);
+        List<Integer> keysets = cardClient.getProofInfo(unit, SatocashNfcClient.ProofInfoType.METADATA_KEYSET_INDEX, 0, SATOCASH_MAX_PROOFS);
+        List<Integer> amounts = cardClient.getProofInfo(unit, SatocashNfcClient.ProofInfoType.METADATA_AMOUNT_EXPONENT, 0, SATOCASH_MAX_PROOFS);
+        int count = Math.max(states.size(), Math.max(keysets.size(), amounts.size()));
+        int[] slots = new int[count];
+        for (int i = 0; i < count; ++i) {
+            slots[i] = i < states.size() && i < keysets.size() && i < amounts.size()
+                    ? packSlot(states.get(i), keysets.get(i), amounts.get(i))
+                    : MISSING_SLOT;
+        }
+        return slots;
+    }
+
+    private static int packSlot(int state, int keysetIndex, int amount) {
+        return (state << 16) | (keysetIndex << 8) | amount;
+    }
+
+    private static int slotKeysetIndex(int slot) {
+        return (slot >> 8) & 0xFF;
+    }
+
+    private static int slotAmount(int slot) {
+        return slot & 0xFF;
+    }
+
+    private static String encodeSlots(int[] slots) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < slots.length; ++i) {
+            if (i > 0) out.append(',');
+            out.append(slots[i]);
+        }
+        return out.toString();
+    }
+
+    private static int[] decodeSlots(String encoded) {
+        if (encoded == null || encoded.isEmpty()) return new int[0];
+        String[] parts = encoded.split(",");
+        int[] slots = new int[parts.length];
+        for (int i = 0; i < parts.length; ++i) {
+            slots[i] = Integer.parseInt(parts[i]);
+        }
+        return slots;
+    }
+
     private void importProofs(
             List<Proof> proofs,
             String mint,
             String unit,
             Map<String, Integer> keysetIdsToIndices
     ) throws SatocashNfcClient.SatocashException {
-        for (Proof proof : proofs) {
+        int mintIndex = findMintIndex(mint);
 
-            int mintIndex = findMintIndex(mint);
-
-            if (mintIndex >= 16) {
-                throw new RuntimeException("No such mint in this card");
-            }
+        if (mintIndex >= SATOCASH_MAX_MINTS) {
+            throw new RuntimeException("No such mint in this card");
+        }
 
+        for (Proof proof : proofs) {
             // Check the keyset is in the card, import otherwise
-            if (!keysetIdsToIndices.containsKey(proof.keysetId)) {
-                int index = cardClient.importKeyset(KeysetIdUtil.mapShortKeysetId(proof.keysetId), mintIndex, SatocashNfcClient.Unit.valueOf(unit));
-                keysetIdsToIndices.put(proof.keysetId, index);
+            String keysetId = cardKeysetId(proof.keysetId);
+            if (!keysetIdsToIndices.containsKey(keysetId)) {
+                int index = cardClient.importKeyset(keysetId, mintIndex, SatocashNfcClient.Unit.valueOf(unit));
+                keysetIdsToIndices.put(keysetId, index);
             }
             cardClient.importProof(
-                    keysetIdsToIndices.get(proof.keysetId),
+                    keysetIdsToIndices.get(keysetId),
                     ilog2(proof.amount),
                     proof.c,
                     ((StringSecret)proof.secret).getSecret()
@@ -410,13 +651,18 @@ public class SatocashWallet {
         }
     }
 
+    /** Keyset ID as the card stores it: short form, lower case. */
+    private static String cardKeysetId(String keysetId) {
+        return KeysetIdUtil.mapShortKeysetId(keysetId).toLowerCase();
+    }
+
     private int findMintIndex(String mint) throws SatocashNfcClient.SatocashException {
         if (mint == null) {
             throw new RuntimeException("Invalid mint URL: null");
         }
         
         int i;
-        for (i = 0; i < 16; ++i) {
+        for (i = 0; i < SATOCASH_MAX_MINTS; ++i) {
             String exportedMint = cardClient.exportMint(i);
             if (exportedMint != null && exportedMint.equals(mint)) {
                 break;
@@ -442,13 +688,79 @@ public class SatocashWallet {
         return transposedMap;
     }
 
-    private List<Proof> constructAndVerifyProofs(PostSwapResponse response, KeysetItemResponse keyset, List<Pair<BlindedMessage, Pair<StringSecret, BigInteger>>> outputsAndSecretData) {
+    /**
+     * Swap {@code inputs} at the mint for new proofs of {@code outputAmounts},
+     * in that order, on its cheapest active keyset.
+     */
+    private static List<Proof> swap(
+            CashuHttpClient cashuHttpClient,
+            GetKeysetsResponse keysetsResponse,
+            List<Proof> inputs,
+            List<Long> outputAmounts
+    ) {
+        List<Pair<BlindedMessage, Pair<StringSecret, BigInteger>>> outputsAndSecretData = createOutputs(keysetsResponse, outputAmounts);
+
+        // Request the keys in the keyset
+        CompletableFuture<GetKeysResponse> keysFuture = cashuHttpClient.getKeys(outputsAndSecretData.get(0).getFirst().keysetId);
+        PostSwapResponse response = swap(cashuHttpClient, inputs, outputsAndSecretData);
+        GetKeysResponse keysResponse = keysFuture.join();
+
+        return constructAndVerifyProofs(response.signatures, keysResponse.keysets.get(0), outputsAndSecretData);
+    }
+
+    private static PostSwapResponse swap(
+            CashuHttpClient cashuHttpClient,
+            List<Proof> inputs,
+            List<Pair<BlindedMessage, Pair<StringSecret, BigInteger>>> outputsAndSecretData
+    ) {
+        PostSwapRequest swapRequest = new PostSwapRequest();
+        swapRequest.inputs = inputs;
+        swapRequest.outputs = outputsAndSecretData.stream().map(Pair::getFirst).collect(Collectors.toList());
+
+        Log.d(TAG, "Attempting to swap proofs");
+        PostSwapResponse response = cashuHttpClient.swap(swapRequest).join();
+        Log.d(TAG, "Successfully swapped and received proofs");
+        return response;
+    }
+
+    /**
+     * Blinded outputs of {@code outputAmounts} on the mint's cheapest active
+     * keyset, each with its secret and blinding factor.
+     */
+    private static List<Pair<BlindedMessage, Pair<StringSecret, BigInteger>>> createOutputs(
+            GetKeysetsResponse keysetsResponse,
+            List<Long> outputAmounts
+    ) {
+        String selectedKeysetId = keysetsResponse.keysets
+                .stream()
+                .filter((k) -> k.active)
+                .min(Comparator.comparing((k) -> k.inputFee))
+                .map(k -> k.keysetId)
+                .orElseThrow(() -> new RuntimeException("No active keyset found"));
+        Log.d(TAG, "Selected keyset ID for new proofs: " + selectedKeysetId);
+
+        return outputAmounts.stream()
+                .map((output) -> {
+                    StringSecret secret = StringSecret.random();
+                    BigInteger blindingFactor = generateRandomScalar();
+                    BlindedMessage blindedMessage = new BlindedMessage(
+                            output,
+                            selectedKeysetId,
+                            pointToHex(computeB_(messageToCurve(secret.getSecret()), blindingFactor), true),
+                            Optional.empty()
+                    );
+                    return new Pair<>(blindedMessage, new Pair<>(secret, blindingFactor));
+                })
+                .collect(Collectors.toList());
+    }
+
+    private static List<Proof> constructAndVerifyProofs(List<BlindSignature> signatures, KeysetItemResponse keyset, List<Pair<BlindedMessage, Pair<StringSecret, BigInteger>>> outputsAndSecretData) {
         List<BigInteger> blindingFactors = outputsAndSecretData.stream().map((output) -> output.getSecond().getSecond()).toList();
         List<StringSecret> secrets = outputsAndSecretData.stream().map((output) -> output.getSecond().getFirst()).toList();
 
         List<Proof> result = new ArrayList<>();
-        for (int i = 0; i < response.signatures.size(); ++i) {
-            BlindSignature signature = response.signatures.get(i);
+        for (int i = 0; i < signatures.size(); ++i) {
+            BlindSignature signature = signatures.get(i);
             BigInteger blindingFactor = blindingFactors.get(i);
             StringSecret secret = secrets.get(i);
 
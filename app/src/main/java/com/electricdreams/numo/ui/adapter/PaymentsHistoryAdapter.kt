@@ -20,6 +20,9 @@ class PaymentsHistoryAdapter : RecyclerView.Adapter<PaymentsHistoryAdapter.ViewH
 
     private val entries: MutableList<PaymentHistoryEntry> = mutableListOf()
     private val dateFormat = SimpleDateFormat("MMM d, HH:mm", Locale.getDefault())
+
+    // Reused for every bind; TextView copies the text it is given
+    private val amountBuilder = StringBuilder(24)
     private var onItemClickListener: OnItemClickListener? = null
 
     fun setOnItemClickListener(listener: OnItemClickListener) {
@@ -44,26 +47,20 @@ class PaymentsHistoryAdapter : RecyclerView.Adapter<PaymentsHistoryAdapter.ViewH
 
         // Display amount in the unit it was entered
         // Use BASE amount (excluding tip) for proper accounting display
-        val formattedAmount = if (entry.getEntryUnit() != "sat") {
+        val isPending = entry.isPending()
+        val isRejected = entry.isRejected()
+        val displayAmount = amountBuilder
+        displayAmount.setLength(0)
+        if (!isPending && !isRejected && entry.amount >= 0) {
+            displayAmount.append('+') // No + prefix for pending or rejected
+        }
+        if (entry.getEntryUnit() != "sat") {
             // Fiat entry - enteredAmount is already the base amount
             val entryCurrency = Amount.Currency.fromCode(entry.getEntryUnit())
-            val entryAmount = Amount(entry.enteredAmount, entryCurrency)
-            entryAmount.toString()
+            Amount.appendTo(displayAmount, entry.enteredAmount, entryCurrency)
         } else {
             // Sat entry - use base amount (excluding tip)
-            val baseAmountSats = entry.getBaseAmountSats()
-            val satAmount = Amount(baseAmountSats, Amount.Currency.BTC)
-            satAmount.toString()
-        }
-
-        // Set amount with appropriate prefix
-        val isPending = entry.isPending()
-        val displayAmount = if (isPending) {
-            formattedAmount // No + prefix for pending
-        } else if (entry.amount >= 0) {
-            "+$formattedAmount"
-        } else {
-            formattedAmount
+            Amount.appendTo(displayAmount, entry.getBaseAmountSats(), Amount.Currency.BTC)
         }
         holder.amountText.text = displayAmount
 
@@ -73,6 +70,7 @@ class PaymentsHistoryAdapter : RecyclerView.Adapter<PaymentsHistoryAdapter.ViewH
         // Set title based on status and payment type
         holder.titleText.text = when {
             isPending -> context.getString(R.string.history_row_title_pending_payment)
+            isRejected -> context.getString(R.string.history_row_title_rejected_payment)
             entry.isLightning() -> context.getString(R.string.history_row_title_lightning_payment)
             entry.isCashu() -> context.getString(R.string.history_row_title_cashu_payment)
             entry.amount > 0 -> context.getString(R.string.history_row_title_cash_in)
@@ -82,16 +80,17 @@ class PaymentsHistoryAdapter : RecyclerView.Adapter<PaymentsHistoryAdapter.ViewH
         // Set icon based on payment type and status
         val iconRes = when {
             isPending -> R.drawable.ic_pending
+            isRejected -> R.drawable.ic_warning
             entry.isLightning() -> R.drawable.ic_lightning_bolt
             else -> R.drawable.ic_bitcoin
         }
         holder.icon.setImageResource(iconRes)
 
         // Set icon tint based on status
-        val iconTint = if (isPending) {
-            context.getColor(R.color.color_warning)
-        } else {
-            context.getColor(R.color.color_text_primary)
+        val iconTint = when {
+            isPending -> context.getColor(R.color.color_warning)
+            isRejected -> context.getColor(R.color.color_error)
+            else -> context.getColor(R.color.color_text_primary)
         }
         holder.icon.setColorFilter(iconTint)
 
@@ -100,6 +99,10 @@ class PaymentsHistoryAdapter : RecyclerView.Adapter<PaymentsHistoryAdapter.ViewH
             holder.statusText.visibility = View.VISIBLE
             holder.statusText.text = context.getString(R.string.history_row_status_tap_to_resume)
             holder.statusText.setTextColor(context.getColor(R.color.color_warning))
+        } else if (isRejected) {
+            holder.statusText.visibility = View.VISIBLE
+            holder.statusText.text = context.getString(R.string.history_row_status_already_spent)
+            holder.statusText.setTextColor(context.getColor(R.color.color_error))
         } else {
             holder.statusText.visibility = View.GONE
         }
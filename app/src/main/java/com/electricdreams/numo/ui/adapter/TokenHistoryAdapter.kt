@@ -11,6 +11,7 @@ import android.view.ViewGroup
 import android.widget.ImageButton
 import android.widget.TextView
 import android.widget.Toast
+import androidx.recyclerview.widget.DiffUtil
 import androidx.recyclerview.widget.RecyclerView
 import com.electricdreams.numo.R
 import com.electricdreams.numo.core.data.model.TokenHistoryEntry
@@ -32,9 +33,26 @@ class TokenHistoryAdapter : RecyclerView.Adapter<TokenHistoryAdapter.ViewHolder>
     }
 
     fun setEntries(newEntries: List<TokenHistoryEntry>) {
+        val diffResult = DiffUtil.calculateDiff(EntryDiffCallback(entries.toList(), newEntries))
         entries.clear()
         entries.addAll(newEntries)
-        notifyDataSetChanged()
+        diffResult.dispatchUpdatesTo(this)
+    }
+
+    /** Append the next page of older entries. */
+    fun appendEntries(moreEntries: List<TokenHistoryEntry>) {
+        if (moreEntries.isEmpty()) return
+        val start = entries.size
+        entries.addAll(moreEntries)
+        notifyItemRangeInserted(start, moreEntries.size)
+    }
+
+    /** Remove the entry with [id] without rebinding the rest of the list. */
+    fun removeEntry(id: Long) {
+        val index = entries.indexOfFirst { it.id == id }
+        if (index < 0) return
+        entries.removeAt(index)
+        notifyItemRemoved(index)
     }
 
     override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): ViewHolder {
@@ -60,7 +78,7 @@ class TokenHistoryAdapter : RecyclerView.Adapter<TokenHistoryAdapter.ViewHolder>
         holder.openWithButton.setOnClickListener { v -> openTokenWithApp(v.context, entry.token) }
 
         holder.deleteButton.setOnClickListener {
-            onDeleteClickListener?.onDeleteClick(entry, position)
+            onDeleteClickListener?.onDeleteClick(entry, holder.adapterPosition)
         }
     }
 
@@ -89,6 +107,20 @@ class TokenHistoryAdapter : RecyclerView.Adapter<TokenHistoryAdapter.ViewHolder>
 
     override fun getItemCount(): Int = entries.size
 
+    private class EntryDiffCallback(
+        private val oldList: List<TokenHistoryEntry>,
+        private val newList: List<TokenHistoryEntry>,
+    ) : DiffUtil.Callback() {
+        override fun getOldListSize(): Int = oldList.size
+        override fun getNewListSize(): Int = newList.size
+
+        override fun areItemsTheSame(oldItemPosition: Int, newItemPosition: Int): Boolean =
+            oldList[oldItemPosition].id == newList[newItemPosition].id
+
+        override fun areContentsTheSame(oldItemPosition: Int, newItemPosition: Int): Boolean =
+            oldList[oldItemPosition] == newList[newItemPosition]
+    }
+
     class ViewHolder(view: View) : RecyclerView.ViewHolder(view) {
         val amountText: TextView = view.findViewById(R.id.amount_text)
         val dateText: TextView = view.findViewById(R.id.date_text)
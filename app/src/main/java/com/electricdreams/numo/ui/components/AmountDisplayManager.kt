@@ -6,6 +6,7 @@ import com.electricdreams.numo.R
 import android.widget.Button
 import android.widget.TextView
 import android.widget.Toast
+import com.electricdreams.numo.core.data.KeyValueStore
 import com.electricdreams.numo.core.model.Amount
 import com.electricdreams.numo.core.util.CurrencyManager
 import com.electricdreams.numo.core.worker.BitcoinPriceWorker
@@ -31,7 +32,7 @@ class AmountDisplayManager(
 
     /** Initialize input mode from preferences */
     fun initializeInputMode() {
-        val prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+        val prefs = KeyValueStore.open(context, PREFS_NAME)
         isUsdInputMode = prefs.getBoolean(KEY_INPUT_MODE, false)
     }
 
@@ -76,7 +77,7 @@ class AmountDisplayManager(
 
         isUsdInputMode = !isUsdInputMode
         // Persist the input mode preference
-        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+        KeyValueStore.open(context, PREFS_NAME).edit()
             .putBoolean(KEY_INPUT_MODE, isUsdInputMode)
             .apply()
 
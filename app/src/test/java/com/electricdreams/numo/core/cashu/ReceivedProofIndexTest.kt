@@ -0,0 +1,55 @@
+package com.electricdreams.numo.core.cashu
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+class ReceivedProofIndexTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    @Test
+    fun claimedProofsCannotBeClaimedAgainUntilReleased() {
+        val index = ReceivedProofIndex(File(folder.root, "proofs.bin"))
+
+        assertTrue(index.claim(listOf("a", "b")))
+        assertFalse(index.claim(listOf("b", "c")))
+        assertTrue(index.containsAny(listOf("a")))
+
+        index.release(listOf("a", "b"))
+        assertFalse(index.containsAny(listOf("a", "b")))
+        assertTrue(index.claim(listOf("b", "c")))
+    }
+
+    @Test
+    fun committedProofsSurviveReopen() {
+        val file = File(folder.root, "proofs.bin")
+        val secrets = (0 until 3_000).map { "secret-$it" }
+        ReceivedProofIndex(file).apply {
+            assertTrue(claim(secrets))
+            commit(secrets)
+        }
+
+        val reopened = ReceivedProofIndex(file)
+        assertEquals(3_000, reopened.size())
+        assertTrue(reopened.containsAny(listOf("secret-2999")))
+        assertFalse(reopened.claim(listOf("secret-0")))
+        assertFalse(reopened.containsAny(listOf("secret-3000")))
+    }
+
+    @Test
+    fun tornFinalRecordIsIgnored() {
+        val file = File(folder.root, "proofs.bin")
+        ReceivedProofIndex(file).commit(listOf("a"))
+        file.appendBytes(ByteArray(5))
+
+        val reopened = ReceivedProofIndex(file)
+        assertEquals(1, reopened.size())
+        assertEquals(16L, file.length())
+    }
+}
@@ -0,0 +1,72 @@
+package com.electricdreams.numo.core.cashu.offline
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * hash_to_curve test vectors from NUT-00 and the DLEQ proof vector from NUT-12.
+ */
+class DleqVerifierTest {
+
+    @Test
+    fun hashToCurveMatchesSpecVectors() {
+        assertEquals(
+            "024cce997d3b518f739663b757deaec95bcd9473c30a14ac2fd04023a739d1a725",
+            hashToCurveHex("0000000000000000000000000000000000000000000000000000000000000000"),
+        )
+        assertEquals(
+            "022e7158e11c9506f1aa4248bf531298daa7febd6194f003edcd9b93ade6253acf",
+            hashToCurveHex("0000000000000000000000000000000000000000000000000000000000000001"),
+        )
+    }
+
+    @Test
+    fun verifiesSpecDleqProof() {
+        val proof = specProof()
+        assertTrue(DleqVerifier.verify(proof, SPEC_MINT_KEY))
+        // Any change to the proof or the key breaks it
+        assertFalse(DleqVerifier.verify(proof.copy(secret = proof.secret.reversed()), SPEC_MINT_KEY))
+        assertFalse(DleqVerifier.verify(proof.copy(dleq = proof.dleq!!.copy(s = proof.dleq!!.e)), SPEC_MINT_KEY))
+        assertFalse(
+            DleqVerifier.verify(proof, "02c6047f9441ed7d6d3045406e95c07cd85c778e4b8cef3ca7abac09b95c709ee5"),
+        )
+    }
+
+    @Test
+    fun proofWithoutDleqIsNotVerified() {
+        val proof = TokenProofs.Proof(
+            amount = 1,
+            keysetId = "009a1f293253e41e",
+            secret = "secret",
+            c = "02a9acc1e48c25eeeb9289b5031cc57da9fe72f3fe2861d264bdc074209b107ba2",
+            dleq = null,
+        )
+        assertFalse(DleqVerifier.verify(proof, "02a9acc1e48c25eeeb9289b5031cc57da9fe72f3fe2861d264bdc074209b107ba2"))
+    }
+
+    private fun specProof() = TokenProofs.Proof(
+        amount = 1,
+        keysetId = "00882760bfa2eb41",
+        secret = "daf4dd00a2b68a0858a80450f52c8a7d2ccf87d375e43e216e0c571f089f63e9",
+        c = "024369d2d22a80ecf78f3937da9d5f30c1b9f74f0c32684d583cca0fa6a61cdcfc",
+        dleq = TokenProofs.Dleq(
+            e = "b31e58ac6527f34975ffab13e70a48b6d2b0d35abc4b03f0151f09ee1a9763d4",
+            s = "8fbae004c59e754d71df67e392b6ae4e29293113ddc2ec86592a0431d16306d8",
+            r = "a6d13fcd7a18442e6076f5e1e7c887ad5de40a019824bdfa9fe740d302e8d861",
+        ),
+    )
+
+    private fun hashToCurveHex(messageHex: String): String {
+        val message = ByteArray(messageHex.length / 2) { i ->
+            messageHex.substring(i * 2, i * 2 + 2).toInt(16).toByte()
+        }
+        return DleqVerifier.hashToCurve(message).getEncoded(true).joinToString("") { "%02x".format(it) }
+    }
+
+    private companion object {
+        /** Mint key for the NUT-12 vector: the generator, i.e. private key 1. */
+        const val SPEC_MINT_KEY = "0279be667ef9dcbbac55a06295ce870b07029bfcdb2dce28d959f2815b16f81798"
+    }
+}
@@ -0,0 +1,57 @@
+package com.electricdreams.numo.core.cashu.offline
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.util.Base64
+
+class OfflineTokenVerifierTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    @Test
+    fun recognizesNut10Secrets() {
+        assertEquals("P2PK", TokenProofs.spendingConditionKind(P2PK_SECRET))
+        assertEquals("HTLC", TokenProofs.spendingConditionKind(HTLC_SECRET))
+        assertNull(TokenProofs.spendingConditionKind("daf4dd00a2b68a0858a80450f52c8a7d2ccf87d375e43e216e0c571f089f63e9"))
+        assertNull(TokenProofs.spendingConditionKind("[not json"))
+        assertNull(TokenProofs.spendingConditionKind("[\"P2PK\"]"))
+    }
+
+    @Test
+    fun rejectsLockedProofsBeforeLookingAtKeys() {
+        val verifier = OfflineTokenVerifier(MintKeysetCache(folder.root))
+        for ((secret, kind) in listOf(P2PK_SECRET to "P2PK", HTLC_SECRET to "HTLC")) {
+            val result = verifier.verify(token(secret), 1L, listOf(MINT))
+            assertTrue(result is OfflineTokenVerifier.Result.NotVerifiable)
+            val reason = (result as OfflineTokenVerifier.Result.NotVerifiable).reason
+            assertTrue(reason, reason.contains(kind))
+        }
+
+        // A plain secret gets as far as the (empty) keyset cache
+        val plain = verifier.verify(token("0123456789abcdef"), 1L, listOf(MINT))
+        assertTrue((plain as OfflineTokenVerifier.Result.NotVerifiable).reason.startsWith("Unknown keyset"))
+    }
+
+    private fun token(secret: String): String {
+        val proof = """{"amount":1,"id":"00882760bfa2eb41","secret":${jsonString(secret)},""" +
+            """"C":"024369d2d22a80ecf78f3937da9d5f30c1b9f74f0c32684d583cca0fa6a61cdcfc"}"""
+        val json = """{"token":[{"mint":"$MINT","proofs":[$proof]}],"unit":"sat"}"""
+        return "cashuA" + Base64.getUrlEncoder().withoutPadding().encodeToString(json.toByteArray(Charsets.UTF_8))
+    }
+
+    private fun jsonString(value: String) = "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\""
+
+    private companion object {
+        const val MINT = "https://mint.example.com"
+        const val P2PK_SECRET = """["P2PK",{"nonce":"859d4935c4907062a6297cf4e663e2835d90d97ecdd510745d32f6816323a41f",""" +
+            """"data":"0249098aa8b9d2fbec49ff8598feb17b592b986e62319a4fa488a3dc36387157a7",""" +
+            """"tags":[["sigflag","SIG_INPUTS"]]}]"""
+        const val HTLC_SECRET = """["HTLC",{"nonce":"da62796403af76c80cd6ce9153ed3746",""" +
+            """"data":"023192200a0cfd3867e48eb63b03ff599c7e46c8f4e41146b2d281173ca6c50c54","tags":[]}]"""
+    }
+}
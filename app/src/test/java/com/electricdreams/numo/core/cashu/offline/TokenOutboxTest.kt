@@ -0,0 +1,126 @@
+package com.electricdreams.numo.core.cashu.offline
+
+import org.json.JSONArray
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.io.IOException
+
+class TokenOutboxTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    @Test
+    fun addFailsWhenTheEntryCannotBeWritten() {
+        val outbox = TokenOutbox(File(folder.root, "missing"))
+        val failed = try {
+            outbox.add("token", proofs("s1"))
+            false
+        } catch (e: IOException) {
+            true
+        }
+        assertTrue(failed)
+        assertEquals(0, outbox.size())
+        // Not remembered either, so the same proofs can still be taken online
+        assertTrue(outbox.dueByMint(Long.MAX_VALUE).isEmpty())
+    }
+
+    @Test
+    fun abandonedEntriesAreKeptButNotRetried() {
+        val outbox = TokenOutbox(folder.root)
+        val kept = outbox.add("t1", proofs("s1"), now = 1L)!!
+        val dropped = outbox.add("t2", proofs("s2"), now = 2L)!!
+        assertNull(outbox.add("t3", proofs("s2", "s3")))
+
+        outbox.markAbandoned(listOf(dropped.id), "refused", now = 3L)
+        assertEquals(1, outbox.size())
+        assertEquals(listOf(kept.id), outbox.dueByMint(10L).values.flatten().map { it.id })
+
+        val reloaded = TokenOutbox(folder.root)
+        assertEquals(1, reloaded.size())
+        assertEquals(1L, reloaded.pendingAmount())
+        val failed = reloaded.failed().single()
+        assertEquals(dropped.id, failed.id)
+        assertEquals(3L, failed.failedAt)
+        assertEquals(1, failed.refusals)
+        // Its proofs are still known and refused a second time
+        assertNull(reloaded.add("t2", proofs("s2")))
+        assertNotNull(reloaded.add("t4", proofs("s4")))
+    }
+
+    @Test
+    fun redemptionAttemptIsRecordedUntilItsOutcomeIs() {
+        val outbox = TokenOutbox(folder.root)
+        val a = outbox.add("t1", proofs("s1"))!!
+        val b = outbox.add("t2", proofs("s2"))!!
+        outbox.markRedeeming(listOf(a.id, b.id), now = 5L)
+
+        // Still marked after a restart: the attempt may have gone through
+        val reloaded = TokenOutbox(folder.root)
+        assertEquals(listOf(5L, 5L), reloaded.dueByMint(Long.MAX_VALUE).values.flatten().map { it.redeemStartedAt })
+
+        reloaded.markFailed(listOf(a.id, b.id), "timeout", nextAttemptAt = 0L, unfinished = setOf(b.id))
+        val entries = TokenOutbox(folder.root).dueByMint(Long.MAX_VALUE).values.flatten().associateBy { it.id }
+        assertNull(entries.getValue(a.id).redeemStartedAt)
+        assertEquals(5L, entries.getValue(b.id).redeemStartedAt)
+    }
+
+    @Test
+    fun unreadableFileIsCopiedAsideAndStopsOfflineAcceptance() {
+        File(folder.root, "token_outbox.json").writeText("[{\"id\":")
+        val outbox = TokenOutbox(folder.root)
+        assertEquals(0, outbox.size())
+        assertTrue(outbox.isDamaged())
+        assertEquals("[{\"id\":", outbox.corruptCopies().single().readText())
+        val refused = try {
+            outbox.add("t1", proofs("s1"))
+            false
+        } catch (e: IOException) {
+            true
+        }
+        assertTrue(refused)
+
+        outbox.resolveDamage()
+        assertFalse(outbox.isDamaged())
+        assertNotNull(outbox.add("t1", proofs("s1")))
+    }
+
+    @Test
+    fun damagedEntryKeepsTheOthersAndItsCopy() {
+        val outbox = TokenOutbox(folder.root)
+        val good = outbox.add("t1", proofs("s1"))!!
+        outbox.add("t2", proofs("s2"))
+        val file = File(folder.root, "token_outbox.json")
+        val array = JSONArray(file.readText())
+        array.getJSONObject(1).remove("token")
+        file.writeText(array.toString())
+
+        val reloaded = TokenOutbox(folder.root)
+        assertEquals(listOf(good.id), reloaded.dueByMint(Long.MAX_VALUE).values.flatten().map { it.id })
+        assertTrue(reloaded.isDamaged())
+        // Redeeming the good entry rewrites the file; the copy still has both
+        reloaded.remove(listOf(good.id))
+        assertEquals(2, JSONArray(reloaded.corruptCopies().single().readText()).length())
+        assertTrue(TokenOutbox(folder.root).isDamaged())
+    }
+
+    @Test
+    fun parsesSpentStatesFromCheckstate() {
+        val body = """{"states":[{"Y":"02AA","state":"SPENT","witness":null},{"Y":"02bb","state":"UNSPENT"},""" +
+            """{"Y":"02cc","state":"PENDING"}]}"""
+        assertEquals(setOf("02aa"), OutboxRedeemer.parseSpentYs(body))
+    }
+
+    private fun proofs(vararg secrets: String) = TokenProofs(
+        mintUrl = "https://mint.example.com/",
+        unit = "sat",
+        proofs = secrets.map { TokenProofs.Proof(1L, "00882760bfa2eb41", it, "02", null) },
+    )
+}
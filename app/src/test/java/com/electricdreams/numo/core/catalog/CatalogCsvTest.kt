@@ -0,0 +1,96 @@
+package com.electricdreams.numo.core.catalog
+
+import com.electricdreams.numo.core.model.Item
+import com.electricdreams.numo.core.model.PriceType
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.StringReader
+import java.io.StringWriter
+
+class CatalogCsvTest {
+
+    @Test
+    fun tokenizerHandlesQuotesAndLineBreaksAcrossRefills() {
+        val csv = CsvTokenizer(StringReader("a,\"b,\"\"c\"\"\"\r\n\"multi\nline\", 12.50 \n"), bufferSize = 3)
+        assertTrue(csv.next())
+        assertEquals(2, csv.fieldCount)
+        assertEquals("a", csv.string(0))
+        assertEquals("b,\"c\"", csv.string(1))
+        assertTrue(csv.next())
+        assertEquals("multi\nline", csv.string(0))
+        assertEquals(12.5, csv.decimal(1)!!, 0.0)
+        assertNull(csv.int(1))
+        assertFalse(csv.next())
+    }
+
+    @Test
+    fun mapsColumnsByHeader() {
+        val reader = CatalogCsvReader(
+            StringReader(
+                "Token,Item Name,SKU,Price,Current Quantity Main St,Stock Alert Enabled Main St,Price Sats\n" +
+                    "t1,Coffee,C-1,3.20,7,Y,\n" +
+                    ",,orphan,1,,,\n" +
+                    "t2,Sticker,S-1,,,N,2100\n",
+            ),
+        )
+        assertTrue(reader.hasHeader)
+
+        assertTrue(reader.next())
+        assertEquals("C-1", reader.value(CatalogColumn.SKU))
+        val coffee = Item().also { reader.applyTo(it) }
+        assertEquals("Coffee", coffee.name)
+        assertEquals(3.2, coffee.price, 0.0)
+        assertEquals(7, coffee.quantity)
+        assertTrue(coffee.alertEnabled)
+        assertEquals(PriceType.FIAT, coffee.priceType)
+
+        assertTrue(reader.next())
+        val sticker = Item().also { reader.applyTo(it) }
+        assertEquals(2100L, sticker.priceSats)
+        assertEquals(PriceType.SATS, sticker.priceType)
+        assertFalse(reader.next())
+        assertEquals(1, reader.skipped)
+    }
+
+    @Test
+    fun readsLegacySquareLayoutWithoutHeader() {
+        val preamble = "x\n".repeat(CatalogCsvReader.HEADER_SCAN_ROWS)
+        val row = listOf("tok", "Tea", "Large", "T-1", "", "Drinks", "", "0123", "", "", "", "", "2.5")
+            .plus(List(7) { "" }).plus(listOf("4", "", "Y", "2"))
+        val reader = CatalogCsvReader(StringReader(preamble + row.joinToString(",") + "\n"))
+        assertFalse(reader.hasHeader)
+        assertTrue(reader.next())
+        val tea = Item().also { reader.applyTo(it) }
+        assertEquals("Tea", tea.name)
+        assertEquals("0123", tea.gtin)
+        assertEquals(2.5, tea.price, 0.0)
+        assertEquals(4, tea.quantity)
+        assertEquals(2, tea.alertThreshold)
+    }
+
+    @Test
+    fun exportReadsBack() {
+        val item = Item(
+            name = "Pie, \"apple\"",
+            sku = "P-1",
+            price = 4.75,
+            vatEnabled = true,
+            vatRate = 20,
+            trackInventory = true,
+            quantity = 3,
+        )
+        val out = StringWriter()
+        CatalogCsvWriter(out).apply {
+            writeHeader()
+            write(item)
+        }
+
+        val reader = CatalogCsvReader(StringReader(out.toString()))
+        assertTrue(reader.next())
+        val copy = Item(id = item.id, uuid = item.uuid).also { reader.applyTo(it) }
+        assertEquals(item, copy)
+    }
+}
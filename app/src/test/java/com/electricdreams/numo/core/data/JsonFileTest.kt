@@ -0,0 +1,58 @@
+package com.electricdreams.numo.core.data
+
+import org.json.JSONArray
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.io.IOException
+
+class JsonFileTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    @Test
+    fun writeReplacesWholeFile() {
+        val file = JsonFile(File(folder.root, "a.json"))
+        assertFalse(file.exists())
+        assertNull(file.readArray())
+
+        file.write(JSONArray().put(1).put(2))
+        file.write(JSONArray().put(3))
+        assertEquals("[3]", file.readArray().toString())
+        assertEquals(listOf("a.json"), folder.root.list()!!.toList())
+    }
+
+    @Test
+    fun failedWriteIsReportedAndKeepsOldContents() {
+        val dir = folder.newFolder("data")
+        val file = JsonFile(File(dir, "a.json"))
+        file.write(JSONArray().put("old"))
+        // A directory in the way of the temporary file makes the write fail
+        File(dir, "a.json.tmp").mkdir()
+        File(dir, "a.json.tmp/x").createNewFile()
+
+        val failed = try {
+            file.write(JSONArray().put("new"))
+            false
+        } catch (e: IOException) {
+            true
+        }
+        assertTrue(failed)
+        assertEquals("[\"old\"]", file.readArray().toString())
+    }
+
+    @Test
+    fun restoresBackupLeftByInterruptedAtomicFileWrite() {
+        File(folder.root, "a.json").writeText("[\"torn")
+        File(folder.root, "a.json.bak").writeText("[\"good\"]")
+        val file = JsonFile(File(folder.root, "a.json"))
+        assertEquals("[\"good\"]", file.readArray().toString())
+        assertFalse(File(folder.root, "a.json.bak").exists())
+    }
+}
@@ -0,0 +1,58 @@
+package com.electricdreams.numo.core.data
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.io.FileOutputStream
+
+class KeyValueStoreTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    @Test
+    fun editsAreVisibleAtOnceAndSurviveReopen() {
+        val store = KeyValueStore(folder.root, "prefs")
+        store.edit().putString("s", "a").putInt("i", 1).putStringSet("set", setOf("x", "y")).apply()
+        store.edit().putInt("i", 2).putLong("l", 3L).putBoolean("b", true).putFloat("f", 1.5f).apply()
+        store.edit().remove("s").apply()
+        assertEquals(2, store.getInt("i", 0))
+        assertFalse(store.contains("s"))
+        store.flush()
+
+        val reopened = KeyValueStore(folder.root, "prefs")
+        assertEquals(2, reopened.getInt("i", 0))
+        assertEquals(3L, reopened.getLong("l", 0L))
+        assertTrue(reopened.getBoolean("b", false))
+        assertEquals(1.5f, reopened.getFloat("f", 0f))
+        assertEquals(setOf("x", "y"), reopened.getStringSet("set", null))
+        assertFalse(reopened.contains("s"))
+    }
+
+    @Test
+    fun clearAndCommitCompactIntoTheSnapshot() {
+        val store = KeyValueStore(folder.root, "prefs")
+        store.edit().putString("old", "gone").commit()
+        assertTrue(store.edit().clear().putString("new", "kept").commit())
+
+        val reopened = KeyValueStore(folder.root, "prefs")
+        assertEquals(mapOf("new" to "kept"), reopened.all)
+        assertFalse(File(folder.root, "prefs.journal").exists())
+    }
+
+    @Test
+    fun tornJournalTailIsDropped() {
+        val store = KeyValueStore(folder.root, "prefs")
+        store.edit().putInt("count", 1).commit()
+        FileOutputStream(File(folder.root, "prefs.journal"), true).use { it.write(byteArrayOf(0, 0, 0, 40, 1, 2)) }
+
+        val reopened = KeyValueStore(folder.root, "prefs")
+        assertEquals(1, reopened.getInt("count", 0))
+        reopened.edit().putInt("count", 2).commit()
+        assertEquals(2, KeyValueStore(folder.root, "prefs").getInt("count", 0))
+    }
+}
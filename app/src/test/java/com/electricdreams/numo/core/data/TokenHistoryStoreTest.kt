@@ -0,0 +1,104 @@
+package com.electricdreams.numo.core.data
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.io.StringWriter
+import java.util.Date
+
+class TokenHistoryStoreTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    @Test
+    fun pagesAreNewestFirstAndSurviveReopen() {
+        val file = File(folder.root, "history.jsonl")
+        TokenHistoryStore(file).apply {
+            add("cashuB1", 1, Date(1_000))
+            add("cashuB2", 2, Date(2_000))
+            add("cashuB3", 3, Date(3_000))
+        }
+
+        val reopened = TokenHistoryStore(file)
+        assertEquals(listOf("cashuB3", "cashuB2"), reopened.page(0, 2).map { it.token })
+        assertEquals(listOf("cashuB1"), reopened.page(2, 2).map { it.token })
+    }
+
+    @Test
+    fun deletedEntriesStayDeletedAfterReopenAndCompaction() {
+        val file = File(folder.root, "history.jsonl")
+        val store = TokenHistoryStore(file)
+        val ids = (1..200).map { store.add("cashuB$it", it.toLong()).id }
+        ids.take(150).forEach { assertTrue(store.delete(it)) }
+
+        val reopened = TokenHistoryStore(file)
+        assertEquals(50, reopened.size())
+        assertEquals("cashuB200", reopened.page(0, 1).single().token)
+        assertEquals(201L, reopened.add("cashuBnew", 1).id)
+    }
+
+    @Test
+    fun csvExportListsEntriesOldestFirst() {
+        val store = TokenHistoryStore(File(folder.root, "history.jsonl"))
+        store.add("cashuBa", 21, Date(0))
+        val second = store.add("cashuBb", 42, Date(60_000))
+        store.add("cashuBc", 7, Date(120_000))
+        store.delete(second.id)
+
+        val out = StringWriter()
+        store.exportCsv(out)
+        assertEquals(
+            "date,amount,token\n" +
+                "1970-01-01T00:00:00Z,21,cashuBa\n" +
+                "1970-01-01T00:02:00Z,7,cashuBc\n",
+            out.toString(),
+        )
+    }
+
+    @Test
+    fun csvExportQuotesFieldsWithLineBreaks() {
+        val store = TokenHistoryStore(File(folder.root, "history.jsonl"))
+        store.add("cashuBa\rb", 1, Date(0))
+
+        val out = StringWriter()
+        store.exportCsv(out)
+        assertEquals("date,amount,token\n1970-01-01T00:00:00Z,1,\"cashuBa\rb\"\n", out.toString())
+    }
+
+    @Test
+    fun legacyImportAddsEntriesAfterExistingOnes() {
+        val file = File(folder.root, "history.jsonl")
+        val store = TokenHistoryStore(file)
+        store.add("cashuBnew", 5)
+        assertEquals(2, store.importLegacy("""[{"token":"cashuBold1","amount":1},{"token":"cashuBold2","amount":2}]"""))
+
+        val reopened = TokenHistoryStore(file)
+        assertEquals(listOf("cashuBold2", "cashuBold1", "cashuBnew"), reopened.page(0, 10).map { it.token })
+    }
+
+    @Test
+    fun failedLegacyImportLeavesNothingBehind() {
+        val file = File(folder.root, "history.jsonl")
+        val store = TokenHistoryStore(file)
+        store.add("cashuBkept", 5)
+
+        val failed = try {
+            store.importLegacy("""[{"token":"cashuBold1","amount":1},{"token":"cashuBold2","amount":""")
+            false
+        } catch (e: Exception) {
+            true
+        }
+        assertTrue(failed)
+        assertEquals(1, store.size())
+        assertEquals(listOf("cashuBkept"), TokenHistoryStore(file).page(0, 10).map { it.token })
+        // Ids handed out by the failed import are reused by the retry
+        assertEquals(1, store.importLegacy("""[{"token":"cashuBold1","amount":1}]"""))
+        assertEquals(2L, store.page(0, 1).single().id)
+        assertFalse(file.readText().contains("cashuBold2"))
+    }
+}
@@ -0,0 +1,41 @@
+package com.electricdreams.numo.core.metrics
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class LatencyHistogramTest {
+
+    @Test
+    fun emptyHistogramReportsZeros() {
+        val snapshot = LatencyHistogram().snapshot()
+        assertEquals(0L, snapshot.count)
+        assertEquals(0L, snapshot.minMs)
+        assertEquals(0L, snapshot.p50Ms)
+        assertEquals(0L, snapshot.p95Ms)
+    }
+
+    @Test
+    fun percentilesUseBucketBoundsCappedAtMax() {
+        val histogram = LatencyHistogram()
+        repeat(19) { histogram.record(80) }
+        histogram.record(4_200)
+
+        val snapshot = histogram.snapshot()
+        assertEquals(20L, snapshot.count)
+        assertEquals(80L, snapshot.minMs)
+        assertEquals(4_200L, snapshot.maxMs)
+        assertEquals(100L, snapshot.p50Ms)
+        assertEquals(100L, snapshot.p95Ms)
+        assertEquals((19 * 80 + 4_200) / 20L, snapshot.meanMs)
+    }
+
+    @Test
+    fun slowestBucketTakesValuesBeyondLastBound() {
+        val histogram = LatencyHistogram()
+        histogram.record(90_000)
+
+        val snapshot = histogram.snapshot()
+        assertEquals(1L, snapshot.bucketCounts.last())
+        assertEquals(90_000L, snapshot.p50Ms)
+    }
+}
@@ -0,0 +1,61 @@
+package com.electricdreams.numo.core.model
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class BasketTotalsTest {
+
+    private val coffee = Item(id = "coffee", price = 0.29, vatEnabled = true, vatRate = 20)
+    private val cake = Item(id = "cake", price = 3.35, vatEnabled = true, vatRate = 7)
+    private val sticker = Item(id = "sticker", priceSats = 500, priceType = PriceType.SATS)
+
+    @Test
+    fun roundsPerUnitHalfUp() {
+        // 0.29 * 100 is 28.999… as a double
+        assertEquals(29L, BasketTotals.netCents(coffee))
+        // 29 * 20% = 5.8 → 6; 335 * 7% = 23.45 → 23
+        assertEquals(6L, BasketTotals.vatCentsPerUnit(29, true, 20))
+        assertEquals(23L, BasketTotals.vatCentsPerUnit(335, true, 7))
+        assertEquals(0L, BasketTotals.vatCentsPerUnit(335, false, 7))
+    }
+
+    @Test
+    fun incrementalUpdatesMatchCheckoutSnapshot() {
+        val totals = BasketTotals()
+        totals.apply(coffee, 3, lineAdded = true)
+        totals.apply(cake, 2, lineAdded = true)
+        totals.apply(sticker, 4, lineAdded = true)
+        totals.apply(coffee, -1)
+        totals.apply(sticker, -4, lineRemoved = true)
+
+        val lines = listOf(BasketItem(coffee, 2), BasketItem(cake, 2))
+        val checkout = CheckoutBasket(
+            items = lines.map { CheckoutBasketItem.fromBasketItem(it, "EUR") },
+            currency = "EUR",
+            totalSatoshis = 0L,
+        )
+
+        assertEquals(checkout.getFiatNetTotalCents(), totals.fiatNetTotalCents)
+        assertEquals(checkout.getFiatVatTotalCents(), totals.fiatVatTotalCents)
+        assertEquals(checkout.getFiatGrossTotalCents(), totals.fiatGrossTotalCents)
+        assertEquals(lines.sumOf { it.getTotalCents() }, totals.fiatGrossTotalCents)
+        assertEquals(checkout.getVatBreakdown(), totals.vatBreakdown)
+        assertEquals(4, totals.totalItemCount)
+        assertEquals(0L, totals.satsDirectTotal)
+        assertFalse(totals.hasMixedPriceTypes)
+        assertEquals(BasketTotals.of(lines).fiatGrossTotalCents, totals.fiatGrossTotalCents)
+    }
+
+    @Test
+    fun convertsFiatToSatsRoundingDown() {
+        val totals = BasketTotals()
+        totals.apply(Item(id = "a", price = 10.0), 1, lineAdded = true)
+        totals.apply(sticker, 1, lineAdded = true)
+        assertTrue(totals.hasMixedPriceTypes)
+        // $10 at $30,000/BTC is 33,333.33… sats
+        assertEquals(33_333L + 500L, totals.totalSatoshis(30_000.0))
+        assertEquals(500L, totals.totalSatoshis(0.0))
+    }
+}
@@ -0,0 +1,50 @@
+package com.electricdreams.numo.core.model
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class MoneyFormatTest {
+
+    @Test
+    fun formatsDisplayCurrencies() {
+        assertEquals("$4.20", Amount(420, Amount.Currency.USD).toString())
+        assertEquals("€1.234,56", Amount(123_456, Amount.Currency.EUR).toString())
+        assertEquals("£0.05", Amount(5, Amount.Currency.GBP).toString())
+        assertEquals("¥420", Amount(42_000, Amount.Currency.JPY).toString())
+        assertEquals("₿1,000,000", Amount(1_000_000, Amount.Currency.BTC).toString())
+        assertEquals("$-4.20", Amount(-420, Amount.Currency.USD).toString())
+        assertEquals("1,000", Amount(1_000, Amount.Currency.BTC).toStringWithoutSymbol())
+    }
+
+    @Test
+    fun appendsIntoExistingBuilder() {
+        val out = StringBuilder("+")
+        Amount.appendTo(out, 99, Amount.Currency.USD)
+        assertEquals("+$0.99", out.toString())
+    }
+
+    @Test
+    fun registryUsesIsoExponents() {
+        assertEquals(2, CurrencyRegistry.of(Amount.Currency.USD).exponent)
+        assertEquals(0, CurrencyRegistry.of(Amount.Currency.JPY).exponent)
+        assertEquals(3, CurrencyRegistry.get("kwd")!!.exponent)
+        assertEquals("BTC", CurrencyRegistry.get("sats")!!.code)
+        assertNull(CurrencyRegistry.get("XYZ"))
+
+        // Stored in hundredths, shown with three decimals
+        val kwd = CurrencyRegistry.get("KWD")!!
+        assertEquals("1.250", MoneyFormat.appendTo(StringBuilder(), 125, kwd, withSymbol = false).toString())
+    }
+
+    @Test
+    fun parsesExactlyWithEitherSeparator() {
+        assertEquals(Amount(420, Amount.Currency.USD), Amount.parse("$4.20"))
+        assertEquals(Amount(420, Amount.Currency.EUR), Amount.parse("€4,20"))
+        assertEquals(Amount(123_456, Amount.Currency.EUR), Amount.parse("€1.234,56"))
+        assertEquals(Amount(10_000, Amount.Currency.JPY), Amount.parse("¥100"))
+        assertEquals(Amount(1_000, Amount.Currency.BTC), Amount.parse("₿1,000"))
+        assertEquals(13L, MoneyFormat.parse("0.125", CurrencyRegistry.of(Amount.Currency.USD)))
+        assertNull(Amount.parse("$abc"))
+    }
+}
@@ -0,0 +1,82 @@
+package com.electricdreams.numo.core.printing
+
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.net.InetAddress
+import java.net.ServerSocket
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.concurrent.thread
+
+/**
+ * Runs the print queue against a local server socket standing in for a network printer.
+ */
+class ReceiptPrintQueueTest {
+
+    private lateinit var server: ServerSocket
+    private lateinit var queue: ReceiptPrintQueue
+
+    @Before
+    fun setUp() {
+        server = ServerSocket(0, 1, InetAddress.getLoopbackAddress())
+        queue = ReceiptPrintQueue({
+            NetworkPrinterConnection(server.inetAddress.hostAddress!!, server.localPort)
+        })
+    }
+
+    @After
+    fun tearDown() {
+        queue.close()
+        server.close()
+    }
+
+    @Test
+    fun jobsShareOneConnectionInOrder() {
+        val accepted = AtomicInteger(0)
+        val received = ByteArrayOutputStream()
+        val reader = thread {
+            server.accept().use { socket ->
+                accepted.incrementAndGet()
+                socket.getInputStream().copyTo(received)
+            }
+        }
+
+        val first = EscPosBuilder().initialize().line("first").cut().build()
+        val second = EscPosBuilder().initialize().line("second").cut().build()
+        val done = CountDownLatch(2)
+        val errors = mutableListOf<Exception?>()
+        val callback = ReceiptPrintQueue.Callback { _, error ->
+            synchronized(errors) { errors.add(error) }
+            done.countDown()
+        }
+
+        queue.enqueue("first", callback) { first }
+        queue.enqueue("second", callback) { second }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS))
+        queue.close()
+        reader.join(5_000)
+
+        errors.forEach { assertNull(it) }
+        assertEquals(1, accepted.get())
+        assertArrayEquals(first + second, received.toByteArray())
+        assertEquals(0, queue.pendingJobs)
+    }
+
+    @Test
+    fun qrCodeCommandCarriesPayloadLength() {
+        val bytes = EscPosBuilder().also { it.qrCode("cashuBtoken") }.build()
+        // Store command: GS ( k pL pH 49 80 48 <data>
+        val storeIndex = 25
+        assertEquals(0x1D.toByte(), bytes[storeIndex])
+        assertEquals(("cashuBtoken".length + 3).toByte(), bytes[storeIndex + 3])
+        assertEquals(80.toByte(), bytes[storeIndex + 6])
+    }
+}
@@ -0,0 +1,44 @@
+package com.electricdreams.numo.core.startup
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class AppStartupTest {
+
+    @Test
+    fun freshInstallLeavesTheWalletToOnboarding() {
+        assertEquals(
+            setOf(AppStartup.WALLET, AppStartup.OFFLINE_ACCEPTANCE),
+            AppStartup.skippedSteps(onboarded = false),
+        )
+        assertTrue(AppStartup.skippedSteps(onboarded = true).isEmpty())
+    }
+
+    @Test
+    fun stepsThatRunOnFreshInstallDoNotWaitOnSkippedOnes() {
+        val skipped = AppStartup.skippedSteps(onboarded = false)
+        for (step in AppStartup.stepNames() - skipped) {
+            val waitsOn = transitiveDependencies(step) intersect skipped
+            assertTrue("$step depends on $waitsOn", waitsOn.isEmpty())
+        }
+    }
+
+    @Test
+    fun dependenciesAreDeclaredSteps() {
+        val names = AppStartup.stepNames().toSet()
+        for (step in names) {
+            assertTrue(names.containsAll(AppStartup.dependenciesOf(step)))
+        }
+    }
+
+    private fun transitiveDependencies(step: String): Set<String> {
+        val seen = mutableSetOf<String>()
+        val pending = ArrayDeque(AppStartup.dependenciesOf(step))
+        while (pending.isNotEmpty()) {
+            val next = pending.removeFirst()
+            if (seen.add(next)) pending.addAll(AppStartup.dependenciesOf(next))
+        }
+        return seen
+    }
+}
@@ -0,0 +1,136 @@
+package com.electricdreams.numo.core.util
+
+import com.electricdreams.numo.core.model.BasketItem
+import com.electricdreams.numo.core.model.BasketStatus
+import com.electricdreams.numo.core.model.Item
+import com.electricdreams.numo.core.model.SavedBasket
+import org.json.JSONArray
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.util.Calendar
+import java.util.Locale
+import java.util.TimeZone
+
+class BasketStoreTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private val now = System.currentTimeMillis()
+    private val day = 24 * 60 * 60 * 1000L
+
+    @Test
+    fun archivePagesNewestFirst() {
+        val store = BasketStore(folder.root)
+        // Spread over several months so pages cross segments
+        val baskets = (0 until 5).map { paid("b$it", now - it * 40 * day) }
+        store.archiveAll(baskets.shuffled())
+
+        assertEquals(5, store.archivedCount())
+        assertEquals(listOf("b0", "b1"), store.archivedPage(0, 2).map { it.id })
+        assertEquals(listOf("b2", "b3"), store.archivedPage(2, 2).map { it.id })
+        assertEquals(listOf("b4"), store.archivedPage(4, 2).map { it.id })
+        assertTrue(store.archivedPage(5, 2).isEmpty())
+        assertEquals(3, store.archivedPosition("b3"))
+        assertEquals("b2", store.getArchivedByPaymentId("pay-b2")?.id)
+    }
+
+    @Test
+    fun missingIndexIsRebuiltFromSegments() {
+        val store = BasketStore(folder.root)
+        store.archiveAll(listOf(paid("a", now), paid("b", now - 40 * day)))
+        assertTrue(store.flush())
+        assertTrue(File(folder.root, "archive/index.json").delete())
+
+        val reopened = BasketStore(folder.root)
+        assertEquals(listOf("a", "b"), reopened.archivedPage(0, 10).map { it.id })
+        assertEquals("b", reopened.getArchivedByPaymentId("pay-b")?.id)
+        assertTrue(reopened.flush())
+        assertTrue(File(folder.root, "archive/index.json").exists())
+    }
+
+    @Test
+    fun staleIndexIsRebuiltFromSegments() {
+        val store = BasketStore(folder.root)
+        store.archive(paid("a", now))
+        assertTrue(store.flush())
+        // A segment the index does not know about, e.g. left by a crash before the index write
+        val older = paid("b", now - 40 * day)
+        File(folder.root, "archive/${month(older.paidAt!!)}.json")
+            .writeText(JSONArray().put(SavedBasketJson.toJson(older)).toString())
+
+        val reopened = BasketStore(folder.root)
+        assertEquals(listOf("a", "b"), reopened.archivedPage(0, 10).map { it.id })
+    }
+
+    @Test
+    fun segmentsPastRetentionAreDroppedOnOpen() {
+        val store = BasketStore(folder.root)
+        val old = paid("old", monthsAgo(BasketStore.ARCHIVE_RETENTION_MONTHS + 1))
+        val kept = paid("kept", monthsAgo(BasketStore.ARCHIVE_RETENTION_MONTHS - 1))
+        store.archiveAll(listOf(old, kept))
+        assertTrue(store.flush())
+        assertEquals(2, store.archivedCount())
+
+        val reopened = BasketStore(folder.root)
+        assertEquals(listOf("kept"), reopened.archivedPage(0, 10).map { it.id })
+        assertNull(reopened.getArchived("old"))
+        assertFalse(File(folder.root, "archive/${month(old.paidAt!!)}.json").exists())
+    }
+
+    @Test
+    fun legacyImportIsOnDiskWhenReported() {
+        val active = SavedBasket(id = "open", name = "Table 4", items = listOf(BasketItem(Item(name = "Tea", price = 2.5), 2)))
+        val archived = paid("done", now)
+        val store = BasketStore(folder.root)
+        assertTrue(store.importActive(JSONArray().put(SavedBasketJson.toJson(active)).toString()))
+        assertTrue(store.importArchived(JSONArray().put(SavedBasketJson.toJson(archived)).toString()))
+
+        val reopened = BasketStore(folder.root)
+        val loaded = reopened.loadActive().single()
+        assertEquals("Table 4", loaded.name)
+        assertEquals("Tea", loaded.items.single().item.name)
+        assertEquals(2, loaded.items.single().quantity)
+        assertEquals("done", reopened.getArchivedByPaymentId("pay-done")?.id)
+    }
+
+    @Test
+    fun failedLegacyImportIsReported() {
+        val store = BasketStore(folder.root)
+        assertFalse(store.importActive("[{\"id\": \"no items\"}]"))
+        assertFalse(store.importArchived("not json"))
+
+        // A basket file that cannot be written
+        File(folder.root, "active/stuck.json.tmp").apply { mkdirs() }
+        File(folder.root, "active/stuck.json.tmp/x").createNewFile()
+        assertFalse(store.importActive(JSONArray().put(SavedBasketJson.toJson(SavedBasket(id = "stuck"))).toString()))
+        // Later writes start from a clean slate
+        assertTrue(store.flush())
+    }
+
+    private fun paid(id: String, paidAt: Long) = SavedBasket(
+        id = id,
+        createdAt = paidAt - 1000,
+        updatedAt = paidAt,
+        status = BasketStatus.PAID,
+        paymentId = "pay-$id",
+        paidAt = paidAt,
+    )
+
+    private fun monthsAgo(months: Int): Long =
+        Calendar.getInstance(TimeZone.getTimeZone("UTC")).apply {
+            timeInMillis = now
+            add(Calendar.MONTH, -months)
+        }.timeInMillis
+
+    private fun month(time: Long): String {
+        val calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC")).apply { timeInMillis = time }
+        return String.format(Locale.US, "%04d-%02d", calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1)
+    }
+}
@@ -0,0 +1,66 @@
+package com.electricdreams.numo.core.worker
+
+import com.electricdreams.numo.core.data.KeyValueStore
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class BitcoinPriceFeedTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private var now = 1_000_000L
+
+    private fun store() = KeyValueStore(folder.root, "prices")
+
+    @Test
+    fun parsesSupportedRatesOnly() {
+        val body = """{"data":{"currency":"BTC","rates":{"USD":"64250.5","EUR":"59000","CHF":"57000","JPY":"0","GBP":"bad"}}}"""
+        val snapshot = BitcoinPriceFeed.parseRates(body, 42L)!!
+        assertEquals(mapOf("USD" to 64250.5, "EUR" to 59000.0), snapshot.prices)
+        assertEquals(42L, snapshot.fetchedAtMillis)
+
+        assertNull(BitcoinPriceFeed.parseRates("""{"data":{"rates":{"CHF":"57000"}}}""", 42L))
+    }
+
+    @Test
+    fun emptyFeedIsStaleAndConvertsToZero() {
+        val feed = BitcoinPriceFeed(store()) { now }
+        assertEquals(BitcoinPriceFeed.PriceSnapshot.EMPTY, feed.prices.value)
+        assertTrue(feed.isStale())
+        assertEquals(0.0, feed.satoshisToFiat(100_000_000L, "USD"), 0.0)
+    }
+
+    @Test
+    fun publishedPricesAreCachedAndExpire() {
+        val prefs = store()
+        val feed = BitcoinPriceFeed(prefs) { now }
+        feed.publish(BitcoinPriceFeed.PriceSnapshot(mapOf("USD" to 50_000.0), now))
+        assertFalse(feed.isStale())
+        assertEquals(25.0, feed.satoshisToFiat(50_000L, "USD"), 1e-9)
+
+        // A new feed starts from the cached snapshot, with its original age
+        val restarted = BitcoinPriceFeed(prefs) { now }
+        assertEquals(feed.prices.value, restarted.prices.value)
+
+        now += BitcoinPriceFeed.MAX_AGE_MILLIS - 1
+        assertFalse(restarted.isStale())
+        now += 1
+        assertTrue(restarted.isStale())
+        // Stale prices are still served while a refresh is pending
+        assertEquals(50_000.0, restarted.prices.value.priceFor("USD"), 0.0)
+    }
+
+    @Test
+    fun readsPerCurrencyPricesFromOlderVersions() {
+        val prefs = store()
+        prefs.edit().putFloat("btcPrice_EUR", 48_000f).putLong("lastUpdateTime", 7L).commit()
+        val feed = BitcoinPriceFeed(prefs) { now }
+        assertEquals(BitcoinPriceFeed.PriceSnapshot(mapOf("EUR" to 48_000.0), 7L), feed.prices.value)
+    }
+}
@@ -0,0 +1,108 @@
+package com.electricdreams.numo.feature.autowithdraw
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+class WithdrawJobQueueTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    @Test
+    fun eachStepSurvivesAReload() {
+        val queued = WithdrawJobQueue(folder.root).enqueue(MINT, ADDRESS, notBefore = 5L, now = 1L)!!
+        assertEquals(queued, WithdrawJobQueue(folder.root).nextDue(5L))
+
+        val quoted = queued.copy(
+            state = WithdrawJobQueue.State.QUOTED,
+            amountSats = 1000L,
+            feeReserveSats = 4L,
+            quoteId = "q1",
+            historyId = "h1",
+        )
+        WithdrawJobQueue(folder.root).update(quoted)
+        assertEquals(quoted, WithdrawJobQueue(folder.root).nextDue(5L))
+
+        val melting = quoted.copy(state = WithdrawJobQueue.State.MELTING, meltAttempts = 1)
+        WithdrawJobQueue(folder.root).update(melting)
+        assertEquals(melting, WithdrawJobQueue(folder.root).nextDue(5L))
+
+        val verifying = melting.copy(
+            state = WithdrawJobQueue.State.VERIFYING,
+            checkAttempts = 2,
+            notBefore = 30L,
+            lastError = "quote pending",
+        )
+        WithdrawJobQueue(folder.root).update(verifying)
+        val reloaded = WithdrawJobQueue(folder.root)
+        assertTrue(reloaded.hasActive())
+        assertNull(reloaded.nextDue(29L))
+        assertEquals(verifying, reloaded.nextDue(30L))
+
+        reloaded.remove(verifying.id)
+        assertNull(WithdrawJobQueue(folder.root).nextDueAt())
+    }
+
+    @Test
+    fun enqueueCoalescesIntoTheQueuedJobOfItsMint() {
+        val queue = WithdrawJobQueue(folder.root)
+        val first = queue.enqueue(MINT, ADDRESS, notBefore = 10L, now = 1L)
+        assertNotNull(first)
+        assertNull(queue.enqueue(MINT, ADDRESS, notBefore = 20L, now = 2L))
+        // Another mint gets its own job
+        assertNotNull(queue.enqueue(OTHER_MINT, ADDRESS, notBefore = 20L, now = 3L))
+
+        // Once the queued job is under way, a new crossing queues the next withdrawal
+        queue.update(first!!.copy(state = WithdrawJobQueue.State.QUOTED))
+        val next = queue.enqueue(MINT, ADDRESS, notBefore = 30L, now = 4L)
+        assertNotNull(next)
+        assertNull(WithdrawJobQueue(folder.root).enqueue(MINT, ADDRESS, notBefore = 40L, now = 5L))
+    }
+
+    @Test
+    fun queuedJobWaitsForTheInFlightJobOfItsMint() {
+        val queue = WithdrawJobQueue(folder.root)
+        val running = queue.enqueue(MINT, ADDRESS, notBefore = 10L, now = 1L)!!
+        queue.update(running.copy(state = WithdrawJobQueue.State.MELTING, notBefore = 50L))
+        val waiting = queue.enqueue(MINT, ADDRESS, notBefore = 10L, now = 2L)!!
+        val other = queue.enqueue(OTHER_MINT, ADDRESS, notBefore = 20L, now = 3L)!!
+
+        // The queued job of the busy mint is due first but held back
+        assertNull(queue.nextDue(15L))
+        assertEquals(other.id, queue.nextDue(20L)?.id)
+        assertEquals(20L, queue.nextDueAt())
+        queue.remove(other.id)
+        assertEquals(50L, queue.nextDueAt())
+        assertEquals(running.id, queue.nextDue(50L)?.id)
+
+        queue.remove(running.id)
+        assertFalse(queue.hasActive())
+        assertEquals(waiting.id, queue.nextDue(15L)?.id)
+    }
+
+    @Test
+    fun failedWriteLeavesTheQueueUnchanged() {
+        val queue = WithdrawJobQueue(File(folder.root, "missing"))
+        val failed = try {
+            queue.enqueue(MINT, ADDRESS, notBefore = 0L)
+            false
+        } catch (e: WithdrawJobQueue.PersistException) {
+            true
+        }
+        assertTrue(failed)
+        assertNull(queue.nextDueAt())
+    }
+
+    companion object {
+        private const val MINT = "https://mint.example.com"
+        private const val OTHER_MINT = "https://other.example.com"
+        private const val ADDRESS = "shop@example.com"
+    }
+}
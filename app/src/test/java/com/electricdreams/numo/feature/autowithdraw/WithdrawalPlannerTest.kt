@@ -0,0 +1,83 @@
+package com.electricdreams.numo.feature.autowithdraw
+
+import com.electricdreams.numo.feature.autowithdraw.WithdrawalPlanner.QuoteResult
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.IOException
+
+class WithdrawalPlannerTest {
+
+    @Test
+    fun lowestFeeReserveWins() {
+        val chosen = WithdrawalPlanner.choose(
+            listOf(quoted(MINT_A, fee = 10L), quoted(MINT_B, fee = 3L), quoted(MINT_C, fee = 7L)),
+            preferredMint = MINT_A,
+        )
+        assertEquals(MINT_B, chosen.mintUrl)
+    }
+
+    @Test
+    fun preferredMintWinsATieInEitherOrder() {
+        val results = listOf(quoted(MINT_A, fee = 5L), quoted(MINT_B, fee = 5L))
+        assertEquals(MINT_B, WithdrawalPlanner.choose(results, preferredMint = MINT_B).mintUrl)
+        assertEquals(MINT_B, WithdrawalPlanner.choose(results.reversed(), preferredMint = MINT_B).mintUrl)
+        assertEquals(MINT_A, WithdrawalPlanner.choose(results, preferredMint = null).mintUrl)
+    }
+
+    @Test
+    fun mintThatCannotCoverFeesIsSkipped() {
+        val chosen = WithdrawalPlanner.choose(
+            listOf(quoted(MINT_A, fee = 1L, balance = 1000L), quoted(MINT_B, fee = 4L)),
+            preferredMint = MINT_A,
+        )
+        assertEquals(MINT_B, chosen.mintUrl)
+    }
+
+    @Test
+    fun insufficientBalanceEverywhereExplainsTheShortfall() {
+        val error = planningError(listOf(quoted(MINT_A, fee = 1L, balance = 1000L)))
+        assertEquals("Insufficient balance for withdrawal + fees (need 1001, have 1000)", error.message)
+    }
+
+    @Test
+    fun failedQuoteFallsBackToTheOthers() {
+        val chosen = WithdrawalPlanner.choose(
+            listOf(failed(MINT_A, IOException("mint offline")), quoted(MINT_B, fee = 9L)),
+            preferredMint = MINT_A,
+        )
+        assertEquals(MINT_B, chosen.mintUrl)
+    }
+
+    @Test
+    fun everyQuoteFailingReportsTheError() {
+        val cause = IOException("mint offline")
+        val error = planningError(listOf(failed(MINT_A, cause)))
+        assertEquals("mint offline", error.message)
+        assertSame(cause, error.cause)
+    }
+
+    private fun planningError(results: List<QuoteResult<String>>): WithdrawalPlanner.PlanningException {
+        val error = try {
+            WithdrawalPlanner.choose(results, preferredMint = null)
+            null
+        } catch (e: WithdrawalPlanner.PlanningException) {
+            e
+        }
+        assertTrue(error != null)
+        return error!!
+    }
+
+    private fun quoted(mintUrl: String, fee: Long, balance: Long = 10_000L) =
+        QuoteResult(mintUrl, balance, "quote-$mintUrl", amountSats = 1000L, feeReserveSats = fee)
+
+    private fun failed(mintUrl: String, error: Throwable) =
+        QuoteResult<String>(mintUrl, 10_000L, error = error)
+
+    companion object {
+        private const val MINT_A = "https://a.example.com"
+        private const val MINT_B = "https://b.example.com"
+        private const val MINT_C = "https://c.example.com"
+    }
+}
@@ -0,0 +1,129 @@
+package com.electricdreams.numo.ndef
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+
+/**
+ * The reader's side of a Type 4 tag read, one APDU at a time.
+ */
+class NdefApduHandlerTest {
+
+    private val message = "creqA" + "x".repeat(1200)
+    private val ndefFile = NdefMessageBuilder.createNdefMessage(message)
+    private var sent = 0
+    private lateinit var processor: NdefProcessor
+
+    @Before
+    fun setUp() {
+        processor = NdefProcessor(object : NdefProcessor.NdefMessageCallback {
+            override fun onNdefMessageReceived(message: String) = Unit
+            override fun onMessageSent() {
+                sent++
+            }
+        })
+        processor.setMessageToSend(message)
+        processor.setWriteMode(true)
+    }
+
+    @Test
+    fun shortApduReaderIsOfferedShortReads() {
+        assertOk(send(NdefConstants.NDEF_SELECT_AID))
+        assertOk(send(apdu(0x00, 0xA4, 0x00, 0x0C, 0x02, 0xE1, 0x03)))
+        val cc = send(apdu(0x00, 0xB0, 0x00, 0x00, 0x0F))
+        assertOk(cc)
+        assertEquals(NdefConstants.SHORT_MAX_READ_LENGTH, mle(cc))
+    }
+
+    @Test
+    fun chunkedShortReadsReassembleTheFile() {
+        selectNdefFile()
+        assertEquals(1, sent)
+
+        // NLEN first, as readers do, then MLe-sized chunks
+        val nlen = send(readBinary(0, 2))
+        assertOk(nlen)
+        val fileLength = 2 + (((nlen[0].toInt() and 0xFF) shl 8) or (nlen[1].toInt() and 0xFF))
+        assertEquals(ndefFile.size, fileLength)
+
+        val out = ByteArrayOutputStream()
+        out.write(nlen, 0, 2)
+        var offset = 2
+        while (offset < fileLength) {
+            val le = minOf(NdefConstants.SHORT_MAX_READ_LENGTH, fileLength - offset)
+            val response = send(readBinary(offset, le))
+            assertOk(response)
+            assertEquals(le + 2, response.size)
+            out.write(response, 0, le)
+            offset += le
+        }
+        assertArrayEquals(ndefFile, out.toByteArray())
+    }
+
+    @Test
+    fun shortLeZeroMeans256AndOverrunStopsAtEndOfFile() {
+        selectNdefFile()
+        assertEquals(256 + 2, send(readBinary(0, 0)).size)
+
+        val offset = ndefFile.size - 10
+        val tail = send(readBinary(offset, 0xFF))
+        assertEquals(10 + 2, tail.size)
+        assertArrayEquals(ndefFile.copyOfRange(offset, ndefFile.size), tail.copyOfRange(0, 10))
+        assertArrayEquals(NdefConstants.NDEF_RESPONSE_END_OF_FILE, status(tail))
+
+        assertArrayEquals(NdefConstants.NDEF_RESPONSE_ERROR, send(readBinary(ndefFile.size, 1)))
+    }
+
+    @Test
+    fun extendedApduReaderIsOfferedExtendedReads() {
+        assertOk(send(NdefConstants.NDEF_SELECT_AID))
+        // SELECT with an extended Lc marks the reader as extended-capable
+        assertOk(send(apdu(0x00, 0xA4, 0x00, 0x0C, 0x00, 0x00, 0x02, 0xE1, 0x03)))
+        assertEquals(NdefConstants.MAX_READ_LENGTH, mle(send(readBinary(0, 0x0F))))
+
+        assertOk(send(apdu(0x00, 0xA4, 0x00, 0x0C, 0x02, 0xE1, 0x04)))
+        // Extended Le 0 asks for 65536 bytes; the whole file fits under MLe
+        val whole = send(apdu(0x00, 0xB0, 0x00, 0x00, 0x00, 0x00, 0x00))
+        assertEquals(ndefFile.size + 2, whole.size)
+        assertArrayEquals(ndefFile, whole.copyOfRange(0, ndefFile.size))
+        assertArrayEquals(NdefConstants.NDEF_RESPONSE_END_OF_FILE, status(whole))
+
+        // An extended Le above MLe is capped
+        val capped = send(apdu(0x00, 0xB0, 0x00, 0x00, 0x00, 0x10, 0x00))
+        assertEquals(minOf(NdefConstants.MAX_READ_LENGTH, ndefFile.size) + 2, capped.size)
+    }
+
+    @Test
+    fun nextReaderStartsWithShortReads() {
+        send(apdu(0x00, 0xA4, 0x00, 0x0C, 0x00, 0x00, 0x02, 0xE1, 0x03))
+        processor.onDeactivated()
+
+        // Nothing is selected any more
+        assertArrayEquals(NdefConstants.NDEF_RESPONSE_ERROR, send(readBinary(0, 0x0F)))
+        send(apdu(0x00, 0xA4, 0x00, 0x0C, 0x02, 0xE1, 0x03))
+        assertEquals(NdefConstants.SHORT_MAX_READ_LENGTH, mle(send(readBinary(0, 0x0F))))
+    }
+
+    private fun selectNdefFile() {
+        assertOk(send(NdefConstants.NDEF_SELECT_AID))
+        assertOk(send(apdu(0x00, 0xA4, 0x00, 0x0C, 0x02, 0xE1, 0x03)))
+        assertOk(send(readBinary(0, 0x0F)))
+        assertOk(send(apdu(0x00, 0xA4, 0x00, 0x0C, 0x02, 0xE1, 0x04)))
+    }
+
+    private fun send(command: ByteArray): ByteArray = processor.processCommandApdu(command)
+
+    private fun readBinary(offset: Int, le: Int) = apdu(0x00, 0xB0, offset shr 8, offset and 0xFF, le)
+
+    private fun apdu(vararg bytes: Int) = ByteArray(bytes.size) { bytes[it].toByte() }
+
+    private fun status(response: ByteArray) = response.copyOfRange(response.size - 2, response.size)
+
+    private fun mle(ccResponse: ByteArray) = ((ccResponse[3].toInt() and 0xFF) shl 8) or (ccResponse[4].toInt() and 0xFF)
+
+    private fun assertOk(response: ByteArray) {
+        assertArrayEquals(NdefConstants.NDEF_RESPONSE_OK, status(response))
+    }
+}
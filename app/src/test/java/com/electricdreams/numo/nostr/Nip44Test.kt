@@ -0,0 +1,44 @@
+package com.electricdreams.numo.nostr
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.nio.ByteBuffer
+
+class Nip44Test {
+
+    private fun key(last: Int) = ByteArray(32).also { it[31] = last.toByte() }
+
+    private val conversationKey = Nip44.getConversationKey(key(1), Secp256k1.publicKey(key(2)))
+
+    @Test
+    fun matchesSpecVector() {
+        assertEquals(
+            "c41c775356fd92eadc63ff5a0dc1da211b268cbea22316767095b2871ea1412d",
+            conversationKey.joinToString("") { "%02x".format(it) },
+        )
+        val payload = Nip44.encrypt("a", conversationKey, key(1))
+        assertEquals(
+            "AgAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAABee0G5VSK0/9YypIObAtDKfYEAjD35uVkHyB0F4DwrcNaCXlCWZKaArsGrY6M9wnuTMxWfp1RTN9Xga8no+kF5Vsb",
+            payload,
+        )
+        assertEquals("a", Nip44.decrypt(payload, conversationKey))
+    }
+
+    @Test
+    fun roundTripsThroughBuffers() {
+        val text = "payment request ✓ ".repeat(40)
+        val plain = ByteBuffer.wrap(text.toByteArray())
+        val payload = ByteBuffer.allocate(Nip44.payloadLength(plain.remaining()))
+        Nip44.encrypt(plain, conversationKey, payload)
+        payload.flip()
+
+        val out = ByteBuffer.allocate(payload.remaining())
+        val len = Nip44.decrypt(payload, conversationKey, out)
+        assertEquals(text, String(out.array(), 0, len))
+
+        // The String API reads what the buffer API wrote
+        val chars = CharArray(Nip44.base64Length(payload.limit()))
+        val n = Nip44.encodeBase64(payload.array(), 0, payload.limit(), chars, 0)
+        assertEquals(text, Nip44.decrypt(String(chars, 0, n), conversationKey))
+    }
+}
@@ -0,0 +1,69 @@
+package com.electricdreams.numo.nostr
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class RelayMessageParserTest {
+
+    private class Recorder : RelayMessageParser.Listener() {
+        val seen = mutableListOf<String>()
+        var event: NostrEvent? = null
+
+        override fun onEvent(subscriptionId: String, event: NostrEvent) {
+            seen += "EVENT $subscriptionId"
+            this.event = event
+        }
+
+        override fun onEose(subscriptionId: String?) { seen += "EOSE $subscriptionId" }
+        override fun onClosed(subscriptionId: String?, reason: String) { seen += "CLOSED $subscriptionId $reason" }
+        override fun onNotice(message: String) { seen += "NOTICE $message" }
+        override fun onOk(eventId: String, accepted: Boolean, message: String) { seen += "OK $eventId $accepted $message" }
+    }
+
+    @Test
+    fun decodesEventForSubscription() {
+        val recorder = Recorder()
+        RelayMessageParser.parse(
+            """["EVENT","sub1",{"id":"ab","pubkey":"cd","created_at":1700000000,"kind":1059,""" +
+                """"tags":[["p","ef"],["expiration",123]],"content":"x","sig":"01","extra":{"a":[1]}}]""",
+            "sub1",
+            recorder,
+        )
+
+        val event = recorder.event!!
+        assertEquals(listOf("EVENT sub1"), recorder.seen)
+        assertEquals("ab", event.id)
+        assertEquals(1_700_000_000L, event.created_at)
+        assertEquals(1059, event.kind)
+        assertEquals(listOf(listOf("p", "ef"), listOf("expiration", "123")), event.tags)
+        assertEquals("x", event.content)
+        assertEquals("01", event.sig)
+    }
+
+    @Test
+    fun skipsEventsForOtherSubscriptions() {
+        val recorder = Recorder()
+        // The event body is never read, so even a malformed one is harmless
+        RelayMessageParser.parse("""["EVENT","other",{"id":""", "sub1", recorder)
+        assertNull(recorder.event)
+        assertEquals(emptyList<String>(), recorder.seen)
+    }
+
+    @Test
+    fun dispatchesControlMessages() {
+        val recorder = Recorder()
+        RelayMessageParser.parse("""["EOSE","sub1"]""", "sub1", recorder)
+        RelayMessageParser.parse("""["CLOSED","sub1","error: shutting down"]""", "sub1", recorder)
+        RelayMessageParser.parse("""["NOTICE","slow down"]""", null, recorder)
+        RelayMessageParser.parse("""["OK","ab",false,"blocked: spam"]""", null, recorder)
+        RelayMessageParser.parse("""["AUTH","challenge"]""", null, recorder)
+
+        assertEquals(
+            listOf("EOSE sub1", "CLOSED sub1 error: shutting down", "NOTICE slow down", "OK ab false blocked: spam"),
+            recorder.seen,
+        )
+        assertFalse(recorder.seen.any { it.startsWith("AUTH") })
+    }
+}
@@ -0,0 +1,66 @@
+package com.electricdreams.numo.nostr
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class Secp256k1Test {
+
+    private fun hex(s: String) = ByteArray(s.length / 2) { s.substring(2 * it, 2 * it + 2).toInt(16).toByte() }
+    private fun ByteArray.hex() = joinToString("") { "%02X".format(it) }
+
+    // BIP-340 test vector 1
+    private val secret = hex("B7E151628AED2A6ABF7158809CF4F3C762E7160F38B4DA56A784D9045190CFEF")
+    private val message = hex("243F6A8885A308D313198A2E03707344A4093822299F31D0082EFA98EC4E6C89")
+    private val aux = hex("0000000000000000000000000000000000000000000000000000000000000001")
+
+    @Test
+    fun signsBip340Vector() {
+        assertEquals(
+            "DFF1D77F2A671C5F36183726DB2341BE58FEAE1DA2DECED843240F7B502BA659",
+            Secp256k1.publicKey(secret).hex(),
+        )
+        assertEquals(
+            "6896BD60EEAE296DB48A229FF71DFE071BDE413E6D43F917DC8DCF8C78DE3341" +
+                "8906D11AC976ABCCB20B091292BFF4EA897EFCB639EA871CFA95F6DE339E4B0A",
+            Secp256k1.sign(secret, message, aux).hex(),
+        )
+    }
+
+    @Test
+    fun verifiesAndRejects() {
+        val pub = Secp256k1.publicKey(secret)
+        val sig = Secp256k1.sign(secret, message)
+        assertTrue(Secp256k1.verify(pub, message, sig))
+
+        sig[63] = (sig[63].toInt() xor 1).toByte()
+        assertFalse(Secp256k1.verify(pub, message, sig))
+        // BIP-340 vector 5: public key not on the curve
+        assertFalse(Secp256k1.verify(hex("EEFDEA4CDB677750A420FEE807EACF21EB9898AE79B9768766E4FAA04A2D4A34"), message, sig))
+        assertFalse(Secp256k1.verify(pub, message, ByteArray(10)))
+    }
+
+    @Test
+    fun batchVerifiesAndRejectsAnyBadSignature() {
+        val secrets = List(8) { Secp256k1.generateSecretKey() }
+        val pubs = secrets.map { Secp256k1.publicKey(it) }.toTypedArray()
+        val msgs = Array(8) { ByteArray(32) { i -> (it * 31 + i).toByte() } }
+        val sigs = Array(8) { Secp256k1.sign(secrets[it], msgs[it]) }
+        assertTrue(Secp256k1.verifyBatch(pubs, msgs, sigs))
+
+        sigs[5] = Secp256k1.sign(secrets[4], msgs[5])
+        assertFalse(Secp256k1.verifyBatch(pubs, msgs, sigs))
+    }
+
+    @Test
+    fun ecdhIsSymmetric() {
+        val a = Secp256k1.generateSecretKey()
+        val b = Secp256k1.generateSecretKey()
+        assertArrayEquals(
+            Secp256k1.ecdh(a, Secp256k1.publicKey(b)),
+            Secp256k1.ecdh(b, Secp256k1.publicKey(a)),
+        )
+    }
+}
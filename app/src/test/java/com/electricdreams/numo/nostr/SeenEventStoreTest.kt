@@ -0,0 +1,45 @@
+package com.electricdreams.numo.nostr
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+class SeenEventStoreTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private fun id(n: Int) = "%064x".format(n)
+
+    @Test
+    fun seenIdsSurviveReopen() {
+        val file = File(folder.root, "seen.bin")
+        SeenEventStore(file).apply {
+            assertTrue(markSeen(id(1)))
+            assertFalse(markSeen(id(1)))
+            assertTrue(markSeen(id(2).uppercase()))
+        }
+
+        val reopened = SeenEventStore(file)
+        assertEquals(2, reopened.size())
+        assertTrue(id(2) in reopened)
+        assertFalse(id(3) in reopened)
+    }
+
+    @Test
+    fun keepsOnlyTheNewestIds() {
+        val file = File(folder.root, "seen.bin")
+        val store = SeenEventStore(file)
+        val total = SeenEventStore.MAX_ENTRIES * 2
+        for (n in 0 until total) store.markSeen(id(n))
+
+        val reopened = SeenEventStore(file)
+        assertTrue(reopened.size() <= SeenEventStore.MAX_ENTRIES)
+        assertTrue(id(total - 1) in reopened)
+        assertFalse(id(0) in reopened)
+    }
+}
@@ -0,0 +1,103 @@
+package com.electricdreams.numo.payment
+
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.suspendCancellableCoroutine
+import kotlinx.coroutines.withTimeout
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import kotlin.coroutines.resume
+
+/**
+ * Races fake channels through a session to check that a payment made by the
+ * losing side always reaches the late-outcome callback.
+ */
+class PaymentSessionTest {
+
+    private val late = mutableListOf<Pair<String, PaymentOutcome>>()
+    private val lateDelivered = CountDownLatch(1)
+    private var session: PaymentSession? = null
+
+    @After
+    fun tearDown() {
+        session?.close()
+    }
+
+    @Test
+    fun photoFinishLoserIsDeliveredLate() {
+        val loserStarted = CountDownLatch(1)
+        val loserMayReturn = CountDownLatch(1)
+        val winner = FakeChannel("a") {
+            loserStarted.await()
+            paid("a")
+        }
+        // Blocks its thread instead of suspending, so cancellation cannot stop it returning
+        val loser = FakeChannel("b") {
+            loserStarted.countDown()
+            loserMayReturn.await()
+            paid("b")
+        }
+
+        val state = startAndAwaitResolved(winner, loser)
+        loserMayReturn.countDown()
+
+        assertEquals("a", state.winner)
+        assertEquals(paid("a"), state.outcome)
+        assertTrue(lateDelivered.await(5, TimeUnit.SECONDS))
+        assertEquals(listOf("b" to paid("b")), late)
+    }
+
+    @Test
+    fun redemptionFinishingAfterCancelIsDeliveredLate() {
+        val waiting = CountDownLatch(1)
+        var redeemed: ((PaymentOutcome) -> Unit)? = null
+        // Resumes the way the HCE and Nostr channels do when their service finishes a redemption
+        val redeeming = FakeChannel("nfc") { reporter ->
+            suspendCancellableCoroutine { cont ->
+                redeemed = { outcome -> cont.resume(outcome) { reporter.late(outcome) } }
+                waiting.countDown()
+            }
+        }
+        val idle = FakeChannel("lightning") { suspendCancellableCoroutine<PaymentOutcome> { } }
+
+        val paymentSession = PaymentSession(listOf(redeeming, idle), ::recordLate)
+        session = paymentSession
+        paymentSession.start()
+        assertTrue(waiting.await(5, TimeUnit.SECONDS))
+        paymentSession.cancel()
+        redeemed!!.invoke(paid("nfc"))
+
+        assertTrue(lateDelivered.await(5, TimeUnit.SECONDS))
+        assertEquals(listOf("nfc" to paid("nfc")), late)
+        assertTrue(paymentSession.state.value.cancelled)
+        assertNull(paymentSession.state.value.outcome)
+    }
+
+    private fun startAndAwaitResolved(vararg channels: PaymentChannel): PaymentSession.State {
+        val paymentSession = PaymentSession(channels.toList(), ::recordLate)
+        session = paymentSession
+        paymentSession.start()
+        return runBlocking {
+            withTimeout(5000) { paymentSession.state.first { it.isResolved } }
+        }
+    }
+
+    private fun recordLate(channel: String, outcome: PaymentOutcome) {
+        synchronized(late) { late.add(channel to outcome) }
+        lateDelivered.countDown()
+    }
+
+    private fun paid(channel: String) = PaymentOutcome.Lightning("lnbc-$channel", "quote-$channel", "https://mint.test")
+
+    private class FakeChannel(
+        override val name: String,
+        private val body: suspend (PaymentChannel.Reporter) -> PaymentOutcome,
+    ) : PaymentChannel {
+        override suspend fun run(reporter: PaymentChannel.Reporter): PaymentOutcome = body(reporter)
+    }
+}